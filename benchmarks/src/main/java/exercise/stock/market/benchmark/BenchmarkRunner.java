@@ -0,0 +1,65 @@
+package exercise.stock.market.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for each number of threads.
+ * <p>
+ * The first argument may be {@code threads=1,2,4} (the default being 1 and the
+ * number of processors); the other arguments are the usual JMH options, e.g. a
+ * benchmark name pattern, {@code -p stockCount=1000} or
+ * {@code -rf json -rff results.json}.
+ *
+ * @author DMONEY
+ *
+ */
+public class BenchmarkRunner {
+
+	/** The prefix of the argument giving the numbers of threads. */
+	private static final String THREADS_ARGUMENT = "threads=";
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args the numbers of threads, then the JMH options
+	 * @throws RunnerException if a benchmark fails
+	 * @throws CommandLineOptionException if the JMH options are invalid
+	 */
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		List<String> jmhArgs = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith(THREADS_ARGUMENT)) {
+				for (String count : arg.substring(THREADS_ARGUMENT.length()).split(",")) {
+					threadCounts.add(Integer.valueOf(count.trim()));
+				}
+			} else {
+				jmhArgs.add(arg);
+			}
+		}
+		if (threadCounts.isEmpty()) {
+			threadCounts.add(1);
+			int processors = Runtime.getRuntime().availableProcessors();
+			if (processors > 1) {
+				threadCounts.add(processors);
+			}
+		}
+		CommandLineOptions options = new CommandLineOptions(jmhArgs.toArray(new String[jmhArgs.size()]));
+		for (int threads : threadCounts) {
+			ChainedOptionsBuilder builder = new OptionsBuilder().parent(options).threads(threads);
+			Collection<RunResult> results = new Runner(builder.build()).run();
+			System.out.println(threads + " threads: " + results.size() + " benchmarks run");
+		}
+	}
+
+}
@@ -0,0 +1,224 @@
+package exercise.stock.market.benchmark;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import exercise.stock.market.journal.DurabilityPolicy;
+import exercise.stock.market.journal.TradeJournal;
+import exercise.stock.market.model.BaseStock;
+import exercise.stock.market.service.StockMarketService;
+import exercise.stock.market.store.RetentionPolicy;
+
+/**
+ * Benchmark of the throughput of contended writers recording trades into one
+ * {@link StockMarketService}, by number of writer threads.
+ * <p>
+ * Each invocation records {@link #TRADES_PER_INVOCATION} trades of random
+ * stocks, split evenly across {@link #writers} threads, and the score is the
+ * number of trades recorded per microsecond by all of them. With the locks of
+ * the stores, the score grows with the writers up to the number of cores;
+ * with {@link #globalLock}, every trade is recorded under one lock, as the
+ * feed handlers did before the service was safe for concurrent ingestion,
+ * and the score stays at the one of a single writer. With {@link #journaled},
+ * the trades are also appended to a {@link TradeJournal}, which only locks
+ * the journal to claim the space of each record.
+ * <p>
+ * The writers are threads of the benchmark, so it is run on one JMH thread,
+ * e.g. {@code java -jar target/benchmarks.jar threads=1 ContendedIngestion}.
+ *
+ * @author DMONEY
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContendedIngestionBenchmark {
+
+	/** The number of trades recorded by an invocation. */
+	public static final int TRADES_PER_INVOCATION = 1 << 16;
+
+	/** The number of trades kept by each stock. */
+	private static final int RETAINED_TRADES = 1000;
+
+	/** The number of writer threads. */
+	@Param({ "1", "2", "4", "8" })
+	public int writers;
+
+	/** True to record every trade under one lock shared by the writers. */
+	@Param({ "false", "true" })
+	public boolean globalLock;
+
+	/** True to append the trades to a journal. */
+	@Param({ "false", "true" })
+	public boolean journaled;
+
+	/** The number of stocks. */
+	@Param({ "64" })
+	public int stockCount;
+
+	/** The service under test. */
+	private StockMarketService service;
+
+	/** The journal, or null. */
+	private TradeJournal journal;
+
+	/** The threads of the writers. */
+	private ExecutorService executor;
+
+	/** The writers, recording their share of the trades of an invocation. */
+	private List<Writer> tasks;
+
+	/**
+	 * Creates the service, fills the stores and starts the writer threads.
+	 *
+	 * @throws IOException if the journal cannot be opened
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		this.service = TradeGenerator.newService(this.stockCount);
+		for (BaseStock stock : this.service.getStockMap().values()) {
+			stock.setRetentionPolicy(RetentionPolicy.maxRecords(RETAINED_TRADES));
+		}
+		TradeGenerator filler = new TradeGenerator(this.stockCount, -1, System.currentTimeMillis() - 60000);
+		filler.fill(this.service, RETAINED_TRADES);
+		// the writers go on from the last trade, so that their trades are appended
+		long start = filler.getTimestamp();
+		if (this.journaled) {
+			this.journal = TradeJournal.open(Files.createTempDirectory("journal"), DurabilityPolicy.never());
+			this.service.setJournal(this.journal);
+		}
+		this.executor = Executors.newFixedThreadPool(this.writers);
+		this.tasks = new ArrayList<Writer>(this.writers);
+		Object lock = this.globalLock ? new Object() : null;
+		for (int w = 0; w < this.writers; w++) {
+			this.tasks.add(new Writer(this.service, new TradeGenerator(this.stockCount, w, start), lock,
+					TRADES_PER_INVOCATION / this.writers));
+		}
+	}
+
+	/**
+	 * Stops the writer threads, and deletes the journal.
+	 *
+	 * @throws IOException if the journal cannot be deleted
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		this.executor.shutdownNow();
+		if (this.journal != null) {
+			this.journal.close();
+			DirectoryStream<Path> segments = Files.newDirectoryStream(this.journal.getDirectory());
+			try {
+				for (Path segment : segments) {
+					Files.delete(segment);
+				}
+			} finally {
+				segments.close();
+			}
+			Files.delete(this.journal.getDirectory());
+		}
+	}
+
+	/**
+	 * Records {@link #TRADES_PER_INVOCATION} trades with primitive values, from
+	 * all the writers at once.
+	 *
+	 * @throws InterruptedException if the benchmark thread is interrupted
+	 * @throws ExecutionException if a writer fails
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TRADES_PER_INVOCATION)
+	public void recordTrade() throws InterruptedException, ExecutionException {
+		for (Future<Void> result : this.executor.invokeAll(this.tasks)) {
+			result.get();
+		}
+	}
+
+	/**
+	 * A writer thread, recording trades of its own generator.
+	 */
+	private static class Writer implements Callable<Void> {
+
+		/** The service under test. */
+		private final StockMarketService service;
+
+		/** The trades of the writer. */
+		private final TradeGenerator generator;
+
+		/** The lock held while recording each trade, or null. */
+		private final Object lock;
+
+		/** The number of trades recorded by a call. */
+		private final int trades;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param service the service under test
+		 * @param generator the trades of the writer
+		 * @param lock the lock held while recording each trade, or null
+		 * @param trades the number of trades recorded by a call
+		 */
+		Writer(StockMarketService service, TradeGenerator generator, Object lock, int trades) {
+			this.service = service;
+			this.generator = generator;
+			this.lock = lock;
+			this.trades = trades;
+		}
+
+		@Override
+		public Void call() {
+			TradeGenerator generator = this.generator;
+			for (int i = 0; i < this.trades; i++) {
+				generator.next();
+				if (this.lock == null) {
+					record(generator);
+				} else {
+					synchronized (this.lock) {
+						record(generator);
+					}
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Records the last trade of the generator.
+		 *
+		 * @param generator the generator
+		 */
+		private void record(TradeGenerator generator) {
+			this.service.recordTrade(generator.getStockId(), generator.getTimestamp(), generator.getQuantity(),
+					generator.getIndicator(), generator.getPrice(), TradeGenerator.PRICE_SCALE);
+		}
+
+	}
+
+}
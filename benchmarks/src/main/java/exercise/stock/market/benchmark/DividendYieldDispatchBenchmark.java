@@ -0,0 +1,189 @@
+package exercise.stock.market.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import exercise.stock.market.model.BaseStock;
+import exercise.stock.market.model.CommonStock;
+import exercise.stock.market.model.PreferredStock;
+
+/**
+ * Benchmarks of the dispatch of the dividend yield calculation, over stocks of
+ * one, two or four classes. Each benchmark runs in its own fork, so the type
+ * profile of the call site of {@link BaseStock#getDividendPerShare()} only
+ * holds the classes of its {@link #shape}: with one or two classes the call is
+ * inlined, with four it is a virtual call.
+ * <p>
+ * The inlining decisions are printed by adding
+ * {@code -jvmArgsAppend "-XX:+UnlockDiagnosticVMOptions -XX:+PrintInlining"}
+ * to the options, and the former {@code instanceof} dispatch of the service is
+ * measured by {@link #getDividendYield_Instanceof()} for comparison.
+ *
+ * @author DMONEY
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DividendYieldDispatchBenchmark {
+
+	/** The number of stocks, a power of two. */
+	private static final int STOCK_COUNT = 1024;
+
+	/** The precision scale of the former calculation. */
+	private static final int PRECISION_SCALE = 7;
+
+	/**
+	 * The classes of the stocks: {@code MONOMORPHIC} for common stocks only,
+	 * {@code BIMORPHIC} for common and preferred stocks, {@code MEGAMORPHIC}
+	 * adding two other classes.
+	 */
+	@Param({ "MONOMORPHIC", "BIMORPHIC", "MEGAMORPHIC" })
+	public String shape;
+
+	/** The stocks, of classes in random order. */
+	private BaseStock[] stocks;
+
+	/** The price the yields are calculated at. */
+	private BigDecimal price;
+
+	/** The index of the next stock. */
+	private int next;
+
+	/**
+	 * An exchange traded fund, distributing the last dividend of its holdings
+	 * every quarter.
+	 */
+	public static class ExchangeTradedFund extends BaseStock {
+
+		/** The number of distributions a year. */
+		private static final BigDecimal DISTRIBUTIONS = new BigDecimal(4);
+
+		/**
+		 * Constructor.
+		 *
+		 * @param symbol the symbol
+		 * @param lastDividend the last dividend
+		 * @param parValue the par value
+		 * @param price the price
+		 */
+		public ExchangeTradedFund(String symbol, BigDecimal lastDividend, BigDecimal parValue, BigDecimal price) {
+			super(symbol, lastDividend, parValue, price);
+		}
+
+		@Override
+		public BigDecimal getDividendPerShare() {
+			return getLastDividend().multiply(DISTRIBUTIONS);
+		}
+
+	}
+
+	/**
+	 * A convertible preferred stock, paying the larger of its fixed dividend
+	 * and its last dividend.
+	 */
+	public static class ConvertiblePreferredStock extends PreferredStock {
+
+		/**
+		 * Constructor.
+		 *
+		 * @param symbol the symbol
+		 * @param lastDividend the last dividend
+		 * @param parValue the par value
+		 * @param price the price
+		 * @param fixedDividend the fixed dividend
+		 */
+		public ConvertiblePreferredStock(String symbol, BigDecimal lastDividend, BigDecimal parValue,
+				BigDecimal price, BigDecimal fixedDividend) {
+			super(symbol, lastDividend, parValue, price, fixedDividend);
+		}
+
+		@Override
+		public BigDecimal getDividendPerShare() {
+			return super.getDividendPerShare().max(getLastDividend());
+		}
+
+	}
+
+	/**
+	 * Creates the stocks.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		int classCount = "MONOMORPHIC".equals(this.shape) ? 1 : "BIMORPHIC".equals(this.shape) ? 2 : 4;
+		Random random = new Random(42);
+		this.stocks = new BaseStock[STOCK_COUNT];
+		for (int i = 0; i < STOCK_COUNT; i++) {
+			String symbol = TradeGenerator.SYMBOL_PREFIX + i;
+			BigDecimal lastDividend = BigDecimal.valueOf(random.nextInt(2500), 2);
+			BigDecimal parValue = BigDecimal.valueOf(100);
+			BigDecimal fixedDividend = BigDecimal.valueOf(random.nextInt(10), 2);
+			switch (random.nextInt(classCount)) {
+			case 0:
+				this.stocks[i] = new CommonStock(symbol, lastDividend, parValue, BigDecimal.ONE);
+				break;
+			case 1:
+				this.stocks[i] = new PreferredStock(symbol, lastDividend, parValue, BigDecimal.ONE, fixedDividend);
+				break;
+			case 2:
+				this.stocks[i] = new ExchangeTradedFund(symbol, lastDividend, parValue, BigDecimal.ONE);
+				break;
+			default:
+				this.stocks[i] = new ConvertiblePreferredStock(symbol, lastDividend, parValue, BigDecimal.ONE,
+						fixedDividend);
+			}
+		}
+		this.price = new BigDecimal("123.45");
+	}
+
+	/**
+	 * Calculates the dividend yield of the next stock with
+	 * {@link BaseStock#getDividendYield(BigDecimal)}.
+	 *
+	 * @return the dividend yield
+	 */
+	@Benchmark
+	public BigDecimal getDividendYield() {
+		BaseStock stock = this.stocks[this.next++ & (STOCK_COUNT - 1)];
+		return stock.getDividendYield(this.price);
+	}
+
+	/**
+	 * Calculates the dividend yield of the next stock with the
+	 * {@code instanceof} dispatch the service used before, under which the
+	 * stocks of other classes yield zero.
+	 *
+	 * @return the dividend yield
+	 */
+	@Benchmark
+	public BigDecimal getDividendYield_Instanceof() {
+		BaseStock stock = this.stocks[this.next++ & (STOCK_COUNT - 1)];
+		BigDecimal result = BigDecimal.ZERO;
+		if (stock instanceof CommonStock) {
+			result = stock.getLastDividend().divide(this.price, PRECISION_SCALE, BigDecimal.ROUND_HALF_EVEN);
+		} else if (stock instanceof PreferredStock) {
+			PreferredStock preferredStock = (PreferredStock) stock;
+			result = preferredStock.getFixedDividend().multiply(stock.getParValue()).divide(this.price,
+					PRECISION_SCALE, BigDecimal.ROUND_HALF_EVEN);
+		}
+		return result.setScale(3, BigDecimal.ROUND_HALF_EVEN);
+	}
+
+}
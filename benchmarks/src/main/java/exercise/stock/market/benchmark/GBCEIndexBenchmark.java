@@ -0,0 +1,134 @@
+package exercise.stock.market.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import exercise.stock.market.index.IndexCalculationMode;
+import exercise.stock.market.service.StockMarketService;
+
+/**
+ * Benchmarks of the calculation modes of the GBCE All Share Index.
+ * <p>
+ * The {@link IndexCalculationMode#EXACT} calculation multiplies all the prices
+ * and starts Newton's method from 1, so its cost explodes with the number of
+ * stocks (about 4 seconds for 40 stocks): it is only measured on small
+ * markets, next to {@link IndexCalculationMode#PARALLEL}. The large markets
+ * compare {@link IndexCalculationMode#PARALLEL}, which calculates the index
+ * from scratch on the common fork-join pool, with the incremental
+ * {@link IndexCalculationMode#LOGARITHMIC} read. The size of the common pool
+ * is set with {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism}.
+ *
+ * @author DMONEY
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GBCEIndexBenchmark {
+
+	/**
+	 * A market small enough for the exact calculation.
+	 */
+	@State(Scope.Benchmark)
+	public static class SmallMarket {
+
+		/** The number of stocks. */
+		@Param({ "10", "20" })
+		public int stockCount;
+
+		/** The service under test. */
+		public StockMarketService service;
+
+		/**
+		 * Creates the service.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			this.service = TradeGenerator.newService(this.stockCount);
+		}
+
+	}
+
+	/**
+	 * A broad market.
+	 */
+	@State(Scope.Benchmark)
+	public static class LargeMarket {
+
+		/** The number of stocks. */
+		@Param({ "1000", "10000", "100000" })
+		public int stockCount;
+
+		/** The service under test. */
+		public StockMarketService service;
+
+		/**
+		 * Creates the service.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			this.service = TradeGenerator.newService(this.stockCount);
+		}
+
+	}
+
+	/**
+	 * Calculates the index by multiplying all the prices.
+	 *
+	 * @param market the small market
+	 * @return the index
+	 */
+	@Benchmark
+	public BigDecimal exact(SmallMarket market) {
+		return market.service.getGBCEAllShareIndex(IndexCalculationMode.EXACT);
+	}
+
+	/**
+	 * Calculates the index of a small market on the fork-join pool.
+	 *
+	 * @param market the small market
+	 * @return the index
+	 */
+	@Benchmark
+	public BigDecimal parallel_Small(SmallMarket market) {
+		return market.service.getGBCEAllShareIndex(IndexCalculationMode.PARALLEL);
+	}
+
+	/**
+	 * Calculates the index of a broad market on the fork-join pool.
+	 *
+	 * @param market the large market
+	 * @return the index
+	 */
+	@Benchmark
+	public BigDecimal parallel(LargeMarket market) {
+		return market.service.getGBCEAllShareIndex(IndexCalculationMode.PARALLEL);
+	}
+
+	/**
+	 * Reads the index of a broad market from its running logarithm sum.
+	 *
+	 * @param market the large market
+	 * @return the index
+	 */
+	@Benchmark
+	public BigDecimal logarithmic(LargeMarket market) {
+		return market.service.getGBCEAllShareIndex(IndexCalculationMode.LOGARITHMIC);
+	}
+
+}
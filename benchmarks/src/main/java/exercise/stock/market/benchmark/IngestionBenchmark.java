@@ -0,0 +1,140 @@
+package exercise.stock.market.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import exercise.stock.market.event.TradeEvent;
+import exercise.stock.market.event.TradeEventBus;
+import exercise.stock.market.event.TradeEventListener;
+import exercise.stock.market.model.BaseStock;
+import exercise.stock.market.service.StockMarketService;
+import exercise.stock.market.store.RetentionPolicy;
+import exercise.stock.market.store.TradeStorage;
+
+/**
+ * Benchmarks of recording trades in steady state, meant to be run with the
+ * {@code -prof gc} option of JMH to show the allocations per trade.
+ * <p>
+ * Each stock keeps the last {@link #RETAINED_TRADES} trades, and the stores
+ * are filled before the measurement, so every trade recorded evicts the
+ * oldest one and reuses its slot in the columns. The primitive
+ * {@code recordTrade} overloads then allocate nothing, with the columns on the
+ * heap or off the heap, and with the trades also published to a
+ * {@link TradeEventBus}. The trades come from one generator, so the
+ * benchmark runs on one thread.
+ *
+ * @author DMONEY
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestionBenchmark {
+
+	/** The number of trades kept by each stock. */
+	public static final int RETAINED_TRADES = 100000;
+
+	/** The number of stocks. */
+	private static final int STOCK_COUNT = 10;
+
+	/**
+	 * The service recording the trades.
+	 */
+	@State(Scope.Benchmark)
+	public static class Market {
+
+		/** Where the trades are kept. */
+		@Param({ "HEAP", "OFF_HEAP" })
+		public TradeStorage storage;
+
+		/** True to publish the trades to an event bus. */
+		@Param({ "false", "true" })
+		public boolean published;
+
+		/** The service under test. */
+		public StockMarketService service;
+
+		/** The event bus, or null. */
+		public TradeEventBus bus;
+
+		/** The trades recorded. */
+		public TradeGenerator generator;
+
+		/**
+		 * Creates the service and fills the stores.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			this.service = TradeGenerator.newService(STOCK_COUNT);
+			for (BaseStock stock : this.service.getStockMap().values()) {
+				stock.setTradeStorage(this.storage);
+				stock.setRetentionPolicy(RetentionPolicy.maxRecords(RETAINED_TRADES));
+			}
+			if (this.published) {
+				this.bus = new TradeEventBus();
+				this.bus.subscribe(new TradeEventListener() {
+					@Override
+					public void tradePublished(TradeEvent event, long sequence, boolean endOfBatch) {
+					}
+				});
+				this.service.setEventBus(this.bus);
+			}
+			this.generator = new TradeGenerator(STOCK_COUNT, 1, System.currentTimeMillis());
+			// a few more trades than kept, so that every store is full
+			this.generator.fill(this.service, RETAINED_TRADES + RETAINED_TRADES / 5);
+		}
+
+		/**
+		 * Stops the event bus.
+		 */
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			if (this.bus != null) {
+				this.bus.close();
+			}
+		}
+
+	}
+
+	/**
+	 * Records a trade with primitive values.
+	 *
+	 * @param market the service
+	 */
+	@Benchmark
+	public void recordTrade_Primitive(Market market) {
+		TradeGenerator generator = market.generator;
+		generator.next();
+		market.service.recordTrade(generator.getSymbol(), generator.getTimestamp(), generator.getQuantity(),
+				generator.getIndicator(), generator.getPrice(), TradeGenerator.PRICE_SCALE);
+	}
+
+	/**
+	 * Records a trade with primitive values and the id of the stock.
+	 *
+	 * @param market the service
+	 */
+	@Benchmark
+	public void recordTrade_Id(Market market) {
+		TradeGenerator generator = market.generator;
+		generator.next();
+		market.service.recordTrade(generator.getStockId(), generator.getTimestamp(), generator.getQuantity(),
+				generator.getIndicator(), generator.getPrice(), TradeGenerator.PRICE_SCALE);
+	}
+
+}
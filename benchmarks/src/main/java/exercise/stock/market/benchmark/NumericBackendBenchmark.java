@@ -0,0 +1,155 @@
+package exercise.stock.market.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import exercise.stock.market.numeric.Int128;
+import exercise.stock.market.numeric.NumericBackend;
+import exercise.stock.market.service.QueryResult;
+import exercise.stock.market.service.QueryStatus;
+import exercise.stock.market.service.StockMarketService;
+
+/**
+ * Benchmarks of the divisions of the {@link NumericBackend}s, alone and
+ * through a {@link StockMarketService} created with the backend.
+ * <p>
+ * The divisions read their operands from arrays of random values in the
+ * ranges of the service: prices of up to 6 decimal places, dividends with 2,
+ * and sums of price * quantity of 100 round lots at the default price scale
+ * of the trade stores. The service is filled with {@link TradeGenerator}
+ * trades.
+ *
+ * @author DMONEY
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NumericBackendBenchmark {
+
+	/** The number of operands, a power of two. */
+	private static final int OPERAND_COUNT = 1024;
+
+	/** The number of stocks of the service. */
+	private static final int STOCK_COUNT = 10;
+
+	/** The backend under test. */
+	@Param({ "BIG_DECIMAL", "FIXED_POINT" })
+	public NumericBackend backend;
+
+	/** The prices. */
+	private BigDecimal[] prices;
+
+	/** The dividends. */
+	private BigDecimal[] dividends;
+
+	/** The sums of price * quantity, at scale 6. */
+	private Int128[] priceQuantitySums;
+
+	/** The sums of quantity. */
+	private long[] quantitySums;
+
+	/** The service of the backend. */
+	private StockMarketService service;
+
+	/** The symbols of the stocks of the service. */
+	private String[] symbols;
+
+	/** The holder of the query results. */
+	private final QueryResult result = new QueryResult();
+
+	/** The index of the next operands. */
+	private int next;
+
+	/**
+	 * Creates the operands and fills the service.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		Random random = new Random(42);
+		this.prices = new BigDecimal[OPERAND_COUNT];
+		this.dividends = new BigDecimal[OPERAND_COUNT];
+		this.priceQuantitySums = new Int128[OPERAND_COUNT];
+		this.quantitySums = new long[OPERAND_COUNT];
+		for (int i = 0; i < OPERAND_COUNT; i++) {
+			this.prices[i] = BigDecimal.valueOf(1 + random.nextInt(1000000000), random.nextInt(7));
+			this.dividends[i] = BigDecimal.valueOf(1 + random.nextInt(2500), 2);
+			Int128 sum = new Int128();
+			long quantitySum = 0;
+			for (int j = 0; j < 100; j++) {
+				long quantity = 100 * (1 + random.nextInt(50));
+				sum.addProduct(quantity, 1000000L * (1 + random.nextInt(5000)));
+				quantitySum += quantity;
+			}
+			this.priceQuantitySums[i] = sum;
+			this.quantitySums[i] = quantitySum;
+		}
+
+		this.service = TradeGenerator.newService(STOCK_COUNT, this.backend);
+		this.symbols = TradeGenerator.symbols(STOCK_COUNT);
+		new TradeGenerator(STOCK_COUNT, -1, System.currentTimeMillis() - 60000).fill(this.service, 1000);
+	}
+
+	/**
+	 * Divides a dividend by a price, as the dividend yield is.
+	 *
+	 * @return the quotient, with scale 3
+	 */
+	@Benchmark
+	public BigDecimal divide() {
+		int index = this.next++ & (OPERAND_COUNT - 1);
+		return this.backend.divide(this.dividends[index], this.prices[index], 3);
+	}
+
+	/**
+	 * Calculates a volume weighted price from the totals of a window.
+	 *
+	 * @return the volume weighted price
+	 */
+	@Benchmark
+	public BigDecimal volumeWeightedPrice() {
+		int index = this.next++ & (OPERAND_COUNT - 1);
+		return this.backend.volumeWeightedPrice(this.priceQuantitySums[index], 6, this.quantitySums[index]);
+	}
+
+	/**
+	 * Gets the P/E ratio of a stock at a price other than its current one, so
+	 * that the cached ratios are not used.
+	 *
+	 * @return the status of the query
+	 */
+	@Benchmark
+	public QueryStatus tryGetPERatio() {
+		int index = this.next++ & (OPERAND_COUNT - 1);
+		return this.service.tryGetPERatio(this.symbols[index % STOCK_COUNT], this.prices[index], this.result);
+	}
+
+	/**
+	 * Gets the volume weighted stock price of a stock.
+	 *
+	 * @return the status of the query
+	 */
+	@Benchmark
+	public QueryStatus tryGetVolumeWeightedStockPrice() {
+		int index = this.next++ % STOCK_COUNT;
+		return this.service.tryGetVolumeWeightedStockPrice(this.symbols[index], this.result);
+	}
+
+}
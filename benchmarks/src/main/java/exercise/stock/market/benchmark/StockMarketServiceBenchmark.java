@@ -0,0 +1,260 @@
+package exercise.stock.market.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import exercise.stock.market.model.BaseStock;
+import exercise.stock.market.service.MarketSummary;
+import exercise.stock.market.service.QueryResult;
+import exercise.stock.market.service.QueryStatus;
+import exercise.stock.market.service.StockMarketService;
+import exercise.stock.market.store.RetentionPolicy;
+
+/**
+ * Benchmarks of the operations of {@link StockMarketService}, parameterised by
+ * the number of stocks and of trades per stock. The number of threads is set
+ * with the {@code -t} option of JMH, or the {@code threads} argument of
+ * {@link BenchmarkRunner}.
+ * <p>
+ * The service is filled with {@link TradeGenerator} trades, all within the
+ * VWSP window, and each stock keeps at most the given number of trades so
+ * that the size of the stores stays stable while trades are recorded.
+ *
+ * @author DMONEY
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockMarketServiceBenchmark {
+
+	/**
+	 * The service shared by the threads.
+	 */
+	@State(Scope.Benchmark)
+	public static class Market {
+
+		/** The number of stocks. */
+		@Param({ "10", "1000" })
+		public int stockCount;
+
+		/** The number of trades per stock. */
+		@Param({ "100", "10000" })
+		public int tradesPerStock;
+
+		/** The service under test. */
+		public StockMarketService service;
+
+		/** The symbols of the stocks. */
+		public String[] symbols;
+
+		/** The seeds of the generators of the threads. */
+		public final AtomicLong seeds = new AtomicLong();
+
+		/**
+		 * Fills the service.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			this.service = TradeGenerator.newService(this.stockCount);
+			this.symbols = TradeGenerator.symbols(this.stockCount);
+			for (BaseStock stock : this.service.getStockMap().values()) {
+				stock.setRetentionPolicy(RetentionPolicy.maxRecords(this.tradesPerStock));
+			}
+			new TradeGenerator(this.stockCount, -1, System.currentTimeMillis() - 60000).fill(this.service,
+					this.tradesPerStock);
+		}
+
+	}
+
+	/**
+	 * The trades and queries of one thread.
+	 */
+	@State(Scope.Thread)
+	public static class Client {
+
+		/** The trades of the thread. */
+		public TradeGenerator generator;
+
+		/** The price used by the ratio queries. */
+		public BigDecimal price;
+
+		/**
+		 * Creates the generator of the thread.
+		 *
+		 * @param market the shared service
+		 */
+		@Setup(Level.Trial)
+		public void setUp(Market market) {
+			this.generator = new TradeGenerator(market.stockCount, market.seeds.incrementAndGet(),
+					System.currentTimeMillis());
+			this.price = new BigDecimal("123.45");
+		}
+
+	}
+
+	/**
+	 * Records a trade with {@link BigDecimal} and
+	 * {@link java.math.BigInteger} values.
+	 *
+	 * @param market the shared service
+	 * @param client the trades of the thread
+	 */
+	@Benchmark
+	public void recordTrade(Market market, Client client) {
+		TradeGenerator generator = client.generator;
+		generator.next();
+		market.service.recordTrade(generator.getSymbol(), generator.getDate(), generator.getBigQuantity(),
+				generator.getIndicator(), generator.getBigPrice());
+	}
+
+	/**
+	 * Records a trade with primitive values.
+	 *
+	 * @param market the shared service
+	 * @param client the trades of the thread
+	 */
+	@Benchmark
+	public void recordTrade_Primitive(Market market, Client client) {
+		TradeGenerator generator = client.generator;
+		generator.next();
+		market.service.recordTrade(generator.getSymbol(), generator.getTimestamp(), generator.getQuantity(),
+				generator.getIndicator(), generator.getPrice(), TradeGenerator.PRICE_SCALE);
+	}
+
+	/**
+	 * Records a trade with primitive values and the id of the stock.
+	 *
+	 * @param market the shared service
+	 * @param client the trades of the thread
+	 */
+	@Benchmark
+	public void recordTrade_Id(Market market, Client client) {
+		TradeGenerator generator = client.generator;
+		generator.next();
+		market.service.recordTrade(generator.getStockId(), generator.getTimestamp(), generator.getQuantity(),
+				generator.getIndicator(), generator.getPrice(), TradeGenerator.PRICE_SCALE);
+	}
+
+	/**
+	 * Gets the VWSP of a random stock.
+	 *
+	 * @param market the shared service
+	 * @param client the trades of the thread
+	 * @return the VWSP
+	 */
+	@Benchmark
+	public BigDecimal getVolumeWeightedStockPrice(Market market, Client client) {
+		client.generator.next();
+		return market.service.getVolumeWeightedStockPrice(client.generator.getSymbol());
+	}
+
+	/**
+	 * Gets the VWSP of a random stock given by its id.
+	 *
+	 * @param market the shared service
+	 * @param client the trades of the thread
+	 * @return the VWSP
+	 */
+	@Benchmark
+	public BigDecimal getVolumeWeightedStockPrice_Id(Market market, Client client) {
+		client.generator.next();
+		return market.service.getVolumeWeightedStockPrice(client.generator.getStockId());
+	}
+
+	/**
+	 * Gets the GBCE all share index.
+	 *
+	 * @param market the shared service
+	 * @return the index
+	 */
+	@Benchmark
+	public BigDecimal getGBCEAllShareIndex(Market market) {
+		return market.service.getGBCEAllShareIndex();
+	}
+
+	/**
+	 * Gets the dividend yield of a random stock.
+	 *
+	 * @param market the shared service
+	 * @param client the trades of the thread
+	 * @return the dividend yield
+	 */
+	@Benchmark
+	public BigDecimal getDividendYield(Market market, Client client) {
+		client.generator.next();
+		return market.service.getDividendYield(client.generator.getSymbol(), client.price);
+	}
+
+	/**
+	 * Gets the P/E ratio of a random stock.
+	 *
+	 * @param market the shared service
+	 * @param client the trades of the thread
+	 * @return the P/E ratio
+	 */
+	@Benchmark
+	public BigDecimal getPERatio(Market market, Client client) {
+		client.generator.next();
+		return market.service.getPERatio(client.generator.getSymbol(), client.price);
+	}
+
+	/**
+	 * Gets the metrics of all the stocks with
+	 * {@link StockMarketService#getMarketSummary()}.
+	 *
+	 * @param market the shared service
+	 * @return the summary
+	 */
+	@Benchmark
+	public MarketSummary getMarketSummary(Market market) {
+		return market.service.getMarketSummary();
+	}
+
+	/**
+	 * Gets the same metrics as {@link #getMarketSummary(Market)} with a query
+	 * per stock and metric, for comparison.
+	 *
+	 * @param market the shared service
+	 * @return the sum of the values, so that none is dropped
+	 */
+	@Benchmark
+	public BigDecimal getMarketSummary_PerSymbol(Market market) {
+		StockMarketService service = market.service;
+		QueryResult result = new QueryResult();
+		BigDecimal sum = BigDecimal.ZERO;
+		for (String symbol : market.symbols) {
+			BigDecimal price = service.getStockMap().get(symbol).getPrice();
+			if (service.tryGetDividendYield(symbol, price, result) == QueryStatus.OK) {
+				sum = sum.add(result.getValue());
+			}
+			if (service.tryGetPERatio(symbol, price, result) == QueryStatus.OK) {
+				sum = sum.add(result.getValue());
+			}
+			if (service.tryGetVolumeWeightedStockPrice(symbol, result) == QueryStatus.OK) {
+				sum = sum.add(result.getValue());
+			}
+		}
+		if (service.tryGetGBCEAllShareIndex(result) == QueryStatus.OK) {
+			sum = sum.add(result.getValue());
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,214 @@
+package exercise.stock.market.benchmark;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Random;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.model.CommonStock;
+import exercise.stock.market.model.PreferredStock;
+import exercise.stock.market.numeric.NumericBackend;
+import exercise.stock.market.service.StockMarketService;
+
+/**
+ * Generates realistic trades for the benchmarks: each stock has its own price
+ * following a random walk in cents, quantities are mostly round lots with a
+ * long tail, buys and sells are balanced, and the timestamps advance by a few
+ * milliseconds per trade. A generator is not thread safe: each thread uses its
+ * own.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeGenerator {
+
+	/** The prefix of the generated symbols. */
+	public static final String SYMBOL_PREFIX = "STK";
+
+	/** The scale of the generated prices. */
+	public static final int PRICE_SCALE = 2;
+
+	/** The source of randomness. */
+	private final Random random;
+
+	/** The symbols of the stocks. */
+	private final String[] symbols;
+
+	/** The current unscaled prices of the stocks, in cents. */
+	private final long[] prices;
+
+	/** The timestamp of the last trade, in milliseconds since the epoch. */
+	private long timestamp;
+
+	/** The index of the stock of the last trade. */
+	private int stock;
+
+	/** The quantity of the last trade. */
+	private long quantity;
+
+	/** The indicator of the last trade. */
+	private BuyOrSell indicator;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param stockCount the number of stocks
+	 * @param seed the seed of the random trades
+	 * @param startTime the timestamp of the first trade
+	 */
+	public TradeGenerator(int stockCount, long seed, long startTime) {
+		this.random = new Random(seed);
+		this.symbols = symbols(stockCount);
+		this.prices = new long[stockCount];
+		Random initial = new Random(stockCount);
+		for (int i = 0; i < stockCount; i++) {
+			this.prices[i] = 1000 + initial.nextInt(100000);
+		}
+		this.timestamp = startTime;
+	}
+
+	/**
+	 * Gets the symbols of the stocks.
+	 *
+	 * @param stockCount the number of stocks
+	 * @return the symbols
+	 */
+	public static String[] symbols(int stockCount) {
+		String[] symbols = new String[stockCount];
+		for (int i = 0; i < stockCount; i++) {
+			symbols[i] = SYMBOL_PREFIX + i;
+		}
+		return symbols;
+	}
+
+	/**
+	 * Creates a service with the given number of stocks, one in ten being a
+	 * preferred stock.
+	 *
+	 * @param stockCount the number of stocks
+	 * @return the {@link StockMarketService}, in concurrent mode
+	 */
+	public static StockMarketService newService(int stockCount) {
+		return newService(stockCount, NumericBackend.BIG_DECIMAL);
+	}
+
+	/**
+	 * Creates a service with the given number of stocks, as
+	 * {@link #newService(int)} does, dividing with the given backend.
+	 *
+	 * @param stockCount the number of stocks
+	 * @param backend the arithmetic of the divisions of the service
+	 * @return the {@link StockMarketService}, in concurrent mode
+	 */
+	public static StockMarketService newService(int stockCount, NumericBackend backend) {
+		StockMarketService service = new StockMarketService(true, backend);
+		Random random = new Random(stockCount);
+		String[] symbols = symbols(stockCount);
+		for (int i = 0; i < stockCount; i++) {
+			BigDecimal dividend = BigDecimal.valueOf(1 + random.nextInt(30));
+			BigDecimal parValue = BigDecimal.valueOf(50 + random.nextInt(200));
+			BigDecimal price = BigDecimal.valueOf(1000 + random.nextInt(100000), PRICE_SCALE);
+			if (i % 10 == 9) {
+				service.registerStock(new PreferredStock(symbols[i], dividend, parValue, price,
+						BigDecimal.valueOf(2 + random.nextInt(5), 2)));
+			} else {
+				service.registerStock(new CommonStock(symbols[i], dividend, parValue, price));
+			}
+		}
+		return service;
+	}
+
+	/**
+	 * Generates the next trade, read with the getters.
+	 */
+	public void next() {
+		this.stock = this.random.nextInt(this.symbols.length);
+		long price = this.prices[this.stock];
+		price += this.random.nextInt(21) - 10;
+		this.prices[this.stock] = Math.max(price, 1);
+		int lot = this.random.nextInt(100);
+		this.quantity = lot < 80 ? 100L * (1 + this.random.nextInt(10)) : 1 + this.random.nextInt(100000);
+		this.indicator = this.random.nextBoolean() ? BuyOrSell.BUY : BuyOrSell.SELL;
+		this.timestamp += this.random.nextInt(5);
+	}
+
+	/**
+	 * Records the given number of trades of each stock into a service.
+	 *
+	 * @param service the service
+	 * @param tradesPerStock the number of trades per stock
+	 */
+	public void fill(StockMarketService service, int tradesPerStock) {
+		long count = (long) tradesPerStock * this.symbols.length;
+		for (long i = 0; i < count; i++) {
+			next();
+			service.recordTrade(getSymbol(), this.timestamp, this.quantity, this.indicator, getPrice(), PRICE_SCALE);
+		}
+	}
+
+	/**
+	 * @return the symbol of the last trade
+	 */
+	public String getSymbol() {
+		return this.symbols[this.stock];
+	}
+
+	/**
+	 * @return the index of the stock of the last trade, which is its id in a
+	 *         service created by {@link #newService(int)}
+	 */
+	public int getStockId() {
+		return this.stock;
+	}
+
+	/**
+	 * @return the timestamp of the last trade
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the timestamp of the last trade, as a {@link Date}
+	 */
+	public Date getDate() {
+		return new Date(this.timestamp);
+	}
+
+	/**
+	 * @return the quantity of the last trade
+	 */
+	public long getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * @return the quantity of the last trade, as a {@link BigInteger}
+	 */
+	public BigInteger getBigQuantity() {
+		return BigInteger.valueOf(this.quantity);
+	}
+
+	/**
+	 * @return the indicator of the last trade
+	 */
+	public BuyOrSell getIndicator() {
+		return indicator;
+	}
+
+	/**
+	 * @return the unscaled price of the last trade, with {@link #PRICE_SCALE}
+	 */
+	public long getPrice() {
+		return this.prices[this.stock];
+	}
+
+	/**
+	 * @return the price of the last trade, as a {@link BigDecimal}
+	 */
+	public BigDecimal getBigPrice() {
+		return BigDecimal.valueOf(this.prices[this.stock], PRICE_SCALE);
+	}
+
+}
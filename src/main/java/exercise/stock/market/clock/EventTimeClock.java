@@ -0,0 +1,60 @@
+package exercise.stock.market.clock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock in event time: the current time is the latest timestamp of the
+ * trades recorded so far, so that the windows move with the trades rather
+ * than with the wall clock. A late trade does not move the clock back.
+ * <p>
+ * The time is advanced with a compare-and-set, only when a trade is later than
+ * the current time, so trades are recorded from many threads without lock.
+ *
+ * @author DMONEY
+ *
+ */
+public class EventTimeClock implements MarketClock {
+
+	/** The latest timestamp seen. */
+	private final AtomicLong time;
+
+	/**
+	 * Constructor. The clock starts at the epoch.
+	 */
+	public EventTimeClock() {
+		this(0L);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param startTime the time before the first trade, in milliseconds since
+	 *            the epoch
+	 */
+	public EventTimeClock(long startTime) {
+		this.time = new AtomicLong(startTime);
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return this.time.get();
+	}
+
+	@Override
+	public void tradeRecorded(long timestamp) {
+		long current = this.time.get();
+		while (timestamp > current && !this.time.compareAndSet(current, timestamp)) {
+			current = this.time.get();
+		}
+	}
+
+	/**
+	 * Moves the clock to the given time, e.g. to the start of a replayed day.
+	 *
+	 * @param timestamp the time to set, in milliseconds since the epoch
+	 */
+	public void reset(long timestamp) {
+		this.time.set(timestamp);
+	}
+
+}
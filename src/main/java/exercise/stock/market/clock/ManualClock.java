@@ -0,0 +1,50 @@
+package exercise.stock.market.clock;
+
+/**
+ * A clock set by hand, ignoring the trades, e.g. for deterministic tests or to
+ * sample a replay at chosen times.
+ *
+ * @author DMONEY
+ *
+ */
+public class ManualClock implements MarketClock {
+
+	/** The current time. */
+	private volatile long time;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param time the current time, in milliseconds since the epoch
+	 */
+	public ManualClock(long time) {
+		this.time = time;
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return time;
+	}
+
+	@Override
+	public void tradeRecorded(long timestamp) {
+		// the time is only set by hand
+	}
+
+	/**
+	 * @param time the current time to set, in milliseconds since the epoch
+	 */
+	public void setTime(long time) {
+		this.time = time;
+	}
+
+	/**
+	 * Moves the clock forward.
+	 *
+	 * @param millis the number of milliseconds to add
+	 */
+	public synchronized void advance(long millis) {
+		this.time += millis;
+	}
+
+}
@@ -0,0 +1,44 @@
+package exercise.stock.market.clock;
+
+/**
+ * The source of the current time of a
+ * {@link exercise.stock.market.service.StockMarketService}, i.e. the end of
+ * the windows of the volume weighted stock price.
+ * <p>
+ * The service tells the clock about each trade it records, so that an
+ * event-time clock can follow the trades, e.g. when a historical day is
+ * replayed faster than real time.
+ *
+ * @author DMONEY
+ *
+ */
+public interface MarketClock {
+
+	/** The wall clock, ignoring the trades. */
+	MarketClock SYSTEM = new MarketClock() {
+
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public void tradeRecorded(long timestamp) {
+			// the wall clock does not follow the trades
+		}
+	};
+
+	/**
+	 * @return the current time, in milliseconds since the epoch
+	 */
+	long currentTimeMillis();
+
+	/**
+	 * Called after a trade was recorded, possibly from several threads at
+	 * once.
+	 *
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 */
+	void tradeRecorded(long timestamp);
+
+}
@@ -0,0 +1,26 @@
+package exercise.stock.market.event;
+
+/**
+ * What a {@link TradeEventBus} does with a trade published while its ring
+ * buffer is full, i.e. while the slowest listener is a whole buffer behind.
+ *
+ * @author DMONEY
+ *
+ */
+public enum BackpressurePolicy {
+
+	/**
+	 * The publisher waits, spinning then parking briefly, until the slowest
+	 * listener frees a slot. No trade is lost, at the cost of slowing the
+	 * recording of trades down to the pace of the listeners.
+	 */
+	BLOCK,
+
+	/**
+	 * The trade is not published and counted in
+	 * {@link TradeEventBus#getDroppedCount()}. Recording trades never waits for
+	 * the listeners.
+	 */
+	DROP
+
+}
@@ -0,0 +1,100 @@
+package exercise.stock.market.event;
+
+import exercise.stock.market.model.BuyOrSell;
+
+/**
+ * A trade published to a {@link TradeEventBus}. The events are the slots of
+ * the ring buffer of the bus: they are allocated once and overwritten by the
+ * trades published later.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeEvent {
+
+	/** The symbol of the stock. */
+	private String symbol;
+
+	/** The time of the trade, in milliseconds since the epoch. */
+	private long timestamp;
+
+	/** The quantity of shares. */
+	private long quantity;
+
+	/** The buy or sell indicator. */
+	private BuyOrSell indicator;
+
+	/** The unscaled traded price. */
+	private long price;
+
+	/** The scale of the price. */
+	private int priceScale;
+
+	/**
+	 * Constructor.
+	 */
+	TradeEvent() {
+	}
+
+	/**
+	 * @return the symbol of the stock
+	 */
+	public String getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * @return the time of the trade, in milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the quantity of shares
+	 */
+	public long getQuantity() {
+		return quantity;
+	}
+
+	/**
+	 * @return the buy or sell indicator, may be null
+	 */
+	public BuyOrSell getIndicator() {
+		return indicator;
+	}
+
+	/**
+	 * @return the unscaled traded price
+	 */
+	public long getPrice() {
+		return price;
+	}
+
+	/**
+	 * @return the scale of the price
+	 */
+	public int getPriceScale() {
+		return priceScale;
+	}
+
+	/**
+	 * Sets the values of the trade.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price
+	 */
+	void set(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price, int priceScale) {
+		this.symbol = symbol;
+		this.timestamp = timestamp;
+		this.quantity = quantity;
+		this.indicator = indicator;
+		this.price = price;
+		this.priceScale = priceScale;
+	}
+
+}
@@ -0,0 +1,363 @@
+package exercise.stock.market.event;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercises.stock.exceptions.BusinessException;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A publish/subscribe pipeline of the recorded trades, so that the consumers
+ * of the trades update incrementally instead of polling the trade records.
+ * <p>
+ * The trades are written into a bounded ring buffer of preallocated
+ * {@link TradeEvent}s. A publisher claims the next sequence number with a
+ * compare-and-set, fills the slot and marks it published with an ordered
+ * write: publishing takes no lock and allocates nothing, and many threads may
+ * publish at once. Each {@link TradeEventListener} runs on a thread of its
+ * own, which delivers the published trades in batches and then records how
+ * far it has read. A publisher may only reuse a slot once every listener has
+ * read it; when the buffer is full, the {@link BackpressurePolicy} decides
+ * whether the publisher waits or drops the trade.
+ * <p>
+ * The listeners are subscribed before the trades are published: a listener
+ * subscribed later receives the trades claimed after it.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeEventBus implements Closeable {
+
+	/** The default number of slots of the ring buffer. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/** The number of times a waiting thread yields before it parks. */
+	private static final int SPIN_TRIES = 100;
+
+	/** The time a waiting thread parks for, in nanoseconds. */
+	private static final long PARK_NANOS = 50000L;
+
+	/** The slots of the ring buffer. */
+	private final TradeEvent[] events;
+
+	/** The mask giving the slot of a sequence number. */
+	private final int mask;
+
+	/** The sequence number last published in each slot. */
+	private final AtomicLongArray published;
+
+	/** What to do with a trade published while the buffer is full. */
+	private final BackpressurePolicy backpressurePolicy;
+
+	/** The last sequence number claimed by a publisher. */
+	private final AtomicLong claimed;
+
+	/** The number of trades dropped because the buffer was full. */
+	private final AtomicLong droppedCount;
+
+	/** The number of exceptions thrown by the listeners. */
+	private final AtomicLong failureCount;
+
+	/**
+	 * The last known sequence number read by all the listeners, so that
+	 * publishers only look at the listeners when the buffer may be full.
+	 */
+	private volatile long gatingSequence;
+
+	/** The subscribed listeners. */
+	private volatile Subscriber[] subscribers;
+
+	/** True once the bus is closed. */
+	private volatile boolean closed;
+
+	/**
+	 * Constructor. The bus has {@link #DEFAULT_CAPACITY} slots, and publishers
+	 * wait when it is full.
+	 */
+	public TradeEventBus() {
+		this(DEFAULT_CAPACITY, BackpressurePolicy.BLOCK);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity the number of slots of the ring buffer, a power of two
+	 * @param backpressurePolicy what to do with a trade published while the
+	 *            buffer is full
+	 */
+	public TradeEventBus(int capacity, BackpressurePolicy backpressurePolicy) {
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+			throw new InvalidValueException("The capacity must be a power of two: " + capacity);
+		}
+		if (backpressurePolicy == null) {
+			throw new InvalidValueException("Found null backpressure policy.");
+		}
+		this.events = new TradeEvent[capacity];
+		this.published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			this.events[i] = new TradeEvent();
+			this.published.set(i, -1);
+		}
+		this.mask = capacity - 1;
+		this.backpressurePolicy = backpressurePolicy;
+		this.claimed = new AtomicLong(-1);
+		this.droppedCount = new AtomicLong();
+		this.failureCount = new AtomicLong();
+		this.gatingSequence = -1;
+		this.subscribers = new Subscriber[0];
+	}
+
+	/**
+	 * @return the number of slots of the ring buffer
+	 */
+	public int getCapacity() {
+		return this.events.length;
+	}
+
+	/**
+	 * @return what to do with a trade published while the buffer is full
+	 */
+	public BackpressurePolicy getBackpressurePolicy() {
+		return backpressurePolicy;
+	}
+
+	/**
+	 * @return the number of trades dropped because the buffer was full
+	 */
+	public long getDroppedCount() {
+		return this.droppedCount.get();
+	}
+
+	/**
+	 * @return the number of exceptions thrown by the listeners, which are
+	 *         otherwise ignored
+	 */
+	public long getFailureCount() {
+		return this.failureCount.get();
+	}
+
+	/**
+	 * Subscribes a listener, which receives the trades published from now on,
+	 * on a new daemon thread.
+	 *
+	 * @param listener the {@link TradeEventListener} to subscribe
+	 */
+	public synchronized void subscribe(TradeEventListener listener) {
+		if (this.closed) {
+			throw new BusinessException("The trade event bus is closed.");
+		}
+		Subscriber subscriber = new Subscriber(listener, this.claimed.get());
+		Subscriber[] current = this.subscribers;
+		Subscriber[] next = Arrays.copyOf(current, current.length + 1);
+		next[current.length] = subscriber;
+		this.subscribers = next;
+		Thread thread = new Thread(subscriber, "trade-event-listener-" + current.length);
+		thread.setDaemon(true);
+		subscriber.thread = thread;
+		thread.start();
+	}
+
+	/**
+	 * Unsubscribes a listener. Its thread stops after the batch being
+	 * delivered, without waiting for the trades not delivered yet.
+	 *
+	 * @param listener the {@link TradeEventListener} to unsubscribe
+	 */
+	public synchronized void unsubscribe(TradeEventListener listener) {
+		Subscriber[] current = this.subscribers;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i].listener == listener) {
+				Subscriber[] next = new Subscriber[current.length - 1];
+				System.arraycopy(current, 0, next, 0, i);
+				System.arraycopy(current, i + 1, next, i, next.length - i);
+				this.subscribers = next;
+				current[i].state = Subscriber.STOPPED;
+				join(current[i].thread);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Publishes a trade to the listeners.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price
+	 * @return true if the trade was published, false if it was dropped or the
+	 *         bus is closed
+	 */
+	public boolean publish(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+			int priceScale) {
+		long sequence = claim();
+		if (sequence < 0) {
+			return false;
+		}
+		int slot = (int) (sequence & this.mask);
+		this.events[slot].set(symbol, timestamp, quantity, indicator, price, priceScale);
+		this.published.lazySet(slot, sequence);
+		return true;
+	}
+
+	/**
+	 * Closes the bus: the trades published so far are delivered, then the
+	 * threads of the listeners stop. The trades published later are not
+	 * delivered.
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		for (Subscriber subscriber : this.subscribers) {
+			if (subscriber.state == Subscriber.RUNNING) {
+				subscriber.state = Subscriber.DRAINING;
+			}
+		}
+		for (Subscriber subscriber : this.subscribers) {
+			join(subscriber.thread);
+		}
+	}
+
+	/**
+	 * Claims the next sequence number, waiting for a free slot or giving up as
+	 * the {@link BackpressurePolicy} says.
+	 *
+	 * @return the sequence number claimed, or -1
+	 */
+	private long claim() {
+		int tries = 0;
+		while (!this.closed) {
+			long current = this.claimed.get();
+			long next = current + 1;
+			long wrapPoint = next - this.events.length;
+			if (wrapPoint > this.gatingSequence) {
+				long gating = current;
+				for (Subscriber subscriber : this.subscribers) {
+					gating = Math.min(gating, subscriber.sequence);
+				}
+				this.gatingSequence = gating;
+				if (wrapPoint > gating) {
+					if (this.backpressurePolicy == BackpressurePolicy.DROP) {
+						this.droppedCount.incrementAndGet();
+						return -1;
+					}
+					idle(tries++);
+					continue;
+				}
+			}
+			if (this.claimed.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Waits a little, yielding first and then parking.
+	 *
+	 * @param tries the number of times the thread waited in a row
+	 */
+	private static void idle(int tries) {
+		if (tries < SPIN_TRIES) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Waits for a thread to stop.
+	 *
+	 * @param thread the thread
+	 */
+	private static void join(Thread thread) {
+		if (thread == Thread.currentThread()) {
+			return;
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A subscribed listener and the progress of its thread.
+	 */
+	private class Subscriber implements Runnable {
+
+		/** The state of a subscriber delivering the trades. */
+		static final int RUNNING = 0;
+
+		/** The state of a subscriber delivering the trades left, then stopping. */
+		static final int DRAINING = 1;
+
+		/** The state of a subscriber stopping after the current batch. */
+		static final int STOPPED = 2;
+
+		/** The listener. */
+		final TradeEventListener listener;
+
+		/** The last sequence number delivered to the listener. */
+		volatile long sequence;
+
+		/** The state of this subscriber. */
+		volatile int state;
+
+		/** The thread delivering the trades. */
+		Thread thread;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param listener the listener
+		 * @param sequence the last sequence number not to deliver
+		 */
+		Subscriber(TradeEventListener listener, long sequence) {
+			this.listener = listener;
+			this.sequence = sequence;
+			this.state = RUNNING;
+		}
+
+		@Override
+		public void run() {
+			long next = this.sequence + 1;
+			int tries = 0;
+			while (this.state != STOPPED) {
+				long available = next - 1;
+				long limit = next + mask;
+				while (available < limit && published.get((int) ((available + 1) & mask)) == available + 1) {
+					available++;
+				}
+				if (available >= next) {
+					for (long sequence = next; sequence <= available; sequence++) {
+						try {
+							this.listener.tradePublished(events[(int) (sequence & mask)], sequence,
+									sequence == available);
+						} catch (RuntimeException e) {
+							failureCount.incrementAndGet();
+						}
+					}
+					this.sequence = available;
+					next = available + 1;
+					tries = 0;
+				} else if (this.state == DRAINING && next > claimed.get()) {
+					return;
+				} else {
+					idle(tries++);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,27 @@
+package exercise.stock.market.event;
+
+/**
+ * A listener receiving the trades published to a {@link TradeEventBus}, on a
+ * thread of its own.
+ *
+ * @author DMONEY
+ *
+ */
+public interface TradeEventListener {
+
+	/**
+	 * Called for each trade, in the order of publication. The event is a slot
+	 * of the ring buffer, reused once the call returns: a listener keeping the
+	 * values copies them.
+	 * <p>
+	 * The trades available at once are delivered as a batch, the last one with
+	 * {@code endOfBatch} set, so that a listener may defer its expensive work,
+	 * e.g. a refresh of a dashboard, to the end of the batch.
+	 *
+	 * @param event the trade
+	 * @param sequence the number of the trade on the bus, from 0
+	 * @param endOfBatch true if no other trade is available yet
+	 */
+	void tradePublished(TradeEvent event, long sequence, boolean endOfBatch);
+
+}
@@ -0,0 +1,683 @@
+package exercise.stock.market.index;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import exercise.stock.market.model.BaseStock;
+import exercise.stock.market.model.StockPriceListener;
+import exercises.stock.exceptions.BusinessException;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * An index calculated as the geometric mean of the prices of its constituent
+ * stocks, maintained incrementally as the prices change.
+ * <p>
+ * The index keeps the sum of the natural logarithms of the prices as a fixed
+ * point number with {@link #LOG_FRACTION_BITS} fraction bits. Each logarithm is
+ * rounded once, with {@link StrictMath#log(double)}, when a price enters the
+ * sum, and exactly the same value is subtracted when the price leaves it, so
+ * the sum does not drift however many updates are applied. Adding, removing or
+ * repricing a constituent costs O(1), and reading the index costs one
+ * exponential.
+ * <p>
+ * The relative error of the value read is bounded by {@link #RELATIVE_ERROR}
+ * (rounding of each logarithm to 2^-33, plus the error of the logarithm and
+ * the exponential). When the value is within that bound of a rounding tie of
+ * the result scale, the index falls back to {@link #calculateExact(Collection)}
+ * so that both calculations return the same result.
+ * <p>
+ * {@link #calculateParallel(Collection)} calculates the same value from
+ * scratch for any set of stocks, splitting the prices across the
+ * {@link ForkJoinPool#commonPool() common fork-join pool}.
+ * <p>
+ * The methods of the index lock the index itself, so the value is always read
+ * from the totals of one consistent set of prices. Adding or removing a
+ * constituent also locks the stock first, in the order
+ * {@link BaseStock#setPrice(BigDecimal)} locks the stock and then notifies
+ * the index, so that no price change can happen between the price read into
+ * the sums and the listener being added or removed.
+ *
+ * @author DMONEY
+ *
+ */
+public class GeometricMeanIndex implements StockPriceListener {
+
+	/** The number of fraction bits of the logarithm sum. */
+	public static final int LOG_FRACTION_BITS = 32;
+
+	/**
+	 * The bound of the relative error of the value before the final rounding.
+	 */
+	public static final double RELATIVE_ERROR = 1e-9;
+
+	/**
+	 * The number of prices below which a part of the parallel calculation is
+	 * not split further.
+	 */
+	public static final int PARALLEL_THRESHOLD = 2048;
+
+	/** The precision scale in the exact calculation. */
+	private static final int PRECISION_SCALE = 7;
+
+	/**
+	 * The relative margin added to an estimated root, so that Newton's method
+	 * starts just above the root.
+	 */
+	private static final double ESTIMATE_MARGIN = 1e-8;
+
+	/** The natural logarithm of 2. */
+	private static final double LN_2 = Math.log(2);
+
+	/** The natural logarithm of 10. */
+	private static final double LN_10 = Math.log(10);
+
+	/** The factor converting a logarithm to its fixed point value. */
+	private static final double LOG_ONE = 1L << LOG_FRACTION_BITS;
+
+	/** The constituent stocks of this index. */
+	private final Set<BaseStock> constituents;
+
+	/** The sum of the logarithms of the valid prices, in fixed point. */
+	private long logSum;
+
+	/** The number of constituents with a non-positive price. */
+	private int invalidCount;
+
+	/**
+	 * The number of constituents with a price whose logarithm cannot be taken
+	 * in double precision; the index is then calculated exactly.
+	 */
+	private int outOfRangeCount;
+
+	/**
+	 * Constructor.
+	 */
+	public GeometricMeanIndex() {
+		this.constituents = new LinkedHashSet<BaseStock>();
+	}
+
+	/**
+	 * Adds a constituent to this index. The index follows the price changes of
+	 * the stock until it is removed.
+	 *
+	 * @param stock the stock to add
+	 */
+	public void add(BaseStock stock) {
+		synchronized (stock) {
+			synchronized (this) {
+				if (this.constituents.add(stock)) {
+					stock.addPriceListener(this);
+					include(stock.getPrice());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes a constituent from this index.
+	 *
+	 * @param stock the stock to remove
+	 */
+	public void remove(BaseStock stock) {
+		synchronized (stock) {
+			synchronized (this) {
+				if (this.constituents.remove(stock)) {
+					stock.removePriceListener(this);
+					exclude(stock.getPrice());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of constituents of this index
+	 */
+	public synchronized int size() {
+		return this.constituents.size();
+	}
+
+	/**
+	 * @param stock the stock to look for
+	 * @return true if the stock is a constituent of this index
+	 */
+	public synchronized boolean contains(BaseStock stock) {
+		return this.constituents.contains(stock);
+	}
+
+	/**
+	 * @return a copy of the constituents of this index, in the order they were
+	 *         added
+	 */
+	public synchronized List<BaseStock> getConstituents() {
+		return new ArrayList<BaseStock>(this.constituents);
+	}
+
+	@Override
+	public synchronized void priceChanged(BaseStock stock, BigDecimal oldPrice, BigDecimal newPrice) {
+		if (!this.constituents.contains(stock)) {
+			// a change notified to an index the stock has just left
+			return;
+		}
+		exclude(oldPrice);
+		include(newPrice);
+	}
+
+	/**
+	 * Gets the value of this index. The result precision scale is 0 and applies
+	 * {@link BigDecimal#ROUND_HALF_EVEN}.
+	 *
+	 * @return the value of this index
+	 */
+	public BigDecimal getValue() {
+		BigDecimal value = tryGetValue();
+		if (value != null) {
+			return value;
+		}
+		synchronized (this) {
+			if (this.constituents.isEmpty()) {
+				throw new BusinessException("The index has no constituent.", false);
+			}
+			if (this.invalidCount > 0) {
+				throw new InvalidValueException(
+						"Found " + this.invalidCount + " constituents with a non-positive price.", false);
+			}
+		}
+		// the prices changed since the value was tried
+		throw new InvalidValueException("Found a constituent with a non-positive price.", false);
+	}
+
+	/**
+	 * Gets the value of this index as {@link #getValue()} does, without
+	 * throwing an exception when the value cannot be calculated.
+	 *
+	 * @return the value of this index, or null if the index has no constituent
+	 *         or a constituent has a non-positive price
+	 */
+	public BigDecimal tryGetValue() {
+		BigDecimal[] prices;
+		synchronized (this) {
+			int n = this.constituents.size();
+			if (n == 0 || this.invalidCount > 0) {
+				return null;
+			}
+			double value = Math.exp((double) this.logSum / n / LOG_ONE);
+			if (this.outOfRangeCount == 0 && !isNearTie(value)) {
+				return round(value);
+			}
+			prices = new BigDecimal[n];
+			int i = 0;
+			for (BaseStock stock : this.constituents) {
+				prices[i++] = stock.getPrice();
+			}
+		}
+		if (!isValid(prices)) {
+			return null;
+		}
+		double logRoot = 0;
+		for (BigDecimal price : prices) {
+			logRoot += lnOf(price);
+		}
+		return rootOf(productOf(prices), prices.length, estimate(logRoot / prices.length));
+	}
+
+	/**
+	 * Calculates the geometric mean of the prices of the given stocks by
+	 * multiplying the prices and taking the n-th root with Newton's method. The
+	 * result precision scale is 0 and applies {@link BigDecimal#ROUND_HALF_EVEN}.
+	 *
+	 * @param stocks the stocks to calculate, not empty
+	 * @return the geometric mean of the prices
+	 */
+	public static BigDecimal calculateExact(Collection<BaseStock> stocks) {
+		BigDecimal[] prices = pricesOf(stocks);
+		for (BigDecimal price : prices) {
+			if (!isValid(price)) {
+				throw new InvalidValueException("Found non-positive value: " + price, false);
+			}
+		}
+		return rootOfProduct(prices);
+	}
+
+	/**
+	 * Calculates the geometric mean of the prices of the given stocks as
+	 * {@link #calculateExact(Collection)} does, without throwing an exception
+	 * when a price is not positive.
+	 *
+	 * @param stocks the stocks to calculate, not empty
+	 * @return the geometric mean of the prices, or null if a price is not
+	 *         positive
+	 */
+	public static BigDecimal tryCalculateExact(Collection<BaseStock> stocks) {
+		BigDecimal[] prices = pricesOf(stocks);
+		return isValid(prices) ? rootOfProduct(prices) : null;
+	}
+
+	/**
+	 * Calculates the geometric mean of the prices of the given stocks on the
+	 * common fork-join pool. The result precision scale is 0 and applies
+	 * {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * <p>
+	 * The prices are split into parts of at most {@link #PARALLEL_THRESHOLD}
+	 * prices, and each part sums the logarithms of its prices in fixed point,
+	 * rounded as in the incremental index. The sums are added exactly, so the
+	 * result does not depend on the split nor on the number of threads, and is
+	 * the value of an index with the same constituents: the relative error
+	 * before the final rounding is bounded by {@link #RELATIVE_ERROR}. When the
+	 * value is within that bound of a rounding tie, or a price cannot be
+	 * converted to a double, the exact product of the prices is calculated,
+	 * each part multiplying its prices and the partial products being
+	 * multiplied pairwise, and its n-th root is taken with Newton's method
+	 * started from the estimate of the logarithms.
+	 *
+	 * @param stocks the stocks to calculate, not empty
+	 * @return the geometric mean of the prices
+	 */
+	public static BigDecimal calculateParallel(Collection<BaseStock> stocks) {
+		BigDecimal[] prices = pricesOf(stocks);
+		BigDecimal value = rootOfParallel(prices);
+		if (value == null) {
+			for (BigDecimal price : prices) {
+				if (!isValid(price)) {
+					throw new InvalidValueException("Found non-positive value: " + price, false);
+				}
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Calculates the geometric mean of the prices of the given stocks as
+	 * {@link #calculateParallel(Collection)} does, without throwing an
+	 * exception when a price is not positive.
+	 *
+	 * @param stocks the stocks to calculate, not empty
+	 * @return the geometric mean of the prices, or null if a price is not
+	 *         positive
+	 */
+	public static BigDecimal tryCalculateParallel(Collection<BaseStock> stocks) {
+		return rootOfParallel(pricesOf(stocks));
+	}
+
+	/**
+	 * Calculates the geometric mean of the given prices, e.g. prices read
+	 * once for a consistent view of the market, without throwing an
+	 * exception. With {@link IndexCalculationMode#LOGARITHMIC}, the value is
+	 * the one an index of stocks with these prices would have, calculated as
+	 * {@link IndexCalculationMode#PARALLEL} does.
+	 *
+	 * @param prices the prices
+	 * @param mode the way to calculate the geometric mean
+	 * @return the geometric mean of the prices, with 0 scale, or null if there
+	 *         is no price or a price is not positive
+	 */
+	public static BigDecimal tryCalculate(BigDecimal[] prices, IndexCalculationMode mode) {
+		if (prices.length == 0) {
+			return null;
+		}
+		if (mode == IndexCalculationMode.EXACT) {
+			return isValid(prices) ? rootOfProduct(prices) : null;
+		}
+		return rootOfParallel(prices);
+	}
+
+	/**
+	 * Reads the prices of the given stocks.
+	 *
+	 * @param stocks the stocks
+	 * @return their prices, in the iteration order
+	 */
+	private static BigDecimal[] pricesOf(Collection<BaseStock> stocks) {
+		BigDecimal[] prices = new BigDecimal[stocks.size()];
+		int i = 0;
+		for (BaseStock stock : stocks) {
+			prices[i++] = stock.getPrice();
+		}
+		return prices;
+	}
+
+	/**
+	 * Multiplies the prices and takes the n-th root with Newton's method.
+	 *
+	 * @param prices the positive prices, not empty
+	 * @return the geometric mean of the prices, with 0 scale
+	 */
+	private static BigDecimal rootOfProduct(BigDecimal[] prices) {
+		BigDecimal accumulate = productOf(prices);
+		return rootOf(accumulate, prices.length, accumulate.divide(accumulate, BigDecimal.ROUND_HALF_EVEN));
+	}
+
+	/**
+	 * Calculates the geometric mean of prices from the sum of their logarithms,
+	 * falling back to the exact product near a rounding tie, both on the
+	 * common fork-join pool. The tasks are invoked from the calling thread,
+	 * which calculates the first part itself, so that a small set of prices
+	 * is not handed to the pool.
+	 *
+	 * @param prices the prices, not empty
+	 * @return the geometric mean of the prices, with 0 scale, or null if a
+	 *         price is not positive
+	 */
+	private static BigDecimal rootOfParallel(BigDecimal[] prices) {
+		int n = prices.length;
+		LogSumTask sum = new LogSumTask(prices, 0, n);
+		sum.invoke();
+		if (sum.invalidCount > 0) {
+			return null;
+		}
+		if (sum.outOfRangeCount == 0) {
+			double value = Math.exp((double) sum.logSum / n / LOG_ONE);
+			if (!isNearTie(value)) {
+				return round(value);
+			}
+		}
+		double logRoot = ((double) sum.logSum / LOG_ONE + sum.outOfRangeLogSum) / n;
+		BigDecimal product = new ProductTask(prices, 0, n).invoke();
+		return rootOf(product, n, estimate(logRoot));
+	}
+
+	/**
+	 * Multiplies prices.
+	 *
+	 * @param prices the prices
+	 * @return the exact product of the prices
+	 */
+	private static BigDecimal productOf(BigDecimal[] prices) {
+		return productOf(prices, 0, prices.length);
+	}
+
+	/**
+	 * Multiplies a range of prices.
+	 *
+	 * @param prices the prices
+	 * @param from the index of the first price
+	 * @param to the index after the last price
+	 * @return the exact product of the prices of the range
+	 */
+	private static BigDecimal productOf(BigDecimal[] prices, int from, int to) {
+		BigDecimal accumulate = BigDecimal.ONE;
+		for (int i = from; i < to; i++) {
+			accumulate = accumulate.multiply(prices[i]);
+		}
+		return accumulate;
+	}
+
+	/**
+	 * Takes the n-th root of a product with Newton's method.
+	 *
+	 * @param accumulate the positive product
+	 * @param n the number of prices
+	 * @param initial the value Newton's method starts from
+	 * @return the n-th root, with 0 scale
+	 */
+	private static BigDecimal rootOf(BigDecimal accumulate, int n, BigDecimal initial) {
+		BigDecimal x = initial;
+		BigDecimal temp = BigDecimal.ZERO;
+		BigDecimal e = new BigDecimal("0.1");
+
+		do {
+			temp = x;
+			x = x.add(accumulate.subtract(x.pow(n)).divide(new BigDecimal(n).multiply(x.pow(n - 1)), PRECISION_SCALE,
+					BigDecimal.ROUND_HALF_EVEN));
+		} while (x.subtract(temp).abs().compareTo(e) > 0);
+
+		return x.setScale(0, BigDecimal.ROUND_HALF_EVEN);
+	}
+
+	/**
+	 * Checks whether a value before rounding is too close to a rounding tie,
+	 * or too large, to be rounded from its double approximation.
+	 *
+	 * @param value the approximate value
+	 * @return true if the value must be calculated exactly
+	 */
+	private static boolean isNearTie(double value) {
+		double fraction = value - Math.floor(value);
+		return Math.abs(fraction - 0.5) <= value * RELATIVE_ERROR || Double.isInfinite(value);
+	}
+
+	/**
+	 * Rounds an approximate value.
+	 *
+	 * @param value the value, not near a rounding tie
+	 * @return the value with 0 scale
+	 */
+	private static BigDecimal round(double value) {
+		return new BigDecimal(Math.rint(value)).setScale(0, BigDecimal.ROUND_HALF_EVEN);
+	}
+
+	/**
+	 * Converts the logarithm of a root into a value just above the root. A
+	 * root of 0.1 or more is rounded up to the scale of the steps of Newton's
+	 * method, so that a root with that scale, e.g. a rounding tie, is reached
+	 * exactly.
+	 *
+	 * @param logRoot the natural logarithm of the root
+	 * @return the value for Newton's method to start from
+	 */
+	private static BigDecimal estimate(double logRoot) {
+		double log10 = logRoot / LN_10;
+		double exponent = Math.floor(log10);
+		BigDecimal value = new BigDecimal(Math.pow(10, log10 - exponent) * (1 + ESTIMATE_MARGIN))
+				.round(new MathContext(17)).scaleByPowerOfTen((int) exponent);
+		return exponent >= -1 ? value.setScale(PRECISION_SCALE, BigDecimal.ROUND_CEILING) : value;
+	}
+
+	/**
+	 * Adds a price to the sums.
+	 *
+	 * @param price the price to add
+	 */
+	private void include(BigDecimal price) {
+		if (!isValid(price)) {
+			this.invalidCount++;
+		} else if (isInRange(price)) {
+			this.logSum += logOf(price);
+		} else {
+			this.outOfRangeCount++;
+		}
+	}
+
+	/**
+	 * Removes a price from the sums.
+	 *
+	 * @param price the price to remove
+	 */
+	private void exclude(BigDecimal price) {
+		if (!isValid(price)) {
+			this.invalidCount--;
+		} else if (isInRange(price)) {
+			this.logSum -= logOf(price);
+		} else {
+			this.outOfRangeCount--;
+		}
+	}
+
+	/**
+	 * Checks whether a price can be used in the logarithm sum.
+	 *
+	 * @param price the price to check
+	 * @return true if the price is positive
+	 */
+	private static boolean isValid(BigDecimal price) {
+		return price != null && price.signum() > 0;
+	}
+
+	/**
+	 * Checks whether all the prices can be used in the logarithm sum.
+	 *
+	 * @param prices the prices to check
+	 * @return true if all the prices are positive
+	 */
+	private static boolean isValid(BigDecimal[] prices) {
+		for (BigDecimal price : prices) {
+			if (!isValid(price)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether a positive price converts to a finite, non-zero double.
+	 *
+	 * @param price the price to check
+	 * @return true if the logarithm of the price can be taken
+	 */
+	private static boolean isInRange(BigDecimal price) {
+		double value = price.doubleValue();
+		return value > 0 && !Double.isInfinite(value);
+	}
+
+	/**
+	 * Returns the natural logarithm of any positive price, approximately.
+	 *
+	 * @param price the price
+	 * @return the logarithm
+	 */
+	private static double lnOf(BigDecimal price) {
+		if (isInRange(price)) {
+			return Math.log(price.doubleValue());
+		}
+		BigInteger unscaled = price.unscaledValue();
+		int shift = Math.max(unscaled.bitLength() - Long.SIZE + 1, 0);
+		return Math.log(unscaled.shiftRight(shift).doubleValue()) + shift * LN_2 - price.scale() * LN_10;
+	}
+
+	/**
+	 * Returns the natural logarithm of a positive price, in fixed point.
+	 *
+	 * @param price the price
+	 * @return the logarithm with {@link #LOG_FRACTION_BITS} fraction bits
+	 */
+	private static long logOf(BigDecimal price) {
+		return Math.round(StrictMath.log(price.doubleValue()) * LOG_ONE);
+	}
+
+	/**
+	 * Sums the logarithms of a range of prices, splitting the range on the
+	 * fork-join pool.
+	 */
+	private static class LogSumTask extends RecursiveAction {
+
+		/** The serial version UID. */
+		private static final long serialVersionUID = 1L;
+
+		/** The prices. */
+		private final BigDecimal[] prices;
+
+		/** The index of the first price. */
+		private final int from;
+
+		/** The index after the last price. */
+		private final int to;
+
+		/** The sum of the logarithms of the valid prices, in fixed point. */
+		private long logSum;
+
+		/** The sum of the logarithms of the prices out of the double range. */
+		private double outOfRangeLogSum;
+
+		/** The number of prices out of the double range. */
+		private int outOfRangeCount;
+
+		/** The number of non-positive prices. */
+		private int invalidCount;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param prices the prices
+		 * @param from the index of the first price
+		 * @param to the index after the last price
+		 */
+		LogSumTask(BigDecimal[] prices, int from, int to) {
+			this.prices = prices;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= PARALLEL_THRESHOLD) {
+				for (int i = this.from; i < this.to; i++) {
+					BigDecimal price = this.prices[i];
+					if (!isValid(price)) {
+						this.invalidCount++;
+					} else if (isInRange(price)) {
+						this.logSum += logOf(price);
+					} else {
+						this.outOfRangeLogSum += lnOf(price);
+						this.outOfRangeCount++;
+					}
+				}
+				return;
+			}
+			int middle = (this.from + this.to) >>> 1;
+			LogSumTask left = new LogSumTask(this.prices, this.from, middle);
+			LogSumTask right = new LogSumTask(this.prices, middle, this.to);
+			left.fork();
+			right.compute();
+			left.join();
+			this.logSum = left.logSum + right.logSum;
+			this.outOfRangeLogSum = left.outOfRangeLogSum + right.outOfRangeLogSum;
+			this.outOfRangeCount = left.outOfRangeCount + right.outOfRangeCount;
+			this.invalidCount = left.invalidCount + right.invalidCount;
+		}
+
+	}
+
+	/**
+	 * Multiplies a range of prices, splitting the range on the fork-join pool
+	 * and multiplying the partial products pairwise.
+	 */
+	private static class ProductTask extends RecursiveTask<BigDecimal> {
+
+		/** The serial version UID. */
+		private static final long serialVersionUID = 1L;
+
+		/** The prices. */
+		private final BigDecimal[] prices;
+
+		/** The index of the first price. */
+		private final int from;
+
+		/** The index after the last price. */
+		private final int to;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param prices the prices
+		 * @param from the index of the first price
+		 * @param to the index after the last price
+		 */
+		ProductTask(BigDecimal[] prices, int from, int to) {
+			this.prices = prices;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected BigDecimal compute() {
+			if (this.to - this.from <= PARALLEL_THRESHOLD) {
+				return productOf(this.prices, this.from, this.to);
+			}
+			int middle = (this.from + this.to) >>> 1;
+			ProductTask left = new ProductTask(this.prices, this.from, middle);
+			left.fork();
+			BigDecimal right = new ProductTask(this.prices, middle, this.to).compute();
+			return left.join().multiply(right);
+		}
+
+	}
+
+}
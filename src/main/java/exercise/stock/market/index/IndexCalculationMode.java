@@ -0,0 +1,31 @@
+package exercise.stock.market.index;
+
+/**
+ * An enum class indicating how a geometric mean index is calculated.
+ * 
+ * @author DMONEY
+ *
+ */
+public enum IndexCalculationMode {
+
+	/**
+	 * Multiplies all the prices and takes the n-th root with Newton's method.
+	 * The cost grows with the number of stocks for every calculation.
+	 */
+	EXACT,
+
+	/**
+	 * Reads a running sum of the logarithms of the prices, maintained as the
+	 * prices change. Results close to a rounding tie are resolved with the
+	 * {@link #EXACT} calculation.
+	 */
+	LOGARITHMIC,
+
+	/**
+	 * Sums the logarithms of the prices from scratch, splitting the stocks
+	 * across the common fork-join pool, with the precision of
+	 * {@link #LOGARITHMIC}. Results close to a rounding tie are resolved with
+	 * an exact product calculated in parallel.
+	 */
+	PARALLEL;
+}
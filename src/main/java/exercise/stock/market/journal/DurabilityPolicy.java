@@ -0,0 +1,118 @@
+package exercise.stock.market.journal;
+
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A policy deciding when the appended trades of a {@link TradeJournal} are
+ * forced to the storage device, trading the latency of recording a trade
+ * against the number of trades which may be lost by a crash of the operating
+ * system.
+ * <p>
+ * The trades are written to memory-mapped files, so a crash of the process
+ * alone loses no trade whatever the policy: the operating system writes the
+ * mapped pages back. The journal is forced after the given number of trades
+ * or when the given time elapsed since the last force, whichever comes first;
+ * the time is checked when a trade is appended.
+ *
+ * @author DMONEY
+ *
+ */
+public class DurabilityPolicy {
+
+	/** A value indicating that no limit is applied. */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	/** The maximum number of trades appended between two forces. */
+	private final long maxUnforcedTrades;
+
+	/** The maximum time between two forces, in milliseconds. */
+	private final long maxUnforcedMillis;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxUnforcedTrades the maximum number of trades appended between
+	 *            two forces, or {@link #UNLIMITED}
+	 * @param maxUnforcedMillis the maximum time between two forces in
+	 *            milliseconds, or {@link #UNLIMITED}
+	 */
+	public DurabilityPolicy(long maxUnforcedTrades, long maxUnforcedMillis) {
+		if (maxUnforcedTrades <= 0 || maxUnforcedMillis < 0) {
+			throw new InvalidValueException("Invalid durability policy: maxUnforcedTrades=" + maxUnforcedTrades
+					+ ", maxUnforcedMillis=" + maxUnforcedMillis);
+		}
+		this.maxUnforcedTrades = maxUnforcedTrades;
+		this.maxUnforcedMillis = maxUnforcedMillis;
+	}
+
+	/**
+	 * Returns a policy which leaves the operating system write the trades
+	 * back; the journal is only forced when it is flushed or closed.
+	 *
+	 * @return a {@link DurabilityPolicy} never forcing on append
+	 */
+	public static DurabilityPolicy never() {
+		return new DurabilityPolicy(UNLIMITED, UNLIMITED);
+	}
+
+	/**
+	 * Returns a policy which forces the journal after each trade.
+	 *
+	 * @return a {@link DurabilityPolicy} forcing on each append
+	 */
+	public static DurabilityPolicy always() {
+		return new DurabilityPolicy(1, UNLIMITED);
+	}
+
+	/**
+	 * Returns a policy which forces the journal after the given number of
+	 * trades.
+	 *
+	 * @param maxUnforcedTrades the maximum number of trades appended between
+	 *            two forces
+	 * @return a {@link DurabilityPolicy} limited by trades
+	 */
+	public static DurabilityPolicy everyTrades(long maxUnforcedTrades) {
+		return new DurabilityPolicy(maxUnforcedTrades, UNLIMITED);
+	}
+
+	/**
+	 * Returns a policy which forces the journal when the given time elapsed
+	 * since the last force.
+	 *
+	 * @param maxUnforcedMillis the maximum time between two forces in
+	 *            milliseconds
+	 * @return a {@link DurabilityPolicy} limited by time
+	 */
+	public static DurabilityPolicy everyMillis(long maxUnforcedMillis) {
+		return new DurabilityPolicy(UNLIMITED, maxUnforcedMillis);
+	}
+
+	/**
+	 * @return the maxUnforcedTrades
+	 */
+	public long getMaxUnforcedTrades() {
+		return maxUnforcedTrades;
+	}
+
+	/**
+	 * @return the maxUnforcedMillis
+	 */
+	public long getMaxUnforcedMillis() {
+		return maxUnforcedMillis;
+	}
+
+	/**
+	 * Decides whether the journal must be forced.
+	 *
+	 * @param unforcedTrades the number of trades appended since the last force
+	 * @param unforcedMillis the time elapsed since the last force, in
+	 *            milliseconds
+	 * @return true if the journal must be forced
+	 */
+	public boolean isForceRequired(long unforcedTrades, long unforcedMillis) {
+		return unforcedTrades >= this.maxUnforcedTrades
+				|| (this.maxUnforcedMillis != UNLIMITED && unforcedMillis >= this.maxUnforcedMillis);
+	}
+
+}
@@ -0,0 +1,105 @@
+package exercise.stock.market.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The symbols decoded while scanning a tape of trades, so that each symbol is
+ * decoded from UTF-8 once and the same {@link String} is passed for all its
+ * trades.
+ *
+ * @author DMONEY
+ *
+ */
+public class SymbolTable {
+
+	/** The encoded symbols, by hash. */
+	private byte[][] keys = new byte[64][];
+
+	/** The decoded symbols, by hash. */
+	private String[] values = new String[64];
+
+	/** The number of symbols. */
+	private int size;
+
+	/**
+	 * Decodes a symbol.
+	 *
+	 * @param buffer the buffer holding the symbol
+	 * @param offset the offset of the symbol
+	 * @param length the length of the symbol, in bytes
+	 * @return the symbol
+	 */
+	public String decode(ByteBuffer buffer, int offset, int length) {
+		int hash = 1;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + buffer.get(offset + i);
+		}
+		int mask = this.keys.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (this.keys[slot] != null) {
+			if (matches(this.keys[slot], buffer, offset, length)) {
+				return this.values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		byte[] key = new byte[length];
+		for (int i = 0; i < length; i++) {
+			key[i] = buffer.get(offset + i);
+		}
+		String value = new String(key, StandardCharsets.UTF_8);
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		if (++this.size * 2 > this.keys.length) {
+			grow();
+		}
+		return value;
+	}
+
+	/**
+	 * Compares an encoded symbol with bytes of a buffer.
+	 *
+	 * @param key the encoded symbol
+	 * @param buffer the buffer
+	 * @param offset the offset of the bytes
+	 * @param length the number of bytes
+	 * @return true if they are equal
+	 */
+	private static boolean matches(byte[] key, ByteBuffer buffer, int offset, int length) {
+		if (key.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (key[i] != buffer.get(offset + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Doubles the size of the table.
+	 */
+	private void grow() {
+		byte[][] oldKeys = this.keys;
+		String[] oldValues = this.values;
+		this.keys = new byte[oldKeys.length * 2][];
+		this.values = new String[oldKeys.length * 2];
+		int mask = this.keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int hash = 1;
+				for (byte b : oldKeys[i]) {
+					hash = 31 * hash + b;
+				}
+				int slot = (hash ^ (hash >>> 16)) & mask;
+				while (this.keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+}
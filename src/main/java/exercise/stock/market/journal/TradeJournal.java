@@ -0,0 +1,534 @@
+package exercise.stock.market.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * An append-only binary log of trades, written through memory-mapped files.
+ * <p>
+ * The journal is a directory of segment files named
+ * {@code trades-<number>.journal}, each mapped in memory and filled in turn.
+ * A trade is one record: a header with the length and the CRC-32 of the body,
+ * then the body with the timestamp, the quantity, the unscaled price, the
+ * price scale, the side and the symbol in UTF-8. The length is written last,
+ * so that a record is only read back once complete; a segment ends with a
+ * zero length, or with {@link #END_OF_SEGMENT} when the next record did not
+ * fit. A record which fails its checksum, e.g. torn by a crash of the
+ * operating system, ends the segment.
+ * <p>
+ * Opening a journal finds the end of the last segment and appends from there.
+ * The trades are read back with {@link #replay(TradeJournalListener)}, which
+ * scans the mapped segments sequentially. The {@link DurabilityPolicy} decides
+ * when the appended trades are forced to the storage device.
+ * <p>
+ * Threads append in parallel: the lock of the journal is only held to claim
+ * the space of a record, whose length is then written negated, and the
+ * record is written and checksummed once the lock is released. The records
+ * are in the order of the claims, so a caller appending the trades of a
+ * stock under a lock of the stock keeps their order. A record claimed but
+ * never completed, e.g. as the process was killed, is skipped when read back.
+ * The other methods of the journal lock the journal itself.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeJournal implements Closeable, TradeTape {
+
+	/** The default size of a segment, 64 MiB. */
+	public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+	/** The length marking the end of a segment which is full. */
+	public static final int END_OF_SEGMENT = -1;
+
+	/** The number of bytes of the header of a record: length and checksum. */
+	private static final int HEADER_BYTES = 8;
+
+	/**
+	 * The number of bytes of the body of a record without the symbol:
+	 * timestamp, quantity, price, scale, side and symbol length.
+	 */
+	private static final int FIXED_BODY_BYTES = 3 * 8 + 1 + 1 + 2;
+
+	/** The prefix of the names of the segment files. */
+	private static final String SEGMENT_PREFIX = "trades-";
+
+	/** The suffix of the names of the segment files. */
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	/** The side of a trade without buy or sell indicator. */
+	private static final byte NO_SIDE = -1;
+
+	/** The indicators, indexed by side. */
+	private static final BuyOrSell[] SIDES = BuyOrSell.values();
+
+	/** The directory of the segment files. */
+	private final Path directory;
+
+	/** The size of a new segment, in bytes. */
+	private final int segmentBytes;
+
+	/** The policy deciding when the journal is forced. */
+	private final DurabilityPolicy durabilityPolicy;
+
+	/** The encoded symbols, by symbol. */
+	private final Map<String, byte[]> symbolBytes;
+
+	/** The writers of the records, one per appending thread. */
+	private final ThreadLocal<RecordWriter> writers;
+
+	/** The number of the current segment. */
+	private int segmentNumber;
+
+	/** The channel of the current segment. */
+	private FileChannel channel;
+
+	/** The current segment, mapped in memory. */
+	private volatile MappedByteBuffer segment;
+
+	/** The position of the next record in the current segment. */
+	private int position;
+
+	/** The number of trades appended since the last force. */
+	private final AtomicLong unforcedTrades;
+
+	/** The time of the last force, in milliseconds since the epoch. */
+	private volatile long lastForceMillis;
+
+	/**
+	 * Constructor. The journal must be opened with {@link #open()} before
+	 * use.
+	 *
+	 * @param directory the directory of the segment files, created if needed
+	 * @param segmentBytes the size of a new segment, in bytes
+	 * @param durabilityPolicy the policy deciding when the journal is forced
+	 */
+	public TradeJournal(Path directory, int segmentBytes, DurabilityPolicy durabilityPolicy) {
+		if (segmentBytes < HEADER_BYTES + FIXED_BODY_BYTES + 4) {
+			throw new InvalidValueException("The segments are too small: " + segmentBytes + " bytes");
+		}
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.durabilityPolicy = durabilityPolicy;
+		this.symbolBytes = new HashMap<String, byte[]>();
+		this.writers = new ThreadLocal<RecordWriter>() {
+			@Override
+			protected RecordWriter initialValue() {
+				return new RecordWriter();
+			}
+		};
+		this.unforcedTrades = new AtomicLong();
+	}
+
+	/**
+	 * Opens a journal with segments of {@link #DEFAULT_SEGMENT_BYTES}.
+	 *
+	 * @param directory the directory of the segment files, created if needed
+	 * @param durabilityPolicy the policy deciding when the journal is forced
+	 * @return the opened {@link TradeJournal}
+	 * @throws IOException if the journal cannot be opened
+	 */
+	public static TradeJournal open(Path directory, DurabilityPolicy durabilityPolicy) throws IOException {
+		TradeJournal journal = new TradeJournal(directory, DEFAULT_SEGMENT_BYTES, durabilityPolicy);
+		journal.open();
+		return journal;
+	}
+
+	/**
+	 * Opens the journal: maps the last segment and finds its end, so that the
+	 * trades are appended after the trades already journaled. The bytes after
+	 * the end are cleared, so that the remains of a torn record cannot be read
+	 * back once overwritten.
+	 *
+	 * @throws IOException if the journal cannot be opened
+	 */
+	public synchronized void open() throws IOException {
+		Files.createDirectories(this.directory);
+		List<Path> segments = listSegments();
+		if (segments.isEmpty()) {
+			map(0);
+			return;
+		}
+		Path last = segments.get(segments.size() - 1);
+		map(segmentNumber(last));
+		int end = scan(this.segment, null);
+		if (end < 0) {
+			roll();
+			return;
+		}
+		this.position = end;
+		for (int i = end; i < this.segment.capacity(); i++) {
+			this.segment.put(i, (byte) 0);
+		}
+	}
+
+	/**
+	 * @return the directory of the segment files
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return the durabilityPolicy
+	 */
+	public DurabilityPolicy getDurabilityPolicy() {
+		return durabilityPolicy;
+	}
+
+	/**
+	 * Appends a trade to the journal. The trade is written after the records
+	 * claimed before by other threads, possibly while they are being written.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator, may be null
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price
+	 */
+	public void append(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+			int priceScale) {
+		MappedByteBuffer target;
+		int offset;
+		byte[] encoded;
+		synchronized (this) {
+			if (this.segment == null) {
+				throw new IllegalStateException("The journal is not open.");
+			}
+			encoded = encode(symbol);
+			int bodyLength = FIXED_BODY_BYTES + encoded.length;
+			if (this.position + HEADER_BYTES + bodyLength + 4 > this.segment.capacity()) {
+				this.segment.putInt(this.position, END_OF_SEGMENT);
+				try {
+					roll();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			target = this.segment;
+			offset = this.position;
+			// claimed, so that the record is skipped if it is never completed
+			target.putInt(offset, -bodyLength);
+			this.position = offset + HEADER_BYTES + bodyLength;
+		}
+		this.writers.get().write(target, offset, timestamp, quantity, indicator, price, priceScale, encoded);
+
+		long unforced = this.unforcedTrades.incrementAndGet();
+		if (target != this.segment || this.durabilityPolicy.isForceRequired(unforced,
+				System.currentTimeMillis() - this.lastForceMillis)) {
+			forceAppended(target);
+		}
+	}
+
+	/**
+	 * Forces the appended trades to the storage device.
+	 */
+	public synchronized void flush() {
+		if (this.segment != null) {
+			force(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Reads all the trades of the journal, in the order they were appended.
+	 *
+	 * @param listener the listener receiving the trades
+	 * @return the number of trades read
+	 * @throws IOException if a segment cannot be read
+	 */
+	@Override
+	public synchronized long replay(TradeJournalListener listener) throws IOException {
+		CountingListener counter = new CountingListener(listener);
+		for (Path path : listSegments()) {
+			FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ);
+			try {
+				scan(readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size()), counter);
+			} finally {
+				readChannel.close();
+			}
+		}
+		return counter.count;
+	}
+
+	/**
+	 * Forces the journal and closes the current segment.
+	 *
+	 * @throws IOException if the segment cannot be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.segment == null) {
+			return;
+		}
+		force(System.currentTimeMillis());
+		this.channel.close();
+		this.segment = null;
+		this.channel = null;
+	}
+
+	/**
+	 * Forces the current segment to the storage device.
+	 *
+	 * @param now the current time, in milliseconds since the epoch
+	 */
+	private void force(long now) {
+		this.segment.force();
+		this.unforcedTrades.set(0);
+		this.lastForceMillis = now;
+	}
+
+	/**
+	 * Forces a record just written, if the durability policy still requires
+	 * it once the lock is held.
+	 *
+	 * @param target the segment the record was written to
+	 */
+	private synchronized void forceAppended(MappedByteBuffer target) {
+		if (target != this.segment) {
+			// rolled or closed while the record was written, and forced without it
+			target.force();
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (this.durabilityPolicy.isForceRequired(this.unforcedTrades.get(), now - this.lastForceMillis)) {
+			force(now);
+		}
+	}
+
+	/**
+	 * Closes the current segment, forcing it, and maps the next one.
+	 *
+	 * @throws IOException if the next segment cannot be created
+	 */
+	private void roll() throws IOException {
+		force(System.currentTimeMillis());
+		this.channel.close();
+		map(this.segmentNumber + 1);
+	}
+
+	/**
+	 * Maps a segment as the current segment, creating it if needed.
+	 *
+	 * @param number the number of the segment
+	 * @throws IOException if the segment cannot be mapped
+	 */
+	private void map(int number) throws IOException {
+		Path path = this.directory.resolve(String.format("%s%09d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		long size = Math.max(this.channel.size(), this.segmentBytes);
+		this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		this.segmentNumber = number;
+		this.position = 0;
+		this.lastForceMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Lists the segment files, in order.
+	 *
+	 * @return the paths of the segment files
+	 * @throws IOException if the directory cannot be read
+	 */
+	private List<Path> listSegments() throws IOException {
+		List<Path> segments = new ArrayList<Path>();
+		if (!Files.isDirectory(this.directory)) {
+			return segments;
+		}
+		DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory,
+				SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX);
+		try {
+			for (Path path : stream) {
+				segments.add(path);
+			}
+		} finally {
+			stream.close();
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * Gets the number of a segment from its file name.
+	 *
+	 * @param path the path of the segment
+	 * @return the number of the segment
+	 */
+	private static int segmentNumber(Path path) {
+		String name = path.getFileName().toString();
+		return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	/**
+	 * Encodes a symbol, keeping the encoded symbols.
+	 *
+	 * @param symbol the symbol to encode
+	 * @return the symbol in UTF-8
+	 */
+	private byte[] encode(String symbol) {
+		byte[] encoded = this.symbolBytes.get(symbol);
+		if (encoded == null) {
+			encoded = symbol.getBytes(StandardCharsets.UTF_8);
+			if (encoded.length > Short.MAX_VALUE
+					|| encoded.length > this.segmentBytes - HEADER_BYTES - FIXED_BODY_BYTES - 4) {
+				throw new InvalidValueException("The symbol is too long: " + symbol);
+			}
+			this.symbolBytes.put(symbol, encoded);
+		}
+		return encoded;
+	}
+
+	/**
+	 * Computes the checksum of a range of a segment.
+	 *
+	 * @param checksum the checksum to compute with
+	 * @param view a view of the segment, whose position and limit are changed
+	 * @param offset the start of the range
+	 * @param length the length of the range
+	 * @return the CRC-32 of the range
+	 */
+	private static int checksum(CRC32 checksum, ByteBuffer view, int offset, int length) {
+		view.limit(offset + length).position(offset);
+		checksum.reset();
+		checksum.update(view);
+		return (int) checksum.getValue();
+	}
+
+	/**
+	 * Scans the records of a segment.
+	 *
+	 * @param buffer the segment
+	 * @param listener the listener receiving the trades, or null
+	 * @return the position after the last record, or -1 if the segment ended
+	 *         with {@link #END_OF_SEGMENT}
+	 */
+	private int scan(ByteBuffer buffer, TradeJournalListener listener) {
+		ByteBuffer view = buffer.duplicate();
+		CRC32 checksum = new CRC32();
+		SymbolTable symbols = new SymbolTable();
+		int offset = 0;
+		while (offset + HEADER_BYTES <= buffer.capacity()) {
+			int bodyLength = buffer.getInt(offset);
+			if (bodyLength == END_OF_SEGMENT) {
+				return -1;
+			}
+			int body = offset + HEADER_BYTES;
+			if (bodyLength < END_OF_SEGMENT && -bodyLength >= FIXED_BODY_BYTES
+					&& -bodyLength <= buffer.capacity() - body) {
+				// claimed but never completed
+				offset = body - bodyLength;
+				continue;
+			}
+			if (bodyLength < FIXED_BODY_BYTES || bodyLength > buffer.capacity() - body
+					|| buffer.getShort(body + 26) != bodyLength - FIXED_BODY_BYTES
+					|| checksum(checksum, view, body, bodyLength) != buffer.getInt(offset + 4)) {
+				break;
+			}
+			if (listener != null) {
+				byte side = buffer.get(body + 25);
+				listener.tradeRead(symbols.decode(buffer, body + FIXED_BODY_BYTES, bodyLength - FIXED_BODY_BYTES),
+						buffer.getLong(body), buffer.getLong(body + 8), side == NO_SIDE ? null : SIDES[side],
+						buffer.getLong(body + 16), buffer.get(body + 24));
+			}
+			offset = body + bodyLength;
+		}
+		return offset;
+	}
+
+	/**
+	 * Writes the records claimed by a thread, with its own checksum.
+	 */
+	private static class RecordWriter {
+
+		/** The checksum of the records. */
+		private final CRC32 checksum = new CRC32();
+
+		/** The segment of the last record written, or null. */
+		private MappedByteBuffer segment;
+
+		/** A view of that segment used to compute the checksums. */
+		private ByteBuffer view;
+
+		/**
+		 * Writes a claimed record, its length last.
+		 *
+		 * @param segment the segment of the record
+		 * @param offset the position of the record in the segment
+		 * @param timestamp the time of the trade, in milliseconds since the epoch
+		 * @param quantity the quantity of shares
+		 * @param indicator the buy or sell indicator, may be null
+		 * @param price the unscaled traded price
+		 * @param priceScale the scale of the price
+		 * @param encoded the symbol of the stock, in UTF-8
+		 */
+		void write(MappedByteBuffer segment, int offset, long timestamp, long quantity, BuyOrSell indicator,
+				long price, int priceScale, byte[] encoded) {
+			if (segment != this.segment) {
+				this.segment = segment;
+				this.view = segment.duplicate();
+			}
+			int body = offset + HEADER_BYTES;
+			int bodyLength = FIXED_BODY_BYTES + encoded.length;
+			segment.putLong(body, timestamp);
+			segment.putLong(body + 8, quantity);
+			segment.putLong(body + 16, price);
+			segment.put(body + 24, (byte) priceScale);
+			segment.put(body + 25, indicator == null ? NO_SIDE : (byte) indicator.ordinal());
+			segment.putShort(body + 26, (short) encoded.length);
+			for (int i = 0; i < encoded.length; i++) {
+				segment.put(body + FIXED_BODY_BYTES + i, encoded[i]);
+			}
+			segment.putInt(offset + 4, checksum(this.checksum, this.view, body, bodyLength));
+			segment.putInt(offset, bodyLength);
+		}
+
+	}
+
+	/**
+	 * A listener counting the trades passed to another listener.
+	 */
+	private static class CountingListener implements TradeJournalListener {
+
+		/** The listener receiving the trades. */
+		private final TradeJournalListener listener;
+
+		/** The number of trades read. */
+		private long count;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param listener the listener receiving the trades
+		 */
+		CountingListener(TradeJournalListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void tradeRead(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+				int priceScale) {
+			this.count++;
+			this.listener.tradeRead(symbol, timestamp, quantity, indicator, price, priceScale);
+		}
+
+	}
+
+}
@@ -0,0 +1,25 @@
+package exercise.stock.market.journal;
+
+import exercise.stock.market.model.BuyOrSell;
+
+/**
+ * A listener receiving the trades read back from a {@link TradeJournal}.
+ *
+ * @author DMONEY
+ *
+ */
+public interface TradeJournalListener {
+
+	/**
+	 * Called for each trade of the journal, in the order of the journal.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator, may be null
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price
+	 */
+	void tradeRead(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price, int priceScale);
+
+}
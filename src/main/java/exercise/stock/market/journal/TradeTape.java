@@ -0,0 +1,23 @@
+package exercise.stock.market.journal;
+
+import java.io.IOException;
+
+/**
+ * A recorded sequence of trades which can be read back, e.g. a
+ * {@link TradeJournal} or a file of trades replayed for a backtest.
+ *
+ * @author DMONEY
+ *
+ */
+public interface TradeTape {
+
+	/**
+	 * Reads all the trades of the tape, in order.
+	 *
+	 * @param listener the listener receiving the trades
+	 * @return the number of trades read
+	 * @throws IOException if the tape cannot be read
+	 */
+	long replay(TradeJournalListener listener) throws IOException;
+
+}
@@ -1,12 +1,25 @@
 package exercise.stock.market.model;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import exercise.stock.market.numeric.NumericBackend;
+import exercise.stock.market.store.RetentionPolicy;
+import exercise.stock.market.store.TradeStorage;
+import exercise.stock.market.store.TradeSnapshot;
+import exercise.stock.market.store.TradeStore;
 
 
 /**
  * A base class of stocks.
+ * <p>
+ * The dividend yield and P/E ratio at the current price are cached with the
+ * stock until a value they depend on changes: the setters of the price, the
+ * last dividend and the par value drop them. A subclass whose dividend per
+ * share depends on other values, as {@link PreferredStock} does on its fixed
+ * dividend, must call {@link #invalidateRatios()} when such a value changes,
+ * or the cached ratios stay stale.
  * 
  * @author DMONEY
  *
@@ -17,16 +30,25 @@ public class BaseStock {
 	protected String symbol;
 
 	/** The last dividend value */
-	protected BigDecimal lastDividend;
+	protected volatile BigDecimal lastDividend;
 
 	/** The par value. */
-	protected BigDecimal parValue;
+	protected volatile BigDecimal parValue;
 
 	/** The price of this stock. */
-	protected BigDecimal price;
+	protected volatile BigDecimal price;
+
+	/** The trade records of this stock, in timestamp order. */
+	protected volatile TradeStore tradeRecords;
+
+	/** The listeners notified when the price changes. */
+	private final List<StockPriceListener> priceListeners;
 
-	/** A map of stocks and their trade records. */
-	protected List<TradeRecord> tradeRecords;
+	/** The ratios at the current price and dividends, or null. */
+	private volatile StockRatios cachedRatios;
+
+	/** The number of changes of the values the ratios depend on. */
+	private volatile long ratiosVersion;
 
 	/**
 	 * @param symbol
@@ -40,7 +62,8 @@ public class BaseStock {
 		this.lastDividend = lastDividend;
 		this.parValue = parValue;
 		this.price = price;
-		this.tradeRecords = new ArrayList<TradeRecord>();
+		this.tradeRecords = new TradeStore(symbol);
+		this.priceListeners = new CopyOnWriteArrayList<StockPriceListener>();
 	}
 
 	/**
@@ -55,6 +78,7 @@ public class BaseStock {
 	 */
 	public void setSymbol(String symbol) {
 		this.symbol = symbol;
+		this.tradeRecords.setSymbol(symbol);
 	}
 
 	/**
@@ -67,8 +91,46 @@ public class BaseStock {
 	/**
 	 * @param lastDividend the lastDividend to set
 	 */
-	public void setLastDividend(BigDecimal lastDividend) {
-		this.lastDividend = lastDividend;
+	public synchronized void setLastDividend(BigDecimal lastDividend) {
+		if (!sameValue(this.lastDividend, lastDividend)) {
+			this.lastDividend = lastDividend;
+			invalidateRatios();
+		}
+	}
+
+	/**
+	 * Returns the dividend per share the dividend yield is calculated from. A
+	 * stock paying its dividend differently overrides this method, and calls
+	 * {@link #invalidateRatios()} whenever a value it reads changes.
+	 * 
+	 * @return the last dividend
+	 */
+	public BigDecimal getDividendPerShare() {
+		return this.lastDividend;
+	}
+
+	/**
+	 * Calculates the dividend yield of this stock based on the given price,
+	 * i.e. {@link #getDividendPerShare()} / price. The result precision scale
+	 * is 3 and applies {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * 
+	 * @param price the price used in calculation, positive
+	 * @return the dividend yield
+	 */
+	public BigDecimal getDividendYield(BigDecimal price) {
+		return getDividendYield(price, NumericBackend.BIG_DECIMAL);
+	}
+
+	/**
+	 * Calculates the dividend yield of this stock based on the given price as
+	 * {@link #getDividendYield(BigDecimal)} does, with the given arithmetic.
+	 * 
+	 * @param price the price used in calculation, positive
+	 * @param backend the arithmetic of the division
+	 * @return the dividend yield
+	 */
+	public BigDecimal getDividendYield(BigDecimal price, NumericBackend backend) {
+		return backend.divide(getDividendPerShare(), price, 3);
 	}
 
 	/**
@@ -81,11 +143,17 @@ public class BaseStock {
 	/**
 	 * @param parValue the parValue to set
 	 */
-	public void setParValue(BigDecimal parValue) {
-		this.parValue = parValue;
+	public synchronized void setParValue(BigDecimal parValue) {
+		if (!sameValue(this.parValue, parValue)) {
+			this.parValue = parValue;
+			invalidateRatios();
+		}
 	}
 
 	/**
+	 * Returns the live trade records of this stock, which change as trades are
+	 * recorded; {@link #getTradeSnapshot()} gives a copy to read without lock.
+	 * 
 	 * @return the tradeRecords
 	 */
 	public List<TradeRecord> getTradeRecords() {
@@ -93,16 +161,60 @@ public class BaseStock {
 	}
 
 	/**
+	 * Replaces the trade records of this stock. The records are copied into a
+	 * new {@link TradeStore} in timestamp order, keeping the current retention
+	 * policy, price scale and storage, and the rolling windows, time buckets
+	 * and candle series of the store, rebuilt from the new records, see
+	 * {@link TradeStore#withRecords(java.util.Collection)}.
+	 * 
 	 * @param tradeRecords the tradeRecords to set
 	 */
 	public void setTradeRecords(List<TradeRecord> tradeRecords) {
-		this.tradeRecords = tradeRecords;
+		this.tradeRecords = this.tradeRecords.withRecords(tradeRecords);
+	}
+
+	/**
+	 * @return an immutable snapshot of the trade records, see
+	 *         {@link TradeStore#snapshot()}
+	 */
+	public TradeSnapshot getTradeSnapshot() {
+		return this.tradeRecords.snapshot();
 	}
 
 	/**
-	 * Adds a {@link TradeRecord} to the trade records of this stock.
+	 * @return the {@link TradeStore} holding the trade records
+	 */
+	public TradeStore getTradeStore() {
+		return this.tradeRecords;
+	}
+
+	/**
+	 * Moves the trade records of this stock to the given storage, e.g. off
+	 * the heap for a long trade history. The records are copied into a new
+	 * {@link TradeStore} with the rolling windows, time buckets and candles of
+	 * the store, see {@link TradeStore#copy(TradeStorage)}, so the storage is
+	 * set before trades are recorded from other threads.
 	 * 
-	 * @param tradeRecords the tradeRecords to set
+	 * @param storage the {@link TradeStorage} to use
+	 */
+	public void setTradeStorage(TradeStorage storage) {
+		this.tradeRecords = this.tradeRecords.copy(storage);
+	}
+
+	/**
+	 * Sets the policy deciding how long the trade records are kept.
+	 * 
+	 * @param retentionPolicy the {@link RetentionPolicy} to set
+	 */
+	public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		this.tradeRecords.setRetentionPolicy(retentionPolicy);
+	}
+
+	/**
+	 * Adds a {@link TradeRecord} to the trade records of this stock, in
+	 * timestamp order.
+	 * 
+	 * @param tradeRecord the tradeRecord to add
 	 */
 	public void addTradeRecord(TradeRecord tradeRecord) {
 		this.tradeRecords.add(tradeRecord);
@@ -116,10 +228,101 @@ public class BaseStock {
 	}
 
 	/**
+	 * Sets the price and notifies the {@link StockPriceListener}s. Concurrent
+	 * changes are applied one at a time, so that the listeners see each price
+	 * replaced exactly once.
+	 * 
 	 * @param price the price to set
 	 */
-	public void setPrice(BigDecimal price) {
+	public synchronized void setPrice(BigDecimal price) {
+		BigDecimal oldPrice = this.price;
 		this.price = price;
+		if (!sameValue(oldPrice, price)) {
+			invalidateRatios();
+		}
+		for (StockPriceListener listener : this.priceListeners) {
+			listener.priceChanged(this, oldPrice, price);
+		}
+	}
+
+	/**
+	 * @return the ratios cached at the current price and dividends, or null if
+	 *         a value changed since they were cached
+	 */
+	public StockRatios getCachedRatios() {
+		return cachedRatios;
+	}
+
+	/**
+	 * Returns the number of changes of the price and dividends so far. It is
+	 * read before the values the ratios are calculated from, and passed to
+	 * {@link #cacheRatios(StockRatios, long)}.
+	 * 
+	 * @return the version of the values the ratios depend on
+	 */
+	public long getRatiosVersion() {
+		return ratiosVersion;
+	}
+
+	/**
+	 * Caches the ratios calculated at the current price and dividends. The
+	 * ratios are dropped if a value changed since the given version was read.
+	 * 
+	 * @param ratios the ratios to cache
+	 * @param version the {@link #getRatiosVersion()} read before the values
+	 *            the ratios are calculated from
+	 * @return true if the ratios were cached
+	 */
+	public synchronized boolean cacheRatios(StockRatios ratios, long version) {
+		if (version != this.ratiosVersion) {
+			return false;
+		}
+		this.cachedRatios = ratios;
+		return true;
+	}
+
+	/**
+	 * Drops the cached ratios, after a value they depend on changed. The
+	 * setters of this class call it; a subclass calls it from the setter of
+	 * any other value {@link #getDividendPerShare()} depends on, after
+	 * changing the value. The lock of this stock must be held, e.g. from a
+	 * {@code synchronized} setter.
+	 */
+	protected void invalidateRatios() {
+		this.ratiosVersion++;
+		this.cachedRatios = null;
+	}
+
+	/**
+	 * Checks whether two values are equal, ignoring their scale.
+	 * 
+	 * @param first the first value, or null
+	 * @param second the second value, or null
+	 * @return true if both are null or equal in value
+	 */
+	protected static boolean sameValue(BigDecimal first, BigDecimal second) {
+		if (first == second) {
+			return true;
+		}
+		return first != null && second != null && first.compareTo(second) == 0;
+	}
+
+	/**
+	 * Adds a listener notified when the price of this stock changes.
+	 * 
+	 * @param listener the {@link StockPriceListener} to add
+	 */
+	public void addPriceListener(StockPriceListener listener) {
+		this.priceListeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener added by {@link #addPriceListener(StockPriceListener)}.
+	 * 
+	 * @param listener the {@link StockPriceListener} to remove
+	 */
+	public void removePriceListener(StockPriceListener listener) {
+		this.priceListeners.remove(listener);
 	}
 
 }
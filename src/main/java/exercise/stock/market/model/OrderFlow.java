@@ -0,0 +1,124 @@
+package exercise.stock.market.model;
+
+import java.math.BigDecimal;
+
+/**
+ * The buy and sell volumes and prices of the trades of a stock within a time
+ * window, split by {@link BuyOrSell} indicator. The trades without indicator
+ * are on neither side. Instances are immutable.
+ *
+ * @author DMONEY
+ *
+ */
+public class OrderFlow {
+
+	/** The length of the window, in milliseconds. */
+	private final long windowMillis;
+
+	/** The number of buy trades. */
+	private final int buyTradeCount;
+
+	/** The number of sell trades. */
+	private final int sellTradeCount;
+
+	/** The quantity of shares bought. */
+	private final long buyVolume;
+
+	/** The quantity of shares sold. */
+	private final long sellVolume;
+
+	/** The volume weighted price of the buy trades. */
+	private final BigDecimal buyVolumeWeightedPrice;
+
+	/** The volume weighted price of the sell trades. */
+	private final BigDecimal sellVolumeWeightedPrice;
+
+	/** The order flow imbalance. */
+	private final BigDecimal imbalance;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param windowMillis the length of the window, in milliseconds
+	 * @param buyTradeCount the number of buy trades
+	 * @param sellTradeCount the number of sell trades
+	 * @param buyVolume the quantity of shares bought
+	 * @param sellVolume the quantity of shares sold
+	 * @param buyVolumeWeightedPrice the volume weighted price of the buy trades
+	 * @param sellVolumeWeightedPrice the volume weighted price of the sell
+	 *            trades
+	 * @param imbalance the order flow imbalance
+	 */
+	public OrderFlow(long windowMillis, int buyTradeCount, int sellTradeCount, long buyVolume, long sellVolume,
+			BigDecimal buyVolumeWeightedPrice, BigDecimal sellVolumeWeightedPrice, BigDecimal imbalance) {
+		this.windowMillis = windowMillis;
+		this.buyTradeCount = buyTradeCount;
+		this.sellTradeCount = sellTradeCount;
+		this.buyVolume = buyVolume;
+		this.sellVolume = sellVolume;
+		this.buyVolumeWeightedPrice = buyVolumeWeightedPrice;
+		this.sellVolumeWeightedPrice = sellVolumeWeightedPrice;
+		this.imbalance = imbalance;
+	}
+
+	/**
+	 * @return the length of the window, in milliseconds
+	 */
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * @return the number of buy trades
+	 */
+	public int getBuyTradeCount() {
+		return buyTradeCount;
+	}
+
+	/**
+	 * @return the number of sell trades
+	 */
+	public int getSellTradeCount() {
+		return sellTradeCount;
+	}
+
+	/**
+	 * @return the quantity of shares bought
+	 */
+	public long getBuyVolume() {
+		return buyVolume;
+	}
+
+	/**
+	 * @return the quantity of shares sold
+	 */
+	public long getSellVolume() {
+		return sellVolume;
+	}
+
+	/**
+	 * @return the volume weighted price of the buy trades, with 0 scale, or
+	 *         zero if there is no buy trade
+	 */
+	public BigDecimal getBuyVolumeWeightedPrice() {
+		return buyVolumeWeightedPrice;
+	}
+
+	/**
+	 * @return the volume weighted price of the sell trades, with 0 scale, or
+	 *         zero if there is no sell trade
+	 */
+	public BigDecimal getSellVolumeWeightedPrice() {
+		return sellVolumeWeightedPrice;
+	}
+
+	/**
+	 * @return the order flow imbalance
+	 *         {@code (buyVolume - sellVolume) / (buyVolume + sellVolume)},
+	 *         between -1 and 1, or zero if there is no buy or sell trade
+	 */
+	public BigDecimal getImbalance() {
+		return imbalance;
+	}
+
+}
@@ -10,7 +10,7 @@ import java.math.BigDecimal;
 public class PreferredStock extends BaseStock{
 
 	/** The fixed dividend value. */
-	private BigDecimal fixedDividend;
+	private volatile BigDecimal fixedDividend;
 
 	public PreferredStock(String symbol, BigDecimal lastDividend, BigDecimal parValue, BigDecimal price, BigDecimal fixedDividend) {
 		super(symbol, lastDividend, parValue, price);
@@ -24,11 +24,24 @@ public class PreferredStock extends BaseStock{
 		return fixedDividend;
 	}
 
+	/**
+	 * Returns the fixed dividend applied to the par value.
+	 * 
+	 * @return fixed dividend * par value
+	 */
+	@Override
+	public BigDecimal getDividendPerShare() {
+		return this.fixedDividend.multiply(this.parValue);
+	}
+
 	/**
 	 * @param fixedDividend the fixedDividend to set
 	 */
-	public void setFixedDividend(BigDecimal fixedDividend) {
-		this.fixedDividend = fixedDividend;
+	public synchronized void setFixedDividend(BigDecimal fixedDividend) {
+		if (!sameValue(this.fixedDividend, fixedDividend)) {
+			this.fixedDividend = fixedDividend;
+			invalidateRatios();
+		}
 	}
 	
 }
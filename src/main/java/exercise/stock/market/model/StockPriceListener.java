@@ -0,0 +1,22 @@
+package exercise.stock.market.model;
+
+import java.math.BigDecimal;
+
+/**
+ * A listener notified when the price of a {@link BaseStock} changes.
+ * 
+ * @author DMONEY
+ *
+ */
+public interface StockPriceListener {
+
+	/**
+	 * Called after the price of a stock changed.
+	 * 
+	 * @param stock the stock whose price changed
+	 * @param oldPrice the price before the change
+	 * @param newPrice the price after the change
+	 */
+	void priceChanged(BaseStock stock, BigDecimal oldPrice, BigDecimal newPrice);
+
+}
@@ -0,0 +1,59 @@
+package exercise.stock.market.model;
+
+import java.math.BigDecimal;
+
+/**
+ * The dividend yield and P/E ratio of a stock at a given price. Instances are
+ * immutable, so they can be cached by the stock and shared between threads.
+ *
+ * @author DMONEY
+ *
+ */
+public class StockRatios {
+
+	/** The price the ratios are calculated at. */
+	private final BigDecimal price;
+
+	/** The dividend yield, or null if it cannot be calculated. */
+	private final BigDecimal dividendYield;
+
+	/** The P/E ratio, or null if it cannot be calculated. */
+	private final BigDecimal peRatio;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param price the price the ratios are calculated at
+	 * @param dividendYield the dividend yield, or null if it cannot be
+	 *            calculated
+	 * @param peRatio the P/E ratio, or null if it cannot be calculated
+	 */
+	public StockRatios(BigDecimal price, BigDecimal dividendYield, BigDecimal peRatio) {
+		this.price = price;
+		this.dividendYield = dividendYield;
+		this.peRatio = peRatio;
+	}
+
+	/**
+	 * @return the price the ratios are calculated at
+	 */
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	/**
+	 * @return the dividend yield, or null if the price is not positive
+	 */
+	public BigDecimal getDividendYield() {
+		return dividendYield;
+	}
+
+	/**
+	 * @return the P/E ratio, or null if the price or the last dividend is not
+	 *         positive
+	 */
+	public BigDecimal getPERatio() {
+		return peRatio;
+	}
+
+}
@@ -118,5 +118,46 @@ public class TradeRecord {
 		return price;
 	}
 
+	/**
+	 * Compares the values of two trade records. The prices are compared by
+	 * value, so that 10 and 10.00 are equal, since a record read from a
+	 * {@link exercise.stock.market.store.TradeStore} is created from the
+	 * stored fixed point price.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof TradeRecord)) {
+			return false;
+		}
+		TradeRecord other = (TradeRecord) obj;
+		return equal(this.stockSymbol, other.stockSymbol) && equal(this.timestamp, other.timestamp)
+				&& equal(this.quantity, other.quantity) && this.indicator == other.indicator
+				&& (this.price == null ? other.price == null
+						: other.price != null && this.price.compareTo(other.price) == 0);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = this.stockSymbol == null ? 0 : this.stockSymbol.hashCode();
+		result = 31 * result + (this.timestamp == null ? 0 : this.timestamp.hashCode());
+		result = 31 * result + (this.quantity == null ? 0 : this.quantity.hashCode());
+		result = 31 * result + (this.indicator == null ? 0 : this.indicator.hashCode());
+		result = 31 * result + (this.price == null ? 0 : this.price.stripTrailingZeros().hashCode());
+		return result;
+	}
+
+	/**
+	 * Compares two values which may be null.
+	 *
+	 * @param first the first value
+	 * @param second the second value
+	 * @return true if both are null or equal
+	 */
+	private static boolean equal(Object first, Object second) {
+		return first == null ? second == null : first.equals(second);
+	}
 
 }
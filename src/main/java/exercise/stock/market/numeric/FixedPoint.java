@@ -0,0 +1,115 @@
+package exercise.stock.market.numeric;
+
+import java.math.BigDecimal;
+
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * Conversions between {@link BigDecimal} values and fixed point values, i.e.
+ * {@code long} unscaled values with an implied decimal scale.
+ *
+ * @author DMONEY
+ *
+ */
+public class FixedPoint {
+
+	/** The largest scale supported, so that 10^scale fits in a {@code long}. */
+	public static final int MAX_SCALE = 18;
+
+	/** The powers of ten from 10^0 to 10^{@link #MAX_SCALE}. */
+	private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i <= MAX_SCALE; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * Returns 10 to the power of the given exponent.
+	 *
+	 * @param exponent the exponent, from 0 to {@link #MAX_SCALE}
+	 * @return 10^exponent
+	 */
+	public static long powerOfTen(int exponent) {
+		return POWERS_OF_TEN[exponent];
+	}
+
+	/**
+	 * Checks that a scale is supported.
+	 *
+	 * @param scale the scale to check
+	 * @return the scale
+	 */
+	public static int checkScale(int scale) {
+		if (scale < 0 || scale > MAX_SCALE) {
+			throw new InvalidValueException("Unsupported fixed point scale: " + scale);
+		}
+		return scale;
+	}
+
+	/**
+	 * Converts a value to its unscaled value at the given scale. The value must
+	 * be representable exactly.
+	 *
+	 * @param value the value to convert
+	 * @param scale the scale of the result
+	 * @return the unscaled value, i.e. value * 10^scale
+	 */
+	public static long toUnscaled(BigDecimal value, int scale) {
+		if (value == null) {
+			throw new InvalidValueException("Found null value.");
+		}
+		try {
+			return value.setScale(scale).unscaledValue().longValueExact();
+		} catch (ArithmeticException e) {
+			throw new InvalidValueException("The value " + value + " cannot be represented with scale " + scale);
+		}
+	}
+
+	/**
+	 * Converts an unscaled value to a {@link BigDecimal}, without the trailing
+	 * zeros of the fraction.
+	 *
+	 * @param unscaled the unscaled value
+	 * @param scale the scale of the unscaled value
+	 * @return the value as a {@link BigDecimal}, with a non-negative scale
+	 */
+	public static BigDecimal toBigDecimal(long unscaled, int scale) {
+		while (scale > 0 && unscaled % 10 == 0) {
+			unscaled /= 10;
+			scale--;
+		}
+		return BigDecimal.valueOf(unscaled, scale);
+	}
+
+	/**
+	 * Converts an unscaled value from a scale to another. The value must be
+	 * representable exactly at the target scale.
+	 *
+	 * @param unscaled the unscaled value
+	 * @param fromScale the scale of the unscaled value
+	 * @param toScale the scale of the result
+	 * @return the unscaled value at the target scale
+	 */
+	public static long rescale(long unscaled, int fromScale, int toScale) {
+		if (fromScale == toScale) {
+			return unscaled;
+		}
+		try {
+			if (toScale > fromScale) {
+				return Math.multiplyExact(unscaled, powerOfTen(checkScale(toScale - fromScale)));
+			}
+			long divisor = powerOfTen(checkScale(fromScale - toScale));
+			if (unscaled % divisor == 0) {
+				return unscaled / divisor;
+			}
+		} catch (ArithmeticException e) {
+			// reported below
+		}
+		throw new InvalidValueException(
+				"The value " + BigDecimal.valueOf(unscaled, fromScale) + " cannot be represented with scale " + toScale);
+	}
+
+}
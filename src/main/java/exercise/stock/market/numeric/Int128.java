@@ -0,0 +1,343 @@
+package exercise.stock.market.numeric;
+
+import java.math.BigInteger;
+
+/**
+ * A mutable signed 128-bit integer, used to accumulate products of two
+ * {@code long} values without allocating.
+ *
+ * @author DMONEY
+ *
+ */
+public class Int128 {
+
+	/** The high 64 bits, carrying the sign. */
+	private long high;
+
+	/** The low 64 bits, unsigned. */
+	private long low;
+
+	/**
+	 * Constructor. The value is zero.
+	 */
+	public Int128() {
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param value the initial value
+	 */
+	public Int128(long value) {
+		set(value);
+	}
+
+	/**
+	 * @return the high 64 bits, carrying the sign
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return the low 64 bits, unsigned
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	/**
+	 * Sets the value.
+	 *
+	 * @param value the value to set
+	 * @return this
+	 */
+	public Int128 set(long value) {
+		this.high = value >> 63;
+		this.low = value;
+		return this;
+	}
+
+	/**
+	 * Sets the value.
+	 *
+	 * @param value the value to set
+	 * @return this
+	 */
+	public Int128 set(Int128 value) {
+		this.high = value.high;
+		this.low = value.low;
+		return this;
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param value the value to add
+	 * @return this
+	 * @throws ArithmeticException if the result overflows 128 bits
+	 */
+	public Int128 add(long value) {
+		return add(value >> 63, value);
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param value the value to add
+	 * @return this
+	 * @throws ArithmeticException if the result overflows 128 bits
+	 */
+	public Int128 add(Int128 value) {
+		return add(value.high, value.low);
+	}
+
+	/**
+	 * Adds the product of two values.
+	 *
+	 * @param first the first factor
+	 * @param second the second factor
+	 * @return this
+	 * @throws ArithmeticException if the result overflows 128 bits
+	 */
+	public Int128 addProduct(long first, long second) {
+		return add(multiplyHigh(first, second), first * second);
+	}
+
+	/**
+	 * Subtracts the product of two values.
+	 *
+	 * @param first the first factor
+	 * @param second the second factor
+	 * @return this
+	 * @throws ArithmeticException if the result overflows 128 bits
+	 */
+	public Int128 subtractProduct(long first, long second) {
+		long productLow = first * second;
+		long productHigh = multiplyHigh(first, second);
+		return add(~productHigh + (productLow == 0 ? 1 : 0), -productLow);
+	}
+
+	/**
+	 * Multiplies by a value.
+	 *
+	 * @param factor the factor
+	 * @return this
+	 * @throws ArithmeticException if the result overflows 128 bits
+	 */
+	public Int128 multiply(long factor) {
+		boolean negative = (this.high < 0) != (factor < 0);
+		if (this.high < 0) {
+			negate();
+		}
+		long magnitude = Math.abs(factor);
+		// the magnitudes are multiplied as unsigned values
+		long productLow = this.low * magnitude;
+		long highProduct = this.high * magnitude;
+		long productHigh = highProduct + unsignedMultiplyHigh(this.low, magnitude);
+		boolean overflow = unsignedMultiplyHigh(this.high, magnitude) != 0
+				|| Long.compareUnsigned(highProduct, productHigh) > 0;
+		// the magnitude of a negative product may be 2^127
+		if (overflow || productHigh < 0 && (!negative || productHigh != Long.MIN_VALUE || productLow != 0)) {
+			throw new ArithmeticException("Int128 overflow");
+		}
+		this.high = productHigh;
+		this.low = productLow;
+		if (negative) {
+			negate();
+		}
+		return this;
+	}
+
+	/**
+	 * Divides by a value, the quotient being rounded towards zero as the
+	 * division of {@code long} values is.
+	 *
+	 * @param divisor the divisor
+	 * @return the remainder, with the sign of the dividend
+	 * @throws ArithmeticException if the divisor is zero, or the quotient
+	 *             overflows 128 bits
+	 */
+	public long divide(long divisor) {
+		if (divisor == 0) {
+			throw new ArithmeticException("/ by zero");
+		}
+		boolean negativeDividend = this.high < 0;
+		boolean negative = negativeDividend != (divisor < 0);
+		if (negativeDividend) {
+			negate();
+		}
+		long magnitude = Math.abs(divisor);
+		// the magnitudes are divided as unsigned values, the high half first
+		long quotientHigh = Long.divideUnsigned(this.high, magnitude);
+		long remainder = Long.remainderUnsigned(this.high, magnitude);
+		long quotientLow = divideUnsigned(remainder, this.low, magnitude);
+		remainder = this.low - quotientLow * magnitude;
+		if (quotientHigh < 0 && !negative) {
+			throw new ArithmeticException("Int128 overflow");
+		}
+		this.high = quotientHigh;
+		this.low = quotientLow;
+		if (negative) {
+			negate();
+		}
+		return negativeDividend ? -remainder : remainder;
+	}
+
+	/**
+	 * @return -1, 0 or 1 as the value is negative, zero or positive
+	 */
+	public int signum() {
+		if (this.high != 0) {
+			return this.high < 0 ? -1 : 1;
+		}
+		return this.low == 0 ? 0 : 1;
+	}
+
+	/**
+	 * @return true if the value fits in a {@code long}
+	 */
+	public boolean fitsInLong() {
+		return this.high == this.low >> 63;
+	}
+
+	/**
+	 * @return the low 64 bits of the value, as a signed {@code long}
+	 */
+	public long longValue() {
+		return this.low;
+	}
+
+	/**
+	 * @return the value as a {@link BigInteger}
+	 */
+	public BigInteger toBigInteger() {
+		if (fitsInLong()) {
+			return BigInteger.valueOf(this.low);
+		}
+		return BigInteger.valueOf(this.high).shiftLeft(64).add(BigInteger.valueOf(this.low >>> 1).shiftLeft(1))
+				.add(BigInteger.valueOf(this.low & 1));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Int128)) {
+			return false;
+		}
+		Int128 other = (Int128) obj;
+		return this.high == other.high && this.low == other.low;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (this.high ^ (this.high >>> 32) ^ this.low ^ (this.low >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return toBigInteger().toString();
+	}
+
+	/**
+	 * Returns the high 64 bits of the 128-bit product of two values.
+	 *
+	 * @param first the first factor
+	 * @param second the second factor
+	 * @return the high 64 bits of the product
+	 */
+	public static long multiplyHigh(long first, long second) {
+		long first1 = first >> 32;
+		long first2 = first & 0xFFFFFFFFL;
+		long second1 = second >> 32;
+		long second2 = second & 0xFFFFFFFFL;
+		long low = first2 * second2;
+		long middle = first1 * second2 + (low >>> 32);
+		long middle1 = middle & 0xFFFFFFFFL;
+		long middle2 = middle >> 32;
+		middle1 += first2 * second1;
+		return first1 * second1 + middle2 + (middle1 >> 32);
+	}
+
+	/**
+	 * Returns the high 64 bits of the 128-bit product of two unsigned values.
+	 *
+	 * @param first the first factor, unsigned
+	 * @param second the second factor, unsigned
+	 * @return the high 64 bits of the unsigned product
+	 */
+	private static long unsignedMultiplyHigh(long first, long second) {
+		return multiplyHigh(first, second) + ((first >> 63) & second) + ((second >> 63) & first);
+	}
+
+	/**
+	 * Divides an unsigned 128-bit value by an unsigned 64-bit value, the
+	 * quotient fitting in 64 bits, with the two-digit long division of
+	 * Hacker's Delight (divlu) on 32-bit digits.
+	 *
+	 * @param dividendHigh the high 64 bits of the dividend, below the divisor
+	 * @param dividendLow the low 64 bits of the dividend
+	 * @param divisor the divisor, unsigned
+	 * @return the unsigned quotient
+	 */
+	private static long divideUnsigned(long dividendHigh, long dividendLow, long divisor) {
+		if (dividendHigh == 0) {
+			return Long.divideUnsigned(dividendLow, divisor);
+		}
+		long base = 1L << 32;
+		// normalizes the divisor so that its highest bit is set
+		int shift = Long.numberOfLeadingZeros(divisor);
+		long normalized = divisor << shift;
+		long divisorHigh = normalized >>> 32;
+		long divisorLow = normalized & 0xFFFFFFFFL;
+		long high = shift == 0 ? dividendHigh : dividendHigh << shift | dividendLow >>> (64 - shift);
+		long low = dividendLow << shift;
+		long lowHigh = low >>> 32;
+		long lowLow = low & 0xFFFFFFFFL;
+
+		long quotientHigh = Long.divideUnsigned(high, divisorHigh);
+		long rest = high - quotientHigh * divisorHigh;
+		while (quotientHigh >= base || Long.compareUnsigned(quotientHigh * divisorLow, rest << 32 | lowHigh) > 0) {
+			quotientHigh--;
+			rest += divisorHigh;
+			if (rest >= base) {
+				break;
+			}
+		}
+		long middle = (high << 32 | lowHigh) - quotientHigh * normalized;
+
+		long quotientLow = Long.divideUnsigned(middle, divisorHigh);
+		rest = middle - quotientLow * divisorHigh;
+		while (quotientLow >= base || Long.compareUnsigned(quotientLow * divisorLow, rest << 32 | lowLow) > 0) {
+			quotientLow--;
+			rest += divisorHigh;
+			if (rest >= base) {
+				break;
+			}
+		}
+		return quotientHigh << 32 | quotientLow;
+	}
+
+	/**
+	 * Negates the value, -2^127 being left unchanged.
+	 */
+	private void negate() {
+		this.high = ~this.high + (this.low == 0 ? 1 : 0);
+		this.low = -this.low;
+	}
+
+	/**
+	 * Adds a 128-bit value given as two halves.
+	 *
+	 * @param valueHigh the high 64 bits of the value
+	 * @param valueLow the low 64 bits of the value
+	 * @return this
+	 */
+	private Int128 add(long valueHigh, long valueLow) {
+		long sumLow = this.low + valueLow;
+		long carry = Long.compareUnsigned(sumLow, this.low) < 0 ? 1 : 0;
+		this.high = Math.addExact(Math.addExact(this.high, valueHigh), carry);
+		this.low = sumLow;
+		return this;
+	}
+
+}
@@ -0,0 +1,226 @@
+package exercise.stock.market.numeric;
+
+import java.math.BigDecimal;
+
+/**
+ * The arithmetic the divisions of a
+ * {@link exercise.stock.market.service.StockMarketService} are calculated
+ * with. Both backends follow the precision rules of the service: the quotient
+ * is rounded to {@link #PRECISION_SCALE} decimal places, then to the scale of
+ * the result, and they return equal values with equal scales.
+ *
+ * @author DMONEY
+ *
+ */
+public enum NumericBackend {
+
+	/** {@link BigDecimal} arithmetic, as originally implemented. */
+	BIG_DECIMAL {
+		@Override
+		public BigDecimal divide(BigDecimal dividend, BigDecimal divisor, int scale) {
+			return dividend.divide(divisor, PRECISION_SCALE, BigDecimal.ROUND_HALF_EVEN).setScale(scale,
+					BigDecimal.ROUND_HALF_EVEN);
+		}
+
+		@Override
+		public BigDecimal volumeWeightedPrice(Int128 priceQuantitySum, int priceScale, long quantitySum) {
+			BigDecimal value = new BigDecimal(priceQuantitySum.toBigInteger(), priceScale)
+					.divide(BigDecimal.valueOf(quantitySum), PRECISION_SCALE, BigDecimal.ROUND_FLOOR);
+			return value.setScale(0, BigDecimal.ROUND_HALF_EVEN);
+		}
+	},
+
+	/**
+	 * Fixed point arithmetic on the unscaled {@code long} values, the
+	 * dividends being scaled in 128 bits. A value with more than 18 digits, or
+	 * a quotient beyond the {@code long} range, is calculated by
+	 * {@link #BIG_DECIMAL} instead.
+	 */
+	FIXED_POINT {
+		@Override
+		public BigDecimal divide(BigDecimal dividend, BigDecimal divisor, int scale) {
+			// the quotient of the unscaled values is scaled by 10^shift
+			long shift = (long) PRECISION_SCALE - dividend.scale() + divisor.scale();
+			if (dividend.precision() > FixedPoint.MAX_SCALE || divisor.precision() > FixedPoint.MAX_SCALE
+					|| divisor.signum() == 0 || scale < 0 || scale > PRECISION_SCALE
+					|| Math.abs(shift) > FixedPoint.MAX_SCALE) {
+				return BIG_DECIMAL.divide(dividend, divisor, scale);
+			}
+			long value = divideUnscaled(unscaledValue(dividend), unscaledValue(divisor), (int) shift);
+			if (value == Long.MIN_VALUE) {
+				return BIG_DECIMAL.divide(dividend, divisor, scale);
+			}
+			if (scale < PRECISION_SCALE) {
+				long power = FixedPoint.powerOfTen(PRECISION_SCALE - scale);
+				value = roundHalfEven(value / power, value % power, power);
+			}
+			return BigDecimal.valueOf(value, scale);
+		}
+
+		@Override
+		public BigDecimal volumeWeightedPrice(Int128 priceQuantitySum, int priceScale, long quantitySum) {
+			if (quantitySum <= 0 || priceScale < 0 || priceScale > PRECISION_SCALE + FixedPoint.MAX_SCALE) {
+				return BIG_DECIMAL.volumeWeightedPrice(priceQuantitySum, priceScale, quantitySum);
+			}
+			if (priceScale <= PRECISION_SCALE && priceQuantitySum.fitsInLong()) {
+				long sum = priceQuantitySum.longValue();
+				long power = FixedPoint.powerOfTen(PRECISION_SCALE - priceScale);
+				long scaledSum = sum * power;
+				if (Int128.multiplyHigh(sum, power) == scaledSum >> 63) {
+					long value = Math.floorDiv(scaledSum, quantitySum);
+					long precision = FixedPoint.powerOfTen(PRECISION_SCALE);
+					return BigDecimal.valueOf(roundHalfEven(value / precision, value % precision, precision));
+				}
+			}
+			Int128 quotient = new Int128().set(priceQuantitySum);
+			try {
+				if (priceScale <= PRECISION_SCALE) {
+					quotient.multiply(FixedPoint.powerOfTen(PRECISION_SCALE - priceScale));
+					floor(quotient, quotient.divide(quantitySum));
+				} else {
+					// floor(floor(x / a) / b) == floor(x / (a * b)) for positive a and b
+					floor(quotient, quotient.divide(quantitySum));
+					floor(quotient, quotient.divide(FixedPoint.powerOfTen(priceScale - PRECISION_SCALE)));
+				}
+			} catch (ArithmeticException e) {
+				return BIG_DECIMAL.volumeWeightedPrice(priceQuantitySum, priceScale, quantitySum);
+			}
+			if (!quotient.fitsInLong()) {
+				return BIG_DECIMAL.volumeWeightedPrice(priceQuantitySum, priceScale, quantitySum);
+			}
+			long value = quotient.longValue();
+			long power = FixedPoint.powerOfTen(PRECISION_SCALE);
+			return BigDecimal.valueOf(roundHalfEven(value / power, value % power, power));
+		}
+	};
+
+	/** The scale the quotients are rounded to before the scale of the result. */
+	public static final int PRECISION_SCALE = 7;
+
+	/**
+	 * Divides two values, rounding the quotient to {@link #PRECISION_SCALE}
+	 * decimal places, then to the given scale, with
+	 * {@link BigDecimal#ROUND_HALF_EVEN}.
+	 *
+	 * @param dividend the dividend
+	 * @param divisor the divisor
+	 * @param scale the scale of the result, at most {@link #PRECISION_SCALE}
+	 *            for the rounding to be the same in both backends
+	 * @return the quotient, with the given scale
+	 * @throws ArithmeticException if the divisor is zero
+	 */
+	public abstract BigDecimal divide(BigDecimal dividend, BigDecimal divisor, int scale);
+
+	/**
+	 * Calculates a volume weighted price from the totals of a window: the
+	 * quotient of the sums is rounded to {@link #PRECISION_SCALE} decimal
+	 * places with {@link BigDecimal#ROUND_FLOOR}, then to 0 scale with
+	 * {@link BigDecimal#ROUND_HALF_EVEN}.
+	 *
+	 * @param priceQuantitySum the sum of price * quantity, as a fixed point
+	 *            value with the price scale; it is left unchanged
+	 * @param priceScale the scale of the prices
+	 * @param quantitySum the sum of quantity, positive
+	 * @return the volume weighted price, with 0 scale
+	 */
+	public abstract BigDecimal volumeWeightedPrice(Int128 priceQuantitySum, int priceScale, long quantitySum);
+
+	/**
+	 * Divides two unscaled values, the quotient being multiplied by a power of
+	 * ten and rounded with {@link BigDecimal#ROUND_HALF_EVEN}. The division is
+	 * kept small, so that it is inlined with the conversions of the operands:
+	 * once compiled, the escape analysis of the JIT compiler can then remove
+	 * the {@link BigDecimal}s these create, see {@link #unscaledValue(BigDecimal)}.
+	 *
+	 * @param dividend the dividend
+	 * @param divisor the divisor, not zero
+	 * @param shift the exponent of the power of ten, from -18 to 18
+	 * @return the rounded quotient, or {@link Long#MIN_VALUE} if it does not
+	 *         fit in a {@code long}
+	 */
+	private static long divideUnscaled(long dividend, long divisor, int shift) {
+		if (shift < 0) {
+			long power = FixedPoint.powerOfTen(-shift);
+			long scaledDivisor = divisor * power;
+			if (Int128.multiplyHigh(divisor, power) != scaledDivisor >> 63) {
+				return Long.MIN_VALUE;
+			}
+			return roundHalfEven(dividend / scaledDivisor, dividend % scaledDivisor, scaledDivisor);
+		}
+		long power = FixedPoint.powerOfTen(shift);
+		long scaledDividend = dividend * power;
+		if (Int128.multiplyHigh(dividend, power) != scaledDividend >> 63) {
+			return divideWide(dividend, power, divisor);
+		}
+		return roundHalfEven(scaledDividend / divisor, scaledDividend % divisor, divisor);
+	}
+
+	/**
+	 * Divides an unscaled value multiplied by a power of ten beyond the
+	 * {@code long} range, in 128 bits.
+	 *
+	 * @param dividend the dividend
+	 * @param power the power of ten the dividend is multiplied by
+	 * @param divisor the divisor, not zero
+	 * @return the quotient rounded with {@link BigDecimal#ROUND_HALF_EVEN}, or
+	 *         {@link Long#MIN_VALUE} if it does not fit in a {@code long}
+	 */
+	private static long divideWide(long dividend, long power, long divisor) {
+		Int128 quotient = new Int128(dividend).multiply(power);
+		long remainder = quotient.divide(divisor);
+		return quotient.fitsInLong() ? roundHalfEven(quotient.longValue(), remainder, divisor) : Long.MIN_VALUE;
+	}
+
+	/**
+	 * Gets the unscaled value of a value of at most 18 digits, without
+	 * creating a {@link java.math.BigInteger}. {@link BigDecimal} has no
+	 * accessor of its unscaled {@code long}: a value with a scale other than
+	 * 0 is converted to a {@link BigDecimal} of scale 0, which is allocated
+	 * unless the JIT compiler removes it once the caller is compiled. A value
+	 * of scale 0 is read without creating any object.
+	 *
+	 * @param value the value
+	 * @return the unscaled value
+	 */
+	private static long unscaledValue(BigDecimal value) {
+		if (value.scale() == 0) {
+			return value.longValueExact();
+		}
+		return value.scaleByPowerOfTen(value.scale()).longValueExact();
+	}
+
+	/**
+	 * Rounds a quotient rounded towards zero to the nearest value, and to the
+	 * even value on a tie.
+	 *
+	 * @param quotient the quotient rounded towards zero
+	 * @param remainder the remainder, with the sign of the dividend
+	 * @param divisor the divisor, below 2^63 in magnitude
+	 * @return the rounded quotient
+	 */
+	private static long roundHalfEven(long quotient, long remainder, long divisor) {
+		if (remainder == 0) {
+			return quotient;
+		}
+		long rest = Math.abs(remainder);
+		long distance = Math.abs(divisor) - rest;
+		if (rest > distance || rest == distance && (quotient & 1) != 0) {
+			return (remainder < 0) != (divisor < 0) ? quotient - 1 : quotient + 1;
+		}
+		return quotient;
+	}
+
+	/**
+	 * Rounds a quotient rounded towards zero, with a positive divisor, towards
+	 * negative infinity.
+	 *
+	 * @param quotient the quotient, changed in place
+	 * @param remainder the remainder, with the sign of the dividend
+	 */
+	private static void floor(Int128 quotient, long remainder) {
+		if (remainder < 0) {
+			quotient.add(-1);
+		}
+	}
+
+}
@@ -0,0 +1,338 @@
+package exercise.stock.market.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import exercise.stock.market.journal.SymbolTable;
+import exercise.stock.market.journal.TradeJournalListener;
+import exercise.stock.market.journal.TradeTape;
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.numeric.FixedPoint;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A file of trades in CSV, one trade per line:
+ *
+ * <pre>
+ * timestamp,symbol,quantity,side,price
+ * </pre>
+ *
+ * with the timestamp in milliseconds since the epoch, the side {@code BUY},
+ * {@code SELL}, {@code B}, {@code S} or empty, and the price a decimal number
+ * of up to {@link FixedPoint#MAX_SCALE} decimal places. A first line which does
+ * not start with a digit is taken as a header and skipped.
+ * <p>
+ * The file is read through a {@link FileChannel} into a reused buffer and the
+ * fields are parsed from the bytes, so that reading a trade creates no object
+ * but the symbol the first time it is seen.
+ *
+ * @author DMONEY
+ *
+ */
+public class CsvTradeTape implements TradeTape {
+
+	/** The default size of the read buffer, which bounds the length of a line. */
+	public static final int DEFAULT_BUFFER_BYTES = 1 << 20;
+
+	/** The path of the file. */
+	private final Path path;
+
+	/** The size of the read buffer. */
+	private final int bufferBytes;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path the path of the file
+	 */
+	public CsvTradeTape(Path path) {
+		this(path, DEFAULT_BUFFER_BYTES);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path the path of the file
+	 * @param bufferBytes the size of the read buffer, at least the length of
+	 *            the longest line
+	 */
+	public CsvTradeTape(Path path, int bufferBytes) {
+		if (bufferBytes <= 0) {
+			throw new InvalidValueException("Found non-positive buffer size: " + bufferBytes);
+		}
+		this.path = path;
+		this.bufferBytes = bufferBytes;
+	}
+
+	/**
+	 * @return the path of the file
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Reads all the trades of the file, in the order of the lines.
+	 *
+	 * @param listener the listener receiving the trades
+	 * @return the number of trades read
+	 * @throws IOException if the file cannot be read
+	 * @throws InvalidValueException if a line is malformed
+	 */
+	@Override
+	public long replay(TradeJournalListener listener) throws IOException {
+		Parser parser = new Parser(listener);
+		ByteBuffer buffer = ByteBuffer.allocate(this.bufferBytes);
+		FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ);
+		try {
+			boolean end = false;
+			while (!end) {
+				end = channel.read(buffer) < 0;
+				buffer.flip();
+				int consumed = parser.parseLines(buffer, end);
+				if (!end && consumed == 0 && buffer.limit() == buffer.capacity()) {
+					throw new InvalidValueException("Line " + (parser.lineNumber + 1) + " is longer than "
+							+ this.bufferBytes + " bytes.");
+				}
+				buffer.position(consumed);
+				buffer.compact();
+			}
+		} finally {
+			channel.close();
+		}
+		return parser.count;
+	}
+
+	/**
+	 * The parser of the lines, keeping its state from one buffer to the next.
+	 */
+	private static class Parser {
+
+		/** The listener receiving the trades. */
+		private final TradeJournalListener listener;
+
+		/** The symbols read so far. */
+		private final SymbolTable symbols;
+
+		/** The number of lines parsed. */
+		private long lineNumber;
+
+		/** The number of trades read. */
+		private long count;
+
+		/** The end of the field being parsed. */
+		private int fieldEnd;
+
+		/** The scale of the last decimal number parsed. */
+		private int scale;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param listener the listener receiving the trades
+		 */
+		Parser(TradeJournalListener listener) {
+			this.listener = listener;
+			this.symbols = new SymbolTable();
+		}
+
+		/**
+		 * Parses the complete lines of a buffer.
+		 *
+		 * @param buffer the buffer, from 0 to its limit
+		 * @param end true if the file ends with the buffer, the last line being
+		 *            complete even without a line feed
+		 * @return the offset after the last line parsed
+		 */
+		int parseLines(ByteBuffer buffer, boolean end) {
+			int limit = buffer.limit();
+			int start = 0;
+			while (start < limit) {
+				int lineEnd = start;
+				while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+					lineEnd++;
+				}
+				if (lineEnd == limit && !end) {
+					break;
+				}
+				int contentEnd = lineEnd > start && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+				this.lineNumber++;
+				if (contentEnd > start && !(this.lineNumber == 1 && isHeader(buffer.get(start)))) {
+					parseLine(buffer, start, contentEnd);
+				}
+				start = Math.min(lineEnd + 1, limit);
+			}
+			return start;
+		}
+
+		/**
+		 * Parses a line and passes its trade to the listener.
+		 *
+		 * @param buffer the buffer
+		 * @param start the start of the line
+		 * @param end the end of the line, without line terminator
+		 */
+		private void parseLine(ByteBuffer buffer, int start, int end) {
+			long timestamp = parseLong(buffer, start, field(buffer, start, end));
+			int symbolStart = this.fieldEnd + 1;
+			int symbolEnd = field(buffer, symbolStart, end);
+			if (symbolEnd == symbolStart) {
+				throw malformed("the symbol is empty");
+			}
+			String symbol = this.symbols.decode(buffer, symbolStart, symbolEnd - symbolStart);
+			int quantityStart = symbolEnd + 1;
+			long quantity = parseLong(buffer, quantityStart, field(buffer, quantityStart, end));
+			int sideStart = this.fieldEnd + 1;
+			int sideEnd = field(buffer, sideStart, end);
+			BuyOrSell indicator = parseSide(buffer, sideStart, sideEnd);
+			long price = parseDecimal(buffer, sideEnd + 1, end);
+			this.count++;
+			this.listener.tradeRead(symbol, timestamp, quantity, indicator, price, this.scale);
+		}
+
+		/**
+		 * Finds the end of a field.
+		 *
+		 * @param buffer the buffer
+		 * @param start the start of the field
+		 * @param end the end of the line
+		 * @return the offset of the comma ending the field
+		 */
+		private int field(ByteBuffer buffer, int start, int end) {
+			int offset = start;
+			while (offset < end && buffer.get(offset) != ',') {
+				offset++;
+			}
+			if (offset >= end) {
+				throw malformed("expected 5 fields");
+			}
+			this.fieldEnd = offset;
+			return offset;
+		}
+
+		/**
+		 * Parses a whole number.
+		 *
+		 * @param buffer the buffer
+		 * @param start the start of the number
+		 * @param end the end of the number
+		 * @return the number
+		 */
+		private long parseLong(ByteBuffer buffer, int start, int end) {
+			long value = parseDecimal(buffer, start, end);
+			if (this.scale != 0) {
+				throw malformed("expected a whole number");
+			}
+			return value;
+		}
+
+		/**
+		 * Parses a decimal number into an unscaled value and {@link #scale}.
+		 *
+		 * @param buffer the buffer
+		 * @param start the start of the number
+		 * @param end the end of the number
+		 * @return the unscaled value
+		 */
+		private long parseDecimal(ByteBuffer buffer, int start, int end) {
+			boolean negative = start < end && buffer.get(start) == '-';
+			int offset = negative ? start + 1 : start;
+			long value = 0;
+			int digits = 0;
+			int scale = -1;
+			for (; offset < end; offset++) {
+				byte b = buffer.get(offset);
+				if (b >= '0' && b <= '9') {
+					if (value > (Long.MAX_VALUE - (b - '0')) / 10) {
+						throw malformed("the number is too large");
+					}
+					value = value * 10 + (b - '0');
+					digits++;
+					if (scale >= 0) {
+						scale++;
+					}
+				} else if (b == '.' && scale < 0) {
+					scale = 0;
+				} else {
+					throw malformed("expected a number");
+				}
+			}
+			if (digits == 0) {
+				throw malformed("expected a number");
+			}
+			this.scale = Math.max(scale, 0);
+			if (this.scale > FixedPoint.MAX_SCALE) {
+				throw malformed("the number has more than " + FixedPoint.MAX_SCALE + " decimal places");
+			}
+			return negative ? -value : value;
+		}
+
+		/**
+		 * Parses the side of a trade.
+		 *
+		 * @param buffer the buffer
+		 * @param start the start of the side
+		 * @param end the end of the side
+		 * @return the buy or sell indicator, or null if empty
+		 */
+		private BuyOrSell parseSide(ByteBuffer buffer, int start, int end) {
+			if (start == end) {
+				return null;
+			}
+			byte first = buffer.get(start);
+			if (first == 'B' && (end - start == 1 || matches(buffer, start, end, "BUY"))) {
+				return BuyOrSell.BUY;
+			}
+			if (first == 'S' && (end - start == 1 || matches(buffer, start, end, "SELL"))) {
+				return BuyOrSell.SELL;
+			}
+			throw malformed("expected BUY or SELL");
+		}
+
+		/**
+		 * Compares bytes of a buffer with an ASCII word.
+		 *
+		 * @param buffer the buffer
+		 * @param start the start of the bytes
+		 * @param end the end of the bytes
+		 * @param word the word
+		 * @return true if they are equal
+		 */
+		private static boolean matches(ByteBuffer buffer, int start, int end, String word) {
+			if (end - start != word.length()) {
+				return false;
+			}
+			for (int i = 0; i < word.length(); i++) {
+				if (buffer.get(start + i) != word.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Checks whether the first line is a header.
+		 *
+		 * @param first the first byte of the line
+		 * @return true if the line does not start with a number
+		 */
+		private static boolean isHeader(byte first) {
+			return first != '-' && (first < '0' || first > '9');
+		}
+
+		/**
+		 * Creates the error of a malformed line.
+		 *
+		 * @param reason the reason
+		 * @return the error
+		 */
+		private InvalidValueException malformed(String reason) {
+			return new InvalidValueException("Line " + this.lineNumber + " is malformed: " + reason + ".");
+		}
+
+	}
+
+}
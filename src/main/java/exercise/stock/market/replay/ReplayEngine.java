@@ -0,0 +1,547 @@
+package exercise.stock.market.replay;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import exercise.stock.market.clock.EventTimeClock;
+import exercise.stock.market.clock.MarketClock;
+import exercise.stock.market.journal.TradeJournalListener;
+import exercise.stock.market.journal.TradeTape;
+import exercise.stock.market.model.BaseStock;
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.numeric.FixedPoint;
+import exercise.stock.market.service.BatchFailurePolicy;
+import exercise.stock.market.service.BatchResult;
+import exercise.stock.market.service.QueryResult;
+import exercise.stock.market.service.QueryStatus;
+import exercise.stock.market.service.StockMarketService;
+import exercise.stock.market.service.TradeBatch;
+import exercises.stock.exceptions.BusinessException;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * Replays a {@link TradeTape} into a {@link StockMarketService} as fast as
+ * possible, e.g. to backtest on a recorded day, and samples the GBCE All Share
+ * Index and the volume weighted stock prices at a fixed interval of event
+ * time.
+ * <p>
+ * The tape is read on the calling thread and its trades are partitioned by
+ * symbol: each partition fills {@link TradeBatch}es which a thread of its own
+ * records with
+ * {@link StockMarketService#recordTrades(TradeBatch, BatchFailurePolicy)}, so
+ * that the trades of a stock are recorded in the order of the tape while the
+ * stocks are recorded in parallel. The batches of a partition are recycled,
+ * and the reader waits for a free batch when the recording falls behind.
+ * <p>
+ * During the replay, the clock of the service is an {@link EventTimeClock},
+ * and the previous clock is restored afterwards. Before taking a sample, the
+ * engine waits for all the trades before the time of the sample to be
+ * recorded and sets the clock to that time, so that the samples do not depend
+ * on the number of threads. The price of each stock is then set to its last
+ * traded price, unless {@link #setUpdatingPrices(boolean)} is false. The
+ * trades of the tape are expected in time order; a late trade is recorded, but
+ * only the samples taken after it see it.
+ *
+ * @author DMONEY
+ *
+ */
+public class ReplayEngine {
+
+	/** The default interval between samples, 1 minute. */
+	public static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 60 * 1000L;
+
+	/** The default window of the sampled volume weighted stock prices, 15 minutes. */
+	public static final long DEFAULT_WINDOW_MILLIS = 15 * 60 * 1000L;
+
+	/** The default number of trades per batch. */
+	public static final int DEFAULT_BATCH_SIZE = 4096;
+
+	/** The number of batches of a partition, being filled or recorded. */
+	private static final int BATCHES_PER_PARTITION = 4;
+
+	/** The service the trades are recorded into. */
+	private final StockMarketService service;
+
+	/** The number of partitions, each recorded by a thread. */
+	private int threadCount;
+
+	/** The interval between samples, in milliseconds. */
+	private long sampleIntervalMillis;
+
+	/** The windows of the sampled volume weighted stock prices, in milliseconds. */
+	private long[] windowsMillis;
+
+	/** The number of trades per batch. */
+	private int batchSize;
+
+	/** Whether the price of each stock is set to its last traded price. */
+	private boolean updatingPrices;
+
+	/**
+	 * Constructor. The engine uses a thread per available processor and
+	 * samples the 15 minutes VWSP every minute.
+	 *
+	 * @param service the service the trades are recorded into, with the
+	 *            stocks of the tape registered
+	 */
+	public ReplayEngine(StockMarketService service) {
+		this.service = service;
+		this.threadCount = Runtime.getRuntime().availableProcessors();
+		this.sampleIntervalMillis = DEFAULT_SAMPLE_INTERVAL_MILLIS;
+		this.windowsMillis = new long[] { DEFAULT_WINDOW_MILLIS };
+		this.batchSize = DEFAULT_BATCH_SIZE;
+		this.updatingPrices = true;
+	}
+
+	/**
+	 * @return the number of partitions, each recorded by a thread
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * @param threadCount the number of partitions to set, each recorded by a
+	 *            thread
+	 */
+	public void setThreadCount(int threadCount) {
+		if (threadCount <= 0) {
+			throw new InvalidValueException("Found non-positive thread count: " + threadCount);
+		}
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * @return the interval between samples, in milliseconds
+	 */
+	public long getSampleIntervalMillis() {
+		return sampleIntervalMillis;
+	}
+
+	/**
+	 * @param sampleIntervalMillis the interval between samples to set, in
+	 *            milliseconds
+	 */
+	public void setSampleIntervalMillis(long sampleIntervalMillis) {
+		if (sampleIntervalMillis <= 0) {
+			throw new InvalidValueException("Found non-positive sample interval: " + sampleIntervalMillis);
+		}
+		this.sampleIntervalMillis = sampleIntervalMillis;
+	}
+
+	/**
+	 * @return the windows of the sampled volume weighted stock prices, in
+	 *         milliseconds
+	 */
+	public long[] getWindowsMillis() {
+		return this.windowsMillis.clone();
+	}
+
+	/**
+	 * @param windowsMillis the windows of the sampled volume weighted stock
+	 *            prices to set, in milliseconds
+	 */
+	public void setWindowsMillis(long... windowsMillis) {
+		for (long window : windowsMillis) {
+			if (window <= 0) {
+				throw new InvalidValueException("Found non-positive window length: " + window);
+			}
+		}
+		this.windowsMillis = windowsMillis.clone();
+	}
+
+	/**
+	 * @return the number of trades per batch
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize the number of trades per batch to set
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new InvalidValueException("Found non-positive batch size: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return whether the price of each stock is set to its last traded price
+	 *         before each sample
+	 */
+	public boolean isUpdatingPrices() {
+		return updatingPrices;
+	}
+
+	/**
+	 * @param updatingPrices whether the price of each stock is set to its last
+	 *            traded price before each sample
+	 */
+	public void setUpdatingPrices(boolean updatingPrices) {
+		this.updatingPrices = updatingPrices;
+	}
+
+	/**
+	 * Replays a tape into the service. The service should not record other
+	 * trades during the replay.
+	 *
+	 * @param tape the trades to replay
+	 * @param listener the listener receiving the samples, or null to take no
+	 *            sample, e.g. to measure the throughput
+	 * @return the {@link ReplayResult}
+	 * @throws IOException if the tape cannot be read
+	 */
+	public ReplayResult replay(TradeTape tape, ReplayListener listener) throws IOException {
+		MarketClock previousClock = this.service.getClock();
+		EventTimeClock clock = new EventTimeClock(Long.MIN_VALUE);
+		Replay replay = new Replay(listener, clock);
+		this.service.setClock(clock);
+		long start = System.nanoTime();
+		try {
+			tape.replay(replay);
+			replay.finish();
+		} finally {
+			replay.shutdown();
+			this.service.setClock(previousClock);
+		}
+		return new ReplayResult(replay.tradeCount, replay.rejectedCount(), replay.sampleCount,
+				replay.firstTimestamp, replay.lastTimestamp, System.nanoTime() - start);
+	}
+
+	/**
+	 * The state of a replay, receiving the trades of the tape.
+	 */
+	private class Replay implements TradeJournalListener {
+
+		/** The listener receiving the samples, or null. */
+		private final ReplayListener listener;
+
+		/** The clock of the service. */
+		private final EventTimeClock clock;
+
+		/** The partitions of the stocks. */
+		private final Partition[] partitions;
+
+		/** The holder of the queried index. */
+		private final QueryResult queryResult;
+
+		/** The number of trades read. */
+		private long tradeCount;
+
+		/** The number of samples taken. */
+		private long sampleCount;
+
+		/** The timestamp of the first trade. */
+		private long firstTimestamp;
+
+		/** The latest timestamp of the trades. */
+		private long lastTimestamp;
+
+		/** The time of the next sample. */
+		private long nextSample;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param listener the listener receiving the samples, or null
+		 * @param clock the clock of the service
+		 */
+		Replay(ReplayListener listener, EventTimeClock clock) {
+			this.listener = listener;
+			this.clock = clock;
+			this.partitions = new Partition[threadCount];
+			this.queryResult = new QueryResult();
+			for (int i = 0; i < this.partitions.length; i++) {
+				this.partitions[i] = new Partition(i);
+			}
+		}
+
+		@Override
+		public void tradeRead(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+				int priceScale) {
+			if (this.tradeCount == 0) {
+				this.firstTimestamp = timestamp;
+				this.lastTimestamp = timestamp;
+				this.nextSample = Math.floorDiv(timestamp, sampleIntervalMillis) * sampleIntervalMillis
+						+ sampleIntervalMillis;
+			}
+			this.tradeCount++;
+			this.lastTimestamp = Math.max(this.lastTimestamp, timestamp);
+			if (this.listener != null) {
+				while (timestamp >= this.nextSample) {
+					sample(this.nextSample);
+					this.nextSample += sampleIntervalMillis;
+				}
+			}
+			Partition partition = this.partitions[(symbol.hashCode() & Integer.MAX_VALUE) % this.partitions.length];
+			partition.add(symbol, timestamp, quantity, indicator, price, priceScale);
+		}
+
+		/**
+		 * Records the trades left, and takes the sample ending the interval of
+		 * the latest trade.
+		 */
+		void finish() {
+			if (this.listener != null && this.tradeCount > 0) {
+				sample(this.nextSample);
+			} else {
+				awaitAll();
+			}
+		}
+
+		/**
+		 * Stops the threads of the partitions.
+		 */
+		void shutdown() {
+			for (Partition partition : this.partitions) {
+				partition.executor.shutdownNow();
+			}
+		}
+
+		/**
+		 * @return the number of trades rejected by the service
+		 */
+		long rejectedCount() {
+			long count = 0;
+			for (Partition partition : this.partitions) {
+				count += partition.rejectedCount;
+			}
+			return count;
+		}
+
+		/**
+		 * Records the trades read so far, then takes a sample.
+		 *
+		 * @param time the time of the sample
+		 */
+		private void sample(long time) {
+			awaitAll();
+			this.clock.reset(time);
+			if (updatingPrices) {
+				Map<String, BaseStock> stocks = service.getStockMap();
+				for (Partition partition : this.partitions) {
+					for (Map.Entry<String, LastPrice> entry : partition.lastPrices.entrySet()) {
+						LastPrice last = entry.getValue();
+						BaseStock stock = stocks.get(entry.getKey());
+						if (last.changed && stock != null) {
+							stock.setPrice(FixedPoint.toBigDecimal(last.price, last.priceScale));
+						}
+						last.changed = false;
+					}
+				}
+			}
+			BigDecimal index = service.tryGetGBCEAllShareIndex(this.queryResult) == QueryStatus.OK
+					? this.queryResult.getValue() : null;
+			Map<String, BigDecimal[]> prices = service.getAllVolumeWeightedStockPrices(windowsMillis);
+			this.sampleCount++;
+			this.listener.sampleTaken(new ReplaySample(time, index, prices));
+		}
+
+		/**
+		 * Hands over the partly filled batches and waits for all the trades
+		 * read so far to be recorded.
+		 */
+		private void awaitAll() {
+			for (Partition partition : this.partitions) {
+				partition.dispatch();
+			}
+			for (Partition partition : this.partitions) {
+				partition.await();
+			}
+		}
+
+	}
+
+	/**
+	 * The stocks recorded by a thread, with the batches handed over to it.
+	 */
+	private class Partition {
+
+		/** The thread recording the batches. */
+		private final ExecutorService executor;
+
+		/** The batches ready to be filled. */
+		private final BlockingQueue<TradeBatch> freeBatches;
+
+		/** The last traded price of each stock, written by the thread. */
+		private final Map<String, LastPrice> lastPrices;
+
+		/** The batch being filled by the reader. */
+		private TradeBatch current;
+
+		/** The number of trades rejected, written by the thread. */
+		private long rejectedCount;
+
+		/** The first error of the thread, or null. */
+		private volatile RuntimeException failure;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param number the number of the partition
+		 */
+		Partition(final int number) {
+			this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "replay-partition-" + number);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.freeBatches = new ArrayBlockingQueue<TradeBatch>(BATCHES_PER_PARTITION);
+			for (int i = 1; i < BATCHES_PER_PARTITION; i++) {
+				this.freeBatches.add(new TradeBatch(batchSize));
+			}
+			this.current = new TradeBatch(batchSize);
+			this.lastPrices = new HashMap<String, LastPrice>();
+		}
+
+		/**
+		 * Adds a trade to the batch being filled, handing it over when full.
+		 *
+		 * @param symbol the symbol of the stock
+		 * @param timestamp the time of the trade
+		 * @param quantity the quantity of shares
+		 * @param indicator the buy or sell indicator
+		 * @param price the unscaled traded price
+		 * @param priceScale the scale of the price
+		 */
+		void add(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price, int priceScale) {
+			this.current.add(symbol, timestamp, quantity, indicator, price, priceScale);
+			if (this.current.size() >= batchSize) {
+				dispatch();
+			}
+		}
+
+		/**
+		 * Hands the batch being filled over to the thread, and takes a free
+		 * batch.
+		 */
+		void dispatch() {
+			if (this.current.size() == 0) {
+				return;
+			}
+			final TradeBatch batch = this.current;
+			this.executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					record(batch);
+				}
+			});
+			try {
+				this.current = this.freeBatches.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BusinessException("The replay was interrupted.");
+			}
+		}
+
+		/**
+		 * Waits for the batches handed over to be recorded.
+		 */
+		void await() {
+			try {
+				this.executor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						// all the batches handed over before are recorded
+					}
+				}).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BusinessException("The replay was interrupted.");
+			} catch (ExecutionException e) {
+				throw new BusinessException("The replay failed: " + e.getCause());
+			}
+			if (this.failure != null) {
+				throw this.failure;
+			}
+		}
+
+		/**
+		 * Records a batch on the thread of the partition, then frees it.
+		 *
+		 * @param batch the batch
+		 */
+		private void record(TradeBatch batch) {
+			try {
+				if (this.failure == null) {
+					BatchResult result = service.recordTrades(batch, BatchFailurePolicy.SKIP_INVALID);
+					this.rejectedCount += result.getRejectedCount();
+					if (updatingPrices) {
+						updateLastPrices(batch, result);
+					}
+				}
+			} catch (RuntimeException e) {
+				this.failure = e;
+			} finally {
+				batch.clear();
+				this.freeBatches.add(batch);
+			}
+		}
+
+		/**
+		 * Keeps the price of the latest recorded trade of each stock of a
+		 * batch.
+		 *
+		 * @param batch the batch
+		 * @param result the result of recording the batch
+		 */
+		private void updateLastPrices(TradeBatch batch, BatchResult result) {
+			int rejection = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				if (rejection < result.getRejectedCount() && result.getRejectedIndex(rejection) == i) {
+					rejection++;
+					continue;
+				}
+				String symbol = batch.getSymbol(i);
+				LastPrice last = this.lastPrices.get(symbol);
+				if (last == null) {
+					last = new LastPrice();
+					this.lastPrices.put(symbol, last);
+				}
+				if (batch.getTimestamp(i) >= last.timestamp) {
+					last.timestamp = batch.getTimestamp(i);
+					last.price = batch.getPrice(i);
+					last.priceScale = batch.getPriceScale(i);
+					last.changed = true;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * The price of the latest trade of a stock.
+	 */
+	private static class LastPrice {
+
+		/** The time of the trade. */
+		private long timestamp = Long.MIN_VALUE;
+
+		/** The unscaled price. */
+		private long price;
+
+		/** The scale of the price. */
+		private int priceScale;
+
+		/** Whether the price changed since the last sample. */
+		private boolean changed;
+
+	}
+
+}
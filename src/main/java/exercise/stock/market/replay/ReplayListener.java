@@ -0,0 +1,20 @@
+package exercise.stock.market.replay;
+
+/**
+ * A listener receiving the samples taken during a replay.
+ *
+ * @author DMONEY
+ *
+ */
+public interface ReplayListener {
+
+	/**
+	 * Called for each sample, in time order, on the thread calling
+	 * {@link ReplayEngine#replay(exercise.stock.market.journal.TradeTape, ReplayListener)}.
+	 * The replay waits for the listener.
+	 *
+	 * @param sample the sample
+	 */
+	void sampleTaken(ReplaySample sample);
+
+}
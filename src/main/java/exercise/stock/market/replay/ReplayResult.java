@@ -0,0 +1,117 @@
+package exercise.stock.market.replay;
+
+/**
+ * The outcome of a replay.
+ *
+ * @author DMONEY
+ *
+ */
+public class ReplayResult {
+
+	/** The number of trades read. */
+	private final long tradeCount;
+
+	/** The number of trades rejected by the service. */
+	private final long rejectedCount;
+
+	/** The number of samples taken. */
+	private final long sampleCount;
+
+	/** The timestamp of the first trade. */
+	private final long firstTimestamp;
+
+	/** The latest timestamp of the trades. */
+	private final long lastTimestamp;
+
+	/** The time the replay took, in nanoseconds. */
+	private final long elapsedNanos;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param tradeCount the number of trades read
+	 * @param rejectedCount the number of trades rejected by the service
+	 * @param sampleCount the number of samples taken
+	 * @param firstTimestamp the timestamp of the first trade
+	 * @param lastTimestamp the latest timestamp of the trades
+	 * @param elapsedNanos the time the replay took, in nanoseconds
+	 */
+	ReplayResult(long tradeCount, long rejectedCount, long sampleCount, long firstTimestamp, long lastTimestamp,
+			long elapsedNanos) {
+		this.tradeCount = tradeCount;
+		this.rejectedCount = rejectedCount;
+		this.sampleCount = sampleCount;
+		this.firstTimestamp = firstTimestamp;
+		this.lastTimestamp = lastTimestamp;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return the number of trades read
+	 */
+	public long getTradeCount() {
+		return tradeCount;
+	}
+
+	/**
+	 * @return the number of trades rejected by the service, e.g. with a
+	 *         non-positive price or an unknown stock
+	 */
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * @return the number of samples taken
+	 */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * @return the timestamp of the first trade, in milliseconds since the
+	 *         epoch
+	 */
+	public long getFirstTimestamp() {
+		return firstTimestamp;
+	}
+
+	/**
+	 * @return the latest timestamp of the trades, in milliseconds since the
+	 *         epoch
+	 */
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	/**
+	 * @return the time the replay took, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the number of trades read per second of replay
+	 */
+	public double getTradesPerSecond() {
+		return this.elapsedNanos == 0 ? 0 : this.tradeCount * 1e9 / this.elapsedNanos;
+	}
+
+	/**
+	 * @return how many times faster than real time the trades were replayed,
+	 *         i.e. the time between the first and the latest trade over the
+	 *         time the replay took
+	 */
+	public double getSpeedUp() {
+		return this.elapsedNanos == 0 ? 0 : (this.lastTimestamp - this.firstTimestamp) * 1e6 / this.elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d trades (%d rejected), %d samples in %.3f s: %.0f trades/s, %.0fx real time",
+				this.tradeCount, this.rejectedCount, this.sampleCount, this.elapsedNanos / 1e9,
+				getTradesPerSecond(), getSpeedUp());
+	}
+
+}
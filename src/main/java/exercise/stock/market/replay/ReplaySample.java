@@ -0,0 +1,62 @@
+package exercise.stock.market.replay;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * The GBCE All Share Index and the volume weighted stock prices sampled during
+ * a replay, once all the trades before the time of the sample were recorded.
+ *
+ * @author DMONEY
+ *
+ */
+public class ReplaySample {
+
+	/** The time of the sample, in milliseconds since the epoch. */
+	private final long time;
+
+	/** The GBCE All Share Index, or null. */
+	private final BigDecimal index;
+
+	/** The volume weighted stock prices, by symbol. */
+	private final Map<String, BigDecimal[]> volumeWeightedStockPrices;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param time the time of the sample, in milliseconds since the epoch
+	 * @param index the GBCE All Share Index, or null
+	 * @param volumeWeightedStockPrices the volume weighted stock prices, by
+	 *            symbol
+	 */
+	public ReplaySample(long time, BigDecimal index, Map<String, BigDecimal[]> volumeWeightedStockPrices) {
+		this.time = time;
+		this.index = index;
+		this.volumeWeightedStockPrices = volumeWeightedStockPrices;
+	}
+
+	/**
+	 * @return the time of the sample, in milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return the GBCE All Share Index, or null if it could not be calculated,
+	 *         e.g. before every stock has a price
+	 */
+	public BigDecimal getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the volume weighted stock prices of each stock over the windows
+	 *         of the {@link ReplayEngine}, in the order of the windows, a
+	 *         price being null when a window has invalid trades
+	 */
+	public Map<String, BigDecimal[]> getVolumeWeightedStockPrices() {
+		return volumeWeightedStockPrices;
+	}
+
+}
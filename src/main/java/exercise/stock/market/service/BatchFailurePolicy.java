@@ -0,0 +1,24 @@
+package exercise.stock.market.service;
+
+/**
+ * What {@link StockMarketService#recordTrades(TradeBatch, BatchFailurePolicy)}
+ * does when some trades of a batch are invalid.
+ *
+ * @author DMONEY
+ *
+ */
+public enum BatchFailurePolicy {
+
+	/**
+	 * No trade of the batch is recorded, and the error of the first invalid
+	 * trade is thrown.
+	 */
+	ALL_OR_NOTHING,
+
+	/**
+	 * The valid trades are recorded, and the invalid ones are reported in the
+	 * {@link BatchResult}.
+	 */
+	SKIP_INVALID
+
+}
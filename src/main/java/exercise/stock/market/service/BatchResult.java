@@ -0,0 +1,87 @@
+package exercise.stock.market.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of recording a {@link TradeBatch}: the number of trades recorded,
+ * and the index and error of each trade rejected.
+ *
+ * @author DMONEY
+ *
+ */
+public class BatchResult {
+
+	/** The number of trades recorded. */
+	private int recordedCount;
+
+	/** The indexes of the rejected trades in the batch, in order. */
+	private final List<Integer> rejectedIndexes;
+
+	/** The errors of the rejected trades. */
+	private final List<RuntimeException> errors;
+
+	/**
+	 * Constructor.
+	 */
+	public BatchResult() {
+		this.rejectedIndexes = new ArrayList<Integer>();
+		this.errors = new ArrayList<RuntimeException>();
+	}
+
+	/**
+	 * @return the number of trades recorded
+	 */
+	public int getRecordedCount() {
+		return recordedCount;
+	}
+
+	/**
+	 * @return the number of trades rejected
+	 */
+	public int getRejectedCount() {
+		return this.rejectedIndexes.size();
+	}
+
+	/**
+	 * Gets the index in the batch of a rejected trade.
+	 *
+	 * @param rejection the number of the rejection, from 0 to
+	 *            {@link #getRejectedCount()}
+	 * @return the index of the trade in the batch
+	 */
+	public int getRejectedIndex(int rejection) {
+		return this.rejectedIndexes.get(rejection);
+	}
+
+	/**
+	 * Gets the error of a rejected trade.
+	 *
+	 * @param rejection the number of the rejection, from 0 to
+	 *            {@link #getRejectedCount()}
+	 * @return the error, a {@link exercises.stock.exceptions.BusinessException}
+	 *         or an {@link exercises.stock.exceptions.InvalidValueException}
+	 */
+	public RuntimeException getError(int rejection) {
+		return this.errors.get(rejection);
+	}
+
+	/**
+	 * Counts a recorded trade.
+	 */
+	void addRecorded() {
+		this.recordedCount++;
+	}
+
+	/**
+	 * Adds a rejected trade.
+	 *
+	 * @param index the index of the trade in the batch
+	 * @param error the error of the trade
+	 */
+	void addRejected(int index, RuntimeException error) {
+		this.rejectedIndexes.add(index);
+		this.errors.add(error);
+	}
+
+}
@@ -0,0 +1,120 @@
+package exercise.stock.market.service;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The values of a market read at one point in time by
+ * {@link StockMarketService#getSnapshot()}: the price, volume weighted stock
+ * price and trade version of each registered stock, and the GBCE all share
+ * index and named indices calculated from the prices read. The snapshot is
+ * immutable, so a reporting thread can read it at leisure while trades are
+ * recorded.
+ *
+ * @author DMONEY
+ *
+ */
+public class MarketSnapshot {
+
+	/** The time the windows of the volume weighted stock prices end at. */
+	private final long time;
+
+	/** The prices of the stocks, by symbol in registration order. */
+	private final Map<String, BigDecimal> prices;
+
+	/** The volume weighted stock prices, by symbol. */
+	private final Map<String, BigDecimal> volumeWeightedStockPrices;
+
+	/** The versions of the trade records of the stocks, by symbol. */
+	private final Map<String, Long> tradeVersions;
+
+	/** The GBCE all share index value, or null. */
+	private final BigDecimal allShareIndex;
+
+	/** The values of the named indices, by name. */
+	private final Map<String, BigDecimal> indexValues;
+
+	/**
+	 * Constructor. The maps are kept, not copied.
+	 *
+	 * @param time the time the windows of the volume weighted stock prices end
+	 *            at
+	 * @param prices the prices of the stocks, by symbol
+	 * @param volumeWeightedStockPrices the volume weighted stock prices, by
+	 *            symbol
+	 * @param tradeVersions the versions of the trade records, by symbol
+	 * @param allShareIndex the GBCE all share index value, or null
+	 * @param indexValues the values of the named indices, by name
+	 */
+	MarketSnapshot(long time, Map<String, BigDecimal> prices, Map<String, BigDecimal> volumeWeightedStockPrices,
+			Map<String, Long> tradeVersions, BigDecimal allShareIndex, Map<String, BigDecimal> indexValues) {
+		this.time = time;
+		this.prices = Collections.unmodifiableMap(prices);
+		this.volumeWeightedStockPrices = Collections.unmodifiableMap(volumeWeightedStockPrices);
+		this.tradeVersions = Collections.unmodifiableMap(tradeVersions);
+		this.allShareIndex = allShareIndex;
+		this.indexValues = Collections.unmodifiableMap(indexValues);
+	}
+
+	/**
+	 * @return the time the windows of the volume weighted stock prices end at,
+	 *         in milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return the symbols of the stocks registered when the snapshot was
+	 *         taken, in registration order
+	 */
+	public Set<String> getSymbols() {
+		return this.prices.keySet();
+	}
+
+	/**
+	 * @return the prices of the stocks, by symbol
+	 */
+	public Map<String, BigDecimal> getPrices() {
+		return prices;
+	}
+
+	/**
+	 * @return the volume weighted stock prices over the 15 minutes before the
+	 *         {@link #getTime() time} of the snapshot, by symbol; the price of a
+	 *         stock with an invalid trade record in the window is null
+	 */
+	public Map<String, BigDecimal> getVolumeWeightedStockPrices() {
+		return volumeWeightedStockPrices;
+	}
+
+	/**
+	 * @return the {@link exercise.stock.market.store.TradeStore#getVersion()
+	 *         versions} of the trade records the volume weighted stock prices
+	 *         were read at, by symbol
+	 */
+	public Map<String, Long> getTradeVersions() {
+		return tradeVersions;
+	}
+
+	/**
+	 * @return the GBCE all share index value calculated from the
+	 *         {@link #getPrices() prices} of the snapshot, or null if there is
+	 *         no stock or a price is not positive
+	 */
+	public BigDecimal getGBCEAllShareIndex() {
+		return allShareIndex;
+	}
+
+	/**
+	 * @return the values of the named indices calculated from the
+	 *         {@link #getPrices() prices} of the snapshot, by name; the value of
+	 *         an index without constituent or with a non-positive price is null
+	 */
+	public Map<String, BigDecimal> getIndexValues() {
+		return indexValues;
+	}
+
+}
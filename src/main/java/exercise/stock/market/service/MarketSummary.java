@@ -0,0 +1,281 @@
+package exercise.stock.market.service;
+
+import java.math.BigDecimal;
+
+/**
+ * The metrics of all the registered stocks of a {@link StockMarketService},
+ * calculated at once by {@link StockMarketService#getMarketSummary()}, as a
+ * table with a row per stock in registration order.
+ * <p>
+ * Each metric of a row has a {@link QueryStatus}, and a value when the status
+ * is {@link QueryStatus#OK}, so that a metric which cannot be calculated for a
+ * stock, e.g. the P/E ratio of a stock without dividend, does not prevent the
+ * other metrics and stocks from being reported. A row which failed with an
+ * unexpected exception keeps that exception as its error.
+ *
+ * @author DMONEY
+ *
+ */
+public class MarketSummary {
+
+	/** The time the windows of the volume weighted stock prices end at. */
+	private final long time;
+
+	/** The symbols of the stocks, by row. */
+	private final String[] symbols;
+
+	/** The ids of the stocks, by row. */
+	private final int[] stockIds;
+
+	/** The prices of the stocks, by row. */
+	private final BigDecimal[] prices;
+
+	/** The dividend yields, by row. */
+	private final BigDecimal[] dividendYields;
+
+	/** The statuses of the dividend yields, by row. */
+	private final QueryStatus[] dividendYieldStatuses;
+
+	/** The P/E ratios, by row. */
+	private final BigDecimal[] peRatios;
+
+	/** The statuses of the P/E ratios, by row. */
+	private final QueryStatus[] peRatioStatuses;
+
+	/** The volume weighted stock prices, by row. */
+	private final BigDecimal[] volumeWeightedStockPrices;
+
+	/** The statuses of the volume weighted stock prices, by row. */
+	private final QueryStatus[] volumeWeightedStockPriceStatuses;
+
+	/** The unexpected errors, by row. */
+	private final RuntimeException[] errors;
+
+	/** The GBCE all share index value, or null. */
+	private BigDecimal allShareIndex;
+
+	/** The status of the GBCE all share index. */
+	private QueryStatus allShareIndexStatus;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param time the time the windows of the volume weighted stock prices end
+	 *            at
+	 * @param size the number of stocks
+	 */
+	MarketSummary(long time, int size) {
+		this.time = time;
+		this.symbols = new String[size];
+		this.stockIds = new int[size];
+		this.prices = new BigDecimal[size];
+		this.dividendYields = new BigDecimal[size];
+		this.dividendYieldStatuses = new QueryStatus[size];
+		this.peRatios = new BigDecimal[size];
+		this.peRatioStatuses = new QueryStatus[size];
+		this.volumeWeightedStockPrices = new BigDecimal[size];
+		this.volumeWeightedStockPriceStatuses = new QueryStatus[size];
+		this.errors = new RuntimeException[size];
+	}
+
+	/**
+	 * @return the time the windows of the volume weighted stock prices end at,
+	 *         in milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return the number of rows, one per stock
+	 */
+	public int size() {
+		return this.symbols.length;
+	}
+
+	/**
+	 * Finds the row of a stock, looking at the rows in turn.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @return the row of the stock, or -1 if the stock is not in the summary
+	 */
+	public int indexOf(String symbol) {
+		for (int row = 0; row < this.symbols.length; row++) {
+			if (this.symbols[row].equals(symbol)) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the symbol of the stock
+	 */
+	public String getSymbol(int row) {
+		return this.symbols[row];
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the id of the stock, see
+	 *         {@link StockMarketService#getStockId(String)}
+	 */
+	public int getStockId(int row) {
+		return this.stockIds[row];
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the price of the stock the ratios are calculated at
+	 */
+	public BigDecimal getPrice(int row) {
+		return this.prices[row];
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the dividend yield, or null if its status is not
+	 *         {@link QueryStatus#OK}
+	 */
+	public BigDecimal getDividendYield(int row) {
+		return this.dividendYields[row];
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the status of the dividend yield, or null if the row failed
+	 *         before it
+	 */
+	public QueryStatus getDividendYieldStatus(int row) {
+		return this.dividendYieldStatuses[row];
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the P/E ratio, or null if its status is not {@link QueryStatus#OK}
+	 */
+	public BigDecimal getPERatio(int row) {
+		return this.peRatios[row];
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the status of the P/E ratio, or null if the row failed before it
+	 */
+	public QueryStatus getPERatioStatus(int row) {
+		return this.peRatioStatuses[row];
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the volume weighted stock price over the 15 minutes before the
+	 *         {@link #getTime() time} of the summary, or null if its status is
+	 *         not {@link QueryStatus#OK}
+	 */
+	public BigDecimal getVolumeWeightedStockPrice(int row) {
+		return this.volumeWeightedStockPrices[row];
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the status of the volume weighted stock price, or null if the
+	 *         row failed before it
+	 */
+	public QueryStatus getVolumeWeightedStockPriceStatus(int row) {
+		return this.volumeWeightedStockPriceStatuses[row];
+	}
+
+	/**
+	 * @param row the row of the stock
+	 * @return the unexpected exception the row failed with, or null
+	 */
+	public RuntimeException getError(int row) {
+		return this.errors[row];
+	}
+
+	/**
+	 * @return the GBCE all share index value calculated from the
+	 *         {@link #getPrice(int) prices} of the summary, or null if its
+	 *         status is not {@link QueryStatus#OK}
+	 */
+	public BigDecimal getGBCEAllShareIndex() {
+		return allShareIndex;
+	}
+
+	/**
+	 * @return the status of the GBCE all share index
+	 */
+	public QueryStatus getGBCEAllShareIndexStatus() {
+		return allShareIndexStatus;
+	}
+
+	/**
+	 * Sets the stock of a row.
+	 *
+	 * @param row the row
+	 * @param symbol the symbol of the stock
+	 * @param stockId the id of the stock
+	 * @param price the price of the stock
+	 */
+	void setStock(int row, String symbol, int stockId, BigDecimal price) {
+		this.symbols[row] = symbol;
+		this.stockIds[row] = stockId;
+		this.prices[row] = price;
+	}
+
+	/**
+	 * Sets the dividend yield of a row.
+	 *
+	 * @param row the row
+	 * @param result the result of the query
+	 */
+	void setDividendYield(int row, QueryResult result) {
+		this.dividendYieldStatuses[row] = result.getStatus();
+		this.dividendYields[row] = result.getStatus() == QueryStatus.OK ? result.getValue() : null;
+	}
+
+	/**
+	 * Sets the P/E ratio of a row.
+	 *
+	 * @param row the row
+	 * @param result the result of the query
+	 */
+	void setPERatio(int row, QueryResult result) {
+		this.peRatioStatuses[row] = result.getStatus();
+		this.peRatios[row] = result.getStatus() == QueryStatus.OK ? result.getValue() : null;
+	}
+
+	/**
+	 * Sets the volume weighted stock price of a row.
+	 *
+	 * @param row the row
+	 * @param result the result of the query
+	 */
+	void setVolumeWeightedStockPrice(int row, QueryResult result) {
+		this.volumeWeightedStockPriceStatuses[row] = result.getStatus();
+		this.volumeWeightedStockPrices[row] = result.getStatus() == QueryStatus.OK ? result.getValue() : null;
+	}
+
+	/**
+	 * Sets the unexpected exception a row failed with.
+	 *
+	 * @param row the row
+	 * @param error the exception
+	 */
+	void setError(int row, RuntimeException error) {
+		this.errors[row] = error;
+	}
+
+	/**
+	 * Sets the GBCE all share index.
+	 *
+	 * @param status the status of the index
+	 * @param value the value of the index, or null
+	 */
+	void setGBCEAllShareIndex(QueryStatus status, BigDecimal value) {
+		this.allShareIndexStatus = status;
+		this.allShareIndex = value;
+	}
+
+}
@@ -0,0 +1,88 @@
+package exercise.stock.market.service;
+
+import java.math.BigDecimal;
+
+import exercise.stock.market.numeric.Int128;
+
+/**
+ * A reusable holder of the result of a query of {@link StockMarketService}
+ * made without exception: the {@link QueryStatus} and, when it is
+ * {@link QueryStatus#OK}, the value. A caller keeps one holder per thread and
+ * passes it to each query, so that a failed query allocates nothing. The
+ * holder also carries the sums a query reads from the trade records, so that
+ * they are not allocated for each query either.
+ *
+ * @author DMONEY
+ *
+ */
+public class QueryResult {
+
+	/** The outcome of the last query. */
+	private QueryStatus status;
+
+	/** The value of the last query, or null if it failed. */
+	private BigDecimal value;
+
+	/** The sum of price * quantity read by a volume weighted price query. */
+	private final Int128 priceQuantitySum = new Int128();
+
+	/**
+	 * Constructor.
+	 */
+	public QueryResult() {
+	}
+
+	/**
+	 * @return the outcome of the last query, or null before the first one
+	 */
+	public QueryStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the value of the last query, or null if it failed
+	 */
+	public BigDecimal getValue() {
+		return value;
+	}
+
+	/**
+	 * @return true if the last query succeeded
+	 */
+	public boolean isOk() {
+		return this.status == QueryStatus.OK;
+	}
+
+	/**
+	 * @return the sum of price * quantity a query reads the totals of its
+	 *         window into, reused by each query
+	 */
+	Int128 getPriceQuantitySum() {
+		return priceQuantitySum;
+	}
+
+	/**
+	 * Sets the value of a successful query.
+	 *
+	 * @param value the value calculated
+	 * @return {@link QueryStatus#OK}
+	 */
+	QueryStatus succeed(BigDecimal value) {
+		this.status = QueryStatus.OK;
+		this.value = value;
+		return QueryStatus.OK;
+	}
+
+	/**
+	 * Sets the status of a failed query.
+	 *
+	 * @param status the reason of the failure
+	 * @return the status
+	 */
+	QueryStatus fail(QueryStatus status) {
+		this.status = status;
+		this.value = null;
+		return status;
+	}
+
+}
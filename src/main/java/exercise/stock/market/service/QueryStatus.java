@@ -0,0 +1,37 @@
+package exercise.stock.market.service;
+
+/**
+ * The outcome of a query of {@link StockMarketService} made without
+ * exception, e.g.
+ * {@link StockMarketService#tryGetDividendYield(String, java.math.BigDecimal, QueryResult)}.
+ *
+ * @author DMONEY
+ *
+ */
+public enum QueryStatus {
+
+	/** The value was calculated. */
+	OK,
+
+	/** The stock is not registered to the service. */
+	UNKNOWN_STOCK,
+
+	/** The given price is null, zero or negative. */
+	NON_POSITIVE_PRICE,
+
+	/** The dividend of the stock is zero, so the P/E ratio is undefined. */
+	ZERO_DIVIDEND,
+
+	/** A trade record in the VWSP window has a non-positive price or quantity. */
+	INVALID_TRADE_RECORDS,
+
+	/** A stock of the index has a non-positive price. */
+	INVALID_STOCK_PRICE,
+
+	/** No stock is registered to the service, or the index has no constituent. */
+	NO_STOCKS,
+
+	/** No index is defined with the name. */
+	UNKNOWN_INDEX
+
+}
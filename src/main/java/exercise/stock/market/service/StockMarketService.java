@@ -1,23 +1,52 @@
 package exercise.stock.market.service;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
 
+import exercise.stock.market.clock.MarketClock;
+import exercise.stock.market.event.TradeEventBus;
+import exercise.stock.market.index.GeometricMeanIndex;
+import exercise.stock.market.journal.TradeJournal;
+import exercise.stock.market.journal.TradeJournalListener;
+import exercise.stock.market.index.IndexCalculationMode;
 import exercise.stock.market.model.BuyOrSell;
-import exercise.stock.market.model.CommonStock;
-import exercise.stock.market.model.PreferredStock;
 import exercise.stock.market.model.BaseStock;
+import exercise.stock.market.model.OrderFlow;
+import exercise.stock.market.model.StockRatios;
 import exercise.stock.market.model.TradeRecord;
+import exercise.stock.market.numeric.FixedPoint;
+import exercise.stock.market.numeric.Int128;
+import exercise.stock.market.numeric.NumericBackend;
+import exercise.stock.market.store.RollingWindow;
+import exercise.stock.market.store.Candle;
+import exercise.stock.market.store.CandleSeries;
+import exercise.stock.market.store.TimeBuckets;
+import exercise.stock.market.store.TradeStore;
+import exercise.stock.market.store.WindowTotals;
 import exercises.stock.exceptions.BusinessException;
 import exercises.stock.exceptions.InvalidValueException;
 
 /**
  * A stock market service that manage stocks and trades information.
+ * <p>
+ * Trades may be recorded and prices read from many threads at once: each
+ * stock's {@link TradeStore} is locked on its own, so trades of different
+ * stocks are recorded in parallel, and the GBCE all share index is read from
+ * consistent totals. Registering stocks while other threads use the service
+ * requires the concurrent mode, see {@link #StockMarketService(boolean)}.
  * 
  * @author DMONEY
  *
@@ -27,16 +56,119 @@ public class StockMarketService {
 	/** A stocks managed in this service. */
 	private Map<String, BaseStock> stockMap;
 
+	/**
+	 * An unmodifiable copy of the registered stocks, in registration order,
+	 * replaced on each registration so that it can be iterated while stocks
+	 * are registered.
+	 */
+	private volatile Map<String, BaseStock> stocks = Collections.emptyMap();
+
+	/**
+	 * The registered stocks by id, so that the calls given a stock id look up
+	 * the stock in an array instead of hashing its symbol.
+	 */
+	private final StockRegistry registry;
+
+	/** The GBCE all share index, following the prices of all the stocks. */
+	private GeometricMeanIndex allShareIndex;
+
+	/**
+	 * The indices defined on subsets of the stocks, by name. Each index
+	 * listens to the prices of its constituents, so that a price change is
+	 * applied once to each index containing the stock.
+	 */
+	private Map<String, GeometricMeanIndex> indexMap;
+
+	/** The way the GBCE all share index is calculated by default. */
+	private IndexCalculationMode indexCalculationMode;
+
+	/** The journal the recorded trades are appended to, or null. */
+	private volatile TradeJournal journal;
+
+	/** The bus the recorded trades are published to, or null. */
+	private volatile TradeEventBus eventBus;
+
+	/** The clock giving the end of the windows of the volume weighted stock price. */
+	private volatile MarketClock clock = MarketClock.SYSTEM;
+
+	/** The arithmetic of the divisions. */
+	private final NumericBackend numericBackend;
+
 	/**
 	 * The precision scale in the calculation.
 	 */
-	private static final int PRECISION_SCALE = 7;
+	private static final int PRECISION_SCALE = NumericBackend.PRECISION_SCALE;
+
+	/**
+	 * The length of the window of the volume weighted stock price, 15 minutes.
+	 */
+	private static final long VWSP_WINDOW_MILLIS = 15 * 60 * 1000L;
+
+	/**
+	 * The number of stocks below which a market summary is not split further
+	 * across the fork-join pool.
+	 */
+	public static final int SUMMARY_THRESHOLD = 64;
+
+	/** The default length of the time buckets of the multi-window VWSP, 1 second. */
+	public static final long DEFAULT_TIME_BUCKET_MILLIS = 1000L;
+
+	/** The default time covered by the time buckets, 1 hour. */
+	public static final long DEFAULT_TIME_BUCKET_HORIZON_MILLIS = 60 * 60 * 1000L;
+
+	/** The length of the time buckets of the multi-window VWSP. */
+	private volatile long timeBucketMillis;
+
+	/** The number of time buckets of each stock. */
+	private volatile int timeBucketCount;
+
+	/** The number of bars kept by each stock, by length of bar. */
+	private final Map<Long, Integer> candleBarCounts = new ConcurrentHashMap<Long, Integer>();
 
 	/**
 	 * Constructor.
 	 */
 	public StockMarketService() {
-		this.stockMap = new HashMap<String, BaseStock>();
+		this(false);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param concurrent true to keep the stocks in a {@link ConcurrentHashMap},
+	 *            so that stocks can be registered and looked up from several
+	 *            threads at once
+	 */
+	public StockMarketService(boolean concurrent) {
+		this(concurrent, NumericBackend.BIG_DECIMAL);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param concurrent true to keep the stocks in a {@link ConcurrentHashMap},
+	 *            so that stocks can be registered and looked up from several
+	 *            threads at once
+	 * @param numericBackend the arithmetic the dividend yields, P/E ratios,
+	 *            volume weighted stock prices and order flow imbalances are
+	 *            divided with; both backends give the same results
+	 */
+	public StockMarketService(boolean concurrent, NumericBackend numericBackend) {
+		if (numericBackend == null) {
+			throw new InvalidValueException("Found null numeric backend.");
+		}
+		this.numericBackend = numericBackend;
+		if (concurrent) {
+			this.stockMap = new ConcurrentHashMap<String, BaseStock>();
+			this.indexMap = new ConcurrentHashMap<String, GeometricMeanIndex>();
+		} else {
+			this.stockMap = new HashMap<String, BaseStock>();
+			this.indexMap = new HashMap<String, GeometricMeanIndex>();
+		}
+		this.registry = new StockRegistry();
+		this.allShareIndex = new GeometricMeanIndex();
+		this.indexCalculationMode = IndexCalculationMode.LOGARITHMIC;
+		setTimeBuckets(DEFAULT_TIME_BUCKET_MILLIS, DEFAULT_TIME_BUCKET_HORIZON_MILLIS);
 	}
 
 	/**
@@ -44,12 +176,18 @@ public class StockMarketService {
 	 * 
 	 * @param stock the stock to be registered
 	 */
-	public void registerStock(BaseStock stock) {
-		String errorMessage = "The stock " + stock.getSymbol() + " has already been registerd.";
-		if (this.stockMap.containsKey(stock.getSymbol())) {
-			throw new BusinessException(errorMessage);
+	public synchronized void registerStock(BaseStock stock) {
+		if (this.stockMap.putIfAbsent(stock.getSymbol(), stock) != null) {
+			throw new BusinessException("The stock " + stock.getSymbol() + " has already been registerd.");
+		}
+		this.registry.register(stock);
+		Map<String, BaseStock> stocks = new LinkedHashMap<String, BaseStock>(this.stocks);
+		stocks.put(stock.getSymbol(), stock);
+		this.stocks = Collections.unmodifiableMap(stocks);
+		this.allShareIndex.add(stock);
+		for (Map.Entry<Long, Integer> entry : this.candleBarCounts.entrySet()) {
+			stock.getTradeStore().getCandleSeries(entry.getKey(), entry.getValue());
 		}
-		this.stockMap.put(stock.getSymbol(), stock);
 	}
 
 	/**
@@ -57,49 +195,140 @@ public class StockMarketService {
 	 * 
 	 * @param stockSymbol the symbol of the stock to be unregistered
 	 */
-	public void unregisterStock(String stockSymbol) {
-		if (!this.stockMap.containsKey(stockSymbol)) {
+	public synchronized void unregisterStock(String stockSymbol) {
+		BaseStock stock = this.stockMap.remove(stockSymbol);
+		if (stock == null) {
 			String errorMessage = "The stock " + stockSymbol + " has not been registerd.";
 			throw new BusinessException(errorMessage);
 		}
-		this.stockMap.remove(stockSymbol);
+		this.registry.unregister(this.registry.idOf(stockSymbol));
+		Map<String, BaseStock> stocks = new LinkedHashMap<String, BaseStock>(this.stocks);
+		stocks.remove(stockSymbol);
+		this.stocks = Collections.unmodifiableMap(stocks);
+		this.allShareIndex.remove(stock);
+		for (GeometricMeanIndex index : this.indexMap.values()) {
+			index.remove(stock);
+		}
+	}
+
+	/**
+	 * Gets the id of a registered stock. The ids are dense integers given in
+	 * the order the symbols are first registered, and a symbol keeps its id
+	 * when its stock is unregistered and registered again. The methods taking
+	 * a stock id look up the stock in an array indexed by id rather than
+	 * hashing the symbol, for the callers resolving their symbols once.
+	 * 
+	 * @param symbol the symbol of the stock
+	 * @return the id of the stock
+	 */
+	public int getStockId(String symbol) {
+		findStockBySymbol(symbol);
+		return this.registry.idOf(symbol);
+	}
+
+	/**
+	 * @param stockId the id of a registered stock
+	 * @return the symbol of the stock
+	 */
+	public String getStockSymbol(int stockId) {
+		return findStockById(stockId).getSymbol();
 	}
 
 	/**
-	 * Returns the stocks managed in this service.
+	 * Returns the stocks managed in this service. The map is an unmodifiable
+	 * copy, replaced when a stock is registered or unregistered, so it can be
+	 * iterated while other threads register stocks.
 	 * 
-	 * @return the stockMap a {@link HashMap} containing the stocks managed in
-	 *         this service
+	 * @return the stocks managed in this service by symbol, in registration
+	 *         order
 	 */
 	public Map<String, BaseStock> getStockMap() {
-		return this.stockMap;
+		return this.stocks;
 	}
 
 	/**
 	 * Calculates the dividend yield of the given stock based on the given
-	 * price. The result precision scale is 3 and applies
-	 * {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * price, with {@link BaseStock#getDividendYield(BigDecimal)}. The result
+	 * precision scale is 3 and applies {@link BigDecimal#ROUND_HALF_EVEN}.
 	 * 
 	 * @param symbol the symbol of the stock to be calculated
 	 * @param price the price used in calculation
 	 */
 	public BigDecimal getDividendYield(String symbol, BigDecimal price) {
+		return dividendYield(findStockBySymbol(symbol), price);
+	}
 
-		BaseStock stock = findStockBySymbol(symbol);
+	/**
+	 * Calculates the dividend yield of the stock with the given id as
+	 * {@link #getDividendYield(String, BigDecimal)} does.
+	 * 
+	 * @param stockId the id of the stock to be calculated
+	 * @param price the price used in calculation
+	 */
+	public BigDecimal getDividendYield(int stockId, BigDecimal price) {
+		return dividendYield(findStockById(stockId), price);
+	}
+
+	/**
+	 * Calculates the dividend yield of the given stock based on the given price
+	 * as {@link #getDividendYield(String, BigDecimal)} does, without throwing
+	 * an exception or creating any object when the stock is unknown or the
+	 * price is not positive.
+	 * 
+	 * @param symbol the symbol of the stock to be calculated
+	 * @param price the price used in calculation
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetDividendYield(String symbol, BigDecimal price, QueryResult result) {
+		return dividendYield(symbol == null ? null : this.stockMap.get(symbol), price, result);
+	}
+
+	/**
+	 * Calculates the dividend yield of the stock with the given id as
+	 * {@link #tryGetDividendYield(String, BigDecimal, QueryResult)} does.
+	 * 
+	 * @param stockId the id of the stock to be calculated
+	 * @param price the price used in calculation
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetDividendYield(int stockId, BigDecimal price, QueryResult result) {
+		return dividendYield(this.registry.get(stockId), price, result);
+	}
 
+	/**
+	 * Calculates the dividend yield of a stock.
+	 * 
+	 * @param stock the stock to be calculated
+	 * @param price the price used in calculation
+	 * @return the dividend yield
+	 */
+	private BigDecimal dividendYield(BaseStock stock, BigDecimal price) {
 		checkPositive(price);
 
-		BigDecimal result = BigDecimal.ZERO;
-		if (stock instanceof CommonStock) {
-			CommonStock commonStock = (CommonStock) stock;
-			result = commonStock.getLastDividend().divide(price, PRECISION_SCALE, BigDecimal.ROUND_HALF_EVEN);
-		} else if (stock instanceof PreferredStock) {
-			PreferredStock preferredStock = (PreferredStock) stock;
-			result = preferredStock.getFixedDividend().multiply(stock.getParValue()).divide(price, PRECISION_SCALE,
-					BigDecimal.ROUND_HALF_EVEN);
-		}
+		StockRatios ratios = ratiosAt(stock, price);
+		return ratios != null ? ratios.getDividendYield() : stock.getDividendYield(price, this.numericBackend);
+	}
 
-		return result.setScale(3, BigDecimal.ROUND_HALF_EVEN);
+	/**
+	 * Calculates the dividend yield of a stock without throwing an exception.
+	 * 
+	 * @param stock the stock to be calculated, or null if unknown
+	 * @param price the price used in calculation
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	private QueryStatus dividendYield(BaseStock stock, BigDecimal price, QueryResult result) {
+		if (stock == null) {
+			return result.fail(QueryStatus.UNKNOWN_STOCK);
+		}
+		if (!isPositive(price)) {
+			return result.fail(QueryStatus.NON_POSITIVE_PRICE);
+		}
+		StockRatios ratios = ratiosAt(stock, price);
+		return result.succeed(
+				ratios != null ? ratios.getDividendYield() : stock.getDividendYield(price, this.numericBackend));
 	}
 
 	/**
@@ -111,153 +340,1563 @@ public class StockMarketService {
 	 * @param price the trade price
 	 */
 	public BigDecimal getPERatio(String symbol, BigDecimal price) {
-		BaseStock stock = findStockBySymbol(symbol);
+		return peRatio(findStockBySymbol(symbol), price);
+	}
+
+	/**
+	 * Calculates the P/E Ratio of the stock with the given id as
+	 * {@link #getPERatio(String, BigDecimal)} does.
+	 * 
+	 * @param stockId the id of the stock to be calculated
+	 * @param price the trade price
+	 */
+	public BigDecimal getPERatio(int stockId, BigDecimal price) {
+		return peRatio(findStockById(stockId), price);
+	}
 
+	/**
+	 * Calculates the P/E Ratio of a stock, checking the price and the
+	 * dividend.
+	 * 
+	 * @param stock the stock to be calculated
+	 * @param price the trade price
+	 * @return the P/E Ratio
+	 */
+	private BigDecimal peRatio(BaseStock stock, BigDecimal price) {
 		checkPositive(price);
 
-		BigDecimal result = BigDecimal.ZERO;
-		if (BigDecimal.ZERO.compareTo(stock.getLastDividend()) >= 0) {
+		if (!hasDividend(stock)) {
 			throw new BusinessException(
-					"Cannot calculate P/E Ratio for the stock " + symbol + "since the dividend is ZERO.");
+					"Cannot calculate P/E Ratio for the stock " + stock.getSymbol() + "since the dividend is ZERO.",
+					false);
+		}
+		StockRatios ratios = ratiosAt(stock, price);
+		return ratios != null && ratios.getPERatio() != null ? ratios.getPERatio() : divideByDividend(stock, price);
+	}
+
+	/**
+	 * Calculates the P/E Ratio of the given stock based on the given price as
+	 * {@link #getPERatio(String, BigDecimal)} does, without throwing an
+	 * exception or creating any object when the stock is unknown, the price is
+	 * not positive or the dividend is zero.
+	 * 
+	 * @param symbol the symbol of the stock to be calculated
+	 * @param price the trade price
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetPERatio(String symbol, BigDecimal price, QueryResult result) {
+		return peRatio(symbol == null ? null : this.stockMap.get(symbol), price, result);
+	}
+
+	/**
+	 * Calculates the P/E Ratio of the stock with the given id as
+	 * {@link #tryGetPERatio(String, BigDecimal, QueryResult)} does.
+	 * 
+	 * @param stockId the id of the stock to be calculated
+	 * @param price the trade price
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetPERatio(int stockId, BigDecimal price, QueryResult result) {
+		return peRatio(this.registry.get(stockId), price, result);
+	}
+
+	/**
+	 * Calculates the P/E Ratio of a stock without throwing an exception.
+	 * 
+	 * @param stock the stock to be calculated, or null if unknown
+	 * @param price the trade price
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	private QueryStatus peRatio(BaseStock stock, BigDecimal price, QueryResult result) {
+		if (stock == null) {
+			return result.fail(QueryStatus.UNKNOWN_STOCK);
+		}
+		if (!isPositive(price)) {
+			return result.fail(QueryStatus.NON_POSITIVE_PRICE);
+		}
+		if (!hasDividend(stock)) {
+			return result.fail(QueryStatus.ZERO_DIVIDEND);
+		}
+		StockRatios ratios = ratiosAt(stock, price);
+		return result.succeed(
+				ratios != null && ratios.getPERatio() != null ? ratios.getPERatio() : divideByDividend(stock, price));
+	}
+
+	/**
+	 * Gets the dividend yield and P/E Ratio of the given stock at its current
+	 * price. The ratios are cached by the stock until its price or dividends
+	 * change, so repeated calls do not divide again.
+	 * 
+	 * @param symbol the symbol of the stock
+	 * @return the {@link StockRatios}, whose values are null where the
+	 *         throwing methods would throw
+	 */
+	public StockRatios getRatios(String symbol) {
+		return ratiosOf(findStockBySymbol(symbol));
+	}
+
+	/**
+	 * Gets the ratios of the stock with the given id as
+	 * {@link #getRatios(String)} does.
+	 * 
+	 * @param stockId the id of the stock
+	 * @return the {@link StockRatios}
+	 */
+	public StockRatios getRatios(int stockId) {
+		return ratiosOf(findStockById(stockId));
+	}
+
+	/**
+	 * Gets the dividend yield and P/E Ratio of all the stocks at their current
+	 * price, as {@link #getRatios(String)} does. The stocks are read from the
+	 * copy of the registered stocks, so stocks may be registered meanwhile, in
+	 * either mode.
+	 * 
+	 * @return the {@link StockRatios} by symbol
+	 */
+	public Map<String, StockRatios> getAllRatios() {
+		Map<String, BaseStock> stocks = this.stocks;
+		Map<String, StockRatios> ratios = new HashMap<String, StockRatios>(stocks.size() * 4 / 3 + 1);
+		for (BaseStock stock : stocks.values()) {
+			ratios.put(stock.getSymbol(), ratiosOf(stock));
+		}
+		return ratios;
+	}
+
+	/**
+	 * Gets the ratios of a stock at its current price, from its cache or
+	 * calculated and cached.
+	 * 
+	 * @param stock the stock
+	 * @return the {@link StockRatios}
+	 */
+	private StockRatios ratiosOf(BaseStock stock) {
+		StockRatios ratios = stock.getCachedRatios();
+		if (ratios == null) {
+			long version = stock.getRatiosVersion();
+			BigDecimal price = stock.getPrice();
+			BigDecimal dividendYield = null;
+			BigDecimal peRatio = null;
+			if (isPositive(price)) {
+				dividendYield = stock.getDividendYield(price, this.numericBackend);
+				if (hasDividend(stock)) {
+					peRatio = divideByDividend(stock, price);
+				}
+			}
+			ratios = new StockRatios(price, dividendYield, peRatio);
+			stock.cacheRatios(ratios, version);
+		}
+		return ratios;
+	}
+
+	/**
+	 * Gets the ratios of a stock if they are at the given price, i.e. the
+	 * price is the current price of the stock.
+	 * 
+	 * @param stock the stock
+	 * @param price the price of the query
+	 * @return the {@link StockRatios} at that price, or null
+	 */
+	private StockRatios ratiosAt(BaseStock stock, BigDecimal price) {
+		StockRatios ratios = stock.getCachedRatios();
+		if (ratios == null && isSameValue(stock.getPrice(), price)) {
+			ratios = ratiosOf(stock);
 		}
-		result = price.divide(stock.getLastDividend(), PRECISION_SCALE, BigDecimal.ROUND_HALF_EVEN);
-		return result.setScale(3, BigDecimal.ROUND_HALF_EVEN);
+		return ratios != null && isSameValue(ratios.getPrice(), price) ? ratios : null;
+	}
+
+	/**
+	 * Checks whether the P/E Ratio of a stock can be calculated.
+	 * 
+	 * @param stock the stock
+	 * @return true if the last dividend of the stock is positive
+	 */
+	private static boolean hasDividend(BaseStock stock) {
+		return BigDecimal.ZERO.compareTo(stock.getLastDividend()) < 0;
+	}
+
+	/**
+	 * Calculates the P/E Ratio of a stock, the price and the dividend being
+	 * positive.
+	 * 
+	 * @param stock the stock to be calculated
+	 * @param price the trade price
+	 * @return the P/E Ratio, with scale 3
+	 */
+	private BigDecimal divideByDividend(BaseStock stock, BigDecimal price) {
+		return this.numericBackend.divide(price, stock.getLastDividend(), 3);
 	}
 
 	/**
 	 * Records a trade, with time stamp, quantity of shares, buy or sell
-	 * indicator and traded price.
+	 * indicator and traded price. The price must be representable with the
+	 * price scale of the {@link TradeStore} of the stock, and the quantity must
+	 * fit in a {@code long}.
+	 * <p>
+	 * The price is not rounded: with the default scale of
+	 * {@link TradeStore#DEFAULT_PRICE_SCALE} decimal places, a price such as
+	 * {@code 1.0000001} is rejected, while {@code 1.0000000} and
+	 * {@code 1.0000001} after {@link TradeStore#setPriceScale(int)} with 7 are
+	 * accepted.
+	 * 
+	 * @param symbol the symbol of the stock
+	 * @param timestamp the time of the trade
+	 * @param quantity the quantity of shares, positive
+	 * @param indicator the buy or sell indicator
+	 * @param price the traded price, positive
+	 * @throws InvalidValueException if a value is missing or not positive, the
+	 *             quantity does not fit in a {@code long}, or the price has
+	 *             more non-zero decimal places than the price scale of the
+	 *             store
 	 */
 	public void recordTrade(String symbol, Date timestamp, BigInteger quantity, BuyOrSell indicator, BigDecimal price) {
 		BaseStock stock = findStockBySymbol(symbol);
 
 		checkPositive(price);
-		checkPositive(new BigDecimal(quantity));
+		checkPositive(quantity == null ? null : new BigDecimal(quantity));
+		if (timestamp == null) {
+			throw new InvalidValueException("Found null timestamp.");
+		}
+		if (quantity.bitLength() >= Long.SIZE) {
+			throw new InvalidValueException("The quantity " + quantity + " is too large.");
+		}
 
-		TradeRecord record = new TradeRecord(symbol, timestamp, quantity, indicator, price);
-		stock.addTradeRecord(record);
+		TradeStore store = stock.getTradeStore();
+		int priceScale;
+		long unscaledPrice;
+		synchronized (store) {
+			priceScale = store.getPriceScale();
+			unscaledPrice = FixedPoint.toUnscaled(price, priceScale);
+			store.add(timestamp.getTime(), quantity.longValue(), indicator, unscaledPrice);
+			journal(symbol, timestamp.getTime(), quantity.longValue(), indicator, unscaledPrice, priceScale);
+		}
+		publish(symbol, timestamp.getTime(), quantity.longValue(), indicator, unscaledPrice, priceScale);
+		this.clock.tradeRecorded(timestamp.getTime());
 	}
 
 	/**
-	 * Gets the volume weighted stock price based on the trades in the 15
-	 * minutes. The result keeps precision scale is 0 and applies
-	 * {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * Records a trade from primitive values, without creating any object when
+	 * the price scale is the one of the {@link TradeStore} of the stock.
 	 * 
-	 * @param stock the stock to calculate.
-	 * @return the VolumeWeightedStockPrice in the last in 15 minutes.
+	 * @param symbol the symbol of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price
 	 */
-	public BigDecimal getVolumeWeightedStockPrice(String symbol) {
+	public void recordTrade(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+			int priceScale) {
+		recordTrade(findStockBySymbol(symbol), timestamp, quantity, indicator, price, priceScale);
+	}
 
-		BaseStock stock = findStockBySymbol(symbol);
+	/**
+	 * Records a trade of the stock with the given id as
+	 * {@link #recordTrade(String, long, long, BuyOrSell, long, int)} does,
+	 * without hashing the symbol.
+	 * 
+	 * @param stockId the id of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price
+	 */
+	public void recordTrade(int stockId, long timestamp, long quantity, BuyOrSell indicator, long price,
+			int priceScale) {
+		recordTrade(findStockById(stockId), timestamp, quantity, indicator, price, priceScale);
+	}
 
-		BigDecimal result = BigDecimal.ZERO;
-		List<TradeRecord> tradeRecords = getTradeRecordsByTime(stock, 15);
-		if (tradeRecords.isEmpty()) {
-			return result;
+	/**
+	 * Records a trade of a stock from primitive values.
+	 * 
+	 * @param stock the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price
+	 */
+	private void recordTrade(BaseStock stock, long timestamp, long quantity, BuyOrSell indicator, long price,
+			int priceScale) {
+		if (price <= 0 || quantity <= 0) {
+			throw new InvalidValueException("Found non-positive value: "
+					+ (price <= 0 ? BigDecimal.valueOf(price, priceScale) : BigDecimal.valueOf(quantity)));
 		}
 
-		BigDecimal priceSum = BigDecimal.ZERO;
-		BigInteger quantitySum = BigInteger.ZERO;
+		TradeStore store = stock.getTradeStore();
+		int storeScale;
+		long unscaledPrice;
+		synchronized (store) {
+			storeScale = store.getPriceScale();
+			unscaledPrice = FixedPoint.rescale(price, priceScale, storeScale);
+			store.add(timestamp, quantity, indicator, unscaledPrice);
+			journal(stock.getSymbol(), timestamp, quantity, indicator, unscaledPrice, storeScale);
+		}
+		publish(stock.getSymbol(), timestamp, quantity, indicator, unscaledPrice, storeScale);
+		this.clock.tradeRecorded(timestamp);
+	}
 
-		for (TradeRecord record : tradeRecords) {
-			BigDecimal price = record.getPrice();
-			checkPositive(price);
-			BigDecimal quatity = new BigDecimal(record.getQuantity());
-			checkPositive(quatity);
+	/**
+	 * Records a batch of trades, none of them being recorded if one is
+	 * invalid.
+	 * 
+	 * @param trades the trades to record
+	 * @return the {@link BatchResult}
+	 * @see #recordTrades(TradeBatch, BatchFailurePolicy)
+	 */
+	public BatchResult recordTrades(Collection<TradeRecord> trades) {
+		return recordTrades(trades, BatchFailurePolicy.ALL_OR_NOTHING);
+	}
 
-			priceSum = priceSum.add(price.multiply(quatity));
-			quantitySum = quantitySum.add(record.getQuantity());
+	/**
+	 * Records a batch of trades.
+	 * 
+	 * @param trades the trades to record
+	 * @param policy what to do with the invalid trades
+	 * @return the {@link BatchResult}, the indexes being the positions of the
+	 *         trades in the iteration order of the collection
+	 * @see #recordTrades(TradeBatch, BatchFailurePolicy)
+	 */
+	public BatchResult recordTrades(Collection<TradeRecord> trades, BatchFailurePolicy policy) {
+		TradeBatch batch = new TradeBatch(trades.size());
+		for (TradeRecord trade : trades) {
+			batch.add(trade);
 		}
-		result = priceSum.divide(new BigDecimal(quantitySum), PRECISION_SCALE, 3);
-		return result.setScale(0, BigDecimal.ROUND_HALF_EVEN);
-
+		return recordTrades(batch, policy);
 	}
 
 	/**
-	 * Calculates the GBCE all share index value based on the prices of all the
-	 * stocks in the market service. The result precision scale is 0 and applies
-	 * {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * Records a batch of trades. The trades are validated first, as
+	 * {@link #recordTrade(String, long, long, BuyOrSell, long, int)} would,
+	 * then grouped by stock, and the trades of each stock are appended and
+	 * journaled while holding the lock of its {@link TradeStore} once. The
+	 * trades of a stock are appended in the order of the batch. They are
+	 * published to the event bus after the lock is released, so that a bus
+	 * blocking on a slow listener does not block the readers of the stock.
+	 * <p>
+	 * With {@link BatchFailurePolicy#ALL_OR_NOTHING}, the error of the first
+	 * invalid trade is thrown and no trade is recorded. With
+	 * {@link BatchFailurePolicy#SKIP_INVALID}, the valid trades are recorded
+	 * and the invalid ones are reported in the result.
 	 * 
-	 * @return the GBCE all share index value, with 2 scale.
+	 * @param batch the trades to record
+	 * @param policy what to do with the invalid trades
+	 * @return the {@link BatchResult}
 	 */
-	public BigDecimal getGBCEAllShareIndex() {
-		if (this.stockMap.isEmpty()) {
-			throw new BusinessException(
-					"No any stock registered to this market in current. Please register stocks first.");
+	public BatchResult recordTrades(TradeBatch batch, BatchFailurePolicy policy) {
+		int size = batch.size();
+		BatchResult result = new BatchResult();
+		int[] groupOfId = new int[this.registry.size()];
+		List<BaseStock> stocks = new ArrayList<BaseStock>();
+		List<TradeStore> stores = new ArrayList<TradeStore>();
+		int[] groupOfTrade = new int[size];
+		long[] unscaledPrices = new long[size];
+		for (int i = 0; i < size; i++) {
+			RuntimeException error = null;
+			String symbol = batch.getSymbol(i);
+			int id = symbol == null ? batch.getStockId(i) : this.registry.idOf(symbol);
+			// the groups are kept by stock id, plus one so that 0 means no group
+			int group = id >= 0 && id < groupOfId.length ? groupOfId[id] - 1 : -1;
+			if (group < 0) {
+				BaseStock stock = this.registry.get(id);
+				if (stock == null) {
+					error = new BusinessException("Trade " + i + ": cannot find the stock "
+							+ (symbol == null && id >= 0 ? "with id " + id : symbol)
+							+ " in the market. Please register the stock first");
+				} else {
+					if (id >= groupOfId.length) {
+						// a stock registered while the batch is grouped, below the new size
+						groupOfId = Arrays.copyOf(groupOfId, this.registry.size());
+					}
+					group = stores.size();
+					groupOfId[id] = group + 1;
+					stocks.add(stock);
+					stores.add(stock.getTradeStore());
+				}
+			}
+			if (error == null) {
+				error = validate(batch, i, stores.get(group), unscaledPrices);
+			}
+			if (error != null) {
+				if (policy == BatchFailurePolicy.ALL_OR_NOTHING) {
+					throw error;
+				}
+				result.addRejected(i, error);
+				groupOfTrade[i] = -1;
+			} else {
+				groupOfTrade[i] = group;
+			}
 		}
 
-		BigDecimal accumulate = BigDecimal.ONE;
-		int n = this.stockMap.size();
+		int[] groupStarts = new int[stores.size() + 1];
+		for (int i = 0; i < size; i++) {
+			if (groupOfTrade[i] >= 0) {
+				groupStarts[groupOfTrade[i] + 1]++;
+			}
+		}
+		for (int group = 0; group < stores.size(); group++) {
+			groupStarts[group + 1] += groupStarts[group];
+		}
+		int[] order = new int[groupStarts[stores.size()]];
+		int[] next = Arrays.copyOf(groupStarts, stores.size());
+		for (int i = 0; i < size; i++) {
+			if (groupOfTrade[i] >= 0) {
+				order[next[groupOfTrade[i]]++] = i;
+			}
+		}
 
-		for (BaseStock stock : this.stockMap.values()) {
-			BigDecimal price = stock.getPrice();
-			checkPositive(price);
-			accumulate = accumulate.multiply(price);
+		TradeJournal current = this.journal;
+		TradeEventBus bus = this.eventBus;
+		long latestTimestamp = Long.MIN_VALUE;
+		for (int group = 0; group < stores.size(); group++) {
+			TradeStore store = stores.get(group);
+			String symbol = stocks.get(group).getSymbol();
+			int priceScale;
+			synchronized (store) {
+				priceScale = store.getPriceScale();
+				for (int k = groupStarts[group]; k < groupStarts[group + 1]; k++) {
+					int i = order[k];
+					store.add(batch.getTimestamp(i), batch.getQuantity(i), batch.getIndicator(i), unscaledPrices[i]);
+					latestTimestamp = Math.max(latestTimestamp, batch.getTimestamp(i));
+					result.addRecorded();
+				}
+				if (current != null) {
+					for (int k = groupStarts[group]; k < groupStarts[group + 1]; k++) {
+						int i = order[k];
+						current.append(symbol, batch.getTimestamp(i), batch.getQuantity(i),
+								batch.getIndicator(i), unscaledPrices[i], priceScale);
+					}
+				}
+			}
+			// published once the lock is released, since the bus may block
+			if (bus != null) {
+				for (int k = groupStarts[group]; k < groupStarts[group + 1]; k++) {
+					int i = order[k];
+					bus.publish(symbol, batch.getTimestamp(i), batch.getQuantity(i), batch.getIndicator(i),
+							unscaledPrices[i], priceScale);
+				}
+			}
 		}
+		if (result.getRecordedCount() > 0) {
+			this.clock.tradeRecorded(latestTimestamp);
+		}
+		return result;
+	}
+
+	/**
+	 * Rebuilds the trade records of the registered stocks from a journal, e.g.
+	 * after a restart. The stocks must be registered first; the rolling
+	 * window totals are rebuilt from the recovered trades. The recovered trades
+	 * are not appended to the journal of this service, but the clock is told
+	 * about them, so that an event-time clock ends at the latest one.
+	 * 
+	 * @param source the journal to read
+	 * @return the number of trades recovered
+	 * @throws IOException if the journal cannot be read
+	 */
+	public long recover(TradeJournal source) throws IOException {
+		return source.replay(new TradeJournalListener() {
 
-		BigDecimal x = accumulate.divide(accumulate, BigDecimal.ROUND_HALF_EVEN);
-		BigDecimal temp = BigDecimal.ZERO;
-		BigDecimal e = new BigDecimal("0.1");
+			/** The symbol of the last trade. */
+			private String lastSymbol;
 
-		do {
-			temp = x;
-			x = x.add(accumulate.subtract(x.pow(n)).divide(new BigDecimal(n).multiply(x.pow(n - 1)), PRECISION_SCALE,
-					BigDecimal.ROUND_HALF_EVEN));
-		} while (x.subtract(temp).abs().compareTo(e) > 0);
+			/** The store of the last trade. */
+			private TradeStore lastStore;
 
-		return x.setScale(0, BigDecimal.ROUND_HALF_EVEN);
+			@Override
+			public void tradeRead(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+					int priceScale) {
+				if (symbol != this.lastSymbol) {
+					this.lastStore = findStockBySymbol(symbol).getTradeStore();
+					this.lastSymbol = symbol;
+				}
+				this.lastStore.add(timestamp, quantity, indicator,
+						FixedPoint.rescale(price, priceScale, this.lastStore.getPriceScale()));
+				clock.tradeRecorded(timestamp);
+			}
+		});
+	}
 
+	/**
+	 * @return the journal the recorded trades are appended to, or null
+	 */
+	public TradeJournal getJournal() {
+		return journal;
 	}
 
 	/**
-	 * Gets the trade records of the given stock in the last given minutes.
+	 * Sets the journal the trades recorded by this service are appended to.
+	 * A trade is appended while the lock of the {@link TradeStore} of its stock
+	 * is held, so that the trades of a stock are journaled in the order they
+	 * are added to its store, and recovering the journal rebuilds the same
+	 * trade records. The journal itself is only locked to claim the space of
+	 * a record, so the trades of different stocks are still journaled in
+	 * parallel. The trades added to a stock directly, e.g. with
+	 * {@link BaseStock#addTradeRecord(exercise.stock.market.model.TradeRecord)},
+	 * are not journaled.
 	 * 
-	 * @param stock the {@link BaseStock} to search
-	 * @param minutes the range of the time to search
-	 * @return a {@link TradeRecord}s matching the search criterion
+	 * @param journal the journal to set, or null to stop journaling
 	 */
-	private List<TradeRecord> getTradeRecordsByTime(BaseStock stock, int minutes) {
-		List<TradeRecord> result = new ArrayList<TradeRecord>();
-		// TODO maybe better to build a trade record list in time order in
-		// future.
-		Date currentTime = new Date();
-		for (TradeRecord record : stock.getTradeRecords()) {
-			if (currentTime.getTime() - record.getTimestamp().getTime() <= 15 * 60 * 1000) {
-				result.add(record);
-			}
-		}
+	public void setJournal(TradeJournal journal) {
+		this.journal = journal;
+	}
 
-		return result;
+	/**
+	 * @return the bus the recorded trades are published to, or null
+	 */
+	public TradeEventBus getEventBus() {
+		return eventBus;
+	}
 
+	/**
+	 * Sets the bus the trades recorded by this service are published to, after
+	 * they are recorded and journaled. As for the journal, the trades added to
+	 * a stock directly and the recovered trades are not published.
+	 * <p>
+	 * The trades are published once the lock of the {@link TradeStore} of
+	 * their stock is released, so that a listener may query the stock, and a
+	 * bus with {@link exercise.stock.market.event.BackpressurePolicy#BLOCK}
+	 * waiting for a slow listener does not block the readers of the stock.
+	 * Each thread publishes its trades in the order it records them, but the
+	 * trades of one stock recorded by several threads at once may be published
+	 * in another order than they are stored and journaled; the journal is the
+	 * record of that order.
+	 * 
+	 * @param eventBus the {@link TradeEventBus} to set, or null to stop
+	 *            publishing
+	 */
+	public void setEventBus(TradeEventBus eventBus) {
+		this.eventBus = eventBus;
 	}
 
 	/**
-	 * Finds the {@link BaseStock} registered to this market with the given
-	 * symbol.
+	 * @return the arithmetic of the divisions, set at construction
+	 */
+	public NumericBackend getNumericBackend() {
+		return numericBackend;
+	}
+
+	/**
+	 * @return the clock giving the end of the windows of the volume weighted
+	 *         stock price
+	 */
+	public MarketClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Sets the clock giving the end of the windows of the volume weighted
+	 * stock price, {@link MarketClock#SYSTEM} by default. With an
+	 * {@link exercise.stock.market.clock.EventTimeClock}, the windows end at
+	 * the latest trade recorded, so that trades replayed faster than real time
+	 * are aggregated as they were on the day.
 	 * 
-	 * @param symbol the symbol of the stock to look up
-	 * @return the {@link BaseStock} found
+	 * @param clock the {@link MarketClock} to set
 	 */
-	private BaseStock findStockBySymbol(String symbol) {
-		BaseStock stock = null;
-		if (this.stockMap.containsKey(symbol)) {
-			stock = this.stockMap.get(symbol);
-		} else {
-			throw new BusinessException(
-					"Cannot find the stock " + symbol + " in the market. Please register the stock first");
+	public void setClock(MarketClock clock) {
+		if (clock == null) {
+			throw new InvalidValueException("Found null clock.");
 		}
-		return stock;
+		this.clock = clock;
 	}
 
 	/**
-	 * Validates the given value is a positive.
+	 * Gets the volume weighted stock price based on the trades in the 15
+	 * minutes. The result keeps precision scale is 0 and applies
+	 * {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * <p>
+	 * The sums of price * quantity and of quantity are maintained by a
+	 * {@link RollingWindow} of the stock as trades are recorded, so that only
+	 * the trades which expired since the last call are visited.
 	 * 
-	 * @param value the value to be checked
+	 * @param stock the stock to calculate.
+	 * @return the VolumeWeightedStockPrice in the last in 15 minutes.
 	 */
-	private void checkPositive(BigDecimal value) {
-		if (value == null || BigDecimal.ZERO.compareTo(value) >= 0) {
-			throw new InvalidValueException("Found non-positive value: " + value);
-		}
+	public BigDecimal getVolumeWeightedStockPrice(String symbol) {
+		return volumeWeightedStockPrice(findStockBySymbol(symbol));
+	}
+
+	/**
+	 * Calculates the volume weighted stock price of the stock with the given
+	 * id as {@link #getVolumeWeightedStockPrice(String)} does.
+	 * 
+	 * @param stockId the id of the stock to calculate
+	 * @return the volume weighted stock price
+	 */
+	public BigDecimal getVolumeWeightedStockPrice(int stockId) {
+		return volumeWeightedStockPrice(findStockById(stockId));
+	}
+
+	/**
+	 * Calculates the volume weighted stock price of a stock from its
+	 * {@link RollingWindow} of 15 minutes, throwing an exception if a trade
+	 * record in the window is invalid.
+	 * 
+	 * @param stock the stock to calculate
+	 * @return the volume weighted stock price
+	 */
+	private BigDecimal volumeWeightedStockPrice(BaseStock stock) {
+		QueryResult result = new QueryResult();
+		if (volumeWeightedStockPrice(stock, result) != QueryStatus.OK) {
+			int invalidCount;
+			synchronized (stock.getTradeStore()) {
+				invalidCount = stock.getTradeStore().getWindow(VWSP_WINDOW_MILLIS).getInvalidCount();
+			}
+			throw new InvalidValueException("Found " + invalidCount
+					+ " trade records with non-positive price or quantity for the stock " + stock.getSymbol(), false);
+		}
+		return result.getValue();
+	}
+
+	/**
+	 * Gets the volume weighted stock price based on the trades in the 15
+	 * minutes as {@link #getVolumeWeightedStockPrice(String)} does, without
+	 * throwing an exception or creating any object when the stock is unknown or
+	 * a trade record in the window is invalid.
+	 * 
+	 * @param symbol the symbol of the stock to calculate
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetVolumeWeightedStockPrice(String symbol, QueryResult result) {
+		BaseStock stock = symbol == null ? null : this.stockMap.get(symbol);
+		if (stock == null) {
+			return result.fail(QueryStatus.UNKNOWN_STOCK);
+		}
+		return volumeWeightedStockPrice(stock, result);
+	}
+
+	/**
+	 * Gets the volume weighted stock price of the stock with the given id as
+	 * {@link #tryGetVolumeWeightedStockPrice(String, QueryResult)} does.
+	 * 
+	 * @param stockId the id of the stock to calculate
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetVolumeWeightedStockPrice(int stockId, QueryResult result) {
+		BaseStock stock = this.registry.get(stockId);
+		if (stock == null) {
+			return result.fail(QueryStatus.UNKNOWN_STOCK);
+		}
+		return volumeWeightedStockPrice(stock, result);
+	}
+
+	/**
+	 * Calculates the volume weighted stock price of a stock from its
+	 * {@link RollingWindow} of 15 minutes.
+	 * 
+	 * @param stock the stock to calculate
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	private QueryStatus volumeWeightedStockPrice(BaseStock stock, QueryResult result) {
+		return volumeWeightedStockPrice(stock, this.clock.currentTimeMillis(), result);
+	}
+
+	/**
+	 * Calculates the volume weighted stock price of a stock from its
+	 * {@link RollingWindow} of 15 minutes ending at the given time.
+	 * 
+	 * @param stock the stock to calculate
+	 * @param now the end of the window, in milliseconds since the epoch
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	private QueryStatus volumeWeightedStockPrice(BaseStock stock, long now, QueryResult result) {
+		TradeStore store = stock.getTradeStore();
+		int tradeCount;
+		int invalidCount;
+		Int128 priceQuantitySum = result.getPriceQuantitySum();
+		int priceScale;
+		long quantitySum;
+		synchronized (store) {
+			RollingWindow window = store.getWindow(VWSP_WINDOW_MILLIS);
+			window.advanceTo(now);
+			tradeCount = window.getTradeCount();
+			invalidCount = window.getInvalidCount();
+			if (invalidCount > 0) {
+				return result.fail(QueryStatus.INVALID_TRADE_RECORDS);
+			}
+			window.getPriceQuantitySum(priceQuantitySum);
+			priceScale = store.getPriceScale();
+			quantitySum = window.getQuantitySum();
+		}
+		return result.succeed(volumeWeightedStockPrice(tradeCount, priceQuantitySum, priceScale, quantitySum));
+	}
+
+	/**
+	 * Gets the buy and sell volumes, the volume weighted price of each side
+	 * and the order flow imbalance of the given stock over the 15 minutes of
+	 * the volume weighted stock price.
+	 * <p>
+	 * The totals of each side are maintained by the {@link RollingWindow} of
+	 * the stock along with the totals of the VWSP, so the trades are not
+	 * scanned again.
+	 * 
+	 * @param symbol the symbol of the stock
+	 * @return the {@link OrderFlow} of the stock
+	 */
+	public OrderFlow getOrderFlow(String symbol) {
+		return orderFlow(findStockBySymbol(symbol), VWSP_WINDOW_MILLIS);
+	}
+
+	/**
+	 * Gets the buy and sell volumes, the volume weighted price of each side
+	 * and the order flow imbalance of the given stock over a window ending
+	 * now. Each stock keeps a {@link RollingWindow} for each length asked
+	 * for, so the lengths are meant to be a few fixed values.
+	 * 
+	 * @param symbol the symbol of the stock
+	 * @param windowMillis the length of the window, in milliseconds
+	 * @return the {@link OrderFlow} of the stock
+	 */
+	public OrderFlow getOrderFlow(String symbol, long windowMillis) {
+		return orderFlow(findStockBySymbol(symbol), windowMillis);
+	}
+
+	/**
+	 * Gets the order flow of the stock with the given id over a window ending
+	 * now, as {@link #getOrderFlow(String, long)} does.
+	 * 
+	 * @param stockId the id of the stock
+	 * @param windowMillis the length of the window, in milliseconds
+	 * @return the {@link OrderFlow} of the stock
+	 */
+	public OrderFlow getOrderFlow(int stockId, long windowMillis) {
+		return orderFlow(findStockById(stockId), windowMillis);
+	}
+
+	/**
+	 * Calculates the order flow of a stock from its {@link RollingWindow} of
+	 * the given length, throwing an exception if a trade record in the window
+	 * is invalid.
+	 * 
+	 * @param stock the stock
+	 * @param windowMillis the length of the window, in milliseconds
+	 * @return the {@link OrderFlow} of the stock
+	 */
+	private OrderFlow orderFlow(BaseStock stock, long windowMillis) {
+		if (windowMillis <= 0) {
+			throw new InvalidValueException("Found non-positive window length: " + windowMillis, false);
+		}
+		TradeStore store = stock.getTradeStore();
+		int buyTradeCount;
+		int sellTradeCount;
+		long buyVolume;
+		long sellVolume;
+		Int128 buyPriceQuantitySum;
+		Int128 sellPriceQuantitySum;
+		int priceScale;
+		synchronized (store) {
+			RollingWindow window = store.getWindow(windowMillis);
+			window.advanceTo(this.clock.currentTimeMillis());
+			if (window.getInvalidCount() > 0) {
+				throw new InvalidValueException("Found " + window.getInvalidCount()
+						+ " trade records with non-positive price or quantity for the stock " + stock.getSymbol(), false);
+			}
+			buyTradeCount = window.getTradeCount(BuyOrSell.BUY);
+			sellTradeCount = window.getTradeCount(BuyOrSell.SELL);
+			buyVolume = window.getQuantitySum(BuyOrSell.BUY);
+			sellVolume = window.getQuantitySum(BuyOrSell.SELL);
+			buyPriceQuantitySum = window.getPriceQuantitySum(BuyOrSell.BUY, new Int128());
+			sellPriceQuantitySum = window.getPriceQuantitySum(BuyOrSell.SELL, new Int128());
+			priceScale = store.getPriceScale();
+		}
+		BigDecimal imbalance = BigDecimal.ZERO;
+		if (buyTradeCount + sellTradeCount > 0) {
+			BigDecimal buy = BigDecimal.valueOf(buyVolume);
+			BigDecimal sell = BigDecimal.valueOf(sellVolume);
+			imbalance = this.numericBackend.divide(buy.subtract(sell), buy.add(sell), PRECISION_SCALE);
+		}
+		return new OrderFlow(windowMillis, buyTradeCount, sellTradeCount, buyVolume, sellVolume,
+				volumeWeightedStockPrice(buyTradeCount, buyPriceQuantitySum, priceScale, buyVolume),
+				volumeWeightedStockPrice(sellTradeCount, sellPriceQuantitySum, priceScale, sellVolume), imbalance);
+	}
+
+	/**
+	 * Gets the volume weighted stock prices of the given stock over several
+	 * windows ending now, e.g. 1, 5, 15 and 60 minutes. The results keep
+	 * precision scale 0 and apply {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * <p>
+	 * All the windows are read in one pass over the {@link TimeBuckets} of the
+	 * stock, see {@link #setTimeBuckets(long, long)}, so asking for several
+	 * windows costs about as much as asking for the longest one.
+	 * 
+	 * @param symbol the symbol of the stock to calculate
+	 * @param windowsMillis the lengths of the windows, in milliseconds
+	 * @return the VWSP of each window, in the order of the lengths
+	 */
+	public BigDecimal[] getVolumeWeightedStockPrices(String symbol, long... windowsMillis) {
+		return volumeWeightedStockPrices(findStockBySymbol(symbol), windowsMillis);
+	}
+
+	/**
+	 * Gets the volume weighted stock prices of the stock with the given id
+	 * over several windows ending now, as
+	 * {@link #getVolumeWeightedStockPrices(String, long...)} does.
+	 * 
+	 * @param stockId the id of the stock to calculate
+	 * @param windowsMillis the lengths of the windows, in milliseconds
+	 * @return the VWSP of each window, in the order of the lengths
+	 */
+	public BigDecimal[] getVolumeWeightedStockPrices(int stockId, long... windowsMillis) {
+		return volumeWeightedStockPrices(findStockById(stockId), windowsMillis);
+	}
+
+	/**
+	 * Gets the volume weighted stock prices of a stock over several windows
+	 * ending now.
+	 * 
+	 * @param stock the stock to calculate
+	 * @param windowsMillis the lengths of the windows, in milliseconds
+	 * @return the VWSP of each window, in the order of the lengths
+	 */
+	private BigDecimal[] volumeWeightedStockPrices(BaseStock stock, long... windowsMillis) {
+		WindowTotals totals = totalsOf(stock, new WindowTotals(windowsMillis));
+		Int128 priceQuantitySum = new Int128();
+		BigDecimal[] prices = new BigDecimal[totals.size()];
+		for (int i = 0; i < prices.length; i++) {
+			if (totals.getInvalidCount(i) > 0) {
+				throw new InvalidValueException("Found " + totals.getInvalidCount(i)
+						+ " trade records with non-positive price or quantity for the stock " + stock.getSymbol(), false);
+			}
+			prices[i] = volumeWeightedStockPrice(totals.getTradeCount(i), totals.getPriceQuantitySum(i,
+					priceQuantitySum), totals.getPriceScale(), totals.getQuantitySum(i));
+		}
+		return prices;
+	}
+
+	/**
+	 * Gets the volume weighted stock prices of all the stocks over several
+	 * windows ending now, as {@link #getVolumeWeightedStockPrices(String, long...)}
+	 * does. The stocks are read from the copy of the registered stocks, so
+	 * stocks may be registered meanwhile, in either mode.
+	 * 
+	 * @param windowsMillis the lengths of the windows, in milliseconds
+	 * @return the VWSP of each window by symbol, in the order of the lengths;
+	 *         the VWSP of a window holding an invalid trade record is null
+	 */
+	public Map<String, BigDecimal[]> getAllVolumeWeightedStockPrices(long... windowsMillis) {
+		WindowTotals totals = new WindowTotals(windowsMillis);
+		Int128 priceQuantitySum = new Int128();
+		Map<String, BaseStock> stocks = this.stocks;
+		Map<String, BigDecimal[]> result = new HashMap<String, BigDecimal[]>(stocks.size() * 4 / 3 + 1);
+		for (BaseStock stock : stocks.values()) {
+			totalsOf(stock, totals);
+			BigDecimal[] prices = new BigDecimal[totals.size()];
+			for (int i = 0; i < prices.length; i++) {
+				if (totals.getInvalidCount(i) == 0) {
+					prices[i] = volumeWeightedStockPrice(totals.getTradeCount(i), totals.getPriceQuantitySum(i,
+							priceQuantitySum), totals.getPriceScale(), totals.getQuantitySum(i));
+				}
+			}
+			result.put(stock.getSymbol(), prices);
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the time buckets the multi-window VWSP is served from. A finer
+	 * granularity reads fewer trades at the start of each window but walks
+	 * more buckets; the trades older than the horizon are read from the trade
+	 * records. The buckets are created for each stock on first use, so they
+	 * are set before the service is queried.
+	 * 
+	 * @param granularityMillis the length of a bucket, in milliseconds
+	 * @param horizonMillis the time covered by the buckets, in milliseconds,
+	 *            normally the longest window queried
+	 */
+	public void setTimeBuckets(long granularityMillis, long horizonMillis) {
+		if (granularityMillis <= 0 || horizonMillis <= 0) {
+			throw new InvalidValueException("Found non-positive value: " + Math.min(granularityMillis, horizonMillis));
+		}
+		long count = horizonMillis / granularityMillis + 1;
+		if (count >= Integer.MAX_VALUE) {
+			throw new InvalidValueException("Too many time buckets: " + count);
+		}
+		this.timeBucketCount = (int) count;
+		this.timeBucketMillis = granularityMillis;
+	}
+
+	/**
+	 * @return the length of the time buckets of the multi-window VWSP, in
+	 *         milliseconds
+	 */
+	public long getTimeBucketMillis() {
+		return timeBucketMillis;
+	}
+
+	/**
+	 * Reads the totals of the windows of a stock from its time buckets.
+	 * 
+	 * @param stock the stock
+	 * @param totals the holder of the lengths of the windows
+	 * @return the totals
+	 */
+	private WindowTotals totalsOf(BaseStock stock, WindowTotals totals) {
+		TimeBuckets buckets = stock.getTradeStore().getTimeBuckets(this.timeBucketMillis, this.timeBucketCount);
+		return buckets.getTotals(this.clock.currentTimeMillis(), totals);
+	}
+
+	/**
+	 * Adds a length of candle to all the stocks: from now on, the trades
+	 * recorded update the open/high/low/close/volume bar of that length they
+	 * fall in, for each stock. Several lengths may be added, e.g. 1 minute and
+	 * 1 hour. The bars start with the trades the stocks still keep, and
+	 * outlive the trades evicted by the retention policy of the stock.
+	 * 
+	 * @param intervalMillis the length of a bar, in milliseconds
+	 * @param barCount the number of latest bars kept by each stock
+	 */
+	public synchronized void addCandles(long intervalMillis, int barCount) {
+		if (intervalMillis <= 0 || barCount <= 0) {
+			throw new InvalidValueException("Found non-positive value: " + Math.min(intervalMillis, barCount));
+		}
+		this.candleBarCounts.put(intervalMillis, barCount);
+		for (BaseStock stock : this.stockMap.values()) {
+			stock.getTradeStore().getCandleSeries(intervalMillis, barCount);
+		}
+	}
+
+	/**
+	 * Gets the candles of the given stock overlapping a time range, read from
+	 * the bars kept since {@link #addCandles(long, int)} rather than from the
+	 * trade records.
+	 * 
+	 * @param symbol the symbol of the stock
+	 * @param intervalMillis the length of a bar, as added
+	 * @param fromTime the start of the range, in milliseconds since the epoch
+	 * @param toTime the end of the range, excluded
+	 * @return the {@link Candle}s with a trade, oldest first
+	 */
+	public List<Candle> getCandles(String symbol, long intervalMillis, long fromTime, long toTime) {
+		return candleSeriesOf(findStockBySymbol(symbol), intervalMillis).getCandles(fromTime, toTime);
+	}
+
+	/**
+	 * Gets the candles of the stock with the given id overlapping a time
+	 * range, as {@link #getCandles(String, long, long, long)} does.
+	 * 
+	 * @param stockId the id of the stock
+	 * @param intervalMillis the length of a bar, as added
+	 * @param fromTime the start of the range, in milliseconds since the epoch
+	 * @param toTime the end of the range, excluded
+	 * @return the {@link Candle}s with a trade, oldest first
+	 */
+	public List<Candle> getCandles(int stockId, long intervalMillis, long fromTime, long toTime) {
+		return candleSeriesOf(findStockById(stockId), intervalMillis).getCandles(fromTime, toTime);
+	}
+
+	/**
+	 * Finds the candle series of a stock.
+	 * 
+	 * @param stock the stock
+	 * @param intervalMillis the length of a bar
+	 * @return the {@link CandleSeries}
+	 */
+	private CandleSeries candleSeriesOf(BaseStock stock, long intervalMillis) {
+		Integer barCount = this.candleBarCounts.get(intervalMillis);
+		if (barCount == null) {
+			throw new BusinessException("No candles of " + intervalMillis + " ms have been added.", false);
+		}
+		return stock.getTradeStore().getCandleSeries(intervalMillis, barCount);
+	}
+
+	/**
+	 * Calculates a volume weighted stock price from the totals of a window.
+	 * 
+	 * @param tradeCount the number of trades in the window
+	 * @param priceQuantitySum the sum of price * quantity, as a fixed point
+	 *            value with the price scale
+	 * @param priceScale the scale of the prices
+	 * @param quantitySum the sum of quantity
+	 * @return the VWSP, with 0 scale, or zero if there is no trade
+	 */
+	private BigDecimal volumeWeightedStockPrice(int tradeCount, Int128 priceQuantitySum, int priceScale,
+			long quantitySum) {
+		if (tradeCount == 0) {
+			return BigDecimal.ZERO;
+		}
+		return this.numericBackend.volumeWeightedPrice(priceQuantitySum, priceScale, quantitySum);
+	}
+
+	/**
+	 * Calculates the GBCE all share index value based on the prices of all the
+	 * stocks in the market service, with the {@link IndexCalculationMode} of
+	 * this service. The result precision scale is 0 and applies
+	 * {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * 
+	 * @return the GBCE all share index value, with 0 scale.
+	 */
+	public BigDecimal getGBCEAllShareIndex() {
+		return getGBCEAllShareIndex(this.indexCalculationMode);
+	}
+
+	/**
+	 * Calculates the GBCE all share index value based on the prices of all the
+	 * stocks in the market service, with the given
+	 * {@link IndexCalculationMode}. The result precision scale is 0 and
+	 * applies {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * 
+	 * @param mode the way to calculate the index
+	 * @return the GBCE all share index value, with 0 scale.
+	 */
+	public BigDecimal getGBCEAllShareIndex(IndexCalculationMode mode) {
+		if (this.stockMap.isEmpty()) {
+			throw new BusinessException(
+					"No any stock registered to this market in current. Please register stocks first.", false);
+		}
+
+		if (mode == IndexCalculationMode.LOGARITHMIC) {
+			return this.allShareIndex.getValue();
+		}
+		if (mode == IndexCalculationMode.PARALLEL) {
+			return GeometricMeanIndex.calculateParallel(this.stocks.values());
+		}
+		return GeometricMeanIndex.calculateExact(this.stocks.values());
+
+	}
+
+	/**
+	 * Calculates the GBCE all share index value as
+	 * {@link #getGBCEAllShareIndex()} does, without throwing an exception when
+	 * no stock is registered or a stock has a non-positive price.
+	 * 
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetGBCEAllShareIndex(QueryResult result) {
+		return tryGetGBCEAllShareIndex(this.indexCalculationMode, result);
+	}
+
+	/**
+	 * Calculates the GBCE all share index value as
+	 * {@link #getGBCEAllShareIndex(IndexCalculationMode)} does, without
+	 * throwing an exception when no stock is registered or a stock has a
+	 * non-positive price.
+	 * 
+	 * @param mode the way to calculate the index
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetGBCEAllShareIndex(IndexCalculationMode mode, QueryResult result) {
+		if (this.stockMap.isEmpty()) {
+			return result.fail(QueryStatus.NO_STOCKS);
+		}
+
+		BigDecimal value;
+		if (mode == IndexCalculationMode.LOGARITHMIC) {
+			value = this.allShareIndex.tryGetValue();
+		} else if (mode == IndexCalculationMode.PARALLEL) {
+			value = GeometricMeanIndex.tryCalculateParallel(this.stocks.values());
+		} else {
+			value = GeometricMeanIndex.tryCalculateExact(this.stocks.values());
+		}
+		return value == null ? result.fail(QueryStatus.INVALID_STOCK_PRICE) : result.succeed(value);
+	}
+
+	/**
+	 * @return the way the GBCE all share index is calculated by default
+	 */
+	public IndexCalculationMode getIndexCalculationMode() {
+		return indexCalculationMode;
+	}
+
+	/**
+	 * @param indexCalculationMode the way the GBCE all share index is
+	 *            calculated by default
+	 */
+	public void setIndexCalculationMode(IndexCalculationMode indexCalculationMode) {
+		this.indexCalculationMode = indexCalculationMode;
+	}
+
+	/**
+	 * Defines a named index as the geometric mean of the prices of the given
+	 * registered stocks, such as a sector or a custom basket. The index is
+	 * maintained incrementally like the GBCE all share index: each price
+	 * change of a stock is applied to every index containing it. A stock
+	 * unregistered from this service leaves all the indices.
+	 * 
+	 * @param name the name of the index
+	 * @param symbols the symbols of the constituents
+	 */
+	public synchronized void defineIndex(String name, Collection<String> symbols) {
+		if (name == null) {
+			throw new InvalidValueException("Found null index name.");
+		}
+		if (this.indexMap.containsKey(name)) {
+			throw new BusinessException("The index " + name + " has already been defined.");
+		}
+		List<BaseStock> stocks = new ArrayList<BaseStock>(symbols.size());
+		for (String symbol : symbols) {
+			stocks.add(findStockBySymbol(symbol));
+		}
+		GeometricMeanIndex index = new GeometricMeanIndex();
+		for (BaseStock stock : stocks) {
+			index.add(stock);
+		}
+		this.indexMap.put(name, index);
+	}
+
+	/**
+	 * Removes a named index, which stops following the prices of its
+	 * constituents.
+	 * 
+	 * @param name the name of the index
+	 */
+	public synchronized void removeIndex(String name) {
+		GeometricMeanIndex index = findIndexByName(name);
+		this.indexMap.remove(name);
+		for (BaseStock stock : index.getConstituents()) {
+			index.remove(stock);
+		}
+	}
+
+	/**
+	 * Adds a registered stock to a named index.
+	 * 
+	 * @param name the name of the index
+	 * @param symbol the symbol of the stock
+	 */
+	public synchronized void addIndexConstituent(String name, String symbol) {
+		GeometricMeanIndex index = findIndexByName(name);
+		index.add(findStockBySymbol(symbol));
+	}
+
+	/**
+	 * Removes a stock from a named index.
+	 * 
+	 * @param name the name of the index
+	 * @param symbol the symbol of the stock
+	 */
+	public synchronized void removeIndexConstituent(String name, String symbol) {
+		GeometricMeanIndex index = findIndexByName(name);
+		BaseStock stock = findStockBySymbol(symbol);
+		if (!index.contains(stock)) {
+			throw new BusinessException("The stock " + symbol + " is not a constituent of the index " + name + ".");
+		}
+		index.remove(stock);
+	}
+
+	/**
+	 * @return the names of the indices defined in this service
+	 */
+	public Set<String> getIndexNames() {
+		return Collections.unmodifiableSet(this.indexMap.keySet());
+	}
+
+	/**
+	 * @param name the name of the index
+	 * @return the symbols of the constituents of the index, in the order they
+	 *         were added
+	 */
+	public List<String> getIndexSymbols(String name) {
+		List<BaseStock> constituents = findIndexByName(name).getConstituents();
+		List<String> symbols = new ArrayList<String>(constituents.size());
+		for (BaseStock stock : constituents) {
+			symbols.add(stock.getSymbol());
+		}
+		return symbols;
+	}
+
+	/**
+	 * Calculates the value of a named index with the
+	 * {@link IndexCalculationMode} of this service. The result precision scale
+	 * is 0 and applies {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * 
+	 * @param name the name of the index
+	 * @return the value of the index, with 0 scale.
+	 */
+	public BigDecimal getIndexValue(String name) {
+		return getIndexValue(name, this.indexCalculationMode);
+	}
+
+	/**
+	 * Calculates the value of a named index with the given
+	 * {@link IndexCalculationMode}. The result precision scale is 0 and
+	 * applies {@link BigDecimal#ROUND_HALF_EVEN}.
+	 * 
+	 * @param name the name of the index
+	 * @param mode the way to calculate the index
+	 * @return the value of the index, with 0 scale.
+	 */
+	public BigDecimal getIndexValue(String name, IndexCalculationMode mode) {
+		GeometricMeanIndex index = findIndexByName(name);
+		if (mode == IndexCalculationMode.LOGARITHMIC) {
+			return index.getValue();
+		}
+		List<BaseStock> constituents = index.getConstituents();
+		if (constituents.isEmpty()) {
+			throw new BusinessException("The index " + name + " has no constituent.", false);
+		}
+		if (mode == IndexCalculationMode.PARALLEL) {
+			return GeometricMeanIndex.calculateParallel(constituents);
+		}
+		return GeometricMeanIndex.calculateExact(constituents);
+	}
+
+	/**
+	 * Calculates the value of a named index as {@link #getIndexValue(String)}
+	 * does, without throwing an exception when the index is unknown, has no
+	 * constituent or a constituent has a non-positive price.
+	 * 
+	 * @param name the name of the index
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetIndexValue(String name, QueryResult result) {
+		return tryGetIndexValue(name, this.indexCalculationMode, result);
+	}
+
+	/**
+	 * Calculates the value of a named index as
+	 * {@link #getIndexValue(String, IndexCalculationMode)} does, without
+	 * throwing an exception when the index is unknown, has no constituent or a
+	 * constituent has a non-positive price.
+	 * 
+	 * @param name the name of the index
+	 * @param mode the way to calculate the index
+	 * @param result the holder receiving the status and the value
+	 * @return the status of the query
+	 */
+	public QueryStatus tryGetIndexValue(String name, IndexCalculationMode mode, QueryResult result) {
+		GeometricMeanIndex index = name == null ? null : this.indexMap.get(name);
+		if (index == null) {
+			return result.fail(QueryStatus.UNKNOWN_INDEX);
+		}
+		BigDecimal value;
+		if (mode == IndexCalculationMode.LOGARITHMIC) {
+			if (index.size() == 0) {
+				return result.fail(QueryStatus.NO_STOCKS);
+			}
+			value = index.tryGetValue();
+		} else {
+			List<BaseStock> constituents = index.getConstituents();
+			if (constituents.isEmpty()) {
+				return result.fail(QueryStatus.NO_STOCKS);
+			}
+			value = mode == IndexCalculationMode.PARALLEL ? GeometricMeanIndex.tryCalculateParallel(constituents)
+					: GeometricMeanIndex.tryCalculateExact(constituents);
+		}
+		return value == null ? result.fail(QueryStatus.INVALID_STOCK_PRICE) : result.succeed(value);
+	}
+
+	/**
+	 * Calculates the values of all the named indices, with the
+	 * {@link IndexCalculationMode} of this service.
+	 * 
+	 * @return the values by index name, null for an index without constituent
+	 *         or with a non-positive price
+	 */
+	public Map<String, BigDecimal> getAllIndexValues() {
+		Map<String, BigDecimal> values = new LinkedHashMap<String, BigDecimal>();
+		QueryResult result = new QueryResult();
+		for (String name : this.indexMap.keySet()) {
+			values.put(name, tryGetIndexValue(name, result) == QueryStatus.OK ? result.getValue() : null);
+		}
+		return values;
+	}
+
+	/**
+	 * Takes a snapshot of the market for reporting: the price and the volume
+	 * weighted stock price of every registered stock, with the windows ending
+	 * at the same time of the clock, and the GBCE all share index and named
+	 * indices calculated from the prices read, with the
+	 * {@link IndexCalculationMode} of this service.
+	 * <p>
+	 * The snapshot does not block the threads recording trades: the stocks and
+	 * the constituents of the indices are read from copies taken under the
+	 * lock of the service, which only guards registrations, and each stock is
+	 * locked on its own just to read the running totals of its window. The
+	 * indices being calculated from the prices of the snapshot, they agree
+	 * with those prices even if prices change while it is taken.
+	 * 
+	 * @return the {@link MarketSnapshot}
+	 */
+	public MarketSnapshot getSnapshot() {
+		Map<String, BaseStock> stocks;
+		Map<String, List<BaseStock>> indices = new LinkedHashMap<String, List<BaseStock>>();
+		synchronized (this) {
+			stocks = this.stocks;
+			for (Map.Entry<String, GeometricMeanIndex> entry : this.indexMap.entrySet()) {
+				indices.put(entry.getKey(), entry.getValue().getConstituents());
+			}
+		}
+		long now = this.clock.currentTimeMillis();
+		int capacity = stocks.size() * 4 / 3 + 1;
+		Map<String, BigDecimal> prices = new LinkedHashMap<String, BigDecimal>(capacity);
+		Map<String, BigDecimal> volumeWeightedStockPrices = new LinkedHashMap<String, BigDecimal>(capacity);
+		Map<String, Long> tradeVersions = new LinkedHashMap<String, Long>(capacity);
+		QueryResult result = new QueryResult();
+		for (BaseStock stock : stocks.values()) {
+			TradeStore store = stock.getTradeStore();
+			synchronized (store) {
+				tradeVersions.put(stock.getSymbol(), store.getVersion());
+				volumeWeightedStockPrices.put(stock.getSymbol(),
+						volumeWeightedStockPrice(stock, now, result) == QueryStatus.OK ? result.getValue() : null);
+			}
+			prices.put(stock.getSymbol(), stock.getPrice());
+		}
+		BigDecimal allShareIndex = GeometricMeanIndex
+				.tryCalculate(prices.values().toArray(new BigDecimal[prices.size()]), this.indexCalculationMode);
+		Map<String, BigDecimal> indexValues = new LinkedHashMap<String, BigDecimal>();
+		for (Map.Entry<String, List<BaseStock>> entry : indices.entrySet()) {
+			BigDecimal[] constituentPrices = new BigDecimal[entry.getValue().size()];
+			for (int i = 0; i < constituentPrices.length; i++) {
+				constituentPrices[i] = prices.get(entry.getValue().get(i).getSymbol());
+			}
+			indexValues.put(entry.getKey(),
+					GeometricMeanIndex.tryCalculate(constituentPrices, this.indexCalculationMode));
+		}
+		return new MarketSnapshot(now, prices, volumeWeightedStockPrices, tradeVersions, allShareIndex, indexValues);
+	}
+
+	/**
+	 * Calculates the metrics of all the registered stocks in one pass, for an
+	 * overview of the market: the dividend yield and P/E ratio of each stock at
+	 * its current price, its volume weighted stock price over the 15 minutes
+	 * ending at the same time of the clock for all the stocks, and the GBCE all
+	 * share index of the prices read, with the {@link IndexCalculationMode} of
+	 * this service.
+	 * <p>
+	 * The stocks are split into parts of at most {@link #SUMMARY_THRESHOLD}
+	 * stocks calculated on the common fork-join pool. A metric which cannot be
+	 * calculated for a stock is reported by its {@link QueryStatus} in the
+	 * row of the stock, as the {@code tryGet...} queries do, and no exception
+	 * is thrown for a stock.
+	 * 
+	 * @return the {@link MarketSummary}, with a row per stock in registration
+	 *         order
+	 */
+	public MarketSummary getMarketSummary() {
+		Map<String, BaseStock> stocks = this.stocks;
+		BaseStock[] rows = stocks.values().toArray(new BaseStock[stocks.size()]);
+		MarketSummary summary = new MarketSummary(this.clock.currentTimeMillis(), rows.length);
+		if (rows.length == 0) {
+			summary.setGBCEAllShareIndex(QueryStatus.NO_STOCKS, null);
+			return summary;
+		}
+		// invoked from the calling thread, which calculates the first part itself
+		new SummaryTask(summary, rows, 0, rows.length).invoke();
+		BigDecimal[] prices = new BigDecimal[rows.length];
+		for (int row = 0; row < prices.length; row++) {
+			prices[row] = summary.getPrice(row);
+		}
+		BigDecimal value = GeometricMeanIndex.tryCalculate(prices, this.indexCalculationMode);
+		summary.setGBCEAllShareIndex(value == null ? QueryStatus.INVALID_STOCK_PRICE : QueryStatus.OK, value);
+		return summary;
+	}
+
+	/**
+	 * Finds the {@link BaseStock} registered to this market with the given
+	 * symbol.
+	 * 
+	 * @param symbol the symbol of the stock to look up
+	 * @return the {@link BaseStock} found
+	 */
+	private BaseStock findStockBySymbol(String symbol) {
+		BaseStock stock = symbol == null ? null : this.stockMap.get(symbol);
+		if (stock == null) {
+			throw new BusinessException(
+					"Cannot find the stock " + symbol + " in the market. Please register the stock first", false);
+		}
+		return stock;
+	}
+
+	/**
+	 * Finds the {@link BaseStock} registered to this market with the given id.
+	 * 
+	 * @param stockId the id of the stock to look up
+	 * @return the {@link BaseStock} found
+	 */
+	private BaseStock findStockById(int stockId) {
+		BaseStock stock = this.registry.get(stockId);
+		if (stock == null) {
+			throw new BusinessException("Cannot find the stock with id " + stockId
+					+ " in the market. Please register the stock first", false);
+		}
+		return stock;
+	}
+
+	/**
+	 * Finds the index defined in this market with the given name.
+	 * 
+	 * @param name the name of the index to look up
+	 * @return the {@link GeometricMeanIndex} found
+	 */
+	private GeometricMeanIndex findIndexByName(String name) {
+		GeometricMeanIndex index = name == null ? null : this.indexMap.get(name);
+		if (index == null) {
+			throw new BusinessException("Cannot find the index " + name + " in the market. Please define the index first",
+					false);
+		}
+		return index;
+	}
+
+	/**
+	 * Validates a trade of a batch and converts its price to the scale of the
+	 * store of the stock.
+	 * 
+	 * @param batch the batch
+	 * @param index the index of the trade
+	 * @param store the store of the stock
+	 * @param unscaledPrices the converted prices, by index
+	 * @return the error of an invalid trade, or null
+	 */
+	private RuntimeException validate(TradeBatch batch, int index, TradeStore store, long[] unscaledPrices) {
+		String error = batch.getError(index);
+		if (error == null && (batch.getQuantity(index) <= 0 || batch.getPrice(index) <= 0)) {
+			error = "Found non-positive value: "
+					+ (batch.getPrice(index) <= 0 ? BigDecimal.valueOf(batch.getPrice(index), batch.getPriceScale(index))
+							: BigDecimal.valueOf(batch.getQuantity(index)));
+		}
+		if (error == null) {
+			try {
+				unscaledPrices[index] = FixedPoint.rescale(batch.getPrice(index), batch.getPriceScale(index),
+						store.getPriceScale());
+			} catch (InvalidValueException e) {
+				error = e.getMessage();
+			}
+		}
+		return error == null ? null : new InvalidValueException("Trade " + index + ": " + error);
+	}
+
+	/**
+	 * Appends a recorded trade to the journal, if any.
+	 * 
+	 * @param symbol the symbol of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price
+	 */
+	private void journal(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+			int priceScale) {
+		TradeJournal current = this.journal;
+		if (current != null) {
+			current.append(symbol, timestamp, quantity, indicator, price, priceScale);
+		}
+	}
+
+	/**
+	 * Publishes a recorded trade to the event bus, if any.
+	 * 
+	 * @param symbol the symbol of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price
+	 */
+	private void publish(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+			int priceScale) {
+		TradeEventBus current = this.eventBus;
+		if (current != null) {
+			current.publish(symbol, timestamp, quantity, indicator, price, priceScale);
+		}
+	}
+
+	/**
+	 * Validates the given value is a positive.
+	 * 
+	 * @param value the value to be checked
+	 */
+	private void checkPositive(BigDecimal value) {
+		if (!isPositive(value)) {
+			throw new InvalidValueException("Found non-positive value: " + value, false);
+		}
+	}
+
+	/**
+	 * Checks whether the given value is positive.
+	 * 
+	 * @param value the value to be checked
+	 * @return true if the value is not null and positive
+	 */
+	private static boolean isPositive(BigDecimal value) {
+		return value != null && value.signum() > 0;
+	}
+
+	/**
+	 * Checks whether two values are equal, ignoring their scale.
+	 * 
+	 * @param first the first value, or null
+	 * @param second the second value
+	 * @return true if both values are equal
+	 */
+	private static boolean isSameValue(BigDecimal first, BigDecimal second) {
+		return first == second || first != null && first.compareTo(second) == 0;
+	}
+
+	/**
+	 * Calculates the rows of a range of stocks of a {@link MarketSummary},
+	 * splitting the range on the fork-join pool.
+	 */
+	private class SummaryTask extends RecursiveAction {
+
+		/** The serial version. */
+		private static final long serialVersionUID = 1L;
+
+		/** The summary receiving the rows. */
+		private final MarketSummary summary;
+
+		/** The stocks, by row. */
+		private final BaseStock[] stocks;
+
+		/** The first row of the range. */
+		private final int from;
+
+		/** The row after the range. */
+		private final int to;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param summary the summary receiving the rows
+		 * @param stocks the stocks, by row
+		 * @param from the first row of the range
+		 * @param to the row after the range
+		 */
+		SummaryTask(MarketSummary summary, BaseStock[] stocks, int from, int to) {
+			this.summary = summary;
+			this.stocks = stocks;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > SUMMARY_THRESHOLD) {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new SummaryTask(this.summary, this.stocks, this.from, middle),
+						new SummaryTask(this.summary, this.stocks, middle, this.to));
+				return;
+			}
+			QueryResult result = new QueryResult();
+			for (int row = this.from; row < this.to; row++) {
+				BaseStock stock = this.stocks[row];
+				BigDecimal price = stock.getPrice();
+				this.summary.setStock(row, stock.getSymbol(), StockMarketService.this.registry.idOf(stock.getSymbol()),
+						price);
+				try {
+					dividendYield(stock, price, result);
+					this.summary.setDividendYield(row, result);
+					peRatio(stock, price, result);
+					this.summary.setPERatio(row, result);
+					volumeWeightedStockPrice(stock, this.summary.getTime(), result);
+					this.summary.setVolumeWeightedStockPrice(row, result);
+				} catch (RuntimeException e) {
+					this.summary.setError(row, e);
+				}
+			}
+		}
+
 	}
 
 }
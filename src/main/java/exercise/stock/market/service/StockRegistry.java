@@ -0,0 +1,102 @@
+package exercise.stock.market.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import exercise.stock.market.model.BaseStock;
+
+/**
+ * The registered stocks of a {@link StockMarketService}, by dense integer id.
+ * <p>
+ * A symbol is given the next id the first time a stock is registered with it,
+ * and keeps that id when the stock is unregistered and registered again, so an
+ * id held by a client never refers to another stock. The stocks are kept in
+ * an array indexed by id, read without lock; the array is published again
+ * after each change, and replaced by a larger copy when it is full.
+ *
+ * @author DMONEY
+ *
+ */
+class StockRegistry {
+
+	/** The initial capacity of the registry. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The ids of the symbols. */
+	private final Map<String, Integer> ids;
+
+	/** The registered stocks by id, null for an unregistered stock. */
+	private volatile BaseStock[] stocks;
+
+	/** The number of ids given. */
+	private int size;
+
+	/**
+	 * Constructor.
+	 */
+	StockRegistry() {
+		this.ids = new ConcurrentHashMap<String, Integer>();
+		this.stocks = new BaseStock[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Registers a stock under the id of its symbol, giving the symbol the next
+	 * id if it has none.
+	 *
+	 * @param stock the stock to register
+	 * @return the id of the stock
+	 */
+	synchronized int register(BaseStock stock) {
+		Integer id = this.ids.get(stock.getSymbol());
+		if (id == null) {
+			id = this.size++;
+			this.ids.put(stock.getSymbol(), id);
+		}
+		BaseStock[] current = this.stocks;
+		if (id >= current.length) {
+			current = Arrays.copyOf(current, current.length * 2);
+		}
+		current[id] = stock;
+		this.stocks = current;
+		return id;
+	}
+
+	/**
+	 * Unregisters the stock of an id, which stays given to its symbol.
+	 *
+	 * @param id the id of the stock
+	 */
+	synchronized void unregister(int id) {
+		BaseStock[] current = this.stocks;
+		current[id] = null;
+		this.stocks = current;
+	}
+
+	/**
+	 * @param symbol the symbol of a stock
+	 * @return the id given to the symbol, or -1 if no stock has been
+	 *         registered with it
+	 */
+	int idOf(String symbol) {
+		Integer id = symbol == null ? null : this.ids.get(symbol);
+		return id == null ? -1 : id.intValue();
+	}
+
+	/**
+	 * @param id the id of a stock
+	 * @return the stock registered with the id, or null
+	 */
+	BaseStock get(int id) {
+		BaseStock[] current = this.stocks;
+		return id >= 0 && id < current.length ? current[id] : null;
+	}
+
+	/**
+	 * @return the number of ids given, the ids being below it
+	 */
+	synchronized int size() {
+		return this.size;
+	}
+
+}
@@ -0,0 +1,279 @@
+package exercise.stock.market.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.model.TradeRecord;
+import exercise.stock.market.numeric.FixedPoint;
+
+/**
+ * A batch of trades to record with
+ * {@link StockMarketService#recordTrades(TradeBatch, BatchFailurePolicy)},
+ * kept in primitive arrays. A batch may be cleared and filled again, so that
+ * a gateway receiving packets of trades does not allocate once its batch is
+ * large enough.
+ * <p>
+ * The trades are only validated when the batch is recorded. A trade added
+ * from a {@link TradeRecord} whose values cannot be represented, e.g. without
+ * timestamp, is kept with its error and rejected then.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeBatch {
+
+	/** The initial capacity of a batch. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The symbols of the stocks, null for the trades added by stock id. */
+	private String[] symbols;
+
+	/** The ids of the stocks, -1 for the trades added by symbol. */
+	private int[] stockIds;
+
+	/** The timestamps, in milliseconds since the epoch. */
+	private long[] timestamps;
+
+	/** The quantities. */
+	private long[] quantities;
+
+	/** The buy or sell indicators. */
+	private BuyOrSell[] indicators;
+
+	/** The unscaled prices. */
+	private long[] prices;
+
+	/** The scales of the prices. */
+	private byte[] priceScales;
+
+	/** The errors of the trades which cannot be represented, or null. */
+	private String[] errors;
+
+	/** The number of trades. */
+	private int size;
+
+	/**
+	 * Constructor.
+	 */
+	public TradeBatch() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity the number of trades held before growing
+	 */
+	public TradeBatch(int capacity) {
+		capacity = Math.max(capacity, 1);
+		this.symbols = new String[capacity];
+		this.stockIds = new int[capacity];
+		this.timestamps = new long[capacity];
+		this.quantities = new long[capacity];
+		this.indicators = new BuyOrSell[capacity];
+		this.prices = new long[capacity];
+		this.priceScales = new byte[capacity];
+		this.errors = new String[capacity];
+	}
+
+	/**
+	 * Adds a trade.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price, from 0 to
+	 *            {@link FixedPoint#MAX_SCALE}
+	 */
+	public void add(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price, int priceScale) {
+		add(symbol, -1, timestamp, quantity, indicator, price, FixedPoint.checkScale(priceScale), null);
+	}
+
+	/**
+	 * Adds a trade of a stock given by its id, see
+	 * {@link StockMarketService#getStockId(String)}.
+	 *
+	 * @param stockId the id of the stock
+	 * @param timestamp the time of the trade, in milliseconds since the epoch
+	 * @param quantity the quantity of shares
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled traded price
+	 * @param priceScale the scale of the price, from 0 to
+	 *            {@link FixedPoint#MAX_SCALE}
+	 */
+	public void add(int stockId, long timestamp, long quantity, BuyOrSell indicator, long price, int priceScale) {
+		add(null, stockId, timestamp, quantity, indicator, price, FixedPoint.checkScale(priceScale), null);
+	}
+
+	/**
+	 * Adds a trade from a {@link TradeRecord}. The price is validated as
+	 * {@link StockMarketService#recordTrade(String, java.util.Date, BigInteger, BuyOrSell, BigDecimal)}
+	 * validates it: its trailing zeros are ignored, and it is rejected when the
+	 * batch is recorded if it has more decimal places than the price scale of
+	 * the store.
+	 *
+	 * @param record the trade to add
+	 */
+	public void add(TradeRecord record) {
+		BigDecimal price = record.getPrice();
+		String error = null;
+		long unscaledPrice = 0;
+		int priceScale = 0;
+		if (record.getTimestamp() == null || record.getQuantity() == null || price == null) {
+			error = "Found an incomplete trade record: " + record;
+		} else if (record.getQuantity().bitLength() >= Long.SIZE) {
+			error = "The quantity " + record.getQuantity() + " is too large.";
+		} else {
+			if (price.scale() > FixedPoint.MAX_SCALE) {
+				// trailing zeros beyond the largest scale, as a single trade accepts them
+				price = price.stripTrailingZeros();
+			}
+			priceScale = Math.max(price.scale(), 0);
+			BigInteger unscaled = price.setScale(priceScale).unscaledValue();
+			if (priceScale > FixedPoint.MAX_SCALE || unscaled.bitLength() >= Long.SIZE) {
+				error = "The price " + price + " cannot be represented.";
+			} else {
+				unscaledPrice = unscaled.longValue();
+			}
+		}
+		add(record.getStockSymbol(), -1, error == null ? record.getTimestamp().getTime() : 0,
+				error == null ? record.getQuantity().longValue() : 0, record.getIndicator(), unscaledPrice,
+				priceScale, error);
+	}
+
+	/**
+	 * Removes all the trades, keeping the capacity.
+	 */
+	public void clear() {
+		Arrays.fill(this.symbols, 0, this.size, null);
+		Arrays.fill(this.indicators, 0, this.size, null);
+		Arrays.fill(this.errors, 0, this.size, null);
+		this.size = 0;
+	}
+
+	/**
+	 * @return the number of trades
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index the index of the trade
+	 * @return the symbol of the stock, or null if the trade was added by stock
+	 *         id
+	 */
+	public String getSymbol(int index) {
+		return this.symbols[checkIndex(index)];
+	}
+
+	/**
+	 * @param index the index of the trade
+	 * @return the id of the stock, or -1 if the trade was added by symbol
+	 */
+	public int getStockId(int index) {
+		return this.stockIds[checkIndex(index)];
+	}
+
+	/**
+	 * @param index the index of the trade
+	 * @return the timestamp, in milliseconds since the epoch
+	 */
+	public long getTimestamp(int index) {
+		return this.timestamps[checkIndex(index)];
+	}
+
+	/**
+	 * @param index the index of the trade
+	 * @return the quantity
+	 */
+	public long getQuantity(int index) {
+		return this.quantities[checkIndex(index)];
+	}
+
+	/**
+	 * @param index the index of the trade
+	 * @return the buy or sell indicator
+	 */
+	public BuyOrSell getIndicator(int index) {
+		return this.indicators[checkIndex(index)];
+	}
+
+	/**
+	 * @param index the index of the trade
+	 * @return the unscaled price
+	 */
+	public long getPrice(int index) {
+		return this.prices[checkIndex(index)];
+	}
+
+	/**
+	 * @param index the index of the trade
+	 * @return the scale of the price
+	 */
+	public int getPriceScale(int index) {
+		return this.priceScales[checkIndex(index)];
+	}
+
+	/**
+	 * @param index the index of the trade
+	 * @return the error of a trade which cannot be represented, or null
+	 */
+	String getError(int index) {
+		return this.errors[index];
+	}
+
+	/**
+	 * Adds a trade.
+	 *
+	 * @param symbol the symbol of the stock, or null
+	 * @param stockId the id of the stock, or -1
+	 * @param timestamp the timestamp
+	 * @param quantity the quantity
+	 * @param indicator the buy or sell indicator
+	 * @param price the unscaled price
+	 * @param priceScale the scale of the price
+	 * @param error the error of a trade which cannot be represented, or null
+	 */
+	private void add(String symbol, int stockId, long timestamp, long quantity, BuyOrSell indicator, long price,
+			int priceScale, String error) {
+		if (this.size == this.timestamps.length) {
+			int capacity = this.size * 2;
+			this.symbols = Arrays.copyOf(this.symbols, capacity);
+			this.stockIds = Arrays.copyOf(this.stockIds, capacity);
+			this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+			this.quantities = Arrays.copyOf(this.quantities, capacity);
+			this.indicators = Arrays.copyOf(this.indicators, capacity);
+			this.prices = Arrays.copyOf(this.prices, capacity);
+			this.priceScales = Arrays.copyOf(this.priceScales, capacity);
+			this.errors = Arrays.copyOf(this.errors, capacity);
+		}
+		this.symbols[this.size] = symbol;
+		this.stockIds[this.size] = stockId;
+		this.timestamps[this.size] = timestamp;
+		this.quantities[this.size] = quantity;
+		this.indicators[this.size] = indicator;
+		this.prices[this.size] = price;
+		this.priceScales[this.size] = (byte) priceScale;
+		this.errors[this.size] = error;
+		this.size++;
+	}
+
+	/**
+	 * Checks that an index refers to a trade of this batch.
+	 *
+	 * @param index the index to check
+	 * @return the index
+	 */
+	private int checkIndex(int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+		return index;
+	}
+
+}
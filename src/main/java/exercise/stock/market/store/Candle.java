@@ -0,0 +1,156 @@
+package exercise.stock.market.store;
+
+import java.math.BigDecimal;
+
+/**
+ * An open/high/low/close/volume bar of the trades of a stock within a time
+ * interval, as read from a {@link CandleSeries}.
+ *
+ * @author DMONEY
+ *
+ */
+public class Candle {
+
+	/** The start of the interval, in milliseconds since the epoch. */
+	private final long startTime;
+
+	/** The length of the interval, in milliseconds. */
+	private final long intervalMillis;
+
+	/** The price of the first trade of the interval. */
+	private final BigDecimal open;
+
+	/** The highest price of the interval. */
+	private final BigDecimal high;
+
+	/** The lowest price of the interval. */
+	private final BigDecimal low;
+
+	/** The price of the last trade of the interval. */
+	private final BigDecimal close;
+
+	/** The quantity of shares traded in the interval. */
+	private final long volume;
+
+	/** The number of trades of the interval. */
+	private final int tradeCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param startTime the start of the interval, in milliseconds since the
+	 *            epoch
+	 * @param intervalMillis the length of the interval, in milliseconds
+	 * @param open the price of the first trade
+	 * @param high the highest price
+	 * @param low the lowest price
+	 * @param close the price of the last trade
+	 * @param volume the quantity of shares traded
+	 * @param tradeCount the number of trades
+	 */
+	public Candle(long startTime, long intervalMillis, BigDecimal open, BigDecimal high, BigDecimal low,
+			BigDecimal close, long volume, int tradeCount) {
+		this.startTime = startTime;
+		this.intervalMillis = intervalMillis;
+		this.open = open;
+		this.high = high;
+		this.low = low;
+		this.close = close;
+		this.volume = volume;
+		this.tradeCount = tradeCount;
+	}
+
+	/**
+	 * @return the start of the interval, in milliseconds since the epoch
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return the length of the interval, in milliseconds
+	 */
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	/**
+	 * @return the price of the first trade of the interval
+	 */
+	public BigDecimal getOpen() {
+		return open;
+	}
+
+	/**
+	 * @return the highest price of the interval
+	 */
+	public BigDecimal getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return the lowest price of the interval
+	 */
+	public BigDecimal getLow() {
+		return low;
+	}
+
+	/**
+	 * @return the price of the last trade of the interval
+	 */
+	public BigDecimal getClose() {
+		return close;
+	}
+
+	/**
+	 * @return the quantity of shares traded in the interval
+	 */
+	public long getVolume() {
+		return volume;
+	}
+
+	/**
+	 * @return the number of trades of the interval
+	 */
+	public int getTradeCount() {
+		return tradeCount;
+	}
+
+	/**
+	 * Compares the values of two candles, the prices by value.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Candle)) {
+			return false;
+		}
+		Candle other = (Candle) obj;
+		return this.startTime == other.startTime && this.intervalMillis == other.intervalMillis
+				&& this.open.compareTo(other.open) == 0 && this.high.compareTo(other.high) == 0
+				&& this.low.compareTo(other.low) == 0 && this.close.compareTo(other.close) == 0
+				&& this.volume == other.volume && this.tradeCount == other.tradeCount;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = Long.hashCode(this.startTime);
+		result = 31 * result + Long.hashCode(this.intervalMillis);
+		result = 31 * result + this.open.stripTrailingZeros().hashCode();
+		result = 31 * result + this.high.stripTrailingZeros().hashCode();
+		result = 31 * result + this.low.stripTrailingZeros().hashCode();
+		result = 31 * result + this.close.stripTrailingZeros().hashCode();
+		result = 31 * result + Long.hashCode(this.volume);
+		return 31 * result + this.tradeCount;
+	}
+
+	@Override
+	public String toString() {
+		return "Candle [startTime=" + startTime + ", intervalMillis=" + intervalMillis + ", open=" + open
+				+ ", high=" + high + ", low=" + low + ", close=" + close + ", volume=" + volume + ", tradeCount="
+				+ tradeCount + "]";
+	}
+
+}
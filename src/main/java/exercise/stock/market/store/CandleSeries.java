@@ -0,0 +1,319 @@
+package exercise.stock.market.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import exercise.stock.market.numeric.FixedPoint;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * The open/high/low/close/volume bars of the trades of a {@link TradeStore}
+ * over intervals of a fixed length, updated as the trades are added, so that
+ * a chart reads prebuilt bars instead of scanning the trades.
+ * <p>
+ * The bars form a ring of the {@link #getBarCount() latest bars}: bar
+ * {@code b} holds the trades with a timestamp in
+ * {@code [b * interval, (b + 1) * interval)}, and a slot of the ring is reused
+ * when the latest trade moves past its bar. A late trade updates its bar if
+ * the bar is still in the ring: it opens the bar if it is older than the
+ * trades of the bar, and closes it if it is not older than the last one, as
+ * the store orders the trades. The trades with a non-positive price or
+ * quantity are left out of the bars.
+ * <p>
+ * The bars are kept when the trades are evicted from the store, so the bars
+ * may reach further back than the trades. They are rebuilt from the trades of
+ * the store when the store is cleared.
+ * <p>
+ * The bars are guarded by the lock of their store.
+ *
+ * @author DMONEY
+ *
+ */
+public class CandleSeries {
+
+	/** The store whose trades are aggregated. */
+	private final TradeStore store;
+
+	/** The length of a bar, in milliseconds. */
+	private final long intervalMillis;
+
+	/** The number of the bar held by each slot. */
+	private final long[] barNumbers;
+
+	/** The unscaled price of the first trade, by slot. */
+	private final long[] opens;
+
+	/** The highest unscaled price, by slot. */
+	private final long[] highs;
+
+	/** The lowest unscaled price, by slot. */
+	private final long[] lows;
+
+	/** The unscaled price of the last trade, by slot. */
+	private final long[] closes;
+
+	/** The timestamp of the first trade, by slot. */
+	private final long[] openTimes;
+
+	/** The timestamp of the last trade, by slot. */
+	private final long[] closeTimes;
+
+	/** The sum of quantity, by slot. */
+	private final long[] volumes;
+
+	/** The number of trades, by slot. */
+	private final int[] tradeCounts;
+
+	/** The number of the bar of the latest trade, if any. */
+	private long latestBar;
+
+	/** True once a trade was added. */
+	private boolean started;
+
+	/**
+	 * Constructor. The bars start with all the trades of the store.
+	 *
+	 * @param store the store whose trades are aggregated
+	 * @param intervalMillis the length of a bar, in milliseconds
+	 * @param barCount the number of bars of the ring
+	 */
+	CandleSeries(TradeStore store, long intervalMillis, int barCount) {
+		this(store, intervalMillis, barCount, null);
+	}
+
+	/**
+	 * Constructor. The bars start with the latest bars of another series of
+	 * the same length, which may reach further back than the trades of the
+	 * store, e.g. when the series is resized or the trades are copied into
+	 * another store.
+	 *
+	 * @param store the store whose trades are aggregated, at the price scale
+	 *            of the store of the source
+	 * @param source the series whose bars are copied
+	 * @param barCount the number of bars of the ring
+	 */
+	CandleSeries(TradeStore store, CandleSeries source, int barCount) {
+		this(store, source.intervalMillis, barCount, source);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param store the store whose trades are aggregated
+	 * @param intervalMillis the length of a bar, in milliseconds
+	 * @param barCount the number of bars of the ring
+	 * @param source the series whose bars are copied, or null to start with
+	 *            the trades of the store
+	 */
+	private CandleSeries(TradeStore store, long intervalMillis, int barCount, CandleSeries source) {
+		if (intervalMillis <= 0) {
+			throw new InvalidValueException("Found non-positive bar length: " + intervalMillis);
+		}
+		if (barCount <= 0) {
+			throw new InvalidValueException("Found non-positive bar count: " + barCount);
+		}
+		this.store = store;
+		this.intervalMillis = intervalMillis;
+		this.barNumbers = new long[barCount];
+		this.opens = new long[barCount];
+		this.highs = new long[barCount];
+		this.lows = new long[barCount];
+		this.closes = new long[barCount];
+		this.openTimes = new long[barCount];
+		this.closeTimes = new long[barCount];
+		this.volumes = new long[barCount];
+		this.tradeCounts = new int[barCount];
+		if (source == null) {
+			reset();
+		} else {
+			copyBars(source);
+		}
+	}
+
+	/**
+	 * @return the length of a bar, in milliseconds
+	 */
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	/**
+	 * @return the number of bars of the ring
+	 */
+	public int getBarCount() {
+		return this.barNumbers.length;
+	}
+
+	/**
+	 * Gets the bars overlapping a time range, i.e. starting before the end of
+	 * the range and ending after its start. The bars without trade and the
+	 * bars which left the ring are omitted.
+	 *
+	 * @param fromTime the start of the range, in milliseconds since the epoch
+	 * @param toTime the end of the range, excluded
+	 * @return the {@link Candle}s, oldest first, with the prices at the
+	 *         {@link TradeStore#getPriceScale() price scale} of the store
+	 */
+	public List<Candle> getCandles(long fromTime, long toTime) {
+		synchronized (this.store) {
+			List<Candle> candles = new ArrayList<Candle>();
+			if (!this.started || toTime <= fromTime) {
+				return candles;
+			}
+			int priceScale = this.store.getPriceScale();
+			long first = Math.max(Math.floorDiv(fromTime, this.intervalMillis),
+					this.latestBar - this.barNumbers.length + 1);
+			long last = Math.min(Math.floorDiv(toTime - 1, this.intervalMillis), this.latestBar);
+			for (long bar = first; bar <= last; bar++) {
+				int slot = slotOf(bar);
+				if (this.barNumbers[slot] == bar && this.tradeCounts[slot] > 0) {
+					candles.add(new Candle(bar * this.intervalMillis, this.intervalMillis,
+							FixedPoint.toBigDecimal(this.opens[slot], priceScale),
+							FixedPoint.toBigDecimal(this.highs[slot], priceScale),
+							FixedPoint.toBigDecimal(this.lows[slot], priceScale),
+							FixedPoint.toBigDecimal(this.closes[slot], priceScale), this.volumes[slot],
+							this.tradeCounts[slot]));
+				}
+			}
+			return candles;
+		}
+	}
+
+	/**
+	 * Called by the store after a trade was inserted.
+	 *
+	 * @param timestamp the timestamp of the trade
+	 * @param quantity the quantity of the trade
+	 * @param price the unscaled price of the trade
+	 */
+	void onInsert(long timestamp, long quantity, long price) {
+		if (quantity <= 0 || price <= 0) {
+			return;
+		}
+		long bar = Math.floorDiv(timestamp, this.intervalMillis);
+		if (!this.started || bar > this.latestBar) {
+			this.latestBar = bar;
+			this.started = true;
+		}
+		if (bar <= this.latestBar - this.barNumbers.length) {
+			return;
+		}
+		int slot = slotOf(bar);
+		if (this.barNumbers[slot] != bar || this.tradeCounts[slot] == 0) {
+			this.barNumbers[slot] = bar;
+			this.opens[slot] = price;
+			this.highs[slot] = price;
+			this.lows[slot] = price;
+			this.closes[slot] = price;
+			this.openTimes[slot] = timestamp;
+			this.closeTimes[slot] = timestamp;
+			this.volumes[slot] = quantity;
+			this.tradeCounts[slot] = 1;
+			return;
+		}
+		if (timestamp < this.openTimes[slot]) {
+			this.opens[slot] = price;
+			this.openTimes[slot] = timestamp;
+		}
+		if (timestamp >= this.closeTimes[slot]) {
+			this.closes[slot] = price;
+			this.closeTimes[slot] = timestamp;
+		}
+		this.highs[slot] = Math.max(this.highs[slot], price);
+		this.lows[slot] = Math.min(this.lows[slot], price);
+		this.volumes[slot] = Math.addExact(this.volumes[slot], quantity);
+		this.tradeCounts[slot]++;
+	}
+
+	/**
+	 * Checks that the prices of the bars can be converted to another scale.
+	 *
+	 * @param fromScale the current scale of the prices
+	 * @param toScale the new scale
+	 */
+	void checkScale(int fromScale, int toScale) {
+		for (int slot = 0; slot < this.barNumbers.length; slot++) {
+			if (this.tradeCounts[slot] > 0) {
+				FixedPoint.rescale(this.highs[slot], fromScale, toScale);
+				FixedPoint.rescale(this.lows[slot], fromScale, toScale);
+			}
+		}
+	}
+
+	/**
+	 * Converts the prices of the bars to another scale, which
+	 * {@link #checkScale(int, int)} accepted.
+	 *
+	 * @param fromScale the current scale of the prices
+	 * @param toScale the new scale
+	 */
+	void rescale(int fromScale, int toScale) {
+		for (int slot = 0; slot < this.barNumbers.length; slot++) {
+			if (this.tradeCounts[slot] > 0) {
+				this.opens[slot] = FixedPoint.rescale(this.opens[slot], fromScale, toScale);
+				this.highs[slot] = FixedPoint.rescale(this.highs[slot], fromScale, toScale);
+				this.lows[slot] = FixedPoint.rescale(this.lows[slot], fromScale, toScale);
+				this.closes[slot] = FixedPoint.rescale(this.closes[slot], fromScale, toScale);
+			}
+		}
+	}
+
+	/**
+	 * Resets the bars to hold the trades of the store.
+	 */
+	void reset() {
+		this.started = false;
+		for (int i = 0; i < this.barNumbers.length; i++) {
+			this.barNumbers[i] = Long.MIN_VALUE;
+			this.tradeCounts[i] = 0;
+		}
+		int size = this.store.size();
+		for (int i = 0; i < size; i++) {
+			onInsert(this.store.timestampAt(i), this.store.quantityAt(i), this.store.priceAt(i));
+		}
+	}
+
+	/**
+	 * Sets the bars to the latest bars of another series of the same length.
+	 *
+	 * @param source the series whose bars are copied
+	 */
+	private void copyBars(CandleSeries source) {
+		for (int i = 0; i < this.barNumbers.length; i++) {
+			this.barNumbers[i] = Long.MIN_VALUE;
+			this.tradeCounts[i] = 0;
+		}
+		this.started = source.started;
+		this.latestBar = source.latestBar;
+		if (!this.started) {
+			return;
+		}
+		long first = this.latestBar - Math.min(this.barNumbers.length, source.barNumbers.length) + 1;
+		for (long bar = first; bar <= this.latestBar; bar++) {
+			int from = source.slotOf(bar);
+			if (source.barNumbers[from] == bar && source.tradeCounts[from] > 0) {
+				int to = slotOf(bar);
+				this.barNumbers[to] = bar;
+				this.opens[to] = source.opens[from];
+				this.highs[to] = source.highs[from];
+				this.lows[to] = source.lows[from];
+				this.closes[to] = source.closes[from];
+				this.openTimes[to] = source.openTimes[from];
+				this.closeTimes[to] = source.closeTimes[from];
+				this.volumes[to] = source.volumes[from];
+				this.tradeCounts[to] = source.tradeCounts[from];
+			}
+		}
+	}
+
+	/**
+	 * Returns the slot of a bar.
+	 *
+	 * @param bar the number of the bar
+	 * @return the slot
+	 */
+	private int slotOf(long bar) {
+		return (int) Math.floorMod(bar, (long) this.barNumbers.length);
+	}
+
+}
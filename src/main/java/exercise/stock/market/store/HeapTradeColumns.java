@@ -0,0 +1,150 @@
+package exercise.stock.market.store;
+
+/**
+ * {@link TradeColumns} held in primitive arrays on the heap.
+ * <p>
+ * The rows are stored from a head position, so that removing the oldest rows
+ * only moves the head. The space of the removed rows is reclaimed when the
+ * arrays are full, before growing them.
+ *
+ * @author DMONEY
+ *
+ */
+public class HeapTradeColumns implements TradeColumns {
+
+	/** The initial capacity of the columns. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The timestamps of the trades, stored from {@link #head}. */
+	private long[] timestamps;
+
+	/** The quantities of the trades, stored from {@link #head}. */
+	private long[] quantities;
+
+	/** The unscaled prices of the trades, stored from {@link #head}. */
+	private long[] prices;
+
+	/** The sides of the trades, stored from {@link #head}. */
+	private byte[] sides;
+
+	/** The position of the oldest row in the arrays. */
+	private int head;
+
+	/** The number of rows. */
+	private int size;
+
+	/**
+	 * Constructor.
+	 */
+	public HeapTradeColumns() {
+		this.timestamps = new long[INITIAL_CAPACITY];
+		this.quantities = new long[INITIAL_CAPACITY];
+		this.prices = new long[INITIAL_CAPACITY];
+		this.sides = new byte[INITIAL_CAPACITY];
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public long getTimestamp(int index) {
+		return this.timestamps[this.head + index];
+	}
+
+	@Override
+	public long getQuantity(int index) {
+		return this.quantities[this.head + index];
+	}
+
+	@Override
+	public long getPrice(int index) {
+		return this.prices[this.head + index];
+	}
+
+	@Override
+	public byte getSide(int index) {
+		return this.sides[this.head + index];
+	}
+
+	@Override
+	public void setPrice(int index, long price) {
+		this.prices[this.head + index] = price;
+	}
+
+	@Override
+	public void insert(int index, long timestamp, long quantity, long price, byte side) {
+		ensureCapacity(this.size + 1);
+		int position = this.head + index;
+		int length = this.size - index;
+		if (length > 0) {
+			System.arraycopy(this.timestamps, position, this.timestamps, position + 1, length);
+			System.arraycopy(this.quantities, position, this.quantities, position + 1, length);
+			System.arraycopy(this.prices, position, this.prices, position + 1, length);
+			System.arraycopy(this.sides, position, this.sides, position + 1, length);
+		}
+		this.timestamps[position] = timestamp;
+		this.quantities[position] = quantity;
+		this.prices[position] = price;
+		this.sides[position] = side;
+		this.size++;
+	}
+
+	@Override
+	public void removeFirst(int count) {
+		this.head += count;
+		this.size -= count;
+		if (this.size == 0) {
+			this.head = 0;
+		}
+	}
+
+	@Override
+	public void clear() {
+		this.head = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Makes room for the given number of rows after {@link #head}, either by
+	 * reclaiming the space of removed rows or by growing the arrays.
+	 *
+	 * @param capacity the number of rows to hold
+	 */
+	private void ensureCapacity(int capacity) {
+		int length = this.timestamps.length;
+		if (this.head + capacity <= length) {
+			return;
+		}
+		if (capacity <= length / 2) {
+			System.arraycopy(this.timestamps, this.head, this.timestamps, 0, this.size);
+			System.arraycopy(this.quantities, this.head, this.quantities, 0, this.size);
+			System.arraycopy(this.prices, this.head, this.prices, 0, this.size);
+			System.arraycopy(this.sides, this.head, this.sides, 0, this.size);
+		} else {
+			int grown = Math.max(capacity, length * 2);
+			this.timestamps = copyOf(this.timestamps, grown);
+			this.quantities = copyOf(this.quantities, grown);
+			this.prices = copyOf(this.prices, grown);
+			byte[] grownSides = new byte[grown];
+			System.arraycopy(this.sides, this.head, grownSides, 0, this.size);
+			this.sides = grownSides;
+		}
+		this.head = 0;
+	}
+
+	/**
+	 * Copies the stored part of a column into a new column.
+	 *
+	 * @param column the column to copy
+	 * @param length the length of the new column
+	 * @return the new column
+	 */
+	private long[] copyOf(long[] column, int length) {
+		long[] copy = new long[length];
+		System.arraycopy(column, this.head, copy, 0, this.size);
+		return copy;
+	}
+
+}
@@ -0,0 +1,261 @@
+package exercise.stock.market.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * {@link TradeColumns} held off the heap, in direct {@link ByteBuffer}s.
+ * <p>
+ * The rows are stored in chunks of a fixed number of rows. Each chunk is one
+ * direct buffer laid out in columns: the timestamps, then the quantities, then
+ * the unscaled prices, then the sides, i.e. 25 bytes per row. The columns grow
+ * by adding chunks, without copying the rows already stored, and a chunk is
+ * released as soon as all its rows are removed. The heap only holds the list
+ * of chunks, so the heap usage stays flat as the number of trades grows.
+ * <p>
+ * One released chunk is kept as a spare and becomes the next chunk added, so
+ * that columns whose oldest rows are removed as new rows are inserted, e.g.
+ * under a {@link RetentionPolicy}, reuse the same chunks instead of allocating
+ * a direct buffer every {@link #getChunkRows()} rows. The spare is dropped
+ * when all the rows are removed.
+ * <p>
+ * The memory of a released chunk is freed when the buffer is garbage
+ * collected, as for any direct buffer; the limit of the direct memory is set
+ * with {@code -XX:MaxDirectMemorySize}.
+ *
+ * @author DMONEY
+ *
+ */
+public class OffHeapTradeColumns implements TradeColumns {
+
+	/** The default number of rows of a chunk. */
+	public static final int DEFAULT_CHUNK_ROWS = 1 << 16;
+
+	/** The number of bytes of a row. */
+	public static final int ROW_BYTES = 3 * 8 + 1;
+
+	/** The chunks holding the rows, the oldest first. */
+	private final List<ByteBuffer> chunks;
+
+	/** A released chunk kept for the next chunk added, or null. */
+	private ByteBuffer spare;
+
+	/** The number of rows of a chunk, a power of two. */
+	private final int chunkRows;
+
+	/** The number of bits of the row position within a chunk. */
+	private final int chunkShift;
+
+	/** The offset of the quantities in a chunk. */
+	private final int quantityOffset;
+
+	/** The offset of the prices in a chunk. */
+	private final int priceOffset;
+
+	/** The offset of the sides in a chunk. */
+	private final int sideOffset;
+
+	/** The position of the oldest row in the first chunk. */
+	private int head;
+
+	/** The number of rows. */
+	private int size;
+
+	/**
+	 * Constructor. The chunks have {@link #DEFAULT_CHUNK_ROWS} rows.
+	 */
+	public OffHeapTradeColumns() {
+		this(DEFAULT_CHUNK_ROWS);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chunkRows the number of rows of a chunk, a power of two
+	 */
+	public OffHeapTradeColumns(int chunkRows) {
+		if (chunkRows <= 0 || Integer.bitCount(chunkRows) != 1 || chunkRows > Integer.MAX_VALUE / ROW_BYTES) {
+			throw new InvalidValueException("The number of rows of a chunk must be a power of two: " + chunkRows);
+		}
+		this.chunks = new ArrayList<ByteBuffer>();
+		this.chunkRows = chunkRows;
+		this.chunkShift = Integer.numberOfTrailingZeros(chunkRows);
+		this.quantityOffset = chunkRows * 8;
+		this.priceOffset = chunkRows * 16;
+		this.sideOffset = chunkRows * 24;
+	}
+
+	/**
+	 * @return the number of rows of a chunk
+	 */
+	public int getChunkRows() {
+		return chunkRows;
+	}
+
+	/**
+	 * @return the number of bytes allocated off the heap for the chunks
+	 *         holding rows, without the spare chunk
+	 */
+	public long getAllocatedBytes() {
+		return (long) this.chunks.size() * this.chunkRows * ROW_BYTES;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public long getTimestamp(int index) {
+		return readTimestamp(this.head + index);
+	}
+
+	@Override
+	public long getQuantity(int index) {
+		return readQuantity(this.head + index);
+	}
+
+	@Override
+	public long getPrice(int index) {
+		return readPrice(this.head + index);
+	}
+
+	@Override
+	public byte getSide(int index) {
+		return readSide(this.head + index);
+	}
+
+	@Override
+	public void setPrice(int index, long price) {
+		int position = this.head + index;
+		chunk(position).putLong(this.priceOffset + (row(position) << 3), price);
+	}
+
+	@Override
+	public void insert(int index, long timestamp, long quantity, long price, byte side) {
+		if (this.head + this.size == this.chunks.size() << this.chunkShift) {
+			if (this.head + this.size > Integer.MAX_VALUE - this.chunkRows) {
+				throw new IllegalStateException("The columns are full: " + this.size + " rows");
+			}
+			ByteBuffer chunk = this.spare;
+			if (chunk == null) {
+				chunk = ByteBuffer.allocateDirect(this.chunkRows * ROW_BYTES).order(ByteOrder.nativeOrder());
+			}
+			this.spare = null;
+			this.chunks.add(chunk);
+		}
+		for (int i = this.head + this.size; i > this.head + index; i--) {
+			write(i, readTimestamp(i - 1), readQuantity(i - 1), readPrice(i - 1), readSide(i - 1));
+		}
+		write(this.head + index, timestamp, quantity, price, side);
+		this.size++;
+	}
+
+	@Override
+	public void removeFirst(int count) {
+		this.head += count;
+		this.size -= count;
+		if (this.size == 0) {
+			clear();
+			return;
+		}
+		int released = this.head >>> this.chunkShift;
+		if (released > 0) {
+			for (int i = 0; i < released; i++) {
+				this.spare = this.chunks.remove(0);
+			}
+			this.head &= this.chunkRows - 1;
+		}
+	}
+
+	@Override
+	public void clear() {
+		this.chunks.clear();
+		this.spare = null;
+		this.head = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Gets the chunk holding a position.
+	 *
+	 * @param position the position, from the start of the first chunk
+	 * @return the chunk
+	 */
+	private ByteBuffer chunk(int position) {
+		return this.chunks.get(position >>> this.chunkShift);
+	}
+
+	/**
+	 * Gets the row of a position within its chunk.
+	 *
+	 * @param position the position, from the start of the first chunk
+	 * @return the row within the chunk
+	 */
+	private int row(int position) {
+		return position & (this.chunkRows - 1);
+	}
+
+	/**
+	 * Reads the timestamp at a position.
+	 *
+	 * @param position the position, from the start of the first chunk
+	 * @return the timestamp
+	 */
+	private long readTimestamp(int position) {
+		return chunk(position).getLong(row(position) << 3);
+	}
+
+	/**
+	 * Reads the quantity at a position.
+	 *
+	 * @param position the position, from the start of the first chunk
+	 * @return the quantity
+	 */
+	private long readQuantity(int position) {
+		return chunk(position).getLong(this.quantityOffset + (row(position) << 3));
+	}
+
+	/**
+	 * Reads the unscaled price at a position.
+	 *
+	 * @param position the position, from the start of the first chunk
+	 * @return the unscaled price
+	 */
+	private long readPrice(int position) {
+		return chunk(position).getLong(this.priceOffset + (row(position) << 3));
+	}
+
+	/**
+	 * Reads the side at a position.
+	 *
+	 * @param position the position, from the start of the first chunk
+	 * @return the side
+	 */
+	private byte readSide(int position) {
+		return chunk(position).get(this.sideOffset + row(position));
+	}
+
+	/**
+	 * Writes a row at a position.
+	 *
+	 * @param position the position, from the start of the first chunk
+	 * @param timestamp the timestamp
+	 * @param quantity the quantity
+	 * @param price the unscaled price
+	 * @param side the side
+	 */
+	private void write(int position, long timestamp, long quantity, long price, byte side) {
+		ByteBuffer chunk = chunk(position);
+		int row = row(position);
+		chunk.putLong(row << 3, timestamp);
+		chunk.putLong(this.quantityOffset + (row << 3), quantity);
+		chunk.putLong(this.priceOffset + (row << 3), price);
+		chunk.put(this.sideOffset + row, side);
+	}
+
+}
@@ -0,0 +1,102 @@
+package exercise.stock.market.store;
+
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A policy deciding how long trade records are kept in a {@link TradeStore}.
+ * <p>
+ * A record is evicted when it is older than the newest record in the store by
+ * more than the maximum age, or when the store holds more than the maximum
+ * number of records (the oldest records are evicted first). The age is
+ * measured against the newest trade rather than the wall clock, so that the
+ * content of a store only depends on the trades recorded into it.
+ *
+ * @author DMONEY
+ *
+ */
+public class RetentionPolicy {
+
+	/** A value indicating that no limit is applied. */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	/** The maximum age of a record, in milliseconds. */
+	private final long maxAgeMillis;
+
+	/** The maximum number of records kept. */
+	private final long maxRecords;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxAgeMillis the maximum age of a record in milliseconds, or
+	 *            {@link #UNLIMITED}
+	 * @param maxRecords the maximum number of records kept, or
+	 *            {@link #UNLIMITED}
+	 */
+	public RetentionPolicy(long maxAgeMillis, long maxRecords) {
+		if (maxAgeMillis < 0 || maxRecords <= 0) {
+			throw new InvalidValueException(
+					"Invalid retention policy: maxAgeMillis=" + maxAgeMillis + ", maxRecords=" + maxRecords);
+		}
+		this.maxAgeMillis = maxAgeMillis;
+		this.maxRecords = maxRecords;
+	}
+
+	/**
+	 * Returns a policy which never evicts any record.
+	 *
+	 * @return an unbounded {@link RetentionPolicy}
+	 */
+	public static RetentionPolicy unbounded() {
+		return new RetentionPolicy(UNLIMITED, UNLIMITED);
+	}
+
+	/**
+	 * Returns a policy which keeps the records of the last given milliseconds.
+	 *
+	 * @param maxAgeMillis the maximum age of a record in milliseconds
+	 * @return a {@link RetentionPolicy} limited by age
+	 */
+	public static RetentionPolicy maxAge(long maxAgeMillis) {
+		return new RetentionPolicy(maxAgeMillis, UNLIMITED);
+	}
+
+	/**
+	 * Returns a policy which keeps the given number of newest records.
+	 *
+	 * @param maxRecords the maximum number of records kept
+	 * @return a {@link RetentionPolicy} limited by size
+	 */
+	public static RetentionPolicy maxRecords(long maxRecords) {
+		return new RetentionPolicy(UNLIMITED, maxRecords);
+	}
+
+	/**
+	 * @return the maxAgeMillis
+	 */
+	public long getMaxAgeMillis() {
+		return maxAgeMillis;
+	}
+
+	/**
+	 * @return the maxRecords
+	 */
+	public long getMaxRecords() {
+		return maxRecords;
+	}
+
+	/**
+	 * Returns the timestamp before which records are expired, given the
+	 * timestamp of the newest record.
+	 *
+	 * @param newestTimestamp the timestamp of the newest record
+	 * @return the oldest timestamp still retained
+	 */
+	public long getExpiryThreshold(long newestTimestamp) {
+		if (this.maxAgeMillis == UNLIMITED || newestTimestamp < Long.MIN_VALUE + this.maxAgeMillis) {
+			return Long.MIN_VALUE;
+		}
+		return newestTimestamp - this.maxAgeMillis;
+	}
+
+}
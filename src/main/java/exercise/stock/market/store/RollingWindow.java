@@ -0,0 +1,317 @@
+package exercise.stock.market.store;
+
+import java.math.BigDecimal;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.numeric.Int128;
+
+/**
+ * Running totals of the trades of a {@link TradeStore} within a sliding time
+ * window, i.e. the trades with a timestamp at or after {@code now - length}.
+ * <p>
+ * The totals are updated by the store when a trade is added or evicted, and
+ * the trades leaving the window are subtracted when the window is advanced.
+ * Since the store is in timestamp order, the window only needs to remember the
+ * index of its first trade, and advancing it costs in the number of trades
+ * entering or leaving the window.
+ * <p>
+ * The totals are kept in primitive fixed point values, with the price scale of
+ * the store, so they are exact and updating them does not allocate. The valid
+ * trades are also summed by {@link BuyOrSell} indicator, so that the buy and
+ * sell volumes and prices are read without filtering the trades; the trades
+ * without indicator are only in the overall totals.
+ * <p>
+ * The window is guarded by the lock of its store: the totals read while
+ * holding that lock are consistent with each other.
+ *
+ * @author DMONEY
+ *
+ */
+public class RollingWindow {
+
+	/** The store whose trades are summed. */
+	private final TradeStore store;
+
+	/** The length of the window, in milliseconds. */
+	private final long lengthMillis;
+
+	/** The start time of the window the totals refer to. */
+	private long startTime;
+
+	/** The index of the first trade in the window. */
+	private int startIndex;
+
+	/** The number of trades in the window. */
+	private int tradeCount;
+
+	/** The number of trades in the window with a non-positive price or quantity. */
+	private int invalidCount;
+
+	/** The sum of unscaled price * quantity of the valid trades in the window. */
+	private final Int128 priceQuantitySum;
+
+	/** The sum of quantity of the valid trades in the window. */
+	private long quantitySum;
+
+	/** The number of valid trades in the window, by side ordinal. */
+	private final int[] sideTradeCounts;
+
+	/** The sum of unscaled price * quantity of the valid trades in the window, by side ordinal. */
+	private final Int128[] sidePriceQuantitySums;
+
+	/** The sum of quantity of the valid trades in the window, by side ordinal. */
+	private final long[] sideQuantitySums;
+
+	/**
+	 * Constructor. The window starts with all the trades of the store.
+	 *
+	 * @param store the store whose trades are summed
+	 * @param lengthMillis the length of the window, in milliseconds
+	 */
+	RollingWindow(TradeStore store, long lengthMillis) {
+		this.store = store;
+		this.lengthMillis = lengthMillis;
+		this.priceQuantitySum = new Int128();
+		int sideCount = BuyOrSell.values().length;
+		this.sideTradeCounts = new int[sideCount];
+		this.sidePriceQuantitySums = new Int128[sideCount];
+		for (int i = 0; i < sideCount; i++) {
+			this.sidePriceQuantitySums[i] = new Int128();
+		}
+		this.sideQuantitySums = new long[sideCount];
+		reset();
+	}
+
+	/**
+	 * @return the lengthMillis
+	 */
+	public long getLengthMillis() {
+		return lengthMillis;
+	}
+
+	/**
+	 * @return the start time of the window the totals refer to
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return the number of trades in the window
+	 */
+	public int getTradeCount() {
+		return tradeCount;
+	}
+
+	/**
+	 * @return the number of trades in the window with a non-positive price or
+	 *         quantity
+	 */
+	public int getInvalidCount() {
+		return invalidCount;
+	}
+
+	/**
+	 * @return the sum of price * quantity of the valid trades in the window
+	 */
+	public BigDecimal getPriceQuantitySum() {
+		return new BigDecimal(this.priceQuantitySum.toBigInteger(), this.store.getPriceScale());
+	}
+
+	/**
+	 * Gets the sum of price * quantity of the valid trades in the window, as a
+	 * fixed point value with the price scale of the store.
+	 *
+	 * @param result the value receiving the sum
+	 * @return the result
+	 */
+	public Int128 getPriceQuantitySum(Int128 result) {
+		return result.set(this.priceQuantitySum);
+	}
+
+	/**
+	 * @return the sum of quantity of the valid trades in the window
+	 */
+	public long getQuantitySum() {
+		return quantitySum;
+	}
+
+	/**
+	 * @param side the buy or sell indicator
+	 * @return the number of valid trades in the window with the given
+	 *         indicator
+	 */
+	public int getTradeCount(BuyOrSell side) {
+		return this.sideTradeCounts[side.ordinal()];
+	}
+
+	/**
+	 * @param side the buy or sell indicator
+	 * @return the sum of price * quantity of the valid trades in the window
+	 *         with the given indicator
+	 */
+	public BigDecimal getPriceQuantitySum(BuyOrSell side) {
+		return new BigDecimal(this.sidePriceQuantitySums[side.ordinal()].toBigInteger(),
+				this.store.getPriceScale());
+	}
+
+	/**
+	 * Gets the sum of price * quantity of the valid trades in the window with
+	 * the given indicator, as a fixed point value with the price scale of the
+	 * store.
+	 *
+	 * @param side the buy or sell indicator
+	 * @param result the value receiving the sum
+	 * @return the result
+	 */
+	public Int128 getPriceQuantitySum(BuyOrSell side, Int128 result) {
+		return result.set(this.sidePriceQuantitySums[side.ordinal()]);
+	}
+
+	/**
+	 * @param side the buy or sell indicator
+	 * @return the sum of quantity of the valid trades in the window with the
+	 *         given indicator
+	 */
+	public long getQuantitySum(BuyOrSell side) {
+		return this.sideQuantitySums[side.ordinal()];
+	}
+
+	/**
+	 * Moves the window so that it ends at the given time. The window normally
+	 * moves forward, subtracting the trades which expired; if the time goes
+	 * backwards, the trades entering the window again are added back.
+	 *
+	 * @param now the end of the window, in milliseconds since the epoch
+	 */
+	public void advanceTo(long now) {
+		synchronized (this.store) {
+			advance(now);
+		}
+	}
+
+	/**
+	 * Moves the window so that it ends at the given time, the lock of the
+	 * store being held.
+	 *
+	 * @param now the end of the window, in milliseconds since the epoch
+	 */
+	private void advance(long now) {
+		long start = now < Long.MIN_VALUE + this.lengthMillis ? Long.MIN_VALUE : now - this.lengthMillis;
+		if (start >= this.startTime) {
+			int size = this.store.size();
+			while (this.startIndex < size && this.store.timestampAt(this.startIndex) < start) {
+				subtract(this.startIndex);
+				this.startIndex++;
+			}
+		} else {
+			while (this.startIndex > 0 && this.store.timestampAt(this.startIndex - 1) >= start) {
+				this.startIndex--;
+				add(this.store.quantityAt(this.startIndex), this.store.priceAt(this.startIndex),
+						this.store.sideAt(this.startIndex));
+			}
+		}
+		this.startTime = start;
+	}
+
+	/**
+	 * Called by the store after a trade was inserted at the given index.
+	 *
+	 * @param index the index of the trade
+	 * @param timestamp the timestamp of the trade
+	 * @param quantity the quantity of the trade
+	 * @param price the unscaled price of the trade
+	 * @param side the side of the trade, or {@link TradeStore#NO_SIDE}
+	 */
+	void onInsert(int index, long timestamp, long quantity, long price, byte side) {
+		if (timestamp < this.startTime) {
+			this.startIndex++;
+		} else {
+			add(quantity, price, side);
+		}
+	}
+
+	/**
+	 * Called by the store before the given number of oldest trades are
+	 * evicted.
+	 *
+	 * @param count the number of trades to be evicted
+	 */
+	void onRemoveOldest(int count) {
+		if (count <= this.startIndex) {
+			this.startIndex -= count;
+			return;
+		}
+		for (int i = this.startIndex; i < count; i++) {
+			subtract(i);
+		}
+		this.startIndex = 0;
+	}
+
+	/**
+	 * Resets the window to contain all the trades of the store.
+	 */
+	void reset() {
+		this.startTime = Long.MIN_VALUE;
+		this.startIndex = 0;
+		this.tradeCount = 0;
+		this.invalidCount = 0;
+		this.priceQuantitySum.set(0);
+		this.quantitySum = 0;
+		for (int i = 0; i < this.sideTradeCounts.length; i++) {
+			this.sideTradeCounts[i] = 0;
+			this.sidePriceQuantitySums[i].set(0);
+			this.sideQuantitySums[i] = 0;
+		}
+		int size = this.store.size();
+		for (int i = 0; i < size; i++) {
+			add(this.store.quantityAt(i), this.store.priceAt(i), this.store.sideAt(i));
+		}
+	}
+
+	/**
+	 * Adds a trade to the totals.
+	 *
+	 * @param quantity the quantity of the trade
+	 * @param price the unscaled price of the trade
+	 * @param side the side of the trade, or {@link TradeStore#NO_SIDE}
+	 */
+	private void add(long quantity, long price, byte side) {
+		this.tradeCount++;
+		if (quantity > 0 && price > 0) {
+			this.priceQuantitySum.addProduct(price, quantity);
+			this.quantitySum = Math.addExact(this.quantitySum, quantity);
+			if (side != TradeStore.NO_SIDE) {
+				this.sideTradeCounts[side]++;
+				this.sidePriceQuantitySums[side].addProduct(price, quantity);
+				this.sideQuantitySums[side] += quantity;
+			}
+		} else {
+			this.invalidCount++;
+		}
+	}
+
+	/**
+	 * Subtracts the trade at the given index from the totals.
+	 *
+	 * @param index the index of the trade
+	 */
+	private void subtract(int index) {
+		long quantity = this.store.quantityAt(index);
+		long price = this.store.priceAt(index);
+		this.tradeCount--;
+		if (quantity > 0 && price > 0) {
+			this.priceQuantitySum.subtractProduct(price, quantity);
+			this.quantitySum -= quantity;
+			byte side = this.store.sideAt(index);
+			if (side != TradeStore.NO_SIDE) {
+				this.sideTradeCounts[side]--;
+				this.sidePriceQuantitySums[side].subtractProduct(price, quantity);
+				this.sideQuantitySums[side] -= quantity;
+			}
+		} else {
+			this.invalidCount--;
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+package exercise.stock.market.store;
+
+import exercise.stock.market.numeric.Int128;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * The totals of the trades of a {@link TradeStore} aggregated into time
+ * buckets of a fixed granularity, so that the totals of several windows
+ * ending at the same time are read in one pass.
+ * <p>
+ * The buckets form a ring covering the {@link #getHorizonMillis() horizon}
+ * before the latest trade: bucket {@code b} holds the trades with a timestamp
+ * in {@code [b * granularity, (b + 1) * granularity)}. The totals of a bucket
+ * are updated by the store when a trade is added or evicted, and a slot of the
+ * ring is reused when the latest trade moves past its bucket.
+ * <p>
+ * {@link #getTotals(long, WindowTotals)} walks the buckets once from the
+ * newest, taking the totals of each window, from the shortest, as it reaches
+ * the start of the window. The trades of the bucket in which a window starts,
+ * and those older than the horizon, are read from the store, so the totals are
+ * exact whatever the granularity; the granularity only trades the number of
+ * buckets walked against the number of trades read at the edges.
+ * <p>
+ * The buckets are guarded by the lock of their store.
+ *
+ * @author DMONEY
+ *
+ */
+public class TimeBuckets {
+
+	/** The store whose trades are aggregated. */
+	private final TradeStore store;
+
+	/** The length of a bucket, in milliseconds. */
+	private final long granularityMillis;
+
+	/** The number of the bucket held by each slot. */
+	private final long[] bucketNumbers;
+
+	/** The sum of unscaled price * quantity of the valid trades, by slot. */
+	private final Int128[] priceQuantitySums;
+
+	/** The sum of quantity of the valid trades, by slot. */
+	private final long[] quantitySums;
+
+	/** The number of trades, by slot. */
+	private final int[] tradeCounts;
+
+	/** The number of trades with a non-positive price or quantity, by slot. */
+	private final int[] invalidCounts;
+
+	/** The number of the bucket of the latest trade, if any. */
+	private long latestBucket;
+
+	/** True once a trade was added. */
+	private boolean started;
+
+	/** The running sum of price * quantity of a query. */
+	private final Int128 runningPriceQuantitySum;
+
+	/**
+	 * Constructor. The buckets start with all the trades of the store.
+	 *
+	 * @param store the store whose trades are aggregated
+	 * @param granularityMillis the length of a bucket, in milliseconds
+	 * @param bucketCount the number of buckets of the ring
+	 */
+	TimeBuckets(TradeStore store, long granularityMillis, int bucketCount) {
+		if (granularityMillis <= 0) {
+			throw new InvalidValueException("Found non-positive bucket length: " + granularityMillis);
+		}
+		if (bucketCount <= 0) {
+			throw new InvalidValueException("Found non-positive bucket count: " + bucketCount);
+		}
+		this.store = store;
+		this.granularityMillis = granularityMillis;
+		this.bucketNumbers = new long[bucketCount];
+		this.priceQuantitySums = new Int128[bucketCount];
+		this.quantitySums = new long[bucketCount];
+		this.tradeCounts = new int[bucketCount];
+		this.invalidCounts = new int[bucketCount];
+		for (int i = 0; i < bucketCount; i++) {
+			this.priceQuantitySums[i] = new Int128();
+		}
+		this.runningPriceQuantitySum = new Int128();
+		reset();
+	}
+
+	/**
+	 * @return the length of a bucket, in milliseconds
+	 */
+	public long getGranularityMillis() {
+		return granularityMillis;
+	}
+
+	/**
+	 * @return the number of buckets of the ring
+	 */
+	public int getBucketCount() {
+		return this.bucketNumbers.length;
+	}
+
+	/**
+	 * @return the time covered by the buckets, in milliseconds
+	 */
+	public long getHorizonMillis() {
+		return this.granularityMillis * this.bucketNumbers.length;
+	}
+
+	/**
+	 * Gets the totals of the trades of several windows ending at the given
+	 * time, i.e. of the trades with a timestamp at or after
+	 * {@code now - length} for each window.
+	 *
+	 * @param now the end of the windows, in milliseconds since the epoch
+	 * @param totals the holder of the lengths of the windows, receiving the
+	 *            totals
+	 * @return the totals
+	 */
+	public WindowTotals getTotals(long now, WindowTotals totals) {
+		synchronized (this.store) {
+			totals.setPriceScale(this.store.getPriceScale());
+			Int128 priceQuantitySum = this.runningPriceQuantitySum.set(0);
+			long quantitySum = 0;
+			int tradeCount = 0;
+			int invalidCount = 0;
+			int bucketCount = this.bucketNumbers.length;
+			long oldestBucket = this.started ? this.latestBucket - bucketCount + 1 : Long.MAX_VALUE;
+			long bucket = this.started ? this.latestBucket : Long.MIN_VALUE;
+			for (int rank = 0; rank < totals.size(); rank++) {
+				int window = totals.windowAt(rank);
+				long length = totals.getLengthMillis(window);
+				long start = now < Long.MIN_VALUE + length ? Long.MIN_VALUE : now - length;
+				long firstFullBucket = Math.floorDiv(start, this.granularityMillis)
+						+ (Math.floorMod(start, this.granularityMillis) == 0 ? 0 : 1);
+				long coveredFrom = Math.max(firstFullBucket, oldestBucket);
+				while (bucket >= coveredFrom) {
+					int slot = (int) Math.floorMod(bucket, (long) bucketCount);
+					if (this.bucketNumbers[slot] == bucket) {
+						priceQuantitySum.add(this.priceQuantitySums[slot]);
+						quantitySum = Math.addExact(quantitySum, this.quantitySums[slot]);
+						tradeCount += this.tradeCounts[slot];
+						invalidCount += this.invalidCounts[slot];
+					}
+					bucket--;
+				}
+				totals.set(window, priceQuantitySum, quantitySum, tradeCount, invalidCount);
+				int size = this.store.size();
+				for (int i = this.store.indexAtOrAfter(start); i < size; i++) {
+					long timestamp = this.store.timestampAt(i);
+					if (Math.floorDiv(timestamp, this.granularityMillis) >= coveredFrom) {
+						break;
+					}
+					totals.add(window, this.store.quantityAt(i), this.store.priceAt(i));
+				}
+			}
+			return totals;
+		}
+	}
+
+	/**
+	 * Called by the store after a trade was inserted.
+	 *
+	 * @param timestamp the timestamp of the trade
+	 * @param quantity the quantity of the trade
+	 * @param price the unscaled price of the trade
+	 */
+	void onInsert(long timestamp, long quantity, long price) {
+		long bucket = Math.floorDiv(timestamp, this.granularityMillis);
+		if (!this.started || bucket > this.latestBucket) {
+			this.latestBucket = bucket;
+			this.started = true;
+		}
+		int slot = slotOf(bucket);
+		if (slot < 0) {
+			return;
+		}
+		if (this.bucketNumbers[slot] != bucket) {
+			this.bucketNumbers[slot] = bucket;
+			this.priceQuantitySums[slot].set(0);
+			this.quantitySums[slot] = 0;
+			this.tradeCounts[slot] = 0;
+			this.invalidCounts[slot] = 0;
+		}
+		this.tradeCounts[slot]++;
+		if (quantity > 0 && price > 0) {
+			this.priceQuantitySums[slot].addProduct(price, quantity);
+			this.quantitySums[slot] = Math.addExact(this.quantitySums[slot], quantity);
+		} else {
+			this.invalidCounts[slot]++;
+		}
+	}
+
+	/**
+	 * Called by the store before the given number of oldest trades are
+	 * evicted.
+	 *
+	 * @param count the number of trades to be evicted
+	 */
+	void onRemoveOldest(int count) {
+		for (int i = 0; i < count; i++) {
+			long bucket = Math.floorDiv(this.store.timestampAt(i), this.granularityMillis);
+			int slot = slotOf(bucket);
+			if (slot < 0 || this.bucketNumbers[slot] != bucket) {
+				continue;
+			}
+			long quantity = this.store.quantityAt(i);
+			long price = this.store.priceAt(i);
+			this.tradeCounts[slot]--;
+			if (quantity > 0 && price > 0) {
+				this.priceQuantitySums[slot].subtractProduct(price, quantity);
+				this.quantitySums[slot] -= quantity;
+			} else {
+				this.invalidCounts[slot]--;
+			}
+		}
+	}
+
+	/**
+	 * Resets the buckets to hold the trades of the store.
+	 */
+	void reset() {
+		this.started = false;
+		for (int i = 0; i < this.bucketNumbers.length; i++) {
+			this.bucketNumbers[i] = Long.MIN_VALUE;
+		}
+		int size = this.store.size();
+		for (int i = 0; i < size; i++) {
+			onInsert(this.store.timestampAt(i), this.store.quantityAt(i), this.store.priceAt(i));
+		}
+	}
+
+	/**
+	 * Returns the slot of a bucket within the horizon.
+	 *
+	 * @param bucket the number of the bucket
+	 * @return the slot, or -1 if the bucket is older than the horizon
+	 */
+	private int slotOf(long bucket) {
+		int bucketCount = this.bucketNumbers.length;
+		if (bucket <= this.latestBucket - bucketCount) {
+			return -1;
+		}
+		return (int) Math.floorMod(bucket, (long) bucketCount);
+	}
+
+}
@@ -0,0 +1,85 @@
+package exercise.stock.market.store;
+
+/**
+ * The columns holding the trades of a {@link TradeStore}: one row per trade,
+ * with the timestamp, the quantity, the unscaled price and the side.
+ * <p>
+ * The rows are addressed by their index from the oldest row. Rows are
+ * inserted at any index, usually at the end, and removed from the start. The
+ * columns are not thread safe: they are guarded by the lock of their store.
+ *
+ * @author DMONEY
+ *
+ */
+public interface TradeColumns {
+
+	/**
+	 * @return the number of rows
+	 */
+	int size();
+
+	/**
+	 * Gets the timestamp of a row.
+	 *
+	 * @param index the index of the row
+	 * @return the timestamp in milliseconds since the epoch
+	 */
+	long getTimestamp(int index);
+
+	/**
+	 * Gets the quantity of a row.
+	 *
+	 * @param index the index of the row
+	 * @return the quantity
+	 */
+	long getQuantity(int index);
+
+	/**
+	 * Gets the unscaled price of a row.
+	 *
+	 * @param index the index of the row
+	 * @return the unscaled price
+	 */
+	long getPrice(int index);
+
+	/**
+	 * Gets the side of a row.
+	 *
+	 * @param index the index of the row
+	 * @return the side
+	 */
+	byte getSide(int index);
+
+	/**
+	 * Replaces the unscaled price of a row.
+	 *
+	 * @param index the index of the row
+	 * @param price the unscaled price to set
+	 */
+	void setPrice(int index, long price);
+
+	/**
+	 * Inserts a row, moving the rows from the given index one place towards
+	 * the end.
+	 *
+	 * @param index the index of the new row, from 0 to {@link #size()}
+	 * @param timestamp the timestamp
+	 * @param quantity the quantity
+	 * @param price the unscaled price
+	 * @param side the side
+	 */
+	void insert(int index, long timestamp, long quantity, long price, byte side);
+
+	/**
+	 * Removes the given number of oldest rows.
+	 *
+	 * @param count the number of rows to remove, at most {@link #size()}
+	 */
+	void removeFirst(int count);
+
+	/**
+	 * Removes all the rows.
+	 */
+	void clear();
+
+}
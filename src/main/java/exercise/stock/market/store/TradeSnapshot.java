@@ -0,0 +1,172 @@
+package exercise.stock.market.store;
+
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.Date;
+
+import exercise.stock.market.model.TradeRecord;
+import exercise.stock.market.numeric.FixedPoint;
+
+/**
+ * An immutable copy of the records of a {@link TradeStore} at one
+ * {@link TradeStore#getVersion() version}, taken with
+ * {@link TradeStore#snapshot()}.
+ * <p>
+ * The records are kept in primitive arrays, in timestamp order, and a
+ * {@link TradeRecord} is only created when the snapshot is read as a
+ * {@link java.util.List}. The snapshot can be read from any thread without
+ * lock, and does not change when trades are added to or evicted from the
+ * store.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeSnapshot extends AbstractList<TradeRecord> {
+
+	/** The symbol of the stock. */
+	private final String symbol;
+
+	/** The scale of the prices. */
+	private final int priceScale;
+
+	/** The version of the store the records were copied at. */
+	private final long version;
+
+	/** The timestamps, in milliseconds since the epoch. */
+	private final long[] timestamps;
+
+	/** The quantities. */
+	private final long[] quantities;
+
+	/** The unscaled prices. */
+	private final long[] prices;
+
+	/** The sides, {@link TradeStore#NO_SIDE} for no indicator. */
+	private final byte[] sides;
+
+	/**
+	 * Constructor. The lock of the store must be held.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @param columns the columns to copy
+	 * @param priceScale the scale of the prices
+	 * @param version the version of the store
+	 */
+	TradeSnapshot(String symbol, TradeColumns columns, int priceScale, long version) {
+		this.symbol = symbol;
+		this.priceScale = priceScale;
+		this.version = version;
+		int size = columns.size();
+		this.timestamps = new long[size];
+		this.quantities = new long[size];
+		this.prices = new long[size];
+		this.sides = new byte[size];
+		for (int i = 0; i < size; i++) {
+			this.timestamps[i] = columns.getTimestamp(i);
+			this.quantities[i] = columns.getQuantity(i);
+			this.prices[i] = columns.getPrice(i);
+			this.sides[i] = columns.getSide(i);
+		}
+	}
+
+	/**
+	 * @return the symbol of the stock
+	 */
+	public String getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * @return the scale of the prices
+	 */
+	public int getPriceScale() {
+		return priceScale;
+	}
+
+	/**
+	 * @return the version of the store the records were copied at
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets a {@link TradeRecord} holding the values of a trade. The record is
+	 * created on each call.
+	 *
+	 * @param index the index of the trade
+	 * @return a new {@link TradeRecord}
+	 */
+	@Override
+	public TradeRecord get(int index) {
+		checkIndex(index);
+		byte side = this.sides[index];
+		return new TradeRecord(this.symbol, new Date(this.timestamps[index]),
+				BigInteger.valueOf(this.quantities[index]),
+				side == TradeStore.NO_SIDE ? null : TradeStore.SIDES[side],
+				FixedPoint.toBigDecimal(this.prices[index], this.priceScale));
+	}
+
+	@Override
+	public int size() {
+		return this.timestamps.length;
+	}
+
+	/**
+	 * Gets the timestamp of a trade.
+	 *
+	 * @param index the index of the trade
+	 * @return the timestamp in milliseconds since the epoch
+	 */
+	public long getTimestamp(int index) {
+		checkIndex(index);
+		return this.timestamps[index];
+	}
+
+	/**
+	 * Gets the quantity of a trade.
+	 *
+	 * @param index the index of the trade
+	 * @return the quantity
+	 */
+	public long getQuantity(int index) {
+		checkIndex(index);
+		return this.quantities[index];
+	}
+
+	/**
+	 * Gets the price of a trade, as a fixed point value with the
+	 * {@link #getPriceScale() price scale} of the snapshot.
+	 *
+	 * @param index the index of the trade
+	 * @return the unscaled price
+	 */
+	public long getPrice(int index) {
+		checkIndex(index);
+		return this.prices[index];
+	}
+
+	/**
+	 * Gets the side of a trade.
+	 *
+	 * @param index the index of the trade
+	 * @return the ordinal of the {@link exercise.stock.market.model.BuyOrSell}
+	 *         indicator, or {@link TradeStore#NO_SIDE}
+	 */
+	public byte getSide(int index) {
+		checkIndex(index);
+		return this.sides[index];
+	}
+
+	/**
+	 * Checks that an index is within the records.
+	 *
+	 * @param index the index to check
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.timestamps.length) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.timestamps.length);
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package exercise.stock.market.store;
+
+/**
+ * Where a {@link TradeStore} keeps its {@link TradeColumns}.
+ *
+ * @author DMONEY
+ *
+ */
+public enum TradeStorage {
+
+	/** Primitive arrays on the heap, see {@link HeapTradeColumns}. */
+	HEAP {
+		@Override
+		public TradeColumns newColumns() {
+			return new HeapTradeColumns();
+		}
+	},
+
+	/** Direct buffers off the heap, see {@link OffHeapTradeColumns}. */
+	OFF_HEAP {
+		@Override
+		public TradeColumns newColumns() {
+			return new OffHeapTradeColumns();
+		}
+	};
+
+	/**
+	 * Creates empty columns of this storage.
+	 *
+	 * @return new {@link TradeColumns}
+	 */
+	public abstract TradeColumns newColumns();
+
+}
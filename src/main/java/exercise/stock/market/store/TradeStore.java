@@ -0,0 +1,713 @@
+package exercise.stock.market.store;
+
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.model.TradeRecord;
+import exercise.stock.market.numeric.FixedPoint;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A store of the trade records of one stock, kept in timestamp order.
+ * <p>
+ * Records are appended in constant time when they arrive in time order, and
+ * inserted after the records with the same or an earlier timestamp otherwise.
+ * Time windows are located with a binary search, so that querying a window
+ * costs in the size of the window rather than the size of the history. Old
+ * records are evicted according to the {@link RetentionPolicy} of the store.
+ * <p>
+ * The trades are kept in primitive {@link TradeColumns} rather than as
+ * {@link TradeRecord} objects: the timestamp in milliseconds since the epoch,
+ * the quantity, the price as a fixed point value with the
+ * {@link #getPriceScale() price scale} of the store, and the side. The columns
+ * are on the heap or off the heap depending on the {@link TradeStorage} of the
+ * store. The store holds the trades of a single stock, so the symbol is kept
+ * once for the store. A {@link TradeRecord} is only created when the store is
+ * read as a {@link List}, as a view of one row.
+ * <p>
+ * The rows of the columns are the slots the trades are recorded into: the rows
+ * of the evicted trades are reclaimed by the next trades, and the columns only
+ * grow while the number of trades kept grows. Once a store holds as many
+ * trades as its {@link RetentionPolicy} keeps,
+ * {@link #add(long, long, BuyOrSell, long)} creates no object.
+ * <p>
+ * The store also maintains the running totals of its {@link RollingWindow}s and
+ * {@link TimeBuckets} as records are added and evicted, and the bars of its
+ * {@link CandleSeries} as records are added.
+ * <p>
+ * The methods of the store lock the store itself, so that each stock has its
+ * own lock for recording trades. A reader needing several values to be
+ * consistent, e.g. the totals of a window, holds the lock of the store while
+ * reading them. Iterating over the store while other threads add records
+ * requires the same lock; a {@link #snapshot()} is iterated without it.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeStore extends AbstractList<TradeRecord> {
+
+	/** The default scale of the prices. */
+	public static final int DEFAULT_PRICE_SCALE = 6;
+
+	/** The side of a trade without buy or sell indicator. */
+	public static final byte NO_SIDE = -1;
+
+	/** Orders the records by their timestamps. */
+	private static final Comparator<TradeRecord> TIMESTAMP_ORDER = new Comparator<TradeRecord>() {
+		@Override
+		public int compare(TradeRecord first, TradeRecord second) {
+			return Long.compare(first.getTimestamp().getTime(), second.getTimestamp().getTime());
+		}
+	};
+
+	/** The indicators, indexed by side. */
+	static final BuyOrSell[] SIDES = BuyOrSell.values();
+
+	/** The symbol of the stock. */
+	private volatile String symbol;
+
+	/** Where the columns are kept. */
+	private final TradeStorage storage;
+
+	/** The columns holding the trades. */
+	private final TradeColumns columns;
+
+	/** The scale of the prices. */
+	private int priceScale;
+
+	/** The retention policy of this store. */
+	private RetentionPolicy retentionPolicy;
+
+	/** The rolling windows maintained over the records. */
+	private final List<RollingWindow> windows;
+
+	/** The time buckets maintained over the records. */
+	private final List<TimeBuckets> timeBuckets;
+
+	/** The candle series maintained over the records. */
+	private final List<CandleSeries> candleSeries;
+
+	/** The number of changes to the records since the store was created. */
+	private long version;
+
+	/** The last snapshot taken, reused while the version is unchanged. */
+	private TradeSnapshot snapshot;
+
+	/**
+	 * Constructor. The store keeps all records.
+	 *
+	 * @param symbol the symbol of the stock
+	 */
+	public TradeStore(String symbol) {
+		this(symbol, RetentionPolicy.unbounded());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @param retentionPolicy the policy deciding how long records are kept
+	 */
+	public TradeStore(String symbol, RetentionPolicy retentionPolicy) {
+		this(symbol, retentionPolicy, DEFAULT_PRICE_SCALE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @param retentionPolicy the policy deciding how long records are kept
+	 * @param priceScale the scale of the prices, from 0 to
+	 *            {@link FixedPoint#MAX_SCALE}
+	 */
+	public TradeStore(String symbol, RetentionPolicy retentionPolicy, int priceScale) {
+		this(symbol, retentionPolicy, priceScale, TradeStorage.HEAP);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param symbol the symbol of the stock
+	 * @param retentionPolicy the policy deciding how long records are kept
+	 * @param priceScale the scale of the prices, from 0 to
+	 *            {@link FixedPoint#MAX_SCALE}
+	 * @param storage where the trades are kept
+	 */
+	public TradeStore(String symbol, RetentionPolicy retentionPolicy, int priceScale, TradeStorage storage) {
+		this.symbol = symbol;
+		this.storage = storage;
+		this.columns = storage.newColumns();
+		this.retentionPolicy = retentionPolicy;
+		this.priceScale = FixedPoint.checkScale(priceScale);
+		this.windows = new ArrayList<RollingWindow>();
+		this.timeBuckets = new ArrayList<TimeBuckets>();
+		this.candleSeries = new ArrayList<CandleSeries>();
+	}
+
+	/**
+	 * @return the symbol
+	 */
+	public String getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * @param symbol the symbol to set
+	 */
+	public void setSymbol(String symbol) {
+		this.symbol = symbol;
+	}
+
+	/**
+	 * @return where the trades are kept
+	 */
+	public TradeStorage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * @return the scale of the prices
+	 */
+	public synchronized int getPriceScale() {
+		return priceScale;
+	}
+
+	/**
+	 * Sets the scale of the prices, converting the prices already stored and
+	 * the prices of the candles. Each price must be representable exactly at
+	 * the new scale.
+	 *
+	 * @param priceScale the scale to set
+	 */
+	public synchronized void setPriceScale(int priceScale) {
+		FixedPoint.checkScale(priceScale);
+		int size = this.columns.size();
+		for (int i = 0; i < size; i++) {
+			FixedPoint.rescale(this.columns.getPrice(i), this.priceScale, priceScale);
+		}
+		for (CandleSeries series : this.candleSeries) {
+			series.checkScale(this.priceScale, priceScale);
+		}
+		for (int i = 0; i < size; i++) {
+			this.columns.setPrice(i, FixedPoint.rescale(this.columns.getPrice(i), this.priceScale, priceScale));
+		}
+		for (CandleSeries series : this.candleSeries) {
+			series.rescale(this.priceScale, priceScale);
+		}
+		this.priceScale = priceScale;
+		this.version++;
+		for (RollingWindow window : this.windows) {
+			window.reset();
+		}
+		for (TimeBuckets buckets : this.timeBuckets) {
+			buckets.reset();
+		}
+	}
+
+	/**
+	 * @return the retentionPolicy
+	 */
+	public synchronized RetentionPolicy getRetentionPolicy() {
+		return retentionPolicy;
+	}
+
+	/**
+	 * Sets the retention policy and evicts the records which it expires.
+	 *
+	 * @param retentionPolicy the retentionPolicy to set
+	 */
+	public synchronized void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		this.retentionPolicy = retentionPolicy;
+		evict();
+	}
+
+	/**
+	 * Gets a {@link TradeRecord} holding the values of a trade. The record is
+	 * created on each call.
+	 *
+	 * @param index the index of the trade
+	 * @return a new {@link TradeRecord}
+	 */
+	@Override
+	public synchronized TradeRecord get(int index) {
+		checkIndex(index);
+		byte side = this.columns.getSide(index);
+		return new TradeRecord(this.symbol, new Date(this.columns.getTimestamp(index)),
+				BigInteger.valueOf(this.columns.getQuantity(index)), side == NO_SIDE ? null : SIDES[side],
+				FixedPoint.toBigDecimal(this.columns.getPrice(index), this.priceScale));
+	}
+
+	@Override
+	public synchronized int size() {
+		return this.columns.size();
+	}
+
+	/**
+	 * Gets the timestamp of a trade.
+	 *
+	 * @param index the index of the trade
+	 * @return the timestamp in milliseconds since the epoch
+	 */
+	public synchronized long getTimestamp(int index) {
+		checkIndex(index);
+		return this.columns.getTimestamp(index);
+	}
+
+	/**
+	 * Gets the quantity of a trade.
+	 *
+	 * @param index the index of the trade
+	 * @return the quantity
+	 */
+	public synchronized long getQuantity(int index) {
+		checkIndex(index);
+		return this.columns.getQuantity(index);
+	}
+
+	/**
+	 * Gets the price of a trade, as a fixed point value with the
+	 * {@link #getPriceScale() price scale} of the store.
+	 *
+	 * @param index the index of the trade
+	 * @return the unscaled price
+	 */
+	public synchronized long getPrice(int index) {
+		checkIndex(index);
+		return this.columns.getPrice(index);
+	}
+
+	/**
+	 * Gets the side of a trade.
+	 *
+	 * @param index the index of the trade
+	 * @return the ordinal of the {@link BuyOrSell} indicator, or
+	 *         {@link #NO_SIDE}
+	 */
+	public synchronized byte getSide(int index) {
+		checkIndex(index);
+		return this.columns.getSide(index);
+	}
+
+	/**
+	 * Adds a record in timestamp order. The values of the record are copied
+	 * into the store.
+	 *
+	 * @param record the record to add
+	 * @return always true
+	 */
+	@Override
+	public synchronized boolean add(TradeRecord record) {
+		checkComplete(record);
+		if (record.getQuantity().bitLength() >= Long.SIZE) {
+			throw new InvalidValueException("The quantity " + record.getQuantity() + " is out of range.");
+		}
+		add(record.getTimestamp().getTime(), record.getQuantity().longValue(), record.getIndicator(),
+				FixedPoint.toUnscaled(record.getPrice(), this.priceScale));
+		return true;
+	}
+
+	/**
+	 * Adds a trade in timestamp order. A trade is placed after the trades
+	 * having the same timestamp, so that trades arriving in time order are
+	 * appended.
+	 *
+	 * @param timestamp the timestamp in milliseconds since the epoch
+	 * @param quantity the quantity
+	 * @param indicator the buy or sell indicator, may be null
+	 * @param price the price, as a fixed point value with the
+	 *            {@link #getPriceScale() price scale} of the store
+	 */
+	public synchronized void add(long timestamp, long quantity, BuyOrSell indicator, long price) {
+		int size = this.columns.size();
+		int index = size;
+		if (size > 0 && this.columns.getTimestamp(size - 1) > timestamp) {
+			index = indexAfter(timestamp);
+		}
+		byte side = indicator == null ? NO_SIDE : (byte) indicator.ordinal();
+		this.columns.insert(index, timestamp, quantity, price, side);
+		this.modCount++;
+		this.version++;
+		// indexed loops, so that recording a trade creates no iterator
+		for (int i = 0; i < this.windows.size(); i++) {
+			this.windows.get(i).onInsert(index, timestamp, quantity, price, side);
+		}
+		for (int i = 0; i < this.timeBuckets.size(); i++) {
+			this.timeBuckets.get(i).onInsert(timestamp, quantity, price);
+		}
+		for (int i = 0; i < this.candleSeries.size(); i++) {
+			this.candleSeries.get(i).onInsert(timestamp, quantity, price);
+		}
+		evict();
+	}
+
+	/**
+	 * Adds the given records. The records are sorted once before being added,
+	 * rather than being inserted one by one.
+	 *
+	 * @param collection the records to add
+	 * @return true if this store changed
+	 */
+	@Override
+	public synchronized boolean addAll(Collection<? extends TradeRecord> collection) {
+		TradeRecord[] sorted = collection.toArray(new TradeRecord[collection.size()]);
+		for (TradeRecord record : sorted) {
+			checkComplete(record);
+		}
+		Arrays.sort(sorted, TIMESTAMP_ORDER);
+		for (TradeRecord record : sorted) {
+			add(record);
+		}
+		return sorted.length > 0;
+	}
+
+	@Override
+	public synchronized void clear() {
+		this.columns.clear();
+		this.modCount++;
+		this.version++;
+		for (RollingWindow window : this.windows) {
+			window.reset();
+		}
+		for (TimeBuckets buckets : this.timeBuckets) {
+			buckets.reset();
+		}
+		for (CandleSeries series : this.candleSeries) {
+			series.reset();
+		}
+	}
+
+	/**
+	 * Copies this store into a new store with the given storage, keeping the
+	 * symbol, the retention policy and the price scale. The copy has the same
+	 * rolling windows and time buckets, rebuilt from the copied records, and
+	 * the same candle series, whose bars are copied since they may reach
+	 * further back than the records.
+	 *
+	 * @param storage where the trades of the copy are kept
+	 * @return the new {@link TradeStore}
+	 */
+	public synchronized TradeStore copy(TradeStorage storage) {
+		TradeStore copy = new TradeStore(this.symbol, this.retentionPolicy, this.priceScale, storage);
+		int size = this.columns.size();
+		for (int i = 0; i < size; i++) {
+			copy.columns.insert(i, this.columns.getTimestamp(i), this.columns.getQuantity(i),
+					this.columns.getPrice(i), this.columns.getSide(i));
+		}
+		copyAggregates(copy);
+		for (CandleSeries series : this.candleSeries) {
+			copy.candleSeries.add(new CandleSeries(copy, series, series.getBarCount()));
+		}
+		return copy;
+	}
+
+	/**
+	 * Creates a new store holding the given records in place of the records
+	 * of this store, keeping the symbol, the retention policy, the price scale
+	 * and the storage. The new store has the same rolling windows, time
+	 * buckets and candle series, rebuilt from the given records.
+	 *
+	 * @param records the records of the new store
+	 * @return the new {@link TradeStore}
+	 */
+	public synchronized TradeStore withRecords(Collection<? extends TradeRecord> records) {
+		TradeStore store = new TradeStore(this.symbol, this.retentionPolicy, this.priceScale, this.storage);
+		store.addAll(records);
+		copyAggregates(store);
+		for (CandleSeries series : this.candleSeries) {
+			store.getCandleSeries(series.getIntervalMillis(), series.getBarCount());
+		}
+		return store;
+	}
+
+	/**
+	 * Gets the version of the records of this store, which changes each time a
+	 * record is added or evicted, or the prices are rescaled. Two reads giving
+	 * the same version saw the same records.
+	 *
+	 * @return the version of the records
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Takes an immutable snapshot of the records of this store, which can be
+	 * read and iterated without lock while trades are added. The columns are
+	 * copied as primitive values, without creating any {@link TradeRecord},
+	 * and the snapshot is shared by all the readers until the records change.
+	 *
+	 * @return the {@link TradeSnapshot} of the current version of the records
+	 */
+	public synchronized TradeSnapshot snapshot() {
+		if (this.snapshot == null || this.snapshot.getVersion() != this.version) {
+			this.snapshot = new TradeSnapshot(this.symbol, this.columns, this.priceScale, this.version);
+		}
+		return this.snapshot;
+	}
+
+	/**
+	 * Gets the rolling window of the given length over the records of this
+	 * store, creating it on first use. The window must be advanced to the
+	 * current time before reading its totals.
+	 *
+	 * @param lengthMillis the length of the window, in milliseconds
+	 * @return the {@link RollingWindow} of the given length
+	 */
+	public synchronized RollingWindow getWindow(long lengthMillis) {
+		// an indexed loop, so that a query of a window creates no iterator
+		for (int i = 0; i < this.windows.size(); i++) {
+			if (this.windows.get(i).getLengthMillis() == lengthMillis) {
+				return this.windows.get(i);
+			}
+		}
+		RollingWindow window = new RollingWindow(this, lengthMillis);
+		this.windows.add(window);
+		return window;
+	}
+
+	/**
+	 * Gets the time buckets of the given granularity over the records of this
+	 * store, creating them on first use.
+	 *
+	 * @param granularityMillis the length of a bucket, in milliseconds
+	 * @param bucketCount the number of buckets, covering
+	 *            {@code granularityMillis * bucketCount} before the latest
+	 *            trade
+	 * @return the {@link TimeBuckets} of the given granularity and count
+	 */
+	public synchronized TimeBuckets getTimeBuckets(long granularityMillis, int bucketCount) {
+		for (TimeBuckets buckets : this.timeBuckets) {
+			if (buckets.getGranularityMillis() == granularityMillis && buckets.getBucketCount() == bucketCount) {
+				return buckets;
+			}
+		}
+		TimeBuckets buckets = new TimeBuckets(this, granularityMillis, bucketCount);
+		this.timeBuckets.add(buckets);
+		return buckets;
+	}
+
+	/**
+	 * Gets the candle series of the given interval over the records of this
+	 * store, creating it on first use from the records kept. A series created
+	 * later than the first trades only has the bars of the records still kept.
+	 * <p>
+	 * A store has one series per interval: the series of the interval with
+	 * another bar count is replaced by a series of the given bar count,
+	 * starting with its latest bars, and no longer receives the trades.
+	 *
+	 * @param intervalMillis the length of a bar, in milliseconds
+	 * @param barCount the number of bars kept
+	 * @return the {@link CandleSeries} of the given interval and bar count
+	 */
+	public synchronized CandleSeries getCandleSeries(long intervalMillis, int barCount) {
+		for (int i = 0; i < this.candleSeries.size(); i++) {
+			CandleSeries series = this.candleSeries.get(i);
+			if (series.getIntervalMillis() == intervalMillis) {
+				if (series.getBarCount() != barCount) {
+					series = new CandleSeries(this, series, barCount);
+					this.candleSeries.set(i, series);
+				}
+				return series;
+			}
+		}
+		CandleSeries series = new CandleSeries(this, intervalMillis, barCount);
+		this.candleSeries.add(series);
+		return series;
+	}
+
+	/**
+	 * Creates the rolling windows and time buckets of this store in another
+	 * store, from the records of the other store.
+	 *
+	 * @param store the other store
+	 */
+	private void copyAggregates(TradeStore store) {
+		for (RollingWindow window : this.windows) {
+			store.getWindow(window.getLengthMillis());
+		}
+		for (TimeBuckets buckets : this.timeBuckets) {
+			store.getTimeBuckets(buckets.getGranularityMillis(), buckets.getBucketCount());
+		}
+	}
+
+	/**
+	 * Returns the index of the first record with a timestamp at or after the
+	 * given time, or {@link #size()} if there is no such record.
+	 *
+	 * @param timestamp the time to search, in milliseconds since the epoch
+	 * @return the index of the first record at or after the given time
+	 */
+	public synchronized int indexAtOrAfter(long timestamp) {
+		int low = 0;
+		int high = this.columns.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.columns.getTimestamp(middle) < timestamp) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the records with a timestamp at or after the given time.
+	 *
+	 * @param fromTime the start of the window, in milliseconds since the epoch
+	 * @return a view of the records in the window
+	 */
+	public synchronized List<TradeRecord> getTradeRecordsSince(long fromTime) {
+		return subList(indexAtOrAfter(fromTime), this.columns.size());
+	}
+
+	/**
+	 * Gets the records with a timestamp in the given range.
+	 *
+	 * @param fromTime the start of the window (inclusive), in milliseconds
+	 *            since the epoch
+	 * @param toTime the end of the window (exclusive), in milliseconds since
+	 *            the epoch
+	 * @return a view of the records in the window
+	 */
+	public synchronized List<TradeRecord> getTradeRecordsBetween(long fromTime, long toTime) {
+		int fromIndex = indexAtOrAfter(fromTime);
+		return subList(fromIndex, Math.max(fromIndex, indexAtOrAfter(toTime)));
+	}
+
+	/**
+	 * Evicts the records with a timestamp before the given time.
+	 *
+	 * @param timestamp the oldest timestamp to keep
+	 * @return the number of records evicted
+	 */
+	public synchronized int evictBefore(long timestamp) {
+		return removeOldest(indexAtOrAfter(timestamp));
+	}
+
+	/**
+	 * Evicts the records expired by the retention policy.
+	 */
+	private void evict() {
+		int size = this.columns.size();
+		if (size == 0) {
+			return;
+		}
+		long threshold = this.retentionPolicy.getExpiryThreshold(this.columns.getTimestamp(size - 1));
+		int count = threshold == Long.MIN_VALUE ? 0 : indexAtOrAfter(threshold);
+		long excess = size - this.retentionPolicy.getMaxRecords();
+		if (excess > count) {
+			count = (int) excess;
+		}
+		removeOldest(count);
+	}
+
+	/**
+	 * Removes the given number of oldest records.
+	 *
+	 * @param count the number of records to remove
+	 * @return the number of records removed
+	 */
+	private int removeOldest(int count) {
+		if (count <= 0) {
+			return 0;
+		}
+		for (int i = 0; i < this.windows.size(); i++) {
+			this.windows.get(i).onRemoveOldest(count);
+		}
+		for (int i = 0; i < this.timeBuckets.size(); i++) {
+			this.timeBuckets.get(i).onRemoveOldest(count);
+		}
+		this.columns.removeFirst(count);
+		this.modCount++;
+		this.version++;
+		return count;
+	}
+
+	/**
+	 * Returns the index of the first record with a timestamp after the given
+	 * time.
+	 *
+	 * @param timestamp the time to search
+	 * @return the index of the first record after the given time
+	 */
+	private int indexAfter(long timestamp) {
+		return timestamp == Long.MAX_VALUE ? this.columns.size() : indexAtOrAfter(timestamp + 1);
+	}
+
+	/**
+	 * Gets the timestamp of a trade, without checking the index. The lock of
+	 * the store must be held.
+	 *
+	 * @param index the index of the trade
+	 * @return the timestamp in milliseconds since the epoch
+	 */
+	long timestampAt(int index) {
+		return this.columns.getTimestamp(index);
+	}
+
+	/**
+	 * Gets the quantity of a trade, without checking the index. The lock of
+	 * the store must be held.
+	 *
+	 * @param index the index of the trade
+	 * @return the quantity
+	 */
+	long quantityAt(int index) {
+		return this.columns.getQuantity(index);
+	}
+
+	/**
+	 * Gets the side of a trade, without checking the index. The lock of the
+	 * store must be held.
+	 *
+	 * @param index the index of the trade
+	 * @return the ordinal of the {@link BuyOrSell} indicator, or
+	 *         {@link #NO_SIDE}
+	 */
+	byte sideAt(int index) {
+		return this.columns.getSide(index);
+	}
+
+	/**
+	 * Gets the unscaled price of a trade, without checking the index. The lock
+	 * of the store must be held.
+	 *
+	 * @param index the index of the trade
+	 * @return the unscaled price
+	 */
+	long priceAt(int index) {
+		return this.columns.getPrice(index);
+	}
+
+	/**
+	 * Checks that an index refers to a trade of this store.
+	 *
+	 * @param index the index to check
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= this.columns.size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.columns.size());
+		}
+	}
+
+	/**
+	 * Checks that a record has a timestamp, a quantity and a price.
+	 *
+	 * @param record the record to check
+	 */
+	private static void checkComplete(TradeRecord record) {
+		if (record == null || record.getTimestamp() == null || record.getQuantity() == null
+				|| record.getPrice() == null) {
+			throw new InvalidValueException("Found an incomplete trade record: " + record);
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+package exercise.stock.market.store;
+
+import java.math.BigDecimal;
+
+import exercise.stock.market.numeric.Int128;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * The totals of the trades of a {@link TradeStore} within several time windows
+ * ending at the same time, as filled by
+ * {@link TimeBuckets#getTotals(long, WindowTotals)}. The holder is reusable, so
+ * that reading the totals again does not allocate.
+ *
+ * @author DMONEY
+ *
+ */
+public class WindowTotals {
+
+	/** The lengths of the windows, in milliseconds. */
+	private final long[] lengthsMillis;
+
+	/** The indexes of the windows, by increasing length. */
+	private final int[] order;
+
+	/** The sums of unscaled price * quantity of the valid trades, by window. */
+	private final Int128[] priceQuantitySums;
+
+	/** The sums of quantity of the valid trades, by window. */
+	private final long[] quantitySums;
+
+	/** The numbers of trades, by window. */
+	private final int[] tradeCounts;
+
+	/** The numbers of trades with a non-positive price or quantity, by window. */
+	private final int[] invalidCounts;
+
+	/** The scale of the prices of the sums. */
+	private int priceScale;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lengthsMillis the lengths of the windows, in milliseconds
+	 */
+	public WindowTotals(long... lengthsMillis) {
+		int count = lengthsMillis.length;
+		this.lengthsMillis = lengthsMillis.clone();
+		this.order = new int[count];
+		this.priceQuantitySums = new Int128[count];
+		this.quantitySums = new long[count];
+		this.tradeCounts = new int[count];
+		this.invalidCounts = new int[count];
+		for (int i = 0; i < count; i++) {
+			if (this.lengthsMillis[i] <= 0) {
+				throw new InvalidValueException("Found non-positive window length: " + this.lengthsMillis[i]);
+			}
+			this.priceQuantitySums[i] = new Int128();
+			int j = i;
+			while (j > 0 && this.lengthsMillis[this.order[j - 1]] > this.lengthsMillis[i]) {
+				this.order[j] = this.order[j - 1];
+				j--;
+			}
+			this.order[j] = i;
+		}
+	}
+
+	/**
+	 * @return the number of windows
+	 */
+	public int size() {
+		return this.lengthsMillis.length;
+	}
+
+	/**
+	 * @param window the index of the window
+	 * @return the length of the window, in milliseconds
+	 */
+	public long getLengthMillis(int window) {
+		return this.lengthsMillis[window];
+	}
+
+	/**
+	 * @param window the index of the window
+	 * @return the number of trades in the window
+	 */
+	public int getTradeCount(int window) {
+		return this.tradeCounts[window];
+	}
+
+	/**
+	 * @param window the index of the window
+	 * @return the number of trades in the window with a non-positive price or
+	 *         quantity
+	 */
+	public int getInvalidCount(int window) {
+		return this.invalidCounts[window];
+	}
+
+	/**
+	 * @param window the index of the window
+	 * @return the sum of quantity of the valid trades in the window
+	 */
+	public long getQuantitySum(int window) {
+		return this.quantitySums[window];
+	}
+
+	/**
+	 * @param window the index of the window
+	 * @return the sum of price * quantity of the valid trades in the window
+	 */
+	public BigDecimal getPriceQuantitySum(int window) {
+		return new BigDecimal(this.priceQuantitySums[window].toBigInteger(), this.priceScale);
+	}
+
+	/**
+	 * Gets the sum of price * quantity of the valid trades in a window, as a
+	 * fixed point value with {@link #getPriceScale()}.
+	 *
+	 * @param window the index of the window
+	 * @param result the value receiving the sum
+	 * @return the result
+	 */
+	public Int128 getPriceQuantitySum(int window, Int128 result) {
+		return result.set(this.priceQuantitySums[window]);
+	}
+
+	/**
+	 * @return the scale of the prices of the sums
+	 */
+	public int getPriceScale() {
+		return priceScale;
+	}
+
+	/**
+	 * Gets the index of a window by increasing length.
+	 *
+	 * @param rank the rank of the window, from the shortest
+	 * @return the index of the window
+	 */
+	int windowAt(int rank) {
+		return this.order[rank];
+	}
+
+	/**
+	 * Sets the totals of a window.
+	 *
+	 * @param window the index of the window
+	 * @param priceQuantitySum the sum of unscaled price * quantity
+	 * @param quantitySum the sum of quantity
+	 * @param tradeCount the number of trades
+	 * @param invalidCount the number of invalid trades
+	 */
+	void set(int window, Int128 priceQuantitySum, long quantitySum, int tradeCount, int invalidCount) {
+		this.priceQuantitySums[window].set(priceQuantitySum);
+		this.quantitySums[window] = quantitySum;
+		this.tradeCounts[window] = tradeCount;
+		this.invalidCounts[window] = invalidCount;
+	}
+
+	/**
+	 * Adds a trade to the totals of a window.
+	 *
+	 * @param window the index of the window
+	 * @param quantity the quantity of the trade
+	 * @param price the unscaled price of the trade
+	 */
+	void add(int window, long quantity, long price) {
+		this.tradeCounts[window]++;
+		if (quantity > 0 && price > 0) {
+			this.priceQuantitySums[window].addProduct(price, quantity);
+			this.quantitySums[window] = Math.addExact(this.quantitySums[window], quantity);
+		} else {
+			this.invalidCounts[window]++;
+		}
+	}
+
+	/**
+	 * @param priceScale the scale of the prices of the sums
+	 */
+	void setPriceScale(int priceScale) {
+		this.priceScale = priceScale;
+	}
+
+}
@@ -15,4 +15,16 @@ public class BusinessException extends RuntimeException {
 		super(message);
 	}
 
+	/**
+	 * Constructor.
+	 * 
+	 * @param message the detail message
+	 * @param writableStackTrace false for an exception without stack trace,
+	 *            which is cheap to create when it reports an expected input
+	 *            error
+	 */
+	public BusinessException(String message, boolean writableStackTrace){
+		super(message, null, false, writableStackTrace);
+	}
+
 }
@@ -18,4 +18,14 @@ public class InvalidValueException extends BusinessException {
 	public InvalidValueException(String message){
 		super(message);
 	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param message the detail message
+	 * @param writableStackTrace false for an exception without stack trace
+	 */
+	public InvalidValueException(String message, boolean writableStackTrace){
+		super(message, writableStackTrace);
+	}
 }
@@ -0,0 +1,93 @@
+package exercise.stock.market.clock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A test class for {@link EventTimeClock}.
+ *
+ * @author DMONEY
+ *
+ */
+public class EventTimeClockTest {
+
+	/**
+	 * Tests for {@link EventTimeClock#tradeRecorded(long)}.
+	 * <ul>
+	 * <li>record trades in order, then a late trade, then reset the clock</li>
+	 * <li>verify that the clock follows the latest trade and is not moved back
+	 * by the late one</li>
+	 * </ul>
+	 */
+	@Test
+	public void testTradeRecorded() {
+		EventTimeClock clock = new EventTimeClock(100);
+		Assert.assertEquals(100, clock.currentTimeMillis());
+		clock.tradeRecorded(150);
+		clock.tradeRecorded(200);
+		Assert.assertEquals(200, clock.currentTimeMillis());
+		clock.tradeRecorded(120);
+		Assert.assertEquals(200, clock.currentTimeMillis());
+		clock.reset(50);
+		Assert.assertEquals(50, clock.currentTimeMillis());
+	}
+
+	/**
+	 * Tests for {@link EventTimeClock#tradeRecorded(long)} from several
+	 * threads.
+	 * <ul>
+	 * <li>record interleaved timestamps from 4 threads</li>
+	 * <li>verify that the clock ends at the latest timestamp</li>
+	 * </ul>
+	 */
+	@Test
+	public void testTradeRecorded_Concurrent() throws InterruptedException {
+		final EventTimeClock clock = new EventTimeClock();
+		final int threadCount = 4;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < threadCount; t++) {
+			final int offset = t;
+			Thread thread = new Thread() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						clock.tradeRecorded(i * threadCount + offset);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(100000L * threadCount - 1, clock.currentTimeMillis());
+	}
+
+	/**
+	 * Tests for {@link MarketClock#SYSTEM} and {@link ManualClock}.
+	 * <ul>
+	 * <li>record a trade on each clock, and move the manual one</li>
+	 * <li>verify that neither follows the trade</li>
+	 * </ul>
+	 */
+	@Test
+	public void testOtherClocks() {
+		long before = System.currentTimeMillis();
+		MarketClock.SYSTEM.tradeRecorded(0);
+		Assert.assertTrue(MarketClock.SYSTEM.currentTimeMillis() >= before);
+
+		ManualClock clock = new ManualClock(1000);
+		clock.tradeRecorded(5000);
+		Assert.assertEquals(1000, clock.currentTimeMillis());
+		clock.advance(500);
+		Assert.assertEquals(1500, clock.currentTimeMillis());
+		clock.setTime(10);
+		Assert.assertEquals(10, clock.currentTimeMillis());
+	}
+
+}
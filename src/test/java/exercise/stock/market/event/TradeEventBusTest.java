@@ -0,0 +1,221 @@
+package exercise.stock.market.event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.test.TestUtils;
+
+/**
+ * A test class for {@link TradeEventBus}.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeEventBusTest {
+
+	/** The {@link TradeEventBus} under test. */
+	private TradeEventBus bus;
+
+	/**
+	 * Runs after every test.
+	 */
+	@After
+	public void tearDown() {
+		if (this.bus != null) {
+			this.bus.close();
+		}
+	}
+
+	/**
+	 * Tests for
+	 * {@link TradeEventBus#publish(String, long, long, BuyOrSell, long, int)}
+	 * from several threads with {@link BackpressurePolicy#BLOCK}.
+	 * <ul>
+	 * <li>subscribe two listeners to a small bus, and publish 10000 trades from
+	 * each of 4 threads</li>
+	 * <li>verify that each listener receives every trade, in the order of each
+	 * publisher, and that the last trade of each batch is marked</li>
+	 * </ul>
+	 */
+	@Test
+	public void testPublish_Block() throws InterruptedException {
+		final int publishers = 4;
+		final int trades = 10000;
+		this.bus = new TradeEventBus(64, BackpressurePolicy.BLOCK);
+		RecordingListener first = new RecordingListener(publishers);
+		RecordingListener second = new RecordingListener(publishers);
+		this.bus.subscribe(first);
+		this.bus.subscribe(second);
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < publishers; p++) {
+			final int publisher = p;
+			Thread thread = new Thread() {
+
+				@Override
+				public void run() {
+					for (int i = 0; i < trades; i++) {
+						Assert.assertTrue(TradeEventBusTest.this.bus.publish(TestUtils.TEST_COMMON_STOCK, i,
+								publisher, BuyOrSell.BUY, i + 1, 2));
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		this.bus.close();
+
+		for (RecordingListener listener : new RecordingListener[] { first, second }) {
+			Assert.assertEquals(publishers * trades, listener.count);
+			Assert.assertTrue(listener.ordered);
+			Assert.assertTrue(listener.lastEndOfBatch);
+			Assert.assertTrue(listener.batches > 0);
+		}
+		Assert.assertEquals(0, this.bus.getDroppedCount());
+	}
+
+	/**
+	 * Tests for
+	 * {@link TradeEventBus#publish(String, long, long, BuyOrSell, long, int)}
+	 * with {@link BackpressurePolicy#DROP}.
+	 * <ul>
+	 * <li>block a listener of a bus of 4 slots on the first trade, then
+	 * publish 9 other trades</li>
+	 * <li>verify that the trades which do not fit are dropped without waiting,
+	 * and that the others are delivered once the listener resumes</li>
+	 * </ul>
+	 */
+	@Test
+	public void testPublish_Drop() throws InterruptedException {
+		this.bus = new TradeEventBus(4, BackpressurePolicy.DROP);
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Long> received = new ArrayList<Long>();
+		this.bus.subscribe(new TradeEventListener() {
+
+			@Override
+			public void tradePublished(TradeEvent event, long sequence, boolean endOfBatch) {
+				received.add(event.getTimestamp());
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		Assert.assertTrue(this.bus.publish(TestUtils.TEST_COMMON_STOCK, 0, 1, BuyOrSell.SELL, 1, 0));
+		Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+		int publishedCount = 1;
+		for (int i = 1; i < 10; i++) {
+			if (this.bus.publish(TestUtils.TEST_COMMON_STOCK, i, 1, BuyOrSell.SELL, 1, 0)) {
+				publishedCount++;
+			}
+		}
+		Assert.assertEquals(4, publishedCount);
+		Assert.assertEquals(6, this.bus.getDroppedCount());
+
+		release.countDown();
+		this.bus.close();
+		Assert.assertEquals(4, received.size());
+		Assert.assertEquals(Long.valueOf(3), received.get(3));
+		Assert.assertFalse(this.bus.publish(TestUtils.TEST_COMMON_STOCK, 10, 1, BuyOrSell.SELL, 1, 0));
+	}
+
+	/**
+	 * Tests for {@link TradeEventBus#unsubscribe(TradeEventListener)} and a
+	 * failing listener.
+	 * <ul>
+	 * <li>subscribe a listener throwing on every trade, publish trades, then
+	 * unsubscribe it</li>
+	 * <li>verify that the failures are counted and that the publishers are no
+	 * longer held back by the listener</li>
+	 * </ul>
+	 */
+	@Test
+	public void testUnsubscribe() throws InterruptedException {
+		this.bus = new TradeEventBus(2, BackpressurePolicy.DROP);
+		final CountDownLatch failures = new CountDownLatch(2);
+		TradeEventListener listener = new TradeEventListener() {
+
+			@Override
+			public void tradePublished(TradeEvent event, long sequence, boolean endOfBatch) {
+				failures.countDown();
+				throw new IllegalStateException("failing listener");
+			}
+		};
+		this.bus.subscribe(listener);
+		Assert.assertTrue(this.bus.publish(TestUtils.TEST_COMMON_STOCK, 0, 1, BuyOrSell.BUY, 1, 0));
+		Assert.assertTrue(this.bus.publish(TestUtils.TEST_COMMON_STOCK, 1, 1, BuyOrSell.BUY, 1, 0));
+		Assert.assertTrue(failures.await(10, TimeUnit.SECONDS));
+		this.bus.unsubscribe(listener);
+		Assert.assertTrue(this.bus.getFailureCount() >= 2);
+		for (int i = 2; i < 10; i++) {
+			Assert.assertTrue(this.bus.publish(TestUtils.TEST_COMMON_STOCK, i, 1, BuyOrSell.BUY, 1, 0));
+		}
+	}
+
+	/**
+	 * A listener checking the trades of each publisher arrive in order.
+	 */
+	private static class RecordingListener implements TradeEventListener {
+
+		/** The last timestamp received from each publisher. */
+		private final long[] lastTimestamps;
+
+		/** The number of trades received. */
+		private int count;
+
+		/** The number of batches received. */
+		private int batches;
+
+		/** False if a trade arrived out of order. */
+		private boolean ordered = true;
+
+		/** Whether the last trade received ended a batch. */
+		private boolean lastEndOfBatch;
+
+		/** The sequence number expected next. */
+		private long nextSequence;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param publishers the number of publishers
+		 */
+		RecordingListener(int publishers) {
+			this.lastTimestamps = new long[publishers];
+			Arrays.fill(this.lastTimestamps, -1);
+		}
+
+		@Override
+		public void tradePublished(TradeEvent event, long sequence, boolean endOfBatch) {
+			int publisher = (int) event.getQuantity();
+			if (event.getTimestamp() != this.lastTimestamps[publisher] + 1 || sequence != this.nextSequence
+					|| event.getPrice() != event.getTimestamp() + 1) {
+				this.ordered = false;
+			}
+			this.lastTimestamps[publisher] = event.getTimestamp();
+			this.nextSequence = sequence + 1;
+			this.count++;
+			if (endOfBatch) {
+				this.batches++;
+			}
+			this.lastEndOfBatch = endOfBatch;
+		}
+
+	}
+
+}
@@ -0,0 +1,302 @@
+package exercise.stock.market.index;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import exercise.stock.market.model.BaseStock;
+import exercise.stock.market.model.CommonStock;
+import exercise.stock.market.test.TestUtils;
+import exercises.stock.exceptions.BusinessException;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A test class for {@link GeometricMeanIndex}.
+ *
+ * @author DMONEY
+ *
+ */
+public class GeometricMeanIndexTest {
+
+	/** The {@link GeometricMeanIndex} under test. */
+	private GeometricMeanIndex index;
+
+	/**
+	 * Runs before every test.
+	 */
+	@Before
+	public void setUp() {
+		this.index = new GeometricMeanIndex();
+	}
+
+	/**
+	 * Tests for {@link GeometricMeanIndex#getValue()}.
+	 * <ul>
+	 * <li>add 5 stocks with the prices 1234, 7057, 4069, 583 and 11231</li>
+	 * <li>verify that the geometric mean is calculated correctly</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetValue() {
+		for (int price : new int[] { 1234, 7057, 4069, 583, 11231 }) {
+			this.index.add(newStock(price));
+		}
+		Assert.assertEquals(new BigDecimal(2972), this.index.getValue());
+	}
+
+	/**
+	 * Tests for {@link GeometricMeanIndex#getValue()} after price changes and
+	 * removals.
+	 * <ul>
+	 * <li>add 12 stocks with random prices, then change and remove some of
+	 * them many times</li>
+	 * <li>verify that the value equals the exact calculation after each
+	 * change</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetValue_AgainstExact() {
+		Random random = new Random(7);
+		List<BaseStock> stocks = new ArrayList<BaseStock>();
+		for (int i = 0; i < 12; i++) {
+			BaseStock stock = newStock(1 + random.nextInt(20000));
+			stocks.add(stock);
+			this.index.add(stock);
+		}
+		for (int i = 0; i < 200; i++) {
+			BaseStock stock = stocks.get(random.nextInt(stocks.size()));
+			stock.setPrice(new BigDecimal(random.nextInt(2000000)).movePointLeft(2).add(BigDecimal.ONE));
+			if (i % 40 == 0) {
+				this.index.remove(stocks.remove(0));
+			}
+			Assert.assertEquals(GeometricMeanIndex.calculateExact(stocks), this.index.getValue());
+		}
+	}
+
+	/**
+	 * Tests for {@link GeometricMeanIndex#getValue()} with a non-positive
+	 * price.
+	 * <ul>
+	 * <li>add a stock, then set its price to 0</li>
+	 * <li>verify that an {@link InvalidValueException} is thrown</li>
+	 * </ul>
+	 */
+	@Test(expected = InvalidValueException.class)
+	public void testGetValue_PriceZero() {
+		BaseStock stock = newStock(10);
+		this.index.add(stock);
+		stock.setPrice(BigDecimal.ZERO);
+		this.index.getValue();
+	}
+
+	/**
+	 * Tests for {@link GeometricMeanIndex#remove(BaseStock)}.
+	 * <ul>
+	 * <li>add a stock with price 0 and a stock with price 100, then remove the
+	 * first one</li>
+	 * <li>verify that the value only depends on the remaining stock, and that
+	 * the removed stock is not followed any more</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRemove() {
+		BaseStock removed = newStock(0);
+		this.index.add(removed);
+		this.index.add(newStock(100));
+		this.index.remove(removed);
+		removed.setPrice(new BigDecimal(5));
+		Assert.assertEquals(new BigDecimal(100), this.index.getValue());
+	}
+
+	/**
+	 * Tests for {@link GeometricMeanIndex#getValue()} without constituent.
+	 * <ul>
+	 * <li>verify that a {@link BusinessException} is thrown</li>
+	 * </ul>
+	 */
+	@Test(expected = BusinessException.class)
+	public void testGetValue_Empty() {
+		this.index.getValue();
+	}
+
+	/**
+	 * Tests for {@link GeometricMeanIndex#add(BaseStock)} and
+	 * {@link GeometricMeanIndex#remove(BaseStock)} racing with
+	 * {@link BaseStock#setPrice(BigDecimal)}.
+	 * <ul>
+	 * <li>add a stock with price 100, then add and remove a second stock in
+	 * one thread while another thread changes its price, in 100 rounds</li>
+	 * <li>verify after each round that the value equals the exact calculation
+	 * of the constituents, i.e. that no price was excluded without having been
+	 * included</li>
+	 * </ul>
+	 */
+	@Test
+	public void testAddAndRemove_ConcurrentPriceChanges() throws Exception {
+		this.index.add(newStock(100));
+		final BaseStock stock = newStock(100);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int round = 0; round < 100; round++) {
+				final CountDownLatch start = new CountDownLatch(1);
+				final int seed = round;
+				Future<?> membership = executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						for (int i = 0; i < 1000; i++) {
+							index.add(stock);
+							index.remove(stock);
+						}
+						if (seed % 2 == 0) {
+							index.add(stock);
+						}
+						return null;
+					}
+				});
+				Future<?> prices = executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						Random random = new Random(seed);
+						start.await();
+						for (int i = 0; i < 1000; i++) {
+							stock.setPrice(new BigDecimal(1 + random.nextInt(10000)));
+						}
+						return null;
+					}
+				});
+				start.countDown();
+				membership.get();
+				prices.get();
+				Assert.assertEquals(GeometricMeanIndex.calculateExact(this.index.getConstituents()),
+						this.index.getValue());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests for {@link GeometricMeanIndex#calculateParallel(Collection)}.
+	 * <ul>
+	 * <li>calculate small sets of random prices, then 20000 random prices
+	 * split across the fork-join pool</li>
+	 * <li>verify that the value equals the exact calculation for the small
+	 * sets, and the value of an index with the same constituents for the large
+	 * one</li>
+	 * </ul>
+	 */
+	@Test
+	public void testCalculateParallel() {
+		Random random = new Random(11);
+		for (int round = 0; round < 20; round++) {
+			List<BaseStock> stocks = new ArrayList<BaseStock>();
+			for (int i = 0; i < 8; i++) {
+				stocks.add(newStock(new BigDecimal(1 + random.nextInt(2000000)).movePointLeft(2)));
+			}
+			Assert.assertEquals(GeometricMeanIndex.calculateExact(stocks),
+					GeometricMeanIndex.calculateParallel(stocks));
+		}
+		List<BaseStock> stocks = new ArrayList<BaseStock>();
+		for (int i = 0; i < 20000; i++) {
+			BaseStock stock = newStock(new BigDecimal(1 + random.nextInt(2000000)).movePointLeft(2));
+			stocks.add(stock);
+			this.index.add(stock);
+		}
+		Assert.assertEquals(this.index.getValue(), GeometricMeanIndex.calculateParallel(stocks));
+	}
+
+	/**
+	 * Tests for {@link GeometricMeanIndex#calculateParallel(Collection)} with
+	 * the exact fallback.
+	 * <ul>
+	 * <li>calculate 5000 prices whose geometric mean is a rounding tie, and
+	 * prices beyond the range of a double</li>
+	 * <li>verify that the ties are rounded half even and that the extreme
+	 * prices are taken into account</li>
+	 * </ul>
+	 */
+	@Test
+	public void testCalculateParallel_Exact() {
+		Assert.assertEquals(new BigDecimal(2), GeometricMeanIndex.calculateParallel(stocksOf("1.5", 5000)));
+		Assert.assertEquals(new BigDecimal(2), GeometricMeanIndex.calculateParallel(stocksOf("2.5", 5000)));
+		List<BaseStock> stocks = stocksOf("3", 4998);
+		stocks.add(newStock(new BigDecimal("1E+400")));
+		stocks.add(newStock(new BigDecimal("1E-400")));
+		Assert.assertEquals(new BigDecimal(3), GeometricMeanIndex.calculateParallel(stocks));
+		Assert.assertEquals(new BigDecimal(100),
+				GeometricMeanIndex.calculateParallel(Arrays.asList(newStock(new BigDecimal("1E+400")),
+						newStock(new BigDecimal("1E-396")))));
+	}
+
+	/**
+	 * Tests for {@link GeometricMeanIndex#calculateParallel(Collection)} and
+	 * {@link GeometricMeanIndex#tryCalculateParallel(Collection)} with a
+	 * non-positive price.
+	 * <ul>
+	 * <li>calculate 5000 prices, one of them 0</li>
+	 * <li>verify that no value is tried and that an
+	 * {@link InvalidValueException} is thrown</li>
+	 * </ul>
+	 */
+	@Test
+	public void testCalculateParallel_PriceZero() {
+		List<BaseStock> stocks = stocksOf("10", 5000);
+		stocks.get(4321).setPrice(BigDecimal.ZERO);
+		Assert.assertNull(GeometricMeanIndex.tryCalculateParallel(stocks));
+		try {
+			GeometricMeanIndex.calculateParallel(stocks);
+			Assert.fail();
+		} catch (InvalidValueException e) {
+			Assert.assertEquals("Found non-positive value: 0", e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates stocks with the same price.
+	 *
+	 * @param price the price of the stocks
+	 * @param count the number of stocks
+	 * @return the {@link CommonStock}s
+	 */
+	private static List<BaseStock> stocksOf(String price, int count) {
+		List<BaseStock> stocks = new ArrayList<BaseStock>();
+		for (int i = 0; i < count; i++) {
+			stocks.add(newStock(new BigDecimal(price)));
+		}
+		return stocks;
+	}
+
+	/**
+	 * Creates a stock with the given price.
+	 *
+	 * @param price the price of the stock
+	 * @return a {@link CommonStock}
+	 */
+	private static BaseStock newStock(BigDecimal price) {
+		return new CommonStock(TestUtils.TEST_COMMON_STOCK, BigDecimal.ZERO, BigDecimal.ZERO, price);
+	}
+
+	/**
+	 * Creates a stock with the given price.
+	 *
+	 * @param price the price of the stock
+	 * @return a {@link CommonStock}
+	 */
+	private static BaseStock newStock(int price) {
+		return new CommonStock(TestUtils.TEST_COMMON_STOCK, BigDecimal.ZERO, BigDecimal.ZERO, new BigDecimal(price));
+	}
+
+}
@@ -0,0 +1,241 @@
+package exercise.stock.market.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.test.TestUtils;
+
+/**
+ * A test class for {@link TradeJournal}.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeJournalTest {
+
+	/** The size of the segments, small enough to roll often. */
+	private static final int SEGMENT_BYTES = 512;
+
+	/** The directory of the journal. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** The {@link TradeJournal} under test. */
+	private TradeJournal journal;
+
+	/**
+	 * Runs before every test.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.journal = new TradeJournal(this.folder.getRoot().toPath(), SEGMENT_BYTES, DurabilityPolicy.never());
+		this.journal.open();
+	}
+
+	/**
+	 * Runs after every test.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		this.journal.close();
+	}
+
+	/**
+	 * Tests for {@link TradeJournal#replay(TradeJournalListener)} after a
+	 * restart.
+	 * <ul>
+	 * <li>append 100 trades over several segments, close and reopen the
+	 * journal, then append another trade</li>
+	 * <li>verify that all the trades are read back in order with their
+	 * values</li>
+	 * </ul>
+	 */
+	@Test
+	public void testReplay_AfterReopen() throws IOException {
+		for (int i = 0; i < 100; i++) {
+			this.journal.append(TestUtils.TEST_COMMON_STOCK + (i % 3), i, i + 1, i % 2 == 0 ? BuyOrSell.BUY : null,
+					1000 + i, 6);
+		}
+		this.journal.close();
+		Assert.assertTrue(this.folder.getRoot().list().length > 1);
+		setUp();
+		this.journal.append(TestUtils.TEST_PREFERRED_STOCK, 100, 101, BuyOrSell.SELL, 1100, 2);
+
+		List<String> trades = replay();
+		Assert.assertEquals(101, trades.size());
+		Assert.assertEquals(TestUtils.TEST_COMMON_STOCK + "1 1 2 null 1001 6", trades.get(1));
+		Assert.assertEquals(TestUtils.TEST_COMMON_STOCK + "2 98 99 BUY 1098 6", trades.get(98));
+		Assert.assertEquals(TestUtils.TEST_PREFERRED_STOCK + " 100 101 SELL 1100 2", trades.get(100));
+	}
+
+	/**
+	 * Tests for {@link TradeJournal#open()} with a torn record.
+	 * <ul>
+	 * <li>append 3 trades, close the journal and corrupt the body of the last
+	 * one</li>
+	 * <li>verify that the journal reopens after the second trade, and that a
+	 * trade appended then is read back in place of the torn one</li>
+	 * </ul>
+	 */
+	@Test
+	public void testOpen_TornRecord() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			this.journal.append(TestUtils.TEST_COMMON_STOCK, i, 1, BuyOrSell.BUY, 100, 0);
+		}
+		this.journal.close();
+		File segment = this.folder.getRoot().listFiles()[0];
+		RandomAccessFile file = new RandomAccessFile(segment, "rw");
+		try {
+			int recordBytes = 8 + 28 + TestUtils.TEST_COMMON_STOCK.length();
+			file.seek(2 * recordBytes + 8);
+			file.writeLong(-1);
+		} finally {
+			file.close();
+		}
+		setUp();
+		Assert.assertEquals(2, replay().size());
+		this.journal.append(TestUtils.TEST_COMMON_STOCK, 7, 1, BuyOrSell.BUY, 100, 0);
+		List<String> trades = replay();
+		Assert.assertEquals(3, trades.size());
+		Assert.assertEquals(TestUtils.TEST_COMMON_STOCK + " 7 1 BUY 100 0", trades.get(2));
+	}
+
+	/**
+	 * Tests for {@link TradeJournal#open()} with a record claimed but never
+	 * completed.
+	 * <ul>
+	 * <li>append 3 trades, close the journal and negate the length of the
+	 * second one, as an append killed between its claim and its write leaves
+	 * it</li>
+	 * <li>verify that the second trade is skipped, the third one being read
+	 * back, and that a trade appended then is read back after the third
+	 * one</li>
+	 * </ul>
+	 */
+	@Test
+	public void testOpen_UncompletedRecord() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			this.journal.append(TestUtils.TEST_COMMON_STOCK, i, 1, BuyOrSell.BUY, 100, 0);
+		}
+		this.journal.close();
+		File segment = this.folder.getRoot().listFiles()[0];
+		RandomAccessFile file = new RandomAccessFile(segment, "rw");
+		try {
+			int bodyBytes = 28 + TestUtils.TEST_COMMON_STOCK.length();
+			file.seek(8 + bodyBytes);
+			file.writeInt(-bodyBytes);
+		} finally {
+			file.close();
+		}
+		setUp();
+		this.journal.append(TestUtils.TEST_COMMON_STOCK, 7, 1, BuyOrSell.BUY, 100, 0);
+		List<String> trades = replay();
+		Assert.assertEquals(3, trades.size());
+		Assert.assertEquals(TestUtils.TEST_COMMON_STOCK + " 0 1 BUY 100 0", trades.get(0));
+		Assert.assertEquals(TestUtils.TEST_COMMON_STOCK + " 2 1 BUY 100 0", trades.get(1));
+		Assert.assertEquals(TestUtils.TEST_COMMON_STOCK + " 7 1 BUY 100 0", trades.get(2));
+	}
+
+	/**
+	 * Tests for
+	 * {@link TradeJournal#append(String, long, long, BuyOrSell, long, int)}
+	 * from several threads.
+	 * <ul>
+	 * <li>append 1000 trades from each of 4 threads, each with its own
+	 * symbol, over segments rolled every few trades</li>
+	 * <li>verify that all the trades are read back, those of each thread in
+	 * the order it appended them</li>
+	 * </ul>
+	 */
+	@Test
+	public void testAppend_ConcurrentThreads() throws Exception {
+		final int threads = 4;
+		final int tradesPerThread = 1000;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++) {
+				final String symbol = TestUtils.TEST_COMMON_STOCK + t;
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						start.await();
+						for (int i = 0; i < tradesPerThread; i++) {
+							journal.append(symbol, i, i + 1, BuyOrSell.SELL, 100 + i, 2);
+						}
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		int[] next = new int[threads];
+		List<String> trades = replay();
+		Assert.assertEquals(threads * tradesPerThread, trades.size());
+		for (String trade : trades) {
+			int thread = trade.charAt(TestUtils.TEST_COMMON_STOCK.length()) - '0';
+			int i = next[thread]++;
+			Assert.assertEquals(TestUtils.TEST_COMMON_STOCK + thread + " " + i + " " + (i + 1) + " SELL " + (100 + i)
+					+ " 2", trade);
+		}
+	}
+
+	/**
+	 * Tests for {@link DurabilityPolicy#isForceRequired(long, long)}.
+	 * <ul>
+	 * <li>create policies limited by trades and by time</li>
+	 * <li>verify when they require a force</li>
+	 * </ul>
+	 */
+	@Test
+	public void testDurabilityPolicy() {
+		Assert.assertTrue(DurabilityPolicy.always().isForceRequired(1, 0));
+		Assert.assertFalse(DurabilityPolicy.never().isForceRequired(Long.MAX_VALUE - 1, Long.MAX_VALUE - 1));
+		Assert.assertFalse(DurabilityPolicy.everyTrades(10).isForceRequired(9, 1000));
+		Assert.assertTrue(DurabilityPolicy.everyTrades(10).isForceRequired(10, 0));
+		Assert.assertFalse(DurabilityPolicy.everyMillis(5).isForceRequired(1000, 4));
+		Assert.assertTrue(DurabilityPolicy.everyMillis(5).isForceRequired(1, 5));
+	}
+
+	/**
+	 * Reads the trades of the journal.
+	 *
+	 * @return the trades, as strings
+	 */
+	private List<String> replay() throws IOException {
+		final List<String> trades = new ArrayList<String>();
+		this.journal.replay(new TradeJournalListener() {
+			@Override
+			public void tradeRead(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+					int priceScale) {
+				trades.add(symbol + " " + timestamp + " " + quantity + " " + indicator + " " + price + " "
+						+ priceScale);
+			}
+		});
+		return trades;
+	}
+
+}
@@ -2,9 +2,10 @@ package exercise.stock.market.model;
 
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.Mockito;
 import exercise.stock.market.test.TestUtils;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
 import org.junit.Assert;
 
 /**
@@ -112,9 +113,68 @@ public class BaseStockTest {
 	 */
 	@Test
 	public void testSetAndGetTradeRecords(){
-		TradeRecord record = Mockito.mock(TradeRecord.class);
-		this.stock.addTradeRecord(record);;
+		TradeRecord record = new TradeRecord(TestUtils.PREFIX_STOCK_SYMBOL, new Date(), BigInteger.TEN, BuyOrSell.BUY,
+				BigDecimal.TEN);
+		this.stock.addTradeRecord(record);
 		Assert.assertEquals(record, this.stock.getTradeRecords().get(0));
 	}
 
+	/**
+	 * Tests for {@link BaseStock#cacheRatios(StockRatios, long)}.
+	 * <ul>
+	 * <li>cache ratios read at the current version</li>
+	 * <li>verify that they are cached until the last dividend changes</li>
+	 * <li>verify that ratios read at a previous version are not cached</li>
+	 * </ul>
+	 */
+	@Test
+	public void testCacheRatios() {
+		StockRatios ratios = new StockRatios(BigDecimal.ONE, BigDecimal.ZERO, null);
+		long version = this.stock.getRatiosVersion();
+		Assert.assertTrue(this.stock.cacheRatios(ratios, version));
+		Assert.assertSame(ratios, this.stock.getCachedRatios());
+		this.stock.setLastDividend(new BigDecimal("0.00"));
+		Assert.assertSame(ratios, this.stock.getCachedRatios());
+		this.stock.setLastDividend(BigDecimal.ONE);
+		Assert.assertNull(this.stock.getCachedRatios());
+		Assert.assertFalse(this.stock.cacheRatios(ratios, version));
+		Assert.assertNull(this.stock.getCachedRatios());
+	}
+
+	/**
+	 * Tests for {@link BaseStock#invalidateRatios()} called by a subclass.
+	 * <ul>
+	 * <li>cache the ratios of a stock whose dividend per share is a value of
+	 * the subclass, then change that value</li>
+	 * <li>verify that the ratios are dropped, and that ratios read before the
+	 * change are not cached</li>
+	 * </ul>
+	 */
+	@Test
+	public void testInvalidateRatios_Subclass() {
+		BaseStock stock = new BaseStock(TestUtils.PREFIX_STOCK_SYMBOL, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.TEN) {
+
+			/** The dividend per share. */
+			private BigDecimal dividend = BigDecimal.ONE;
+
+			@Override
+			public BigDecimal getDividendPerShare() {
+				return this.dividend;
+			}
+
+			@Override
+			public synchronized void setLastDividend(BigDecimal lastDividend) {
+				this.dividend = lastDividend.add(BigDecimal.ONE);
+				invalidateRatios();
+			}
+		};
+		long version = stock.getRatiosVersion();
+		StockRatios ratios = new StockRatios(BigDecimal.TEN, stock.getDividendYield(BigDecimal.TEN), null);
+		Assert.assertTrue(stock.cacheRatios(ratios, version));
+		stock.setLastDividend(BigDecimal.ONE);
+		Assert.assertNull(stock.getCachedRatios());
+		Assert.assertFalse(stock.cacheRatios(ratios, version));
+		Assert.assertEquals(new BigDecimal("0.200"), stock.getDividendYield(BigDecimal.TEN));
+	}
+
 }
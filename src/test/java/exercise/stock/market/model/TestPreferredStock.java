@@ -37,4 +37,21 @@ public class TestPreferredStock {
 		this.stock.setFixedDividend(value);
 		Assert.assertEquals(value, this.stock.getFixedDividend());
 	}
+
+	/**
+	 * Tests for {@link PreferredStock#getDividendYield(BigDecimal)}.
+	 * <ul>
+	 * <li>set the fixed dividend to 0.02 and the par value to 100</li>
+	 * <li>verify that the yield is calculated from fixed dividend * par
+	 * value</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetDividendYield() {
+		this.stock.setLastDividend(new BigDecimal(8));
+		this.stock.setFixedDividend(new BigDecimal("0.02"));
+		this.stock.setParValue(new BigDecimal(100));
+		Assert.assertEquals(new BigDecimal(2), this.stock.getDividendPerShare().stripTrailingZeros());
+		Assert.assertEquals(new BigDecimal("0.015"), this.stock.getDividendYield(new BigDecimal(130)));
+	}
 }
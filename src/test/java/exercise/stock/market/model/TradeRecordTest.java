@@ -102,5 +102,26 @@ public class TradeRecordTest {
 		this.tradeRecord.setPrice(price);
 		Assert.assertEquals(price,this.tradeRecord.getPrice());
 	}
-	
+
+	/**
+	 * Tests for {@link TradeRecord#equals(Object)} and {@link TradeRecord#hashCode()}.
+	 * <ul>
+	 * <li>create two records with the same values, the prices differing only by their scale</li>
+	 * <li>verify that they are equal with the same hash code, and differ from a record with another quantity</li>
+	 * </ul>
+	 */
+	@Test
+	public void testEqualsAndHashCode(){
+		Date timestamp = new Date();
+		TradeRecord first = new TradeRecord(TestUtils.TEST_COMMON_STOCK, timestamp, BigInteger.TEN, BuyOrSell.BUY,
+				new BigDecimal("10.5"));
+		TradeRecord second = new TradeRecord(TestUtils.TEST_COMMON_STOCK, new Date(timestamp.getTime()),
+				BigInteger.TEN, BuyOrSell.BUY, new BigDecimal("10.500"));
+		Assert.assertEquals(first, second);
+		Assert.assertEquals(first.hashCode(), second.hashCode());
+		second.setQuantity(BigInteger.ONE);
+		Assert.assertFalse(first.equals(second));
+		Assert.assertEquals(this.tradeRecord, new TradeRecord());
+	}
+
 }
@@ -0,0 +1,73 @@
+package exercise.stock.market.numeric;
+
+import java.math.BigDecimal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A test class for {@link FixedPoint}.
+ *
+ * @author DMONEY
+ *
+ */
+public class FixedPointTest {
+
+	/**
+	 * Tests for {@link FixedPoint#toUnscaled(BigDecimal, int)} and
+	 * {@link FixedPoint#toBigDecimal(long, int)}.
+	 * <ul>
+	 * <li>convert 12.34 to scale 6 and back</li>
+	 * <li>verify the unscaled value and that the trailing zeros are
+	 * dropped</li>
+	 * </ul>
+	 */
+	@Test
+	public void testConversions() {
+		Assert.assertEquals(12340000, FixedPoint.toUnscaled(new BigDecimal("12.34"), 6));
+		Assert.assertEquals(new BigDecimal("12.34"), FixedPoint.toBigDecimal(12340000, 6));
+		Assert.assertEquals(new BigDecimal("100"), FixedPoint.toBigDecimal(100000000, 6));
+	}
+
+	/**
+	 * Tests for {@link FixedPoint#toUnscaled(BigDecimal, int)} with a value
+	 * which needs more digits than the scale.
+	 * <ul>
+	 * <li>convert 0.125 to scale 2</li>
+	 * <li>verify that an {@link InvalidValueException} is thrown</li>
+	 * </ul>
+	 */
+	@Test(expected = InvalidValueException.class)
+	public void testToUnscaled_Inexact() {
+		FixedPoint.toUnscaled(new BigDecimal("0.125"), 2);
+	}
+
+	/**
+	 * Tests for {@link FixedPoint#rescale(long, int, int)}.
+	 * <ul>
+	 * <li>rescale values up and down</li>
+	 * <li>verify the results, and that an inexact or overflowing conversion
+	 * throws an {@link InvalidValueException}</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRescale() {
+		Assert.assertEquals(1500000, FixedPoint.rescale(150, 2, 6));
+		Assert.assertEquals(150, FixedPoint.rescale(1500000, 6, 2));
+		try {
+			FixedPoint.rescale(1500001, 6, 2);
+			Assert.fail();
+		} catch (InvalidValueException e) {
+			// expected
+		}
+		try {
+			FixedPoint.rescale(Long.MAX_VALUE, 0, 6);
+			Assert.fail();
+		} catch (InvalidValueException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package exercise.stock.market.numeric;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A test class for {@link Int128}.
+ *
+ * @author DMONEY
+ *
+ */
+public class Int128Test {
+
+	/**
+	 * Tests for {@link Int128#multiplyHigh(long, long)}.
+	 * <ul>
+	 * <li>multiply random values, including the extreme values</li>
+	 * <li>verify that the high 64 bits equal those of the {@link BigInteger}
+	 * product</li>
+	 * </ul>
+	 */
+	@Test
+	public void testMultiplyHigh() {
+		Random random = new Random(42);
+		long[] extremes = { 0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE };
+		for (long first : extremes) {
+			for (long second : extremes) {
+				assertMultiplyHigh(first, second);
+			}
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertMultiplyHigh(random.nextLong(), random.nextLong());
+		}
+	}
+
+	/**
+	 * Tests for {@link Int128#addProduct(long, long)} and
+	 * {@link Int128#subtractProduct(long, long)}.
+	 * <ul>
+	 * <li>add and subtract random products of a long and an int, crossing zero
+	 * and 64 bits</li>
+	 * <li>verify that the value equals the {@link BigInteger} sum</li>
+	 * </ul>
+	 */
+	@Test
+	public void testAddAndSubtractProduct() {
+		Random random = new Random(7);
+		Int128 value = new Int128();
+		BigInteger expected = BigInteger.ZERO;
+		for (int i = 0; i < 10000; i++) {
+			long first = random.nextLong();
+			long second = random.nextInt();
+			if (random.nextBoolean()) {
+				value.addProduct(first, second);
+				expected = expected.add(BigInteger.valueOf(first).multiply(BigInteger.valueOf(second)));
+			} else {
+				value.subtractProduct(first, second);
+				expected = expected.subtract(BigInteger.valueOf(first).multiply(BigInteger.valueOf(second)));
+			}
+			Assert.assertEquals(expected, value.toBigInteger());
+			Assert.assertEquals(expected.signum(), value.signum());
+			Assert.assertEquals(expected.bitLength() < Long.SIZE, value.fitsInLong());
+		}
+	}
+
+	/**
+	 * Tests for {@link Int128#add(long)} with an overflow.
+	 * <ul>
+	 * <li>add the largest product twice</li>
+	 * <li>verify that an {@link ArithmeticException} is thrown</li>
+	 * </ul>
+	 */
+	@Test(expected = ArithmeticException.class)
+	public void testAdd_Overflow() {
+		Int128 value = new Int128();
+		value.addProduct(Long.MIN_VALUE, Long.MIN_VALUE);
+		value.addProduct(Long.MIN_VALUE, Long.MIN_VALUE);
+	}
+
+	/**
+	 * Tests for {@link Int128#multiply(long)} and {@link Int128#divide(long)}.
+	 * <ul>
+	 * <li>multiply and divide random values of up to 128 bits by random
+	 * values of various sizes, including the extreme values</li>
+	 * <li>verify that the products, quotients and remainders equal the
+	 * {@link BigInteger} ones, and that an overflow gets
+	 * {@link ArithmeticException}</li>
+	 * </ul>
+	 */
+	@Test
+	public void testMultiplyAndDivide() {
+		Random random = new Random(11);
+		BigInteger min = BigInteger.ONE.shiftLeft(127).negate();
+		BigInteger max = BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE);
+		long[] extremes = { 1, -1, 10, Long.MAX_VALUE, Long.MIN_VALUE };
+		for (int i = 0; i < 20000; i++) {
+			Int128 value = new Int128(random.nextLong());
+			if (random.nextBoolean()) {
+				value.addProduct(random.nextLong(), random.nextLong() >> random.nextInt(64));
+			}
+			long factor = i < 1000 ? extremes[i % extremes.length] : random.nextLong() >> random.nextInt(64);
+			BigInteger expected = value.toBigInteger().multiply(BigInteger.valueOf(factor));
+			Int128 product = new Int128().set(value);
+			try {
+				product.multiply(factor);
+				Assert.assertEquals(expected, product.toBigInteger());
+			} catch (ArithmeticException e) {
+				Assert.assertTrue(expected.compareTo(min) < 0 || expected.compareTo(max) > 0);
+			}
+
+			if (factor != 0) {
+				BigInteger[] expectedDivision = value.toBigInteger().divideAndRemainder(BigInteger.valueOf(factor));
+				Int128 quotient = new Int128().set(value);
+				long remainder = quotient.divide(factor);
+				Assert.assertEquals(expectedDivision[0], quotient.toBigInteger());
+				Assert.assertEquals(expectedDivision[1].longValue(), remainder);
+			}
+		}
+		Int128 smallest = new Int128(Long.MIN_VALUE).multiply(Long.MIN_VALUE).multiply(-2);
+		Assert.assertEquals(min, smallest.toBigInteger());
+		Int128 quotient = new Int128().set(smallest);
+		Assert.assertEquals(0, quotient.divide(Long.MIN_VALUE));
+		Assert.assertEquals(BigInteger.ONE.shiftLeft(64), quotient.toBigInteger());
+		try {
+			new Int128().set(smallest).divide(-1);
+			Assert.fail("The quotient 2^127 overflows");
+		} catch (ArithmeticException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Verifies {@link Int128#multiplyHigh(long, long)} for two values.
+	 *
+	 * @param first the first factor
+	 * @param second the second factor
+	 */
+	private static void assertMultiplyHigh(long first, long second) {
+		BigInteger product = BigInteger.valueOf(first).multiply(BigInteger.valueOf(second));
+		Assert.assertEquals(product.shiftRight(64).longValue(), Int128.multiplyHigh(first, second));
+	}
+
+}
@@ -0,0 +1,207 @@
+package exercise.stock.market.numeric;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A differential test class for {@link NumericBackend}: every value is
+ * calculated by {@link NumericBackend#BIG_DECIMAL} and
+ * {@link NumericBackend#FIXED_POINT}, and the results must be equal, scale
+ * included.
+ *
+ * @author DMONEY
+ *
+ */
+public class NumericBackendTest {
+
+	/**
+	 * Tests for {@link NumericBackend#divide(BigDecimal, BigDecimal, int)} on
+	 * random values.
+	 * <ul>
+	 * <li>divide random values of both signs, of 1 to 20 digits and with
+	 * scales from -2 to 12, to the scales of the ratios (3) and of the
+	 * precision (7)</li>
+	 * <li>verify that both backends give the same results</li>
+	 * </ul>
+	 */
+	@Test
+	public void testDivide_AgainstBigDecimal() {
+		Random random = new Random(25);
+		for (int i = 0; i < 100000; i++) {
+			BigDecimal dividend = randomValue(random);
+			BigDecimal divisor = randomValue(random);
+			if (divisor.signum() != 0) {
+				assertDivide(dividend, divisor, 3);
+				assertDivide(dividend, divisor, NumericBackend.PRECISION_SCALE);
+				assertDivide(dividend, divisor, 0);
+			}
+		}
+	}
+
+	/**
+	 * Tests for {@link NumericBackend#divide(BigDecimal, BigDecimal, int)} on
+	 * rounding ties.
+	 * <ul>
+	 * <li>divide values whose quotient is half way between two values at the
+	 * precision scale, or at the scale of the result once rounded to the
+	 * precision scale, e.g. 1.00149996 which is rounded to 1.0015000 and then
+	 * to 1.002</li>
+	 * <li>verify that both backends give the same results, and the expected
+	 * ones</li>
+	 * </ul>
+	 */
+	@Test
+	public void testDivide_Ties() {
+		Assert.assertEquals(new BigDecimal("0.0000000"), assertDivide(new BigDecimal("0.00000005"), BigDecimal.ONE, 7));
+		Assert.assertEquals(new BigDecimal("0.0000002"), assertDivide(new BigDecimal("0.00000015"), BigDecimal.ONE, 7));
+		Assert.assertEquals(new BigDecimal("-0.0000002"),
+				assertDivide(new BigDecimal("0.00000015"), BigDecimal.ONE.negate(), 7));
+		Assert.assertEquals(new BigDecimal("1.000"), assertDivide(new BigDecimal("1.0005"), BigDecimal.ONE, 3));
+		Assert.assertEquals(new BigDecimal("1.002"), assertDivide(new BigDecimal("1.0015"), BigDecimal.ONE, 3));
+		Assert.assertEquals(new BigDecimal("1.002"), assertDivide(new BigDecimal("1.00149996"), BigDecimal.ONE, 3));
+		Assert.assertEquals(new BigDecimal("-1.002"), assertDivide(new BigDecimal("-3.00449988"), new BigDecimal(3), 3));
+		Assert.assertEquals(new BigDecimal("0.125"), assertDivide(BigDecimal.ONE, new BigDecimal(8), 3));
+		Assert.assertEquals(new BigDecimal("0.062"), assertDivide(new BigDecimal("0.5"), new BigDecimal(8), 3));
+		Random random = new Random(3);
+		for (int i = 0; i < 10000; i++) {
+			long divisor = 1 + random.nextInt(1000000);
+			// a quotient of n + 1/2 at the precision scale, or at scale 3
+			long half = 2 * random.nextInt(1000000) + 1;
+			assertDivide(BigDecimal.valueOf(half * divisor, 8).multiply(new BigDecimal(5)), BigDecimal.valueOf(divisor),
+					7);
+			assertDivide(BigDecimal.valueOf(half * divisor, 4).multiply(new BigDecimal(5)), BigDecimal.valueOf(divisor),
+					3);
+		}
+	}
+
+	/**
+	 * Tests for {@link NumericBackend#divide(BigDecimal, BigDecimal, int)}
+	 * beyond the fixed point range.
+	 * <ul>
+	 * <li>divide values of more than 18 digits, with extreme scales, or whose
+	 * quotient overflows a {@code long}, and divide by zero</li>
+	 * <li>verify that both backends give the same results, and both get
+	 * {@link ArithmeticException} for a zero divisor</li>
+	 * </ul>
+	 */
+	@Test
+	public void testDivide_BeyondFixedPoint() {
+		assertDivide(new BigDecimal("123456789012345678901234567890.5"), new BigDecimal("7"), 3);
+		assertDivide(new BigDecimal("1"), new BigDecimal("0.0000000000000000000003"), 3);
+		assertDivide(new BigDecimal("1E+30"), new BigDecimal("3"), 7);
+		assertDivide(new BigDecimal("999999999999999999"), new BigDecimal("0.000000000000000001"), 3);
+		assertDivide(new BigDecimal("0.000000000000000001"), new BigDecimal("999999999999999999"), 7);
+		for (NumericBackend backend : NumericBackend.values()) {
+			try {
+				backend.divide(BigDecimal.ONE, BigDecimal.ZERO, 3);
+				Assert.fail(backend + " divided by zero");
+			} catch (ArithmeticException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * Tests for {@link NumericBackend#volumeWeightedPrice(Int128, int, long)}.
+	 * <ul>
+	 * <li>calculate the prices of random sums of up to 128 bits, with price
+	 * scales from 0 to 18 and random quantities</li>
+	 * <li>verify that both backends give the same results, and that the sum
+	 * is left unchanged</li>
+	 * </ul>
+	 */
+	@Test
+	public void testVolumeWeightedPrice_AgainstBigDecimal() {
+		Random random = new Random(15);
+		for (int i = 0; i < 100000; i++) {
+			long quantitySum = 1 + (random.nextLong() >>> (1 + random.nextInt(63)));
+			Int128 priceQuantitySum = new Int128();
+			int tradeCount = 1 + random.nextInt(3);
+			for (int j = 0; j < tradeCount; j++) {
+				priceQuantitySum.addProduct(random.nextLong() >>> (1 + random.nextInt(63)), quantitySum / tradeCount);
+			}
+			assertVolumeWeightedPrice(priceQuantitySum, random.nextInt(FixedPoint.MAX_SCALE + 1), quantitySum);
+		}
+	}
+
+	/**
+	 * Tests for {@link NumericBackend#volumeWeightedPrice(Int128, int, long)}
+	 * on rounding ties.
+	 * <ul>
+	 * <li>calculate prices which are half way between two integers, or just
+	 * below, which are rounded down to the precision scale first</li>
+	 * <li>verify that both backends give the same results, and the expected
+	 * ones</li>
+	 * </ul>
+	 */
+	@Test
+	public void testVolumeWeightedPrice_Ties() {
+		Assert.assertEquals(new BigDecimal(0), assertVolumeWeightedPrice(new Int128(5), 1, 1));
+		Assert.assertEquals(new BigDecimal(2), assertVolumeWeightedPrice(new Int128(15), 1, 1));
+		Assert.assertEquals(new BigDecimal(2), assertVolumeWeightedPrice(new Int128(25), 0, 10));
+		Assert.assertEquals(new BigDecimal(2), assertVolumeWeightedPrice(new Int128(249999999), 8, 1));
+		Assert.assertEquals(new BigDecimal(4), assertVolumeWeightedPrice(new Int128(7), 0, 2));
+		Assert.assertEquals(new BigDecimal(0), assertVolumeWeightedPrice(new Int128(1), 0, 3));
+		Assert.assertEquals(new BigDecimal(1), assertVolumeWeightedPrice(new Int128(2), 0, 3));
+		Random random = new Random(5);
+		for (int i = 0; i < 10000; i++) {
+			long quantitySum = 1 + random.nextInt(1000000);
+			long half = 2 * random.nextInt(1000000) + 1;
+			assertVolumeWeightedPrice(new Int128(half * 5).multiply(quantitySum), 1, quantitySum);
+			assertVolumeWeightedPrice(new Int128(half * 5).multiply(quantitySum).add(-1), 1, quantitySum);
+		}
+	}
+
+	/**
+	 * Divides two values with both backends.
+	 *
+	 * @param dividend the dividend
+	 * @param divisor the divisor
+	 * @param scale the scale of the result
+	 * @return the quotient
+	 */
+	private static BigDecimal assertDivide(BigDecimal dividend, BigDecimal divisor, int scale) {
+		BigDecimal expected = NumericBackend.BIG_DECIMAL.divide(dividend, divisor, scale);
+		Assert.assertEquals(dividend + " / " + divisor, expected,
+				NumericBackend.FIXED_POINT.divide(dividend, divisor, scale));
+		return expected;
+	}
+
+	/**
+	 * Calculates a volume weighted price with both backends.
+	 *
+	 * @param priceQuantitySum the sum of price * quantity
+	 * @param priceScale the scale of the prices
+	 * @param quantitySum the sum of quantity
+	 * @return the volume weighted price
+	 */
+	private static BigDecimal assertVolumeWeightedPrice(Int128 priceQuantitySum, int priceScale, long quantitySum) {
+		BigInteger sum = priceQuantitySum.toBigInteger();
+		BigDecimal expected = NumericBackend.BIG_DECIMAL.volumeWeightedPrice(priceQuantitySum, priceScale,
+				quantitySum);
+		Assert.assertEquals(sum + "E-" + priceScale + " / " + quantitySum, expected,
+				NumericBackend.FIXED_POINT.volumeWeightedPrice(priceQuantitySum, priceScale, quantitySum));
+		Assert.assertEquals(sum, priceQuantitySum.toBigInteger());
+		return expected;
+	}
+
+	/**
+	 * Gets a random value of both signs, of 1 to 20 digits and with a scale
+	 * from -2 to 12.
+	 *
+	 * @param random the generator
+	 * @return the value
+	 */
+	private static BigDecimal randomValue(Random random) {
+		BigInteger unscaled = new BigInteger(1 + random.nextInt(66), random);
+		if (random.nextInt(4) == 0) {
+			unscaled = unscaled.negate();
+		}
+		return new BigDecimal(unscaled, random.nextInt(15) - 2);
+	}
+
+}
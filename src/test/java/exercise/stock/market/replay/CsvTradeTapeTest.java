@@ -0,0 +1,116 @@
+package exercise.stock.market.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import exercise.stock.market.journal.TradeJournalListener;
+import exercise.stock.market.model.BuyOrSell;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A test class for {@link CsvTradeTape}.
+ *
+ * @author DMONEY
+ *
+ */
+public class CsvTradeTapeTest {
+
+	/** The directory of the files. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests for {@link CsvTradeTape#replay(TradeJournalListener)}.
+	 * <ul>
+	 * <li>read a file with a header, CRLF line ends, every kind of side and no
+	 * line feed at the end, through a buffer smaller than the file</li>
+	 * <li>verify that every trade is read with its values, and that a symbol
+	 * is decoded once</li>
+	 * </ul>
+	 */
+	@Test
+	public void testReplay() throws IOException {
+		File file = write("timestamp,symbol,quantity,side,price\r\n" + "1000,TEA,100,BUY,10.25\r\n"
+				+ "1001,POP,5,S,7\n" + "\n" + "1002,TEA,-3,,0.000001\n" + "999,TEA,40,SELL,-12.5");
+		final List<String> trades = new ArrayList<String>();
+		final List<String> symbols = new ArrayList<String>();
+		long count = new CsvTradeTape(file.toPath(), 40).replay(new TradeJournalListener() {
+
+			@Override
+			public void tradeRead(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+					int priceScale) {
+				trades.add(symbol + "," + timestamp + "," + quantity + "," + indicator + "," + price + "," + priceScale);
+				symbols.add(symbol);
+			}
+		});
+		Assert.assertEquals(4, count);
+		Assert.assertEquals("TEA,1000,100,BUY,1025,2", trades.get(0));
+		Assert.assertEquals("POP,1001,5,SELL,7,0", trades.get(1));
+		Assert.assertEquals("TEA,1002,-3,null,1,6", trades.get(2));
+		Assert.assertEquals("TEA,999,40,SELL,-125,1", trades.get(3));
+		Assert.assertSame(symbols.get(0), symbols.get(3));
+	}
+
+	/**
+	 * Tests for {@link CsvTradeTape#replay(TradeJournalListener)} with
+	 * malformed lines.
+	 * <ul>
+	 * <li>read files with a missing field, a bad number, a bad side and a line
+	 * longer than the buffer</li>
+	 * <li>verify that an {@link InvalidValueException} names the line</li>
+	 * </ul>
+	 */
+	@Test
+	public void testReplay_Malformed() throws IOException {
+		assertMalformed("1000,TEA,100,BUY\n", "Line 1 ");
+		assertMalformed("1000,TEA,100,BUY,1\n1001,TEA,1x0,BUY,1\n", "Line 2 ");
+		assertMalformed("1000,TEA,100,HOLD,1\n", "Line 1 ");
+		assertMalformed("1000,TEA,100.5,BUY,1\n", "Line 1 ");
+		assertMalformed("1000,TEA,100,BUY,1\n1001,TEA_WITH_A_VERY_LONG_NAME,100,BUY,1\n", "Line 2 ");
+	}
+
+	/**
+	 * Reads a file expected to be malformed.
+	 *
+	 * @param content the content of the file
+	 * @param prefix the expected start of the message
+	 */
+	private void assertMalformed(String content, String prefix) throws IOException {
+		File file = write(content);
+		try {
+			new CsvTradeTape(file.toPath(), 40).replay(new TradeJournalListener() {
+
+				@Override
+				public void tradeRead(String symbol, long timestamp, long quantity, BuyOrSell indicator, long price,
+						int priceScale) {
+					// ignored
+				}
+			});
+			Assert.fail();
+		} catch (InvalidValueException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith(prefix));
+		}
+	}
+
+	/**
+	 * Writes a file.
+	 *
+	 * @param content the content of the file
+	 * @return the file
+	 */
+	private File write(String content) throws IOException {
+		File file = this.folder.newFile();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+}
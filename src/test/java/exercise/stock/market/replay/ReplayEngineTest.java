@@ -0,0 +1,189 @@
+package exercise.stock.market.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import exercise.stock.market.clock.MarketClock;
+import exercise.stock.market.journal.DurabilityPolicy;
+import exercise.stock.market.journal.TradeJournal;
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.model.CommonStock;
+import exercise.stock.market.service.StockMarketService;
+
+/**
+ * A test class for {@link ReplayEngine}.
+ *
+ * @author DMONEY
+ *
+ */
+public class ReplayEngineTest {
+
+	/** The symbols of the stocks of the random tapes. */
+	private static final String[] SYMBOLS = { "TEA", "POP", "ALE", "GIN", "JOE", "RUM", "ZIP", "SOD" };
+
+	/** The directory of the tapes. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Tests for {@link ReplayEngine#replay(exercise.stock.market.journal.TradeTape, ReplayListener)}
+	 * from a CSV file.
+	 * <ul>
+	 * <li>replay trades of two stocks over 3 minutes, one of them invalid,
+	 * sampling the 1 and 15 minutes VWSP every minute on 2 threads</li>
+	 * <li>verify the samples at the end of each minute, the result, and that
+	 * the clock of the service is restored</li>
+	 * </ul>
+	 */
+	@Test
+	public void testReplay_Csv() throws IOException {
+		File file = this.folder.newFile();
+		Files.write(file.toPath(),
+				("timestamp,symbol,quantity,side,price\n" + "1000,A,100,BUY,100\n" + "2000,B,200,S,400\n"
+						+ "61000,A,300,SELL,200\n" + "62000,B,50,,-1\n" + "125000,B,100,B,800\n")
+								.getBytes(StandardCharsets.UTF_8));
+		StockMarketService service = newService("A", "B");
+		ReplayEngine engine = new ReplayEngine(service);
+		engine.setThreadCount(2);
+		engine.setWindowsMillis(60 * 1000L, 15 * 60 * 1000L);
+		List<ReplaySample> samples = new ArrayList<ReplaySample>();
+		ReplayResult result = engine.replay(new CsvTradeTape(file.toPath()), collect(samples));
+
+		Assert.assertEquals(5, result.getTradeCount());
+		Assert.assertEquals(1, result.getRejectedCount());
+		Assert.assertEquals(3, result.getSampleCount());
+		Assert.assertEquals(1000, result.getFirstTimestamp());
+		Assert.assertEquals(125000, result.getLastTimestamp());
+		Assert.assertSame(MarketClock.SYSTEM, service.getClock());
+
+		Assert.assertEquals(3, samples.size());
+		assertSample(samples.get(0), 60000, "200", "100", "100", "400", "400");
+		assertSample(samples.get(1), 120000, "283", "200", "175", "0", "400");
+		assertSample(samples.get(2), 180000, "400", "0", "175", "800", "533");
+		Assert.assertEquals(0, new BigDecimal(800).compareTo(service.getStockMap().get("B").getPrice()));
+	}
+
+	/**
+	 * Tests for {@link ReplayEngine#replay(exercise.stock.market.journal.TradeTape, ReplayListener)}
+	 * from a journal, against a replay on one thread.
+	 * <ul>
+	 * <li>replay 20000 random trades of 8 stocks over 4 hours, some of them
+	 * late or invalid, on 1 and on 4 threads with small batches</li>
+	 * <li>verify that both replays take the same samples, and that the tape
+	 * is replayed faster than real time</li>
+	 * </ul>
+	 */
+	@Test
+	public void testReplay_Journal() throws IOException {
+		TradeJournal journal = TradeJournal.open(this.folder.getRoot().toPath(), DurabilityPolicy.never());
+		Random random = new Random(7);
+		long time = 1500000000000L;
+		for (int i = 0; i < 20000; i++) {
+			time += random.nextInt(1440);
+			long timestamp = random.nextInt(20) == 0 ? time - random.nextInt(60000) : time;
+			long price = random.nextInt(100) == 0 ? 0 : 1000 + random.nextInt(100000);
+			journal.append(SYMBOLS[random.nextInt(SYMBOLS.length)], timestamp, 1 + random.nextInt(1000),
+					random.nextBoolean() ? BuyOrSell.BUY : BuyOrSell.SELL, price, 2);
+		}
+
+		List<ReplaySample> expected = new ArrayList<ReplaySample>();
+		List<ReplaySample> actual = new ArrayList<ReplaySample>();
+		ReplayResult sequential = replay(journal, 1, expected);
+		ReplayResult parallel = replay(journal, 4, actual);
+		journal.close();
+
+		Assert.assertEquals(20000, parallel.getTradeCount());
+		Assert.assertEquals(sequential.getRejectedCount(), parallel.getRejectedCount());
+		Assert.assertTrue(parallel.getRejectedCount() > 0);
+		Assert.assertEquals(expected.size(), actual.size());
+		Assert.assertEquals(parallel.getSampleCount(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+			Assert.assertEquals(expected.get(i).getIndex(), actual.get(i).getIndex());
+			for (String symbol : SYMBOLS) {
+				Assert.assertArrayEquals(expected.get(i).getVolumeWeightedStockPrices().get(symbol),
+						actual.get(i).getVolumeWeightedStockPrices().get(symbol));
+			}
+		}
+		Assert.assertNotNull(actual.get(actual.size() - 1).getIndex());
+		Assert.assertTrue(parallel.toString(), parallel.getSpeedUp() > 1);
+	}
+
+	/**
+	 * Replays a journal into a new service.
+	 *
+	 * @param journal the journal
+	 * @param threadCount the number of threads
+	 * @param samples the list receiving the samples
+	 * @return the result of the replay
+	 */
+	private static ReplayResult replay(TradeJournal journal, int threadCount, List<ReplaySample> samples)
+			throws IOException {
+		ReplayEngine engine = new ReplayEngine(newService(SYMBOLS));
+		engine.setThreadCount(threadCount);
+		engine.setBatchSize(64);
+		engine.setWindowsMillis(5 * 60 * 1000L, 15 * 60 * 1000L);
+		return engine.replay(journal, collect(samples));
+	}
+
+	/**
+	 * Creates a service with common stocks.
+	 *
+	 * @param symbols the symbols of the stocks
+	 * @return the service
+	 */
+	private static StockMarketService newService(String... symbols) {
+		StockMarketService service = new StockMarketService();
+		for (String symbol : symbols) {
+			service.registerStock(new CommonStock(symbol, BigDecimal.ONE, BigDecimal.TEN, BigDecimal.ZERO));
+		}
+		return service;
+	}
+
+	/**
+	 * Creates a listener collecting the samples.
+	 *
+	 * @param samples the list receiving the samples
+	 * @return the listener
+	 */
+	private static ReplayListener collect(final List<ReplaySample> samples) {
+		return new ReplayListener() {
+
+			@Override
+			public void sampleTaken(ReplaySample sample) {
+				samples.add(sample);
+			}
+		};
+	}
+
+	/**
+	 * Checks a sample of the stocks A and B.
+	 *
+	 * @param sample the sample
+	 * @param time the expected time
+	 * @param index the expected index
+	 * @param prices the expected VWSP of A then B, over 1 then 15 minutes
+	 */
+	private static void assertSample(ReplaySample sample, long time, String index, String... prices) {
+		Assert.assertEquals(time, sample.getTime());
+		Assert.assertEquals(0, new BigDecimal(index).compareTo(sample.getIndex()));
+		BigDecimal[] a = sample.getVolumeWeightedStockPrices().get("A");
+		BigDecimal[] b = sample.getVolumeWeightedStockPrices().get("B");
+		BigDecimal[] actual = { a[0], a[1], b[0], b[1] };
+		for (int i = 0; i < prices.length; i++) {
+			Assert.assertEquals(0, new BigDecimal(prices[i]).compareTo(actual[i]));
+		}
+	}
+
+}
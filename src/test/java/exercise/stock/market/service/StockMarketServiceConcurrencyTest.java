@@ -0,0 +1,332 @@
+package exercise.stock.market.service;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import exercise.stock.market.journal.DurabilityPolicy;
+import exercise.stock.market.journal.TradeJournal;
+import exercise.stock.market.model.BaseStock;
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.model.CommonStock;
+import exercise.stock.market.model.TradeRecord;
+import exercise.stock.market.test.TestUtils;
+
+/**
+ * A stress test for {@link StockMarketService} used from several threads. The
+ * throughput of contended writers, by number of writers, is measured by the
+ * {@code ContendedIngestionBenchmark} of the benchmarks module.
+ *
+ * @author DMONEY
+ *
+ */
+public class StockMarketServiceConcurrencyTest {
+
+	/** The number of stocks registered. */
+	private static final int STOCK_COUNT = 64;
+
+	/** The number of trades recorded by each writer. */
+	private static final int TRADES_PER_WRITER = 50000;
+
+	/** The number of trades recorded by each writer with a journal. */
+	private static final int JOURNALED_TRADES_PER_WRITER = 10000;
+
+	/** The number of reads of all the stocks while stocks are registered. */
+	private static final int REGISTRATION_READS = 20000;
+
+	/** The {@link StockMarketService} under tests. */
+	private StockMarketService service;
+
+	/** The directory of the journals. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** The threads running the writers and readers. */
+	private ExecutorService executor;
+
+	/**
+	 * Runs before every test.
+	 */
+	@Before
+	public void setUp() {
+		this.service = new StockMarketService(true);
+		for (int i = 0; i < STOCK_COUNT; i++) {
+			this.service.registerStock(new CommonStock(TestUtils.TEST_COMMON_STOCK + i, BigDecimal.ONE,
+					BigDecimal.ONE, new BigDecimal(100 + i)));
+		}
+		this.executor = Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * Runs after every test.
+	 */
+	@After
+	public void tearDown() {
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#recordTrade(String, Date, BigInteger,
+	 * BuyOrSell, BigDecimal)} with contended writers.
+	 * <ul>
+	 * <li>run 1, 2, 4 ... writers up to the number of processors, recording
+	 * trades on random stocks while a reader polls the VWSP and the index and
+	 * another thread changes prices</li>
+	 * <li>verify that no trade is lost, and that the VWSP equals a full scan
+	 * of the trades</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecordTrade_ContendedWriters() throws Exception {
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int writers = 1; writers <= Math.max(2, processors); writers *= 2) {
+			if (writers > 1) {
+				tearDown();
+				setUp();
+			}
+			runWriters(writers);
+
+			int total = 0;
+			for (BaseStock stock : this.service.getStockMap().values()) {
+				total += stock.getTradeRecords().size();
+				Assert.assertEquals(scanVolumeWeightedStockPrice(stock),
+						this.service.getVolumeWeightedStockPrice(stock.getSymbol()));
+			}
+			Assert.assertEquals(writers * TRADES_PER_WRITER, total);
+		}
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#recordTrade(String, Date, BigInteger,
+	 * BuyOrSell, BigDecimal)} and
+	 * {@link StockMarketService#recordTrade(String, long, long, BuyOrSell, long, int)}
+	 * with a journal and contended writers of one stock.
+	 * <ul>
+	 * <li>run at least 2 writers recording trades of the same stock at the
+	 * same time stamp, with distinct quantities, through both methods</li>
+	 * <li>verify that recovering the journal into a new service rebuilds the
+	 * same trade records, i.e. that the trades are journaled in the order they
+	 * are stored</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecordTrade_JournalOrder() throws Exception {
+		TradeJournal journal = TradeJournal.open(this.folder.getRoot().toPath(), DurabilityPolicy.never());
+		this.service.setJournal(journal);
+		final String symbol = TestUtils.TEST_COMMON_STOCK + 0;
+		final long now = new Date().getTime();
+		final CountDownLatch start = new CountDownLatch(1);
+		int writers = Math.max(2, Runtime.getRuntime().availableProcessors());
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int w = 0; w < writers; w++) {
+			final int writer = w;
+			results.add(this.executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (int i = 0; i < JOURNALED_TRADES_PER_WRITER; i++) {
+						long quantity = (long) writer * JOURNALED_TRADES_PER_WRITER + i + 1;
+						if (i % 2 == 0) {
+							service.recordTrade(symbol, new Date(now), BigInteger.valueOf(quantity), BuyOrSell.BUY,
+									BigDecimal.TEN);
+						} else {
+							service.recordTrade(symbol, now, quantity, BuyOrSell.SELL, 10, 0);
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<?> result : results) {
+			result.get();
+		}
+		journal.close();
+
+		StockMarketService recovered = new StockMarketService();
+		recovered.registerStock(new CommonStock(symbol, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.TEN));
+		journal = TradeJournal.open(this.folder.getRoot().toPath(), DurabilityPolicy.never());
+		try {
+			Assert.assertEquals(writers * JOURNALED_TRADES_PER_WRITER, recovered.recover(journal));
+		} finally {
+			journal.close();
+		}
+		List<TradeRecord> expected = this.service.getStockMap().get(symbol).getTradeRecords();
+		List<TradeRecord> actual = recovered.getStockMap().get(symbol).getTradeRecords();
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals("Trade " + i, expected.get(i).getQuantity(), actual.get(i).getQuantity());
+		}
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getAllVolumeWeightedStockPrices(long...)}
+	 * while stocks are registered, in the default mode.
+	 * <ul>
+	 * <li>get the VWSPs of all the stocks of a service which is not
+	 * concurrent, while another thread registers and unregisters a stock</li>
+	 * <li>verify that no {@link java.util.ConcurrentModificationException} is
+	 * thrown, and that the registered stocks are all read</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetAllVolumeWeightedStockPrices_ConcurrentRegistration() throws Exception {
+		final StockMarketService service = newService(false);
+		runRegistrations(service, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Assert.assertTrue(service.getAllVolumeWeightedStockPrices(60000).size() >= STOCK_COUNT);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getAllRatios()} while stocks are
+	 * registered, in the default mode.
+	 * <ul>
+	 * <li>get the ratios of all the stocks of a service which is not
+	 * concurrent, while another thread registers and unregisters a stock</li>
+	 * <li>verify that no {@link java.util.ConcurrentModificationException} is
+	 * thrown, and that the registered stocks are all read</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetAllRatios_ConcurrentRegistration() throws Exception {
+		final StockMarketService service = newService(false);
+		runRegistrations(service, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Assert.assertTrue(service.getAllRatios().size() >= STOCK_COUNT);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Creates a service with {@link #STOCK_COUNT} stocks.
+	 *
+	 * @param concurrent the mode of the service
+	 * @return the service
+	 */
+	private static StockMarketService newService(boolean concurrent) {
+		StockMarketService service = new StockMarketService(concurrent);
+		for (int i = 0; i < STOCK_COUNT; i++) {
+			service.registerStock(new CommonStock(TestUtils.TEST_COMMON_STOCK + i, BigDecimal.ONE, BigDecimal.ONE,
+					new BigDecimal(100 + i)));
+		}
+		return service;
+	}
+
+	/**
+	 * Runs a reader of the given service while another thread registers and
+	 * unregisters a stock.
+	 *
+	 * @param service the service
+	 * @param reader the reader, run {@link #REGISTRATION_READS} times
+	 */
+	private void runRegistrations(final StockMarketService service, Callable<Void> reader) throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		Future<?> registrations = this.executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				String symbol = TestUtils.TEST_COMMON_STOCK + STOCK_COUNT;
+				while (done.getCount() > 0) {
+					service.registerStock(new CommonStock(symbol, BigDecimal.ONE, BigDecimal.ONE, BigDecimal.TEN));
+					service.unregisterStock(symbol);
+				}
+				return null;
+			}
+		});
+		try {
+			for (int i = 0; i < REGISTRATION_READS; i++) {
+				reader.call();
+			}
+		} finally {
+			done.countDown();
+		}
+		registrations.get();
+	}
+
+	/**
+	 * Runs the given number of writers with a concurrent reader and price
+	 * updater.
+	 *
+	 * @param writers the number of writer threads
+	 */
+	private void runWriters(int writers) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final long now = new Date().getTime();
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int w = 0; w < writers; w++) {
+			final int seed = w;
+			results.add(this.executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					Random random = new Random(seed);
+					start.await();
+					for (int i = 0; i < TRADES_PER_WRITER; i++) {
+						service.recordTrade(TestUtils.TEST_COMMON_STOCK + random.nextInt(STOCK_COUNT),
+								new Date(now - random.nextInt(60000)), BigInteger.valueOf(1 + random.nextInt(1000)),
+								BuyOrSell.BUY, BigDecimal.valueOf(1 + random.nextInt(5000)));
+					}
+					return null;
+				}
+			}));
+		}
+		final CountDownLatch done = new CountDownLatch(writers);
+		Future<?> background = this.executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Random random = new Random();
+				start.await();
+				while (done.getCount() > 0) {
+					String symbol = TestUtils.TEST_COMMON_STOCK + random.nextInt(STOCK_COUNT);
+					service.getVolumeWeightedStockPrice(symbol);
+					service.getStockMap().get(symbol).setPrice(BigDecimal.valueOf(1 + random.nextInt(5000)));
+					Assert.assertTrue(service.getGBCEAllShareIndex().signum() > 0);
+				}
+				return null;
+			}
+		});
+		start.countDown();
+		for (Future<?> result : results) {
+			result.get();
+			done.countDown();
+		}
+		background.get();
+	}
+
+	/**
+	 * Calculates the VWSP of a stock by scanning all its trades.
+	 *
+	 * @param stock the stock to calculate
+	 * @return the VWSP with scale 0
+	 */
+	private static BigDecimal scanVolumeWeightedStockPrice(BaseStock stock) {
+		BigDecimal priceSum = BigDecimal.ZERO;
+		BigDecimal quantitySum = BigDecimal.ZERO;
+		for (int i = 0; i < stock.getTradeRecords().size(); i++) {
+			BigDecimal quantity = new BigDecimal(stock.getTradeRecords().get(i).getQuantity());
+			priceSum = priceSum.add(stock.getTradeRecords().get(i).getPrice().multiply(quantity));
+			quantitySum = quantitySum.add(quantity);
+		}
+		return priceSum.divide(quantitySum, 7, BigDecimal.ROUND_FLOOR).setScale(0, BigDecimal.ROUND_HALF_EVEN);
+	}
+
+}
@@ -1,19 +1,44 @@
 package exercise.stock.market.service;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import exercise.stock.market.clock.EventTimeClock;
+import exercise.stock.market.clock.ManualClock;
+import exercise.stock.market.event.BackpressurePolicy;
+import exercise.stock.market.event.TradeEvent;
+import exercise.stock.market.event.TradeEventBus;
+import exercise.stock.market.event.TradeEventListener;
+import exercise.stock.market.index.IndexCalculationMode;
+import exercise.stock.market.journal.DurabilityPolicy;
+import exercise.stock.market.journal.TradeJournal;
 import exercise.stock.market.model.BaseStock;
 import exercise.stock.market.model.BuyOrSell;
 import exercise.stock.market.model.CommonStock;
+import exercise.stock.market.model.OrderFlow;
 import exercise.stock.market.model.PreferredStock;
+import exercise.stock.market.model.StockRatios;
 import exercise.stock.market.model.TradeRecord;
+import exercise.stock.market.numeric.NumericBackend;
 import exercise.stock.market.service.StockMarketService;
+import exercise.stock.market.store.Candle;
+import exercise.stock.market.store.RetentionPolicy;
+import exercise.stock.market.store.TradeStorage;
 import exercise.stock.market.test.TestUtils;
 import exercises.stock.exceptions.BusinessException;
 import exercises.stock.exceptions.InvalidValueException;;
@@ -26,15 +51,27 @@ import exercises.stock.exceptions.InvalidValueException;;
  */
 public class StockMarketServiceTest {
 
+	/** The time the tests run at, 2017-07-14 02:40:00 UTC. */
+	private static final long NOW = 1500000000000L;
+
 	/** The {@link StockMarketService} under tests. */
 	private StockMarketService service;
 
+	/** The clock of the service under tests, set at {@link #NOW}. */
+	private ManualClock clock;
+
+	/** The directory of the journals. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	/**
 	 * Runs before every test.
 	 */
 	@Before
 	public void setUp() {
 		this.service = new StockMarketService();
+		this.clock = new ManualClock(NOW);
+		this.service.setClock(this.clock);
 	}
 
 	/**
@@ -220,7 +257,7 @@ public class StockMarketServiceTest {
 	public void testRecordTrade() {
 		CommonStock stock = TestUtils.getDefaultCommonStock();
 		this.service.registerStock(stock);
-		Date timestamp = new Date();
+		Date timestamp = new Date(NOW);
 		BigInteger quantity = new BigInteger("1000");
 		BigDecimal price = new BigDecimal(1250);
 		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, timestamp, quantity, BuyOrSell.BUY, price);
@@ -248,7 +285,7 @@ public class StockMarketServiceTest {
 		this.service.registerStock(stock);
 		BigInteger quantity = new BigInteger("1000");
 		BigDecimal price = new BigDecimal(-1);
-		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(), quantity, BuyOrSell.BUY, price);
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(NOW), quantity, BuyOrSell.BUY, price);
 	}
 
 	/**
@@ -267,7 +304,41 @@ public class StockMarketServiceTest {
 		this.service.registerStock(stock);
 		BigInteger quantity = BigInteger.ZERO;
 		BigDecimal price = new BigDecimal(100);
-		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(), quantity, BuyOrSell.BUY, price);
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(NOW), quantity, BuyOrSell.BUY, price);
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#recordTrade(String, Date, BigInteger,
+	 * BuyOrSell, BigDecimal) with a price beyond the price scale.
+	 * <ul>
+	 * <li>record a trade at 1.0000001, with the default price scale of 6</li>
+	 * <li>verify that an {@link InvalidValueException} is thrown and no trade
+	 * is recorded</li>
+	 * <li>record a trade at 1.00000010000 after setting the price scale to 7,
+	 * and one at 2.000000000 with trailing zeros beyond it</li>
+	 * <li>verify that both are recorded with their values</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecordTrade_PriceScale() {
+		CommonStock stock = TestUtils.getDefaultCommonStock();
+		this.service.registerStock(stock);
+		BigInteger quantity = new BigInteger("1000");
+		try {
+			this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(NOW), quantity, BuyOrSell.BUY,
+					new BigDecimal("1.0000001"));
+			Assert.fail("A price with 7 decimal places was recorded with scale 6");
+		} catch (InvalidValueException e) {
+			Assert.assertTrue(stock.getTradeRecords().isEmpty());
+		}
+
+		stock.getTradeStore().setPriceScale(7);
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(NOW), quantity, BuyOrSell.BUY,
+				new BigDecimal("1.00000010000"));
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(NOW), quantity, BuyOrSell.BUY,
+				new BigDecimal("2.000000000"));
+		Assert.assertEquals(0, new BigDecimal("1.0000001").compareTo(stock.getTradeRecords().get(0).getPrice()));
+		Assert.assertEquals(0, new BigDecimal(2).compareTo(stock.getTradeRecords().get(1).getPrice()));
 	}
 
 	/**
@@ -293,7 +364,7 @@ public class StockMarketServiceTest {
 		PreferredStock preferredStock = TestUtils.getDefaultPreferredStock();
 		this.service.registerStock(commonStock);
 		this.service.registerStock(preferredStock);
-		long startTime = new Date().getTime();
+		long startTime = NOW;
 		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 3 * 1000 * 60),
 				new BigInteger("123456"), BuyOrSell.BUY, new BigDecimal(1235));
 		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 12 * 1000 * 60),
@@ -318,12 +389,350 @@ public class StockMarketServiceTest {
 	public void testVolumWeightedStockPrice_NoTrade() {
 		CommonStock commonStock = TestUtils.getDefaultCommonStock();
 		this.service.registerStock(commonStock);
-		long startTime = new Date().getTime();
+		long startTime = NOW;
 		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 20 * 1000 * 60),
 				new BigInteger("2400"), BuyOrSell.BUY, new BigDecimal(1187));
 		Assert.assertEquals(new BigDecimal(0), this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK));
 	}
 
+	/**
+	 * Tests for {@link StockMarketService#getVolumeWeightedStockPrice(String).
+	 * <ul>
+	 * <li>record trades, call the method under test, then record more trades
+	 * in and out of the window</li>
+	 * <li>verify that the result follows the trades recorded between the
+	 * calls</li>
+	 * </ul>
+	 */
+	@Test
+	public void testVolumWeightedStockPrice_Incremental() {
+		CommonStock commonStock = TestUtils.getDefaultCommonStock();
+		this.service.registerStock(commonStock);
+		long startTime = NOW;
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 3 * 1000 * 60),
+				new BigInteger("100"), BuyOrSell.BUY, new BigDecimal(1000));
+		Assert.assertEquals(new BigDecimal(1000),
+				this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK));
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 1000 * 60), new BigInteger("300"),
+				BuyOrSell.SELL, new BigDecimal(2000));
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 30 * 1000 * 60),
+				new BigInteger("500"), BuyOrSell.BUY, new BigDecimal(9000));
+		Assert.assertEquals(new BigDecimal(1750),
+				this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK));
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#recordTrades(Collection)} with an
+	 * invalid trade.
+	 * <ul>
+	 * <li>record a batch whose third trade has a zero quantity</li>
+	 * <li>verify that an {@link InvalidValueException} was caught and that no
+	 * trade was recorded</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecordTrades_AllOrNothing() {
+		CommonStock commonStock = TestUtils.getDefaultCommonStock();
+		this.service.registerStock(commonStock);
+		Date now = new Date(NOW);
+		List<TradeRecord> trades = Arrays.asList(
+				new TradeRecord(TestUtils.TEST_COMMON_STOCK, now, BigInteger.TEN, BuyOrSell.BUY, BigDecimal.TEN),
+				new TradeRecord(TestUtils.TEST_COMMON_STOCK, now, BigInteger.ONE, BuyOrSell.SELL, BigDecimal.ONE),
+				new TradeRecord(TestUtils.TEST_COMMON_STOCK, now, BigInteger.ZERO, BuyOrSell.BUY, BigDecimal.TEN));
+		try {
+			this.service.recordTrades(trades);
+			Assert.fail();
+		} catch (InvalidValueException e) {
+			Assert.assertTrue(e.getMessage().startsWith("Trade 2:"));
+		}
+		Assert.assertTrue(commonStock.getTradeRecords().isEmpty());
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#recordTrades(TradeBatch,
+	 * BatchFailurePolicy)} skipping the invalid trades.
+	 * <ul>
+	 * <li>record a batch over two stocks with an unknown stock, a price
+	 * beyond the scale of the store and a negative price</li>
+	 * <li>verify that the valid trades are recorded per stock in the order of
+	 * the batch, and that the invalid ones are reported</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecordTrades_SkipInvalid() {
+		CommonStock commonStock = TestUtils.getDefaultCommonStock();
+		PreferredStock preferredStock = TestUtils.getDefaultPreferredStock();
+		this.service.registerStock(commonStock);
+		this.service.registerStock(preferredStock);
+		long now = NOW;
+		TradeBatch batch = new TradeBatch(2);
+		batch.add(TestUtils.TEST_COMMON_STOCK, now, 100, BuyOrSell.BUY, 1000, 0);
+		batch.add(TestUtils.TEST_PREFERRED_STOCK, now, 5, BuyOrSell.SELL, 25, 1);
+		batch.add("unknown", now, 5, BuyOrSell.SELL, 25, 1);
+		batch.add(TestUtils.TEST_COMMON_STOCK, now, 1, BuyOrSell.BUY, 1, 7);
+		batch.add(TestUtils.TEST_COMMON_STOCK, now - 1000, 300, BuyOrSell.SELL, 2000, 0);
+		batch.add(TestUtils.TEST_PREFERRED_STOCK, now, 5, BuyOrSell.SELL, -25, 1);
+
+		BatchResult result = this.service.recordTrades(batch, BatchFailurePolicy.SKIP_INVALID);
+		Assert.assertEquals(3, result.getRecordedCount());
+		Assert.assertEquals(3, result.getRejectedCount());
+		Assert.assertEquals(2, result.getRejectedIndex(0));
+		Assert.assertTrue(result.getError(0) instanceof BusinessException);
+		Assert.assertEquals(3, result.getRejectedIndex(1));
+		Assert.assertTrue(result.getError(1) instanceof InvalidValueException);
+		Assert.assertEquals(5, result.getRejectedIndex(2));
+		Assert.assertEquals(2, commonStock.getTradeRecords().size());
+		Assert.assertEquals(new BigDecimal(1750),
+				this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK));
+		Assert.assertEquals(0, new BigDecimal("2.5").compareTo(preferredStock.getTradeRecords().get(0).getPrice()));
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#recordTrades(TradeBatch,
+	 * BatchFailurePolicy)} with unknown stock ids.
+	 * <ul>
+	 * <li>record batches holding a trade of a registered stock and trades of
+	 * ids beyond the registered ones, up to {@link Integer#MAX_VALUE}, with
+	 * both failure policies</li>
+	 * <li>verify that the unknown ids are reported as unknown stocks, and
+	 * that the trade of the registered stock is recorded by
+	 * {@link BatchFailurePolicy#SKIP_INVALID} only</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecordTrades_UnknownStockId() {
+		CommonStock commonStock = TestUtils.getDefaultCommonStock();
+		this.service.registerStock(commonStock);
+		int stockId = this.service.getStockId(TestUtils.TEST_COMMON_STOCK);
+		int[] unknownIds = { 1000000, Integer.MAX_VALUE };
+		for (int unknownId : unknownIds) {
+			TradeBatch batch = new TradeBatch();
+			batch.add(stockId, NOW, 100, BuyOrSell.BUY, 1000, 0);
+			batch.add(unknownId, NOW, 5, BuyOrSell.SELL, 25, 1);
+			try {
+				this.service.recordTrades(batch, BatchFailurePolicy.ALL_OR_NOTHING);
+				Assert.fail("A trade of the stock id " + unknownId + " was recorded");
+			} catch (BusinessException e) {
+				Assert.assertTrue(e.getMessage().startsWith("Trade 1: cannot find the stock with id " + unknownId));
+			}
+			Assert.assertEquals(0, commonStock.getTradeRecords().size());
+		}
+
+		TradeBatch batch = new TradeBatch();
+		batch.add(Integer.MAX_VALUE, NOW, 5, BuyOrSell.SELL, 25, 1);
+		batch.add(stockId, NOW, 100, BuyOrSell.BUY, 1000, 0);
+		batch.add(1000000, NOW, 5, BuyOrSell.SELL, 25, 1);
+		BatchResult result = this.service.recordTrades(batch, BatchFailurePolicy.SKIP_INVALID);
+		Assert.assertEquals(1, result.getRecordedCount());
+		Assert.assertEquals(2, result.getRejectedCount());
+		Assert.assertEquals(0, result.getRejectedIndex(0));
+		Assert.assertTrue(result.getError(0) instanceof BusinessException);
+		Assert.assertEquals(2, result.getRejectedIndex(1));
+		Assert.assertTrue(result.getError(1) instanceof BusinessException);
+		Assert.assertEquals(1, commonStock.getTradeRecords().size());
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#recordTrades(Collection)} and
+	 * {@link StockMarketService#recordTrade(String, Date, BigInteger, BuyOrSell, BigDecimal)}
+	 * with the same prices.
+	 * <ul>
+	 * <li>record prices with trailing zeros beyond scale 18, and prices with
+	 * more decimal places than the price scale of the store, one by one and in
+	 * batches</li>
+	 * <li>verify that both paths accept and reject the same prices</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecordTrades_SameValidationAsRecordTrade() {
+		CommonStock stock = TestUtils.getDefaultCommonStock();
+		this.service.registerStock(stock);
+		Date now = new Date(NOW);
+		String[] prices = { "1.0000000000000000000", "1.00000000000000000000000000000", "2.5000000000000000000000",
+				"1.0000001", "1.0000000000000000001", "1E+2", "0E-20" };
+		for (String price : prices) {
+			boolean single = true;
+			try {
+				this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, now, BigInteger.TEN, BuyOrSell.BUY,
+						new BigDecimal(price));
+			} catch (InvalidValueException e) {
+				single = false;
+			}
+			BatchResult result = this.service.recordTrades(Arrays.asList(new TradeRecord(
+					TestUtils.TEST_COMMON_STOCK, now, BigInteger.TEN, BuyOrSell.BUY, new BigDecimal(price))),
+					BatchFailurePolicy.SKIP_INVALID);
+			Assert.assertEquals(price, single, result.getRecordedCount() == 1);
+		}
+		Assert.assertEquals(8, stock.getTradeRecords().size());
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getStockId(String)} and the methods
+	 * taking a stock id.
+	 * <ul>
+	 * <li>register two stocks, record trades by id one by one and in a batch
+	 * mixing ids and symbols</li>
+	 * <li>unregister a stock and register it again</li>
+	 * <li>verify that the ids are dense and stable, and that the queries by id
+	 * return what the queries by symbol return</li>
+	 * </ul>
+	 */
+	@Test
+	public void testStockId() {
+		CommonStock commonStock = TestUtils.getDefaultCommonStock();
+		PreferredStock preferredStock = TestUtils.getDefaultPreferredStock();
+		this.service.registerStock(commonStock);
+		this.service.registerStock(preferredStock);
+		int commonId = this.service.getStockId(TestUtils.TEST_COMMON_STOCK);
+		int preferredId = this.service.getStockId(TestUtils.TEST_PREFERRED_STOCK);
+		Assert.assertEquals(0, commonId);
+		Assert.assertEquals(1, preferredId);
+		Assert.assertEquals(TestUtils.TEST_PREFERRED_STOCK, this.service.getStockSymbol(preferredId));
+
+		this.service.recordTrade(commonId, NOW, 100, BuyOrSell.BUY, 1000, 0);
+		TradeBatch batch = new TradeBatch();
+		batch.add(commonId, NOW - 1000, 300, BuyOrSell.SELL, 2000, 0);
+		batch.add(TestUtils.TEST_PREFERRED_STOCK, NOW, 5, BuyOrSell.SELL, 25, 1);
+		batch.add(preferredId, NOW, 15, BuyOrSell.BUY, 45, 1);
+		batch.add(7, NOW, 1, BuyOrSell.BUY, 1, 0);
+		BatchResult result = this.service.recordTrades(batch, BatchFailurePolicy.SKIP_INVALID);
+		Assert.assertEquals(3, result.getRecordedCount());
+		Assert.assertEquals(3, result.getRejectedIndex(0));
+		Assert.assertTrue(result.getError(0).getMessage().contains("with id 7"));
+
+		Assert.assertEquals(new BigDecimal(1750), this.service.getVolumeWeightedStockPrice(commonId));
+		Assert.assertEquals(this.service.getVolumeWeightedStockPrice(TestUtils.TEST_PREFERRED_STOCK),
+				this.service.getVolumeWeightedStockPrice(preferredId));
+		Assert.assertArrayEquals(this.service.getVolumeWeightedStockPrices(TestUtils.TEST_COMMON_STOCK, 60000L),
+				this.service.getVolumeWeightedStockPrices(commonId, 60000L));
+		Assert.assertEquals(this.service.getDividendYield(TestUtils.TEST_COMMON_STOCK, new BigDecimal(130)),
+				this.service.getDividendYield(commonId, new BigDecimal(130)));
+		Assert.assertEquals(this.service.getRatios(TestUtils.TEST_COMMON_STOCK), this.service.getRatios(commonId));
+		QueryResult query = new QueryResult();
+		Assert.assertEquals(QueryStatus.OK, this.service.tryGetVolumeWeightedStockPrice(commonId, query));
+		Assert.assertEquals(new BigDecimal(1750), query.getValue());
+		Assert.assertEquals(QueryStatus.ZERO_DIVIDEND,
+				this.service.tryGetPERatio(commonId, new BigDecimal(100), query));
+
+		this.service.unregisterStock(TestUtils.TEST_COMMON_STOCK);
+		Assert.assertEquals(QueryStatus.UNKNOWN_STOCK, this.service.tryGetVolumeWeightedStockPrice(commonId, query));
+		Assert.assertEquals(QueryStatus.UNKNOWN_STOCK,
+				this.service.tryGetDividendYield(commonId, new BigDecimal(130), query));
+		this.service.registerStock(commonStock);
+		Assert.assertEquals(commonId, this.service.getStockId(TestUtils.TEST_COMMON_STOCK));
+		Assert.assertEquals(new BigDecimal(1750), this.service.getVolumeWeightedStockPrice(commonId));
+	}
+
+	/**
+	 * Tests for
+	 * {@link StockMarketService#recordTrade(String, long, long, BuyOrSell, long, int)}
+	 * and {@link StockMarketService#recordTrade(int, long, long, BuyOrSell, long, int)}
+	 * in steady state.
+	 * <ul>
+	 * <li>record trades into a store keeping 1000 trades until it is full,
+	 * then record more by symbol and by id</li>
+	 * <li>verify that recording the later trades, once the code is warmed up,
+	 * allocates less than 1 KiB on the heap in total, far less than the 40000
+	 * trades would allocate with an object each</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecordTrade_NoGarbage() {
+		Assume.assumeTrue(TestUtils.getAllocatedBytes() >= 0);
+		CommonStock stock = TestUtils.getDefaultCommonStock();
+		stock.setRetentionPolicy(RetentionPolicy.maxRecords(1000));
+		this.service.registerStock(stock);
+		int stockId = this.service.getStockId(TestUtils.TEST_COMMON_STOCK);
+		this.service.getVolumeWeightedStockPrice(stockId);
+		for (int i = 0; i < 20000; i++) {
+			recordTrades(stockId, i);
+		}
+		long overhead = -TestUtils.getAllocatedBytes() + TestUtils.getAllocatedBytes();
+		long before = TestUtils.getAllocatedBytes();
+		for (int i = 20000; i < 40000; i++) {
+			recordTrades(stockId, i);
+		}
+		long allocated = TestUtils.getAllocatedBytes() - before - overhead;
+		Assert.assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+		Assert.assertEquals(1000, stock.getTradeRecords().size());
+	}
+
+	/**
+	 * Records a trade by symbol and a trade by id.
+	 *
+	 * @param stockId the id of the default common stock
+	 * @param i the number of the trades
+	 */
+	private void recordTrades(int stockId, int i) {
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, NOW + i, 100, BuyOrSell.BUY, 1000 + i % 7, 0);
+		this.service.recordTrade(stockId, NOW + i, 100, BuyOrSell.SELL, 1000 + i % 5, 0);
+	}
+
+	/**
+	 * Tests for
+	 * {@link StockMarketService#recordTrade(int, long, long, BuyOrSell, long, int)}
+	 * with an unknown id.
+	 * <ul>
+	 * <li>record a trade with an id never given</li>
+	 * <li>verify that a {@link BusinessException} was caught</li>
+	 * </ul>
+	 */
+	@Test(expected = BusinessException.class)
+	public void testRecordTrade_UnknownId() {
+		this.service.registerStock(TestUtils.getDefaultCommonStock());
+		this.service.recordTrade(1, NOW, 100, BuyOrSell.BUY, 1000, 0);
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#recover(TradeJournal)}.
+	 * <ul>
+	 * <li>record trades with a journal, then recover them into a new service
+	 * with the same stock registered</li>
+	 * <li>verify that the trade records and the VWSP are rebuilt</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecover() throws IOException {
+		this.service.registerStock(TestUtils.getDefaultCommonStock());
+		TradeJournal journal = TradeJournal.open(this.folder.getRoot().toPath(), DurabilityPolicy.never());
+		this.service.setJournal(journal);
+		long startTime = NOW;
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 1000), new BigInteger("100"),
+				BuyOrSell.BUY, new BigDecimal("1000.5"));
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, startTime - 2000, 300, BuyOrSell.SELL, 2000, 0);
+		journal.close();
+
+		StockMarketService recovered = new StockMarketService();
+		recovered.setClock(new EventTimeClock());
+		recovered.registerStock(TestUtils.getDefaultCommonStock());
+		journal = TradeJournal.open(this.folder.getRoot().toPath(), DurabilityPolicy.never());
+		try {
+			Assert.assertEquals(2, recovered.recover(journal));
+		} finally {
+			journal.close();
+		}
+		Assert.assertEquals(this.service.getStockMap().get(TestUtils.TEST_COMMON_STOCK).getTradeRecords(),
+				recovered.getStockMap().get(TestUtils.TEST_COMMON_STOCK).getTradeRecords());
+		Assert.assertEquals(new BigDecimal(1750), recovered.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK));
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getVolumeWeightedStockPrice(String)
+	 * with a trade record having a non-positive price.
+	 * <ul>
+	 * <li>add a trade record with price == 0 to the stock directly</li>
+	 * <li>verify that an {@link InvalidValueException} was caught</li>
+	 * </ul>
+	 */
+	@Test(expected = InvalidValueException.class)
+	public void testVolumWeightedStockPrice_InvalidPrice() {
+		CommonStock commonStock = TestUtils.getDefaultCommonStock();
+		this.service.registerStock(commonStock);
+		commonStock.addTradeRecord(new TradeRecord(TestUtils.TEST_COMMON_STOCK, new Date(NOW), BigInteger.TEN,
+				BuyOrSell.BUY, BigDecimal.ZERO));
+		this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK);
+	}
+
 	/**
 	 * Tests for {@link StockMarketService#getGBCEAllShareIndex().
 	 * <ul>
@@ -350,6 +759,38 @@ public class StockMarketServiceTest {
 		this.service.registerStock(preferStock1);
 		this.service.registerStock(preferStock2);
 		Assert.assertEquals(new BigDecimal(2972), this.service.getGBCEAllShareIndex());
+		Assert.assertEquals(new BigDecimal(2972), this.service.getGBCEAllShareIndex(IndexCalculationMode.EXACT));
+		Assert.assertEquals(new BigDecimal(2972),
+				this.service.getGBCEAllShareIndex(IndexCalculationMode.LOGARITHMIC));
+		Assert.assertEquals(new BigDecimal(2972), this.service.getGBCEAllShareIndex(IndexCalculationMode.PARALLEL));
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getGBCEAllShareIndex() after a price
+	 * change and an unregistration.
+	 * <ul>
+	 * <li>register 3 stocks, change the price of one and unregister
+	 * another</li>
+	 * <li>verify that the index follows the changes in both calculation
+	 * modes</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGBCEAllShareIndex_PriceChange() {
+		CommonStock commonStock1 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 1, BigDecimal.ZERO, BigDecimal.ZERO,
+				new BigDecimal(100));
+		CommonStock commonStock2 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 2, BigDecimal.ZERO, BigDecimal.ZERO,
+				new BigDecimal(400));
+		CommonStock commonStock3 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 3, BigDecimal.ZERO, BigDecimal.ZERO,
+				BigDecimal.ZERO);
+		this.service.registerStock(commonStock1);
+		this.service.registerStock(commonStock2);
+		this.service.registerStock(commonStock3);
+		this.service.unregisterStock(TestUtils.TEST_COMMON_STOCK + 3);
+		Assert.assertEquals(new BigDecimal(200), this.service.getGBCEAllShareIndex());
+		commonStock2.setPrice(new BigDecimal(900));
+		Assert.assertEquals(new BigDecimal(300), this.service.getGBCEAllShareIndex());
+		Assert.assertEquals(new BigDecimal(300), this.service.getGBCEAllShareIndex(IndexCalculationMode.EXACT));
 	}
 
 	/**
@@ -386,4 +827,812 @@ public class StockMarketServiceTest {
 		Assert.assertEquals(BigDecimal.ZERO, this.service.getGBCEAllShareIndex());
 	}
 
+	/**
+	 * Tests for {@link StockMarketService#defineIndex(String, Collection)} and
+	 * {@link StockMarketService#getIndexValue(String)}.
+	 * <ul>
+	 * <li>register 3 stocks and define two indices sharing a stock</li>
+	 * <li>change the price of the shared stock, then unregister it</li>
+	 * <li>verify that both indices follow the changes in all the calculation
+	 * modes</li>
+	 * </ul>
+	 */
+	@Test
+	public void testIndexValue() {
+		CommonStock commonStock1 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 1, BigDecimal.ZERO, BigDecimal.ZERO,
+				new BigDecimal(100));
+		CommonStock commonStock2 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 2, BigDecimal.ZERO, BigDecimal.ZERO,
+				new BigDecimal(400));
+		CommonStock commonStock3 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 3, BigDecimal.ZERO, BigDecimal.ZERO,
+				new BigDecimal(900));
+		this.service.registerStock(commonStock1);
+		this.service.registerStock(commonStock2);
+		this.service.registerStock(commonStock3);
+		this.service.defineIndex("LOW", Arrays.asList(commonStock1.getSymbol(), commonStock2.getSymbol()));
+		this.service.defineIndex("HIGH", Arrays.asList(commonStock2.getSymbol(), commonStock3.getSymbol()));
+		Assert.assertEquals(2, this.service.getIndexNames().size());
+		Assert.assertEquals(Arrays.asList(commonStock2.getSymbol(), commonStock3.getSymbol()),
+				this.service.getIndexSymbols("HIGH"));
+		Assert.assertEquals(new BigDecimal(200), this.service.getIndexValue("LOW"));
+		Assert.assertEquals(new BigDecimal(600), this.service.getIndexValue("HIGH"));
+
+		commonStock2.setPrice(new BigDecimal(1600));
+		for (IndexCalculationMode mode : IndexCalculationMode.values()) {
+			Assert.assertEquals(new BigDecimal(400), this.service.getIndexValue("LOW", mode));
+			Assert.assertEquals(new BigDecimal(1200), this.service.getIndexValue("HIGH", mode));
+		}
+		Map<String, BigDecimal> values = this.service.getAllIndexValues();
+		Assert.assertEquals(new BigDecimal(400), values.get("LOW"));
+		Assert.assertEquals(new BigDecimal(1200), values.get("HIGH"));
+
+		this.service.unregisterStock(commonStock2.getSymbol());
+		Assert.assertEquals(new BigDecimal(100), this.service.getIndexValue("LOW"));
+		Assert.assertEquals(new BigDecimal(900), this.service.getIndexValue("HIGH"));
+		this.service.addIndexConstituent("LOW", commonStock3.getSymbol());
+		Assert.assertEquals(new BigDecimal(300), this.service.getIndexValue("LOW"));
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getSnapshot()}.
+	 * <ul>
+	 * <li>register three stocks, define an index and record trades, take a
+	 * snapshot, then change a price and record more trades</li>
+	 * <li>verify that the snapshot holds the values of the service when it was
+	 * taken and is not changed afterwards, and that the map of the stocks
+	 * cannot be modified</li>
+	 * </ul>
+	 */
+	@Test
+	public void testSnapshot() {
+		CommonStock commonStock1 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 1, BigDecimal.ZERO, BigDecimal.ZERO,
+				new BigDecimal(100));
+		CommonStock commonStock2 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 2, BigDecimal.ZERO, BigDecimal.ZERO,
+				new BigDecimal(400));
+		CommonStock commonStock3 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 3, BigDecimal.ZERO, BigDecimal.ZERO,
+				new BigDecimal(900));
+		this.service.registerStock(commonStock1);
+		this.service.registerStock(commonStock2);
+		this.service.registerStock(commonStock3);
+		this.service.defineIndex("LOW", Arrays.asList(commonStock1.getSymbol(), commonStock2.getSymbol()));
+		this.service.recordTrade(commonStock1.getSymbol(), NOW - 1000, 10, BuyOrSell.BUY, 120, 0);
+		this.service.recordTrade(commonStock1.getSymbol(), NOW - 500, 30, BuyOrSell.SELL, 80, 0);
+
+		MarketSnapshot snapshot = this.service.getSnapshot();
+		Assert.assertEquals(NOW, snapshot.getTime());
+		Assert.assertEquals(Arrays.asList(commonStock1.getSymbol(), commonStock2.getSymbol(), commonStock3.getSymbol()),
+				new ArrayList<String>(snapshot.getSymbols()));
+		Assert.assertEquals(new BigDecimal(90), snapshot.getVolumeWeightedStockPrices().get(commonStock1.getSymbol()));
+		Assert.assertEquals(BigDecimal.ZERO, snapshot.getVolumeWeightedStockPrices().get(commonStock2.getSymbol()));
+		Assert.assertEquals(this.service.getGBCEAllShareIndex(), snapshot.getGBCEAllShareIndex());
+		Assert.assertEquals(new BigDecimal(330), snapshot.getGBCEAllShareIndex());
+		Assert.assertEquals(new BigDecimal(200), snapshot.getIndexValues().get("LOW"));
+		long version = snapshot.getTradeVersions().get(commonStock1.getSymbol());
+
+		commonStock2.setPrice(BigDecimal.ZERO);
+		this.service.recordTrade(commonStock1.getSymbol(), NOW, 60, BuyOrSell.BUY, 180, 0);
+		Assert.assertEquals(new BigDecimal(400), snapshot.getPrices().get(commonStock2.getSymbol()));
+		Assert.assertEquals(new BigDecimal(330), snapshot.getGBCEAllShareIndex());
+		Assert.assertEquals(version, snapshot.getTradeVersions().get(commonStock1.getSymbol()).longValue());
+
+		MarketSnapshot latest = this.service.getSnapshot();
+		Assert.assertEquals(new BigDecimal(144), latest.getVolumeWeightedStockPrices().get(commonStock1.getSymbol()));
+		Assert.assertTrue(latest.getTradeVersions().get(commonStock1.getSymbol()) > version);
+		Assert.assertNull(latest.getGBCEAllShareIndex());
+		Assert.assertNull(latest.getIndexValues().get("LOW"));
+		try {
+			this.service.getStockMap().remove(commonStock1.getSymbol());
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getMarketSummary()}.
+	 * <ul>
+	 * <li>register more stocks than {@link StockMarketService#SUMMARY_THRESHOLD},
+	 * some with a zero dividend or a zero price, and record trades, one of them
+	 * invalid</li>
+	 * <li>verify that each row holds the statuses and values of the
+	 * {@code tryGet...} queries, and that the index fails inline until all the
+	 * prices are positive</li>
+	 * </ul>
+	 */
+	@Test
+	public void testMarketSummary() {
+		MarketSummary summary = this.service.getMarketSummary();
+		Assert.assertEquals(0, summary.size());
+		Assert.assertEquals(QueryStatus.NO_STOCKS, summary.getGBCEAllShareIndexStatus());
+
+		int stockCount = StockMarketService.SUMMARY_THRESHOLD * 3 + 5;
+		for (int i = 0; i < stockCount; i++) {
+			String symbol = TestUtils.PREFIX_STOCK_SYMBOL + i;
+			this.service.registerStock(new CommonStock(symbol, new BigDecimal(i % 5), new BigDecimal(100),
+					new BigDecimal(i % 50 == 7 ? 0 : 10 + i)));
+			this.service.recordTrade(symbol, NOW - i * 1000, 10 + i, BuyOrSell.BUY, 100 + i, 0);
+		}
+		this.service.getStockMap().get(TestUtils.PREFIX_STOCK_SYMBOL + 3).addTradeRecord(new TradeRecord(
+				TestUtils.PREFIX_STOCK_SYMBOL + 3, new Date(NOW), BigInteger.TEN, BuyOrSell.SELL, BigDecimal.ZERO));
+
+		summary = this.service.getMarketSummary();
+		Assert.assertEquals(stockCount, summary.size());
+		Assert.assertEquals(NOW, summary.getTime());
+		QueryResult expected = new QueryResult();
+		for (int row = 0; row < stockCount; row++) {
+			String symbol = TestUtils.PREFIX_STOCK_SYMBOL + row;
+			Assert.assertEquals(symbol, summary.getSymbol(row));
+			Assert.assertEquals(row, summary.indexOf(symbol));
+			Assert.assertEquals(this.service.getStockId(symbol), summary.getStockId(row));
+			Assert.assertNull(summary.getError(row));
+			BigDecimal price = summary.getPrice(row);
+			Assert.assertEquals(this.service.tryGetDividendYield(symbol, price, expected),
+					summary.getDividendYieldStatus(row));
+			Assert.assertEquals(expected.isOk() ? expected.getValue() : null, summary.getDividendYield(row));
+			Assert.assertEquals(this.service.tryGetPERatio(symbol, price, expected), summary.getPERatioStatus(row));
+			Assert.assertEquals(expected.isOk() ? expected.getValue() : null, summary.getPERatio(row));
+			Assert.assertEquals(this.service.tryGetVolumeWeightedStockPrice(symbol, expected),
+					summary.getVolumeWeightedStockPriceStatus(row));
+			Assert.assertEquals(expected.isOk() ? expected.getValue() : null, summary.getVolumeWeightedStockPrice(row));
+		}
+		Assert.assertEquals(QueryStatus.NON_POSITIVE_PRICE, summary.getDividendYieldStatus(7));
+		Assert.assertEquals(QueryStatus.ZERO_DIVIDEND, summary.getPERatioStatus(5));
+		Assert.assertEquals(QueryStatus.INVALID_TRADE_RECORDS, summary.getVolumeWeightedStockPriceStatus(3));
+		Assert.assertEquals(QueryStatus.INVALID_STOCK_PRICE, summary.getGBCEAllShareIndexStatus());
+		Assert.assertNull(summary.getGBCEAllShareIndex());
+		Assert.assertEquals(-1, summary.indexOf(TestUtils.TEST_COMMON_STOCK));
+
+		for (int i = 7; i < stockCount; i += 50) {
+			this.service.getStockMap().get(TestUtils.PREFIX_STOCK_SYMBOL + i).setPrice(new BigDecimal(17));
+		}
+		summary = this.service.getMarketSummary();
+		Assert.assertEquals(QueryStatus.OK, summary.getGBCEAllShareIndexStatus());
+		Assert.assertEquals(this.service.getGBCEAllShareIndex(), summary.getGBCEAllShareIndex());
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#tryGetIndexValue(String, QueryResult)}
+	 * and {@link StockMarketService#removeIndex(String)}.
+	 * <ul>
+	 * <li>query an unknown index, an empty index and an index with a zero
+	 * price</li>
+	 * <li>remove an index and define it again</li>
+	 * <li>verify the statuses and that a removed index stops following the
+	 * prices</li>
+	 * </ul>
+	 */
+	@Test
+	public void testTryGetIndexValue() {
+		CommonStock commonStock1 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 1, BigDecimal.ZERO, BigDecimal.ZERO,
+				new BigDecimal(100));
+		CommonStock commonStock2 = new CommonStock(TestUtils.TEST_COMMON_STOCK + 2, BigDecimal.ZERO, BigDecimal.ZERO,
+				BigDecimal.ZERO);
+		this.service.registerStock(commonStock1);
+		this.service.registerStock(commonStock2);
+		QueryResult result = new QueryResult();
+		Assert.assertEquals(QueryStatus.UNKNOWN_INDEX, this.service.tryGetIndexValue("NONE", result));
+		Assert.assertNull(result.getValue());
+
+		this.service.defineIndex("BASKET", Arrays.asList(commonStock1.getSymbol()));
+		Assert.assertEquals(QueryStatus.OK, this.service.tryGetIndexValue("BASKET", result));
+		Assert.assertEquals(new BigDecimal(100), result.getValue());
+		this.service.addIndexConstituent("BASKET", commonStock2.getSymbol());
+		for (IndexCalculationMode mode : IndexCalculationMode.values()) {
+			Assert.assertEquals(QueryStatus.INVALID_STOCK_PRICE, this.service.tryGetIndexValue("BASKET", mode, result));
+		}
+		this.service.removeIndexConstituent("BASKET", commonStock1.getSymbol());
+		this.service.removeIndexConstituent("BASKET", commonStock2.getSymbol());
+		for (IndexCalculationMode mode : IndexCalculationMode.values()) {
+			Assert.assertEquals(QueryStatus.NO_STOCKS, this.service.tryGetIndexValue("BASKET", mode, result));
+		}
+		Assert.assertNull(this.service.getAllIndexValues().get("BASKET"));
+
+		this.service.removeIndex("BASKET");
+		Assert.assertTrue(this.service.getIndexNames().isEmpty());
+		this.service.defineIndex("BASKET", Arrays.asList(commonStock1.getSymbol()));
+		Assert.assertEquals(new BigDecimal(100), this.service.getIndexValue("BASKET"));
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#defineIndex(String, Collection)} with
+	 * an unknown stock.
+	 * <ul>
+	 * <li>define an index with a registered and an unregistered stock</li>
+	 * <li>verify that a {@link BusinessException} was caught and no index was
+	 * defined</li>
+	 * </ul>
+	 */
+	@Test
+	public void testDefineIndex_UnknownStock() {
+		this.service.registerStock(TestUtils.getDefaultCommonStock());
+		try {
+			this.service.defineIndex("BASKET", Arrays.asList(TestUtils.TEST_COMMON_STOCK, "NONE"));
+			Assert.fail();
+		} catch (BusinessException e) {
+			Assert.assertTrue(this.service.getIndexNames().isEmpty());
+		}
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getIndexValue(String)} with an
+	 * unknown index.
+	 * <ul>
+	 * <li>call the method under test without defining the index</li>
+	 * <li>verify that a {@link BusinessException} was caught</li>
+	 * </ul>
+	 */
+	@Test(expected = BusinessException.class)
+	public void testIndexValue_UnknownIndex() {
+		this.service.getIndexValue("NONE");
+	}
+
+	/**
+	 * Tests for
+	 * {@link StockMarketService#tryGetDividendYield(String, BigDecimal, QueryResult)}
+	 * and
+	 * {@link StockMarketService#tryGetPERatio(String, BigDecimal, QueryResult)}.
+	 * <ul>
+	 * <li>query an unknown stock, a zero price and a zero dividend</li>
+	 * <li>verify that the failures are reported by status without value</li>
+	 * <li>verify that the values are the ones of the throwing methods</li>
+	 * </ul>
+	 */
+	@Test
+	public void testTryGetDividendYieldAndPERatio() {
+		CommonStock stock = TestUtils.getDefaultCommonStock();
+		this.service.registerStock(stock);
+		stock.setLastDividend(BigDecimal.ZERO);
+		QueryResult result = new QueryResult();
+
+		Assert.assertEquals(QueryStatus.UNKNOWN_STOCK, this.service.tryGetDividendYield("XXX", BigDecimal.TEN, result));
+		Assert.assertNull(result.getValue());
+		Assert.assertEquals(QueryStatus.UNKNOWN_STOCK, this.service.tryGetPERatio(null, BigDecimal.TEN, result));
+		Assert.assertEquals(QueryStatus.NON_POSITIVE_PRICE,
+				this.service.tryGetDividendYield(TestUtils.TEST_COMMON_STOCK, BigDecimal.ZERO, result));
+		Assert.assertEquals(QueryStatus.NON_POSITIVE_PRICE,
+				this.service.tryGetPERatio(TestUtils.TEST_COMMON_STOCK, null, result));
+		Assert.assertEquals(QueryStatus.ZERO_DIVIDEND,
+				this.service.tryGetPERatio(TestUtils.TEST_COMMON_STOCK, BigDecimal.TEN, result));
+		Assert.assertFalse(result.isOk());
+
+		stock.setLastDividend(new BigDecimal(23));
+		Assert.assertEquals(QueryStatus.OK,
+				this.service.tryGetDividendYield(TestUtils.TEST_COMMON_STOCK, new BigDecimal(130), result));
+		Assert.assertEquals(this.service.getDividendYield(TestUtils.TEST_COMMON_STOCK, new BigDecimal(130)),
+				result.getValue());
+		Assert.assertEquals(QueryStatus.OK,
+				this.service.tryGetPERatio(TestUtils.TEST_COMMON_STOCK, new BigDecimal(60), result));
+		Assert.assertEquals(new BigDecimal("2.609"), result.getValue());
+	}
+
+	/**
+	 * Tests for
+	 * {@link StockMarketService#tryGetVolumeWeightedStockPrice(String, QueryResult)}.
+	 * <ul>
+	 * <li>query an unknown stock, then a stock with an invalid trade
+	 * record</li>
+	 * <li>verify that the failures are reported by status</li>
+	 * <li>verify that the value is the one of the throwing method once the
+	 * trades are valid</li>
+	 * </ul>
+	 */
+	@Test
+	public void testTryGetVolumeWeightedStockPrice() {
+		CommonStock stock = TestUtils.getDefaultCommonStock();
+		this.service.registerStock(stock);
+		QueryResult result = new QueryResult();
+		Assert.assertEquals(QueryStatus.UNKNOWN_STOCK, this.service.tryGetVolumeWeightedStockPrice("XXX", result));
+		Assert.assertEquals(QueryStatus.OK,
+				this.service.tryGetVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK, result));
+		Assert.assertEquals(BigDecimal.ZERO, result.getValue());
+
+		Date now = new Date(NOW);
+		stock.addTradeRecord(new TradeRecord(TestUtils.TEST_COMMON_STOCK, now, BigInteger.TEN, BuyOrSell.BUY,
+				BigDecimal.ZERO));
+		Assert.assertEquals(QueryStatus.INVALID_TRADE_RECORDS,
+				this.service.tryGetVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK, result));
+		try {
+			this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK);
+			Assert.fail();
+		} catch (InvalidValueException e) {
+			Assert.assertEquals(0, e.getStackTrace().length);
+		}
+
+		stock.getTradeStore().clear();
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, now, BigInteger.TEN, BuyOrSell.BUY, new BigDecimal(12));
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, now, BigInteger.ONE, BuyOrSell.SELL, new BigDecimal(23));
+		Assert.assertEquals(QueryStatus.OK,
+				this.service.tryGetVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK, result));
+		Assert.assertEquals(this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK), result.getValue());
+	}
+
+	/**
+	 * Tests for
+	 * {@link StockMarketService#tryGetVolumeWeightedStockPrice(String, QueryResult)}
+	 * failing repeatedly.
+	 * <ul>
+	 * <li>add an invalid trade record, then query the VWSP until the code is
+	 * compiled, then 20000 more times</li>
+	 * <li>verify that the later queries fail with
+	 * {@link QueryStatus#INVALID_TRADE_RECORDS} and allocate less than 1 KB in
+	 * total, i.e. nothing per query</li>
+	 * </ul>
+	 */
+	@Test
+	public void testTryGetVolumeWeightedStockPrice_NoGarbage() {
+		Assume.assumeTrue(TestUtils.getAllocatedBytes() >= 0);
+		CommonStock stock = TestUtils.getDefaultCommonStock();
+		this.service.registerStock(stock);
+		stock.addTradeRecord(new TradeRecord(TestUtils.TEST_COMMON_STOCK, new Date(NOW), BigInteger.TEN,
+				BuyOrSell.BUY, BigDecimal.ZERO));
+		QueryResult result = new QueryResult();
+		for (int i = 0; i < 20000; i++) {
+			this.service.tryGetVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK, result);
+		}
+		long overhead = -TestUtils.getAllocatedBytes() + TestUtils.getAllocatedBytes();
+		long before = TestUtils.getAllocatedBytes();
+		QueryStatus status = null;
+		for (int i = 0; i < 20000; i++) {
+			status = this.service.tryGetVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK, result);
+		}
+		long allocated = TestUtils.getAllocatedBytes() - before - overhead;
+		Assert.assertEquals(QueryStatus.INVALID_TRADE_RECORDS, status);
+		Assert.assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#tryGetGBCEAllShareIndex(QueryResult)}.
+	 * <ul>
+	 * <li>query the index without stock, then with a zero price</li>
+	 * <li>verify that the failures are reported by status</li>
+	 * <li>verify that the value is the one of the throwing method in both
+	 * calculation modes</li>
+	 * </ul>
+	 */
+	@Test
+	public void testTryGetGBCEAllShareIndex() {
+		QueryResult result = new QueryResult();
+		Assert.assertEquals(QueryStatus.NO_STOCKS, this.service.tryGetGBCEAllShareIndex(result));
+
+		CommonStock commonStock = TestUtils.getDefaultCommonStock();
+		PreferredStock preferredStock = TestUtils.getDefaultPreferredStock();
+		this.service.registerStock(commonStock);
+		this.service.registerStock(preferredStock);
+		commonStock.setPrice(BigDecimal.ZERO);
+		preferredStock.setPrice(new BigDecimal(200));
+		Assert.assertEquals(QueryStatus.INVALID_STOCK_PRICE, this.service.tryGetGBCEAllShareIndex(result));
+		Assert.assertEquals(QueryStatus.INVALID_STOCK_PRICE,
+				this.service.tryGetGBCEAllShareIndex(IndexCalculationMode.EXACT, result));
+		Assert.assertEquals(QueryStatus.INVALID_STOCK_PRICE,
+				this.service.tryGetGBCEAllShareIndex(IndexCalculationMode.PARALLEL, result));
+
+		commonStock.setPrice(new BigDecimal(50));
+		Assert.assertEquals(QueryStatus.OK, this.service.tryGetGBCEAllShareIndex(result));
+		Assert.assertEquals(new BigDecimal(100), result.getValue());
+		Assert.assertEquals(QueryStatus.OK, this.service.tryGetGBCEAllShareIndex(IndexCalculationMode.EXACT, result));
+		Assert.assertEquals(this.service.getGBCEAllShareIndex(IndexCalculationMode.EXACT), result.getValue());
+		Assert.assertEquals(QueryStatus.OK,
+				this.service.tryGetGBCEAllShareIndex(IndexCalculationMode.PARALLEL, result));
+		Assert.assertEquals(new BigDecimal(100), result.getValue());
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getRatios(String)}.
+	 * <ul>
+	 * <li>read the ratios of a stock twice</li>
+	 * <li>verify that the cached ratios are returned</li>
+	 * <li>change the price, the last dividend, the par value and the fixed
+	 * dividend in turn</li>
+	 * <li>verify that each change is reflected in the ratios</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetRatios() {
+		PreferredStock stock = TestUtils.getDefaultPreferredStock();
+		this.service.registerStock(stock);
+		stock.setPrice(new BigDecimal(130));
+		stock.setLastDividend(new BigDecimal(8));
+		stock.setFixedDividend(new BigDecimal("0.02"));
+		stock.setParValue(new BigDecimal(100));
+
+		StockRatios ratios = this.service.getRatios(TestUtils.TEST_PREFERRED_STOCK);
+		Assert.assertEquals(new BigDecimal("0.015"), ratios.getDividendYield());
+		Assert.assertEquals(new BigDecimal("16.250"), ratios.getPERatio());
+		Assert.assertSame(ratios, this.service.getRatios(TestUtils.TEST_PREFERRED_STOCK));
+		stock.setPrice(new BigDecimal("130.00"));
+		Assert.assertSame(ratios, this.service.getRatios(TestUtils.TEST_PREFERRED_STOCK));
+
+		stock.setPrice(new BigDecimal(60));
+		Assert.assertEquals(new BigDecimal("0.033"), this.service.getRatios(TestUtils.TEST_PREFERRED_STOCK)
+				.getDividendYield());
+		Assert.assertEquals(new BigDecimal("7.500"), this.service.getPERatio(TestUtils.TEST_PREFERRED_STOCK,
+				new BigDecimal(60)));
+		stock.setLastDividend(new BigDecimal(12));
+		Assert.assertEquals(new BigDecimal("5.000"), this.service.getRatios(TestUtils.TEST_PREFERRED_STOCK)
+				.getPERatio());
+		stock.setParValue(new BigDecimal(200));
+		Assert.assertEquals(new BigDecimal("0.067"), this.service.getDividendYield(TestUtils.TEST_PREFERRED_STOCK,
+				new BigDecimal(60)));
+		stock.setFixedDividend(new BigDecimal("0.03"));
+		Assert.assertEquals(new BigDecimal("0.100"), this.service.getRatios(TestUtils.TEST_PREFERRED_STOCK)
+				.getDividendYield());
+		Assert.assertEquals(new BigDecimal("0.200"), this.service.getDividendYield(TestUtils.TEST_PREFERRED_STOCK,
+				new BigDecimal(30)));
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getAllRatios()}.
+	 * <ul>
+	 * <li>register a stock with a zero price and one with a zero dividend</li>
+	 * <li>verify that the ratios which cannot be calculated are null</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetAllRatios() {
+		CommonStock commonStock = TestUtils.getDefaultCommonStock();
+		PreferredStock preferredStock = TestUtils.getDefaultPreferredStock();
+		this.service.registerStock(commonStock);
+		this.service.registerStock(preferredStock);
+		preferredStock.setPrice(new BigDecimal(100));
+
+		Map<String, StockRatios> ratios = this.service.getAllRatios();
+		Assert.assertEquals(2, ratios.size());
+		Assert.assertNull(ratios.get(TestUtils.TEST_COMMON_STOCK).getDividendYield());
+		Assert.assertNull(ratios.get(TestUtils.TEST_COMMON_STOCK).getPERatio());
+		Assert.assertEquals(new BigDecimal("0.000"), ratios.get(TestUtils.TEST_PREFERRED_STOCK).getDividendYield());
+		Assert.assertNull(ratios.get(TestUtils.TEST_PREFERRED_STOCK).getPERatio());
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getDividendYield(String, BigDecimal)}
+	 * for a subclass of {@link BaseStock} unknown to the service.
+	 * <ul>
+	 * <li>register a stock overriding
+	 * {@link BaseStock#getDividendPerShare()}</li>
+	 * <li>verify that the yield is calculated from the overridden
+	 * dividend</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetDividendYield_OtherStock() {
+		BaseStock stock = new BaseStock("ETF", new BigDecimal(5), BigDecimal.ONE, new BigDecimal(100)) {
+
+			@Override
+			public BigDecimal getDividendPerShare() {
+				return getLastDividend().multiply(new BigDecimal(4));
+			}
+		};
+		this.service.registerStock(stock);
+		Assert.assertEquals(new BigDecimal("0.200"), this.service.getDividendYield("ETF", new BigDecimal(100)));
+		Assert.assertEquals(new BigDecimal("0.400"), this.service.getDividendYield("ETF", new BigDecimal(50)));
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#setEventBus(TradeEventBus)}.
+	 * <ul>
+	 * <li>subscribe a listener to a bus, then record trades one by one and in
+	 * a batch</li>
+	 * <li>verify that the listener receives the recorded trades with the
+	 * price at the scale of the store</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRecordTrade_EventBus() {
+		this.service.registerStock(TestUtils.getDefaultCommonStock());
+		TradeEventBus bus = new TradeEventBus(16, BackpressurePolicy.BLOCK);
+		final List<String> received = new ArrayList<String>();
+		bus.subscribe(new TradeEventListener() {
+
+			@Override
+			public void tradePublished(TradeEvent event, long sequence, boolean endOfBatch) {
+				received.add(event.getSymbol() + " " + event.getQuantity() + " "
+						+ BigDecimal.valueOf(event.getPrice(), event.getPriceScale()).stripTrailingZeros()
+								.toPlainString());
+			}
+		});
+		this.service.setEventBus(bus);
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(NOW), BigInteger.TEN, BuyOrSell.BUY,
+				new BigDecimal("12.5"));
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, 1000L, 20, BuyOrSell.SELL, 130, 1);
+		this.service.recordTrades(Arrays.asList(new TradeRecord(TestUtils.TEST_COMMON_STOCK, new Date(NOW),
+				BigInteger.ONE, BuyOrSell.BUY, new BigDecimal(14))));
+		bus.close();
+		Assert.assertEquals(Arrays.asList(TestUtils.TEST_COMMON_STOCK + " 10 12.5",
+				TestUtils.TEST_COMMON_STOCK + " 20 13", TestUtils.TEST_COMMON_STOCK + " 1 14"), received);
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#recordTrades(TradeBatch, BatchFailurePolicy)}
+	 * with a blocking event bus whose listener queries the stock.
+	 * <ul>
+	 * <li>record a batch of 100 trades of one stock, published to a bus of 4
+	 * slots with {@link BackpressurePolicy#BLOCK}, whose listener gets the
+	 * VWSP of the stock for each trade</li>
+	 * <li>verify that the batch is recorded without deadlock, and that the
+	 * listener receives every trade</li>
+	 * </ul>
+	 */
+	@Test(timeout = 10000)
+	public void testRecordTrades_BlockingEventBus() {
+		this.service.registerStock(TestUtils.getDefaultCommonStock());
+		TradeEventBus bus = new TradeEventBus(4, BackpressurePolicy.BLOCK);
+		final List<BigDecimal> received = new ArrayList<BigDecimal>();
+		bus.subscribe(new TradeEventListener() {
+
+			@Override
+			public void tradePublished(TradeEvent event, long sequence, boolean endOfBatch) {
+				received.add(service.getVolumeWeightedStockPrice(event.getSymbol()));
+			}
+		});
+		this.service.setEventBus(bus);
+		TradeBatch batch = new TradeBatch();
+		for (int i = 0; i < 100; i++) {
+			batch.add(TestUtils.TEST_COMMON_STOCK, NOW - i, 10, BuyOrSell.BUY, 100 + i, 0);
+		}
+		Assert.assertEquals(100, this.service.recordTrades(batch, BatchFailurePolicy.ALL_OR_NOTHING)
+				.getRecordedCount());
+		bus.close();
+		Assert.assertEquals(100, received.size());
+		Assert.assertEquals(this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK),
+				received.get(99));
+	}
+
+	/**
+	 * Tests for
+	 * {@link StockMarketService#getVolumeWeightedStockPrices(String, long...)}
+	 * and {@link StockMarketService#getAllVolumeWeightedStockPrices(long...)}.
+	 * <ul>
+	 * <li>record trades 3, 12 and 16 minutes ago, and an invalid trade 40
+	 * minutes ago for another stock</li>
+	 * <li>verify the VWSP over 1, 5, 15 and 60 minutes, the 15 minutes one
+	 * being the one of
+	 * {@link StockMarketService#getVolumeWeightedStockPrice(String)}</li>
+	 * </ul>
+	 */
+	@Test
+	public void testVolumeWeightedStockPrices() {
+		CommonStock commonStock = TestUtils.getDefaultCommonStock();
+		PreferredStock preferredStock = TestUtils.getDefaultPreferredStock();
+		this.service.registerStock(commonStock);
+		this.service.registerStock(preferredStock);
+		this.service.setTimeBuckets(60 * 1000L, 30 * 60 * 1000L);
+		long startTime = NOW;
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 3 * 1000 * 60),
+				new BigInteger("123456"), BuyOrSell.BUY, new BigDecimal(1235));
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 12 * 1000 * 60),
+				new BigInteger("7890"), BuyOrSell.SELL, new BigDecimal(1021));
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, new Date(startTime - 16 * 1000 * 60),
+				new BigInteger("2400"), BuyOrSell.BUY, new BigDecimal(1000));
+		preferredStock.addTradeRecord(new TradeRecord(TestUtils.TEST_PREFERRED_STOCK,
+				new Date(startTime - 40 * 1000 * 60), BigInteger.TEN, BuyOrSell.BUY, BigDecimal.ZERO));
+
+		long minute = 60 * 1000L;
+		BigDecimal[] prices = this.service.getVolumeWeightedStockPrices(TestUtils.TEST_COMMON_STOCK, minute,
+				5 * minute, 15 * minute, 60 * minute);
+		Assert.assertArrayEquals(new BigDecimal[] { BigDecimal.ZERO, new BigDecimal(1235), new BigDecimal(1222),
+				new BigDecimal(1218) }, prices);
+		Assert.assertEquals(this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK), prices[2]);
+
+		Map<String, BigDecimal[]> all = this.service.getAllVolumeWeightedStockPrices(60 * minute, 15 * minute);
+		Assert.assertEquals(new BigDecimal(1218), all.get(TestUtils.TEST_COMMON_STOCK)[0]);
+		Assert.assertNull(all.get(TestUtils.TEST_PREFERRED_STOCK)[0]);
+		Assert.assertEquals(BigDecimal.ZERO, all.get(TestUtils.TEST_PREFERRED_STOCK)[1]);
+		try {
+			this.service.getVolumeWeightedStockPrices(TestUtils.TEST_PREFERRED_STOCK, 60 * minute);
+			Assert.fail();
+		} catch (InvalidValueException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#getOrderFlow(String)} and
+	 * {@link StockMarketService#getOrderFlow(int, long)}.
+	 * <ul>
+	 * <li>record buy trades, sell trades and a trade without indicator within
+	 * 15 minutes, and a sell trade 20 minutes ago</li>
+	 * <li>verify the volumes, prices and imbalance of each side over 15 and 30
+	 * minutes</li>
+	 * </ul>
+	 */
+	@Test
+	public void testOrderFlow() {
+		this.service.registerStock(TestUtils.getDefaultCommonStock());
+		String symbol = TestUtils.TEST_COMMON_STOCK;
+		long minute = 60 * 1000L;
+		this.service.recordTrade(symbol, NOW - 20 * minute, 1000, BuyOrSell.SELL, 9, 0);
+		this.service.recordTrade(symbol, NOW - 5 * minute, 300, BuyOrSell.BUY, 12, 0);
+		this.service.recordTrade(symbol, NOW - 3 * minute, 100, BuyOrSell.BUY, 10, 0);
+		this.service.recordTrade(symbol, NOW - 2 * minute, 50, null, 20, 0);
+		this.service.recordTrade(symbol, NOW - minute, 200, BuyOrSell.SELL, 11, 0);
+
+		OrderFlow flow = this.service.getOrderFlow(symbol);
+		Assert.assertEquals(2, flow.getBuyTradeCount());
+		Assert.assertEquals(1, flow.getSellTradeCount());
+		Assert.assertEquals(400, flow.getBuyVolume());
+		Assert.assertEquals(200, flow.getSellVolume());
+		Assert.assertEquals(new BigDecimal(12), flow.getBuyVolumeWeightedPrice());
+		Assert.assertEquals(new BigDecimal(11), flow.getSellVolumeWeightedPrice());
+		Assert.assertEquals(new BigDecimal("0.3333333"), flow.getImbalance());
+
+		flow = this.service.getOrderFlow(this.service.getStockId(symbol), 30 * minute);
+		Assert.assertEquals(1200, flow.getSellVolume());
+		Assert.assertEquals(new BigDecimal(9), flow.getSellVolumeWeightedPrice());
+		Assert.assertEquals(new BigDecimal("-0.5000000"), flow.getImbalance());
+
+		this.clock.setTime(NOW + 60 * minute);
+		flow = this.service.getOrderFlow(symbol);
+		Assert.assertEquals(0, flow.getBuyVolume());
+		Assert.assertEquals(BigDecimal.ZERO, flow.getBuyVolumeWeightedPrice());
+		Assert.assertEquals(BigDecimal.ZERO, flow.getImbalance());
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#addCandles(long, int)} and
+	 * {@link StockMarketService#getCandles(String, long, long, long)}.
+	 * <ul>
+	 * <li>add candles of 1 minute, register a stock afterwards and record
+	 * trades over 2 minutes</li>
+	 * <li>verify the candles by symbol and by id, and that candles of a length
+	 * not added get BusinessException</li>
+	 * </ul>
+	 */
+	@Test
+	public void testCandles() {
+		this.service.registerStock(TestUtils.getDefaultCommonStock());
+		long minute = 60 * 1000L;
+		this.service.addCandles(minute, 10);
+		this.service.registerStock(TestUtils.getDefaultPreferredStock());
+		long start = NOW - NOW % minute;
+		this.service.recordTrade(TestUtils.TEST_PREFERRED_STOCK, start + 10, 100, BuyOrSell.BUY, 1050, 1);
+		this.service.recordTrade(TestUtils.TEST_PREFERRED_STOCK, start + 20, 50, BuyOrSell.SELL, 98, 0);
+		this.service.recordTrade(TestUtils.TEST_PREFERRED_STOCK, start + minute, 10, BuyOrSell.BUY, 101, 0);
+
+		List<Candle> candles = this.service.getCandles(TestUtils.TEST_PREFERRED_STOCK, minute, start,
+				start + 2 * minute);
+		Assert.assertEquals(2, candles.size());
+		Assert.assertEquals(new Candle(start, minute, new BigDecimal(105), new BigDecimal(105), new BigDecimal(98),
+				new BigDecimal(98), 150, 2), candles.get(0));
+		Assert.assertEquals(candles.subList(1, 2), this.service.getCandles(
+				this.service.getStockId(TestUtils.TEST_PREFERRED_STOCK), minute, start + minute, start + 2 * minute));
+		Assert.assertTrue(this.service.getCandles(TestUtils.TEST_COMMON_STOCK, minute, 0, Long.MAX_VALUE).isEmpty());
+		try {
+			this.service.getCandles(TestUtils.TEST_PREFERRED_STOCK, 1000L, start, start + minute);
+			Assert.fail();
+		} catch (BusinessException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#addCandles(long, int)} with another
+	 * bar count, and for the candles after
+	 * {@link BaseStock#setTradeStorage(TradeStorage)}.
+	 * <ul>
+	 * <li>add candles of 1 minute, record trades over 3 minutes with a store
+	 * keeping only the last trade, add the candles again with 2 bars and move
+	 * the trades off-heap</li>
+	 * <li>verify that the last 2 bars are kept although their trades were
+	 * evicted, and that the next trade is in the candles</li>
+	 * </ul>
+	 */
+	@Test
+	public void testCandles_OtherBarCount() {
+		this.service.registerStock(TestUtils.getDefaultCommonStock());
+		BaseStock stock = this.service.getStockMap().get(TestUtils.TEST_COMMON_STOCK);
+		stock.setRetentionPolicy(RetentionPolicy.maxRecords(1));
+		long minute = 60 * 1000L;
+		this.service.addCandles(minute, 10);
+		long start = NOW - NOW % minute - 3 * minute;
+		for (int i = 0; i < 3; i++) {
+			this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, start + i * minute, 10, BuyOrSell.BUY, 100 + i, 0);
+		}
+
+		this.service.addCandles(minute, 2);
+		stock.setTradeStorage(TradeStorage.OFF_HEAP);
+		List<Candle> candles = this.service.getCandles(TestUtils.TEST_COMMON_STOCK, minute, start, NOW);
+		Assert.assertEquals(2, candles.size());
+		Assert.assertEquals(start + minute, candles.get(0).getStartTime());
+		Assert.assertEquals(new BigDecimal(102), candles.get(1).getClose());
+
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, start + 3 * minute, 10, BuyOrSell.BUY, 103, 0);
+		candles = this.service.getCandles(TestUtils.TEST_COMMON_STOCK, minute, start, NOW + minute);
+		Assert.assertEquals(2, candles.size());
+		Assert.assertEquals(new BigDecimal(103), candles.get(1).getClose());
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#setClock(exercise.stock.market.clock.MarketClock)}
+	 * with an {@link EventTimeClock}.
+	 * <ul>
+	 * <li>replay trades of a day long ago, one by one and in a batch, with a
+	 * late trade</li>
+	 * <li>verify that the windows of the VWSP end at the latest trade, whatever
+	 * the wall clock</li>
+	 * </ul>
+	 */
+	@Test
+	public void testVolumeWeightedStockPrice_EventTime() {
+		this.service.registerStock(TestUtils.getDefaultCommonStock());
+		EventTimeClock eventTime = new EventTimeClock();
+		this.service.setClock(eventTime);
+		long minute = 60 * 1000L;
+		long open = 8 * 60 * minute;
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, open, 100, BuyOrSell.BUY, 1000, 0);
+		this.service.recordTrade(TestUtils.TEST_COMMON_STOCK, open + 10 * minute, 300, BuyOrSell.SELL, 2000, 0);
+		Assert.assertEquals(open + 10 * minute, eventTime.currentTimeMillis());
+		Assert.assertEquals(new BigDecimal(1750), this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK));
+
+		TradeBatch batch = new TradeBatch(2);
+		batch.add(TestUtils.TEST_COMMON_STOCK, open + 20 * minute, 100, BuyOrSell.BUY, 3000, 0);
+		batch.add(TestUtils.TEST_COMMON_STOCK, open + 2 * minute, 100, BuyOrSell.BUY, 500, 0);
+		this.service.recordTrades(batch, BatchFailurePolicy.ALL_OR_NOTHING);
+		Assert.assertEquals(open + 20 * minute, eventTime.currentTimeMillis());
+		Assert.assertEquals(new BigDecimal(2250), this.service.getVolumeWeightedStockPrice(TestUtils.TEST_COMMON_STOCK));
+		Assert.assertArrayEquals(new BigDecimal[] { new BigDecimal(3000), new BigDecimal(1750) },
+				this.service.getVolumeWeightedStockPrices(TestUtils.TEST_COMMON_STOCK, 5 * minute, 60 * minute));
+	}
+
+	/**
+	 * Tests for {@link StockMarketService#StockMarketService(boolean, NumericBackend)}
+	 * comparing the backends.
+	 * <ul>
+	 * <li>register the stocks of the README in a service of each backend, and
+	 * record the same random trades with prices of various scales</li>
+	 * <li>verify that the dividend yields, P/E ratios, volume weighted stock
+	 * prices and order flows of both services are equal, scale included</li>
+	 * </ul>
+	 */
+	@Test
+	public void testNumericBackends() {
+		StockMarketService fixedPoint = new StockMarketService(false, NumericBackend.FIXED_POINT);
+		fixedPoint.setClock(this.clock);
+		Assert.assertEquals(NumericBackend.BIG_DECIMAL, this.service.getNumericBackend());
+		Assert.assertEquals(NumericBackend.FIXED_POINT, fixedPoint.getNumericBackend());
+		String[] symbols = { "TEA", "POP", "ALE", "GIN", "JOE" };
+		for (StockMarketService market : Arrays.asList(this.service, fixedPoint)) {
+			market.registerStock(new CommonStock("TEA", BigDecimal.ZERO, new BigDecimal(100), new BigDecimal(95)));
+			market.registerStock(new CommonStock("POP", new BigDecimal(8), new BigDecimal(100), new BigDecimal(112)));
+			market.registerStock(new CommonStock("ALE", new BigDecimal(23), new BigDecimal(60), new BigDecimal(58)));
+			market.registerStock(new PreferredStock("GIN", new BigDecimal(8), new BigDecimal(100),
+					new BigDecimal(101), new BigDecimal("0.02")));
+			market.registerStock(new CommonStock("JOE", new BigDecimal(13), new BigDecimal(250), new BigDecimal(247)));
+		}
+
+		Random random = new Random(25);
+		long minute = 60 * 1000L;
+		for (int i = 0; i < 2000; i++) {
+			String symbol = symbols[random.nextInt(symbols.length)];
+			long timestamp = NOW - random.nextInt(20) * minute;
+			long quantity = 1 + random.nextInt(10000);
+			BuyOrSell indicator = BuyOrSell.values()[random.nextInt(2)];
+			int priceScale = random.nextInt(7);
+			long price = 1 + random.nextInt(100000000);
+			this.service.recordTrade(symbol, timestamp, quantity, indicator, price, priceScale);
+			fixedPoint.recordTrade(symbol, timestamp, quantity, indicator, price, priceScale);
+
+			BigDecimal queryPrice = BigDecimal.valueOf(price, priceScale);
+			Assert.assertEquals(this.service.getDividendYield(symbol, queryPrice),
+					fixedPoint.getDividendYield(symbol, queryPrice));
+			if (!"TEA".equals(symbol)) {
+				Assert.assertEquals(this.service.getPERatio(symbol, queryPrice),
+						fixedPoint.getPERatio(symbol, queryPrice));
+			}
+		}
+		for (String symbol : symbols) {
+			Assert.assertEquals(this.service.getRatios(symbol).getDividendYield(),
+					fixedPoint.getRatios(symbol).getDividendYield());
+			Assert.assertEquals(this.service.getVolumeWeightedStockPrice(symbol),
+					fixedPoint.getVolumeWeightedStockPrice(symbol));
+			Assert.assertArrayEquals(this.service.getVolumeWeightedStockPrices(symbol, minute, 5 * minute, 60 * minute),
+					fixedPoint.getVolumeWeightedStockPrices(symbol, minute, 5 * minute, 60 * minute));
+			OrderFlow expected = this.service.getOrderFlow(symbol);
+			OrderFlow flow = fixedPoint.getOrderFlow(symbol);
+			Assert.assertEquals(expected.getBuyVolumeWeightedPrice(), flow.getBuyVolumeWeightedPrice());
+			Assert.assertEquals(expected.getSellVolumeWeightedPrice(), flow.getSellVolumeWeightedPrice());
+			Assert.assertEquals(expected.getImbalance(), flow.getImbalance());
+		}
+		Assert.assertEquals(new BigDecimal("0.020"), fixedPoint.getDividendYield("GIN", new BigDecimal(100)));
+		Assert.assertEquals(new BigDecimal("8.600"), fixedPoint.getPERatio("POP", new BigDecimal("68.8")));
+	}
+
 }
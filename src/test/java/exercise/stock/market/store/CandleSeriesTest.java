@@ -0,0 +1,235 @@
+package exercise.stock.market.store;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.test.TestUtils;
+
+/**
+ * A test class for {@link CandleSeries}.
+ *
+ * @author DMONEY
+ *
+ */
+public class CandleSeriesTest {
+
+	/**
+	 * Tests for {@link CandleSeries#getCandles(long, long)}.
+	 * <ul>
+	 * <li>add trades to bars of 10, one of them late, one invalid and one
+	 * leaving a bar empty</li>
+	 * <li>verify the open, high, low, close, volume and count of each bar, and
+	 * that the empty bar is omitted</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetCandles() {
+		TradeStore store = new TradeStore(TestUtils.TEST_COMMON_STOCK, RetentionPolicy.unbounded(), 2);
+		CandleSeries series = store.getCandleSeries(10, 5);
+		store.add(1, 10, BuyOrSell.BUY, 200);
+		store.add(4, 20, BuyOrSell.SELL, 350);
+		store.add(6, 30, BuyOrSell.BUY, 150);
+		store.add(3, 5, BuyOrSell.BUY, 400);
+		store.add(0, 5, BuyOrSell.BUY, 0);
+		store.add(31, 40, BuyOrSell.SELL, 500);
+
+		List<Candle> candles = series.getCandles(0, 40);
+		Assert.assertEquals(2, candles.size());
+		Assert.assertEquals(new Candle(0, 10, new BigDecimal("2"), new BigDecimal("4"), new BigDecimal("1.5"),
+				new BigDecimal("1.5"), 65, 4), candles.get(0));
+		Assert.assertEquals(new Candle(30, 10, new BigDecimal("5"), new BigDecimal("5"), new BigDecimal("5"),
+				new BigDecimal("5"), 40, 1), candles.get(1));
+
+		// a late trade older than the first trade of its bar opens it
+		store.add(0, 1, BuyOrSell.BUY, 100);
+		Assert.assertEquals(new BigDecimal("1"), series.getCandles(0, 10).get(0).getOpen());
+		Assert.assertEquals(30, series.getCandles(35, 36).get(0).getStartTime());
+		Assert.assertTrue(series.getCandles(10, 30).isEmpty());
+		Assert.assertTrue(series.getCandles(40, 0).isEmpty());
+	}
+
+	/**
+	 * Tests for the bound of the ring of a {@link CandleSeries}.
+	 * <ul>
+	 * <li>add trades to 6 bars of a series of 3 bars, with a store keeping
+	 * only the last trade</li>
+	 * <li>verify that the last 3 bars are kept although their trades were
+	 * evicted, and that a trade older than the ring is ignored</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetCandles_Ring() {
+		TradeStore store = new TradeStore(TestUtils.TEST_COMMON_STOCK, RetentionPolicy.maxRecords(1), 0);
+		CandleSeries series = store.getCandleSeries(100, 3);
+		for (int i = 0; i < 6; i++) {
+			store.add(i * 100 + 50, 1, BuyOrSell.BUY, i + 1);
+		}
+		store.add(150, 1, BuyOrSell.BUY, 99);
+
+		List<Candle> candles = series.getCandles(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2);
+		Assert.assertEquals(3, candles.size());
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals((i + 3) * 100, candles.get(i).getStartTime());
+			Assert.assertEquals(new BigDecimal(i + 4), candles.get(i).getClose());
+			Assert.assertEquals(1, candles.get(i).getTradeCount());
+		}
+	}
+
+	/**
+	 * Tests for {@link CandleSeries#getCandles(long, long)} against the
+	 * trades in each bar.
+	 * <ul>
+	 * <li>add random trades, some late and some invalid, for several bar
+	 * lengths</li>
+	 * <li>verify every 100 trades that the bars of the ring hold the trades in
+	 * their interval</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetCandles_AgainstTrades() {
+		for (long interval : new long[] { 1, 7, 50 }) {
+			Random random = new Random(interval);
+			TradeStore store = new TradeStore(TestUtils.TEST_COMMON_STOCK, RetentionPolicy.unbounded(), 2);
+			CandleSeries series = store.getCandleSeries(interval, 20);
+			long time = 0;
+			for (int n = 1; n <= 1000; n++) {
+				time += random.nextInt(5);
+				long timestamp = random.nextInt(10) == 0 ? time - random.nextInt(100) : time;
+				long price = random.nextInt(50) == 0 ? 0 : 1 + random.nextInt(100000);
+				store.add(timestamp, 1 + random.nextInt(1000), BuyOrSell.BUY, price);
+				if (n % 100 == 0) {
+					long latestBar = Math.floorDiv(store.getTimestamp(store.size() - 1), interval);
+					for (Candle candle : series.getCandles(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2)) {
+						Assert.assertTrue(Math.floorDiv(candle.getStartTime(), interval) > latestBar - 20);
+						Assert.assertEquals(expectedCandle(store, candle.getStartTime(), interval), candle);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests for the candles after {@link TradeStore#setPriceScale(int)}.
+	 * <ul>
+	 * <li>add a trade at scale 2 and change the scale to 4</li>
+	 * <li>verify that the candle keeps its prices</li>
+	 * </ul>
+	 */
+	@Test
+	public void testSetPriceScale() {
+		TradeStore store = new TradeStore(TestUtils.TEST_COMMON_STOCK, RetentionPolicy.unbounded(), 2);
+		CandleSeries series = store.getCandleSeries(10, 2);
+		store.add(1, 10, BuyOrSell.BUY, 125);
+		store.setPriceScale(4);
+		store.add(2, 10, BuyOrSell.BUY, 20000);
+
+		Candle candle = series.getCandles(0, 10).get(0);
+		Assert.assertEquals(0, new BigDecimal("1.25").compareTo(candle.getOpen()));
+		Assert.assertEquals(0, new BigDecimal("2").compareTo(candle.getClose()));
+	}
+
+	/**
+	 * Tests for {@link TradeStore#getCandleSeries(long, int)} with another bar
+	 * count for an interval.
+	 * <ul>
+	 * <li>add trades to 4 bars of a series of 4 bars, with a store keeping only
+	 * the last trade, and get the series of the interval with 2 then 6 bars</li>
+	 * <li>verify that the new series keeps the latest bars, that the replaced
+	 * series no longer receives the trades, and that the same bar count gets
+	 * the same series</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetCandleSeries_OtherBarCount() {
+		TradeStore store = new TradeStore(TestUtils.TEST_COMMON_STOCK, RetentionPolicy.maxRecords(1), 0);
+		CandleSeries series = store.getCandleSeries(100, 4);
+		for (int i = 0; i < 4; i++) {
+			store.add(i * 100 + 50, 1, BuyOrSell.BUY, i + 1);
+		}
+
+		CandleSeries shorter = store.getCandleSeries(100, 2);
+		Assert.assertEquals(2, shorter.getBarCount());
+		Assert.assertSame(shorter, store.getCandleSeries(100, 2));
+		Assert.assertEquals(series.getCandles(200, 400), shorter.getCandles(0, 400));
+
+		CandleSeries longer = store.getCandleSeries(100, 6);
+		store.add(450, 1, BuyOrSell.BUY, 5);
+		List<Candle> candles = longer.getCandles(0, 500);
+		Assert.assertEquals(3, candles.size());
+		Assert.assertEquals(200, candles.get(0).getStartTime());
+		Assert.assertEquals(new BigDecimal(5), candles.get(2).getClose());
+		Assert.assertTrue(series.getCandles(400, 500).isEmpty());
+		Assert.assertTrue(shorter.getCandles(400, 500).isEmpty());
+	}
+
+	/**
+	 * Tests for the candles of {@link TradeStore#copy(TradeStorage)} and
+	 * {@link TradeStore#withRecords(java.util.Collection)}.
+	 * <ul>
+	 * <li>add trades to 3 bars, with a store keeping only the last trade, and
+	 * copy the store off-heap</li>
+	 * <li>verify that the copy has the bars of the evicted trades and goes on
+	 * with the next trades, and that a store with other records has the series
+	 * of the interval, rebuilt from these records</li>
+	 * </ul>
+	 */
+	@Test
+	public void testCopy() {
+		TradeStore store = new TradeStore(TestUtils.TEST_COMMON_STOCK, RetentionPolicy.maxRecords(1), 0);
+		CandleSeries series = store.getCandleSeries(100, 5);
+		for (int i = 0; i < 3; i++) {
+			store.add(i * 100 + 50, 1, BuyOrSell.BUY, i + 1);
+		}
+
+		TradeStore copy = store.copy(TradeStorage.OFF_HEAP);
+		CandleSeries copied = copy.getCandleSeries(100, 5);
+		Assert.assertNotSame(series, copied);
+		Assert.assertEquals(series.getCandles(0, 300), copied.getCandles(0, 300));
+		copy.add(350, 1, BuyOrSell.BUY, 4);
+		Assert.assertEquals(4, copied.getCandles(0, 400).size());
+		Assert.assertTrue(series.getCandles(300, 400).isEmpty());
+
+		TradeStore other = store.withRecords(copy.getTradeRecordsSince(0));
+		List<Candle> candles = other.getCandleSeries(100, 5).getCandles(0, 400);
+		Assert.assertEquals(1, candles.size());
+		Assert.assertEquals(300, candles.get(0).getStartTime());
+	}
+
+	/**
+	 * Builds the candle of the valid trades of a store in a bar.
+	 *
+	 * @param store the store
+	 * @param startTime the start of the bar
+	 * @param interval the length of the bar
+	 * @return the {@link Candle}
+	 */
+	private static Candle expectedCandle(TradeStore store, long startTime, long interval) {
+		long open = 0;
+		long high = Long.MIN_VALUE;
+		long low = Long.MAX_VALUE;
+		long close = 0;
+		long volume = 0;
+		int count = 0;
+		for (int i = store.indexAtOrAfter(startTime); i < store.indexAtOrAfter(startTime + interval); i++) {
+			long price = store.getPrice(i);
+			if (price > 0) {
+				if (count == 0) {
+					open = price;
+				}
+				close = price;
+				high = Math.max(high, price);
+				low = Math.min(low, price);
+				volume += store.getQuantity(i);
+				count++;
+			}
+		}
+		return new Candle(startTime, interval, BigDecimal.valueOf(open, 2), BigDecimal.valueOf(high, 2),
+				BigDecimal.valueOf(low, 2), BigDecimal.valueOf(close, 2), volume, count);
+	}
+
+}
@@ -0,0 +1,127 @@
+package exercise.stock.market.store;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import exercise.stock.market.test.TestUtils;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A test class for {@link OffHeapTradeColumns}.
+ *
+ * @author DMONEY
+ *
+ */
+public class OffHeapTradeColumnsTest {
+
+	/**
+	 * Tests for {@link OffHeapTradeColumns} against {@link HeapTradeColumns}.
+	 * <ul>
+	 * <li>insert rows at random indexes, mostly at the end, and remove the
+	 * oldest rows, with chunks of 8 rows</li>
+	 * <li>verify that both columns hold the same rows</li>
+	 * </ul>
+	 */
+	@Test
+	public void testAgainstHeapColumns() {
+		Random random = new Random(42);
+		OffHeapTradeColumns offHeap = new OffHeapTradeColumns(8);
+		HeapTradeColumns heap = new HeapTradeColumns();
+		for (int i = 0; i < 5000; i++) {
+			int size = heap.size();
+			int index = random.nextInt(4) == 0 ? random.nextInt(size + 1) : size;
+			long value = random.nextLong();
+			byte side = (byte) random.nextInt(2);
+			offHeap.insert(index, value, value + 1, value + 2, side);
+			heap.insert(index, value, value + 1, value + 2, side);
+			if (random.nextInt(5) == 0) {
+				int count = random.nextInt(heap.size() + 1);
+				offHeap.removeFirst(count);
+				heap.removeFirst(count);
+			}
+			Assert.assertEquals(heap.size(), offHeap.size());
+		}
+		for (int i = 0; i < heap.size(); i++) {
+			Assert.assertEquals(heap.getTimestamp(i), offHeap.getTimestamp(i));
+			Assert.assertEquals(heap.getQuantity(i), offHeap.getQuantity(i));
+			Assert.assertEquals(heap.getPrice(i), offHeap.getPrice(i));
+			Assert.assertEquals(heap.getSide(i), offHeap.getSide(i));
+		}
+	}
+
+	/**
+	 * Tests for {@link OffHeapTradeColumns#removeFirst(int)}.
+	 * <ul>
+	 * <li>append 100 rows with chunks of 16 rows, then remove 40 and 60
+	 * rows</li>
+	 * <li>verify that the chunks of the removed rows are released</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRemoveFirst_ReleasesChunks() {
+		OffHeapTradeColumns columns = new OffHeapTradeColumns(16);
+		for (int i = 0; i < 100; i++) {
+			columns.insert(i, i, 1, 1, (byte) 0);
+		}
+		Assert.assertEquals(7 * 16 * OffHeapTradeColumns.ROW_BYTES, columns.getAllocatedBytes());
+		columns.removeFirst(40);
+		Assert.assertEquals(5 * 16 * OffHeapTradeColumns.ROW_BYTES, columns.getAllocatedBytes());
+		Assert.assertEquals(40, columns.getTimestamp(0));
+		columns.removeFirst(60);
+		Assert.assertEquals(0, columns.getAllocatedBytes());
+		columns.insert(0, 7, 1, 1, (byte) 0);
+		Assert.assertEquals(7, columns.getTimestamp(0));
+	}
+
+	/**
+	 * Tests for {@link OffHeapTradeColumns#insert(int, long, long, long, byte)}
+	 * with the oldest rows removed.
+	 * <ul>
+	 * <li>keep 40 rows in chunks of 16 rows, inserting a row and removing the
+	 * oldest one</li>
+	 * <li>verify that the released chunks are reused once the code is warmed
+	 * up, allocating less than 1 KiB on the heap in total, far less than the
+	 * buffers of the 1250 chunks filled, and that the rows are kept</li>
+	 * </ul>
+	 */
+	@Test
+	public void testInsert_ReusesReleasedChunks() {
+		Assume.assumeTrue(TestUtils.getAllocatedBytes() >= 0);
+		OffHeapTradeColumns columns = new OffHeapTradeColumns(16);
+		for (int i = 0; i < 40; i++) {
+			columns.insert(i, i, 1, 1, (byte) 0);
+		}
+		for (int i = 40; i < 20000; i++) {
+			columns.insert(40, i, 1, 1, (byte) 0);
+			columns.removeFirst(1);
+		}
+		long overhead = -TestUtils.getAllocatedBytes() + TestUtils.getAllocatedBytes();
+		long before = TestUtils.getAllocatedBytes();
+		for (int i = 20000; i < 40000; i++) {
+			columns.insert(40, i, 1, 1, (byte) 0);
+			columns.removeFirst(1);
+		}
+		long allocated = TestUtils.getAllocatedBytes() - before - overhead;
+		Assert.assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+		Assert.assertEquals(40, columns.size());
+		Assert.assertEquals(39960, columns.getTimestamp(0));
+		Assert.assertEquals(39999, columns.getTimestamp(39));
+	}
+
+	/**
+	 * Tests for {@link OffHeapTradeColumns#OffHeapTradeColumns(int)} with a
+	 * chunk size which is not a power of two.
+	 * <ul>
+	 * <li>create columns with chunks of 100 rows</li>
+	 * <li>verify that an {@link InvalidValueException} is thrown</li>
+	 * </ul>
+	 */
+	@Test(expected = InvalidValueException.class)
+	public void testConstructor_InvalidChunkRows() {
+		new OffHeapTradeColumns(100);
+	}
+
+}
@@ -0,0 +1,188 @@
+package exercise.stock.market.store;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.model.TradeRecord;
+import exercise.stock.market.test.TestUtils;
+
+/**
+ * A test class for {@link RollingWindow}.
+ *
+ * @author DMONEY
+ *
+ */
+public class RollingWindowTest {
+
+	/** The length of the window under test. */
+	private static final long LENGTH = 100;
+
+	/** The {@link TradeStore} holding the trades. */
+	private TradeStore store;
+
+	/** The {@link RollingWindow} under test. */
+	private RollingWindow window;
+
+	/**
+	 * Runs before every test.
+	 */
+	@Before
+	public void setUp() {
+		this.store = new TradeStore(TestUtils.TEST_COMMON_STOCK);
+		this.window = this.store.getWindow(LENGTH);
+	}
+
+	/**
+	 * Tests for {@link RollingWindow#advanceTo(long)}.
+	 * <ul>
+	 * <li>add trades at 0, 80 and 150</li>
+	 * <li>advance the window to 160, then back to 140</li>
+	 * <li>verify that the totals only contain the trades in the window</li>
+	 * </ul>
+	 */
+	@Test
+	public void testAdvanceTo() {
+		this.store.add(newRecord(0, 10, "2"));
+		this.store.add(newRecord(80, 20, "3"));
+		this.store.add(newRecord(150, 30, "4"));
+		this.window.advanceTo(160);
+		Assert.assertEquals(2, this.window.getTradeCount());
+		Assert.assertEquals(50, this.window.getQuantitySum());
+		Assert.assertEquals(0, new BigDecimal(180).compareTo(this.window.getPriceQuantitySum()));
+		this.window.advanceTo(140);
+		Assert.assertEquals(2, this.window.getTradeCount());
+		this.window.advanceTo(100);
+		Assert.assertEquals(3, this.window.getTradeCount());
+	}
+
+	/**
+	 * Tests for {@link RollingWindow} with trades added before the window.
+	 * <ul>
+	 * <li>advance the window to 1000 and add a trade at 500</li>
+	 * <li>verify that the trade is not counted, and that it is counted once
+	 * the window moves back over it</li>
+	 * </ul>
+	 */
+	@Test
+	public void testLateTrade() {
+		this.store.add(newRecord(950, 1, "1"));
+		this.window.advanceTo(1000);
+		this.store.add(newRecord(500, 1, "1"));
+		Assert.assertEquals(1, this.window.getTradeCount());
+		this.window.advanceTo(600);
+		Assert.assertEquals(2, this.window.getTradeCount());
+	}
+
+	/**
+	 * Tests for {@link RollingWindow} with trades having a non-positive price.
+	 * <ul>
+	 * <li>add a trade with a zero price</li>
+	 * <li>verify that it is counted as invalid until it leaves the window</li>
+	 * </ul>
+	 */
+	@Test
+	public void testInvalidTrade() {
+		this.store.add(newRecord(0, 1, "0"));
+		this.store.add(newRecord(200, 1, "1"));
+		this.window.advanceTo(0);
+		Assert.assertEquals(1, this.window.getInvalidCount());
+		this.window.advanceTo(200);
+		Assert.assertEquals(0, this.window.getInvalidCount());
+	}
+
+	/**
+	 * Tests for {@link RollingWindow} against a full scan of the store.
+	 * <ul>
+	 * <li>add random trades, partly out of order, with a size-limited
+	 * retention, moving the window forward</li>
+	 * <li>verify that the totals equal the sums over the trades in the
+	 * window</li>
+	 * </ul>
+	 */
+	@Test
+	public void testAgainstFullScan() {
+		Random random = new Random(42);
+		this.store.setRetentionPolicy(RetentionPolicy.maxRecords(300));
+		long now = 0;
+		for (int i = 0; i < 5000; i++) {
+			now += random.nextInt(3);
+			long timestamp = now - random.nextInt(150);
+			this.store.add(newRecord(timestamp, 1 + random.nextInt(100), String.valueOf(1 + random.nextInt(1000))));
+			if (random.nextInt(10) == 0) {
+				this.window.advanceTo(now);
+				BigDecimal priceQuantitySum = BigDecimal.ZERO;
+				long quantitySum = 0;
+				for (TradeRecord record : this.store.getTradeRecordsSince(now - LENGTH)) {
+					priceQuantitySum = priceQuantitySum
+							.add(record.getPrice().multiply(new BigDecimal(record.getQuantity())));
+					quantitySum += record.getQuantity().longValue();
+				}
+				Assert.assertEquals(quantitySum, this.window.getQuantitySum());
+				Assert.assertEquals(0, priceQuantitySum.compareTo(this.window.getPriceQuantitySum()));
+			}
+		}
+	}
+
+	/**
+	 * Tests for the totals of a {@link RollingWindow} by {@link BuyOrSell}
+	 * indicator against a full scan of the store.
+	 * <ul>
+	 * <li>add random buy, sell and unmarked trades, some invalid and partly out
+	 * of order, with a size-limited retention, moving the window forward</li>
+	 * <li>verify that the totals of each side equal the sums over the valid
+	 * trades of that side in the window</li>
+	 * </ul>
+	 */
+	@Test
+	public void testSideTotals_AgainstFullScan() {
+		Random random = new Random(7);
+		this.store.setRetentionPolicy(RetentionPolicy.maxRecords(300));
+		BuyOrSell[] sides = { BuyOrSell.BUY, BuyOrSell.SELL, null };
+		long now = 0;
+		for (int i = 0; i < 5000; i++) {
+			now += random.nextInt(3);
+			long price = random.nextInt(30) == 0 ? 0 : 1 + random.nextInt(1000);
+			this.store.add(now - random.nextInt(150), 1 + random.nextInt(100), sides[random.nextInt(3)], price);
+			if (random.nextInt(10) == 0) {
+				this.window.advanceTo(now);
+				for (BuyOrSell side : BuyOrSell.values()) {
+					int tradeCount = 0;
+					long quantitySum = 0;
+					long priceQuantitySum = 0;
+					for (int index = this.store.indexAtOrAfter(now - LENGTH); index < this.store.size(); index++) {
+						if (this.store.getSide(index) == side.ordinal() && this.store.getPrice(index) > 0) {
+							tradeCount++;
+							quantitySum += this.store.getQuantity(index);
+							priceQuantitySum += this.store.getQuantity(index) * this.store.getPrice(index);
+						}
+					}
+					Assert.assertEquals(tradeCount, this.window.getTradeCount(side));
+					Assert.assertEquals(quantitySum, this.window.getQuantitySum(side));
+					Assert.assertEquals(0, BigDecimal.valueOf(priceQuantitySum, this.store.getPriceScale())
+							.compareTo(this.window.getPriceQuantitySum(side)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a trade record.
+	 *
+	 * @param timestamp the time of the trade
+	 * @param quantity the quantity of the trade
+	 * @param price the price of the trade
+	 * @return a {@link TradeRecord}
+	 */
+	private static TradeRecord newRecord(long timestamp, long quantity, String price) {
+		return new TradeRecord(TestUtils.TEST_COMMON_STOCK, new Date(timestamp), BigInteger.valueOf(quantity),
+				BuyOrSell.BUY, new BigDecimal(price));
+	}
+
+}
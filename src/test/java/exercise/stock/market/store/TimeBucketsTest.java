@@ -0,0 +1,129 @@
+package exercise.stock.market.store;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.test.TestUtils;
+
+/**
+ * A test class for {@link TimeBuckets}.
+ *
+ * @author DMONEY
+ *
+ */
+public class TimeBucketsTest {
+
+	/** The lengths of the windows under test, the last beyond the horizon. */
+	private static final long[] LENGTHS = { 7, 100, 35, 1000, 250 };
+
+	/**
+	 * Tests for {@link TimeBuckets#getTotals(long, WindowTotals)}.
+	 * <ul>
+	 * <li>add trades at 0, 15, 25 and 40 to buckets of 10</li>
+	 * <li>verify the totals of windows starting inside a bucket, on its
+	 * boundary and before the first trade</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetTotals() {
+		TradeStore store = new TradeStore(TestUtils.TEST_COMMON_STOCK);
+		TimeBuckets buckets = store.getTimeBuckets(10, 8);
+		store.add(0, 10, BuyOrSell.BUY, 2);
+		store.add(15, 20, BuyOrSell.SELL, 3);
+		store.add(25, 30, BuyOrSell.BUY, 4);
+		store.add(40, 40, BuyOrSell.SELL, 5);
+
+		WindowTotals totals = buckets.getTotals(45, new WindowTotals(22, 30, 100));
+		Assert.assertEquals(2, totals.getTradeCount(0));
+		Assert.assertEquals(70, totals.getQuantitySum(0));
+		Assert.assertEquals(0, new BigDecimal("0.00032").compareTo(totals.getPriceQuantitySum(0)));
+		Assert.assertEquals(3, totals.getTradeCount(1));
+		Assert.assertEquals(90, totals.getQuantitySum(1));
+		Assert.assertEquals(4, totals.getTradeCount(2));
+		Assert.assertEquals(0, totals.getInvalidCount(2));
+	}
+
+	/**
+	 * Tests for {@link TimeBuckets#getTotals(long, WindowTotals)} against the
+	 * trades in each window.
+	 * <ul>
+	 * <li>add random trades, some late and some invalid, with a retention
+	 * policy evicting the oldest ones, for several granularities</li>
+	 * <li>verify after each trade that the totals of all the windows are the
+	 * sums of the trades at or after their start</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetTotals_AgainstTrades() {
+		for (long granularity : new long[] { 1, 3, 10, 64 }) {
+			Random random = new Random(granularity);
+			TradeStore store = new TradeStore(TestUtils.TEST_COMMON_STOCK, RetentionPolicy.maxRecords(300), 2);
+			TimeBuckets buckets = store.getTimeBuckets(granularity, (int) (400 / granularity) + 1);
+			WindowTotals totals = new WindowTotals(LENGTHS);
+			long time = 0;
+			for (int n = 0; n < 2000; n++) {
+				time += random.nextInt(5);
+				long timestamp = random.nextInt(10) == 0 ? time - random.nextInt(600) : time;
+				long price = random.nextInt(50) == 0 ? 0 : 1 + random.nextInt(100000);
+				store.add(timestamp, 1 + random.nextInt(1000), BuyOrSell.BUY, price);
+				long now = time + random.nextInt(20);
+				buckets.getTotals(now, totals);
+				for (int w = 0; w < LENGTHS.length; w++) {
+					assertTotals(store, now - LENGTHS[w], totals, w);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests for {@link TradeStore#setPriceScale(int)} with time buckets.
+	 * <ul>
+	 * <li>add a trade, then change the price scale of the store</li>
+	 * <li>verify that the totals are at the new scale</li>
+	 * </ul>
+	 */
+	@Test
+	public void testSetPriceScale() {
+		TradeStore store = new TradeStore(TestUtils.TEST_COMMON_STOCK, RetentionPolicy.unbounded(), 2);
+		TimeBuckets buckets = store.getTimeBuckets(10, 10);
+		store.add(5, 3, BuyOrSell.BUY, 150);
+		store.setPriceScale(4);
+		WindowTotals totals = buckets.getTotals(20, new WindowTotals(50));
+		Assert.assertEquals(4, totals.getPriceScale());
+		Assert.assertEquals(0, new BigDecimal("4.5").compareTo(totals.getPriceQuantitySum(0)));
+	}
+
+	/**
+	 * Checks the totals of a window against the trades of the store.
+	 *
+	 * @param store the store
+	 * @param start the start of the window
+	 * @param totals the totals read
+	 * @param window the index of the window
+	 */
+	private static void assertTotals(TradeStore store, long start, WindowTotals totals, int window) {
+		int tradeCount = 0;
+		int invalidCount = 0;
+		long quantitySum = 0;
+		BigDecimal priceQuantitySum = BigDecimal.ZERO;
+		for (int i = store.indexAtOrAfter(start); i < store.size(); i++) {
+			tradeCount++;
+			if (store.getPrice(i) <= 0) {
+				invalidCount++;
+			} else {
+				quantitySum += store.getQuantity(i);
+				priceQuantitySum = priceQuantitySum
+						.add(BigDecimal.valueOf(store.getPrice(i), 2).multiply(BigDecimal.valueOf(store.getQuantity(i))));
+			}
+		}
+		Assert.assertEquals(tradeCount, totals.getTradeCount(window));
+		Assert.assertEquals(invalidCount, totals.getInvalidCount(window));
+		Assert.assertEquals(quantitySum, totals.getQuantitySum(window));
+		Assert.assertEquals(0, priceQuantitySum.compareTo(totals.getPriceQuantitySum(window)));
+	}
+
+}
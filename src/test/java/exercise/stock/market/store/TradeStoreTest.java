@@ -0,0 +1,289 @@
+package exercise.stock.market.store;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import exercise.stock.market.model.BuyOrSell;
+import exercise.stock.market.model.TradeRecord;
+import exercise.stock.market.test.TestUtils;
+import exercises.stock.exceptions.InvalidValueException;
+
+/**
+ * A test class for {@link TradeStore}.
+ *
+ * @author DMONEY
+ *
+ */
+public class TradeStoreTest {
+
+	/** The {@link TradeStore} under test. */
+	private TradeStore store;
+
+	/**
+	 * Runs before every test.
+	 */
+	@Before
+	public void setUp() {
+		this.store = new TradeStore(TestUtils.TEST_COMMON_STOCK);
+	}
+
+	/**
+	 * Tests for {@link TradeStore#add(TradeRecord)} with records out of time
+	 * order.
+	 * <ul>
+	 * <li>add records with timestamps 30, 10, 20, 10</li>
+	 * <li>verify that the records are kept in timestamp order and the later
+	 * record with an equal timestamp is placed after the earlier one</li>
+	 * </ul>
+	 */
+	@Test
+	public void testAdd_OutOfOrder() {
+		TradeRecord first = newRecord(30);
+		TradeRecord second = newRecord(10);
+		TradeRecord third = newRecord(20);
+		TradeRecord fourth = newRecord(10);
+		this.store.add(first);
+		this.store.add(second);
+		this.store.add(third);
+		this.store.add(fourth);
+		Assert.assertEquals(Arrays.asList(second, fourth, third, first), this.store);
+	}
+
+	/**
+	 * Tests for {@link TradeStore#add(TradeRecord)} with a record without
+	 * timestamp.
+	 * <ul>
+	 * <li>add a record without timestamp</li>
+	 * <li>verify that an {@link InvalidValueException} is thrown</li>
+	 * </ul>
+	 */
+	@Test(expected = InvalidValueException.class)
+	public void testAdd_NoTimestamp() {
+		this.store.add(new TradeRecord());
+	}
+
+	/**
+	 * Tests for {@link TradeStore#getTradeRecordsSince(long)} and
+	 * {@link TradeStore#getTradeRecordsBetween(long, long)}.
+	 * <ul>
+	 * <li>add 100 records with timestamps 0 to 99</li>
+	 * <li>verify that the windows contain the expected records</li>
+	 * </ul>
+	 */
+	@Test
+	public void testGetTradeRecordsByWindow() {
+		for (int i = 99; i >= 0; i--) {
+			this.store.add(newRecord(i));
+		}
+		List<TradeRecord> since = this.store.getTradeRecordsSince(90);
+		Assert.assertEquals(10, since.size());
+		Assert.assertEquals(90, since.get(0).getTimestamp().getTime());
+		List<TradeRecord> between = this.store.getTradeRecordsBetween(20, 25);
+		Assert.assertEquals(5, between.size());
+		Assert.assertEquals(24, between.get(4).getTimestamp().getTime());
+		Assert.assertTrue(this.store.getTradeRecordsSince(100).isEmpty());
+		Assert.assertTrue(this.store.getTradeRecordsBetween(50, 40).isEmpty());
+	}
+
+	/**
+	 * Tests for {@link TradeStore} with a {@link RetentionPolicy} limited by
+	 * age.
+	 * <ul>
+	 * <li>set a retention of 10 milliseconds</li>
+	 * <li>add records with timestamps 0 to 99</li>
+	 * <li>verify that only the records of the last 10 milliseconds are
+	 * kept</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRetention_MaxAge() {
+		this.store.setRetentionPolicy(RetentionPolicy.maxAge(10));
+		for (int i = 0; i < 100; i++) {
+			this.store.add(newRecord(i));
+		}
+		Assert.assertEquals(11, this.store.size());
+		Assert.assertEquals(89, this.store.get(0).getTimestamp().getTime());
+		this.store.add(newRecord(50));
+		Assert.assertEquals(11, this.store.size());
+	}
+
+	/**
+	 * Tests for {@link TradeStore} with a {@link RetentionPolicy} limited by
+	 * size.
+	 * <ul>
+	 * <li>set a retention of 5 records</li>
+	 * <li>add records with timestamps 0 to 999</li>
+	 * <li>verify that only the 5 newest records are kept</li>
+	 * </ul>
+	 */
+	@Test
+	public void testRetention_MaxRecords() {
+		this.store.setRetentionPolicy(RetentionPolicy.maxRecords(5));
+		for (int i = 0; i < 1000; i++) {
+			this.store.add(newRecord(i));
+		}
+		Assert.assertEquals(5, this.store.size());
+		Assert.assertEquals(995, this.store.get(0).getTimestamp().getTime());
+		Assert.assertEquals(999, this.store.get(4).getTimestamp().getTime());
+	}
+
+	/**
+	 * Tests for {@link TradeStore#evictBefore(long)}.
+	 * <ul>
+	 * <li>add records with timestamps 0 to 9</li>
+	 * <li>evict the records before 4</li>
+	 * <li>verify that the remaining records start at 4</li>
+	 * </ul>
+	 */
+	@Test
+	public void testEvictBefore() {
+		for (int i = 0; i < 10; i++) {
+			this.store.add(newRecord(i));
+		}
+		Assert.assertEquals(4, this.store.evictBefore(4));
+		Assert.assertEquals(6, this.store.size());
+		Assert.assertEquals(4, this.store.get(0).getTimestamp().getTime());
+	}
+
+	/**
+	 * Tests for {@link TradeStore#add(long, long, BuyOrSell, long)}.
+	 * <ul>
+	 * <li>add a trade from primitive values with a price of 12.345</li>
+	 * <li>verify that the columns hold the values and that the record read
+	 * back equals the trade</li>
+	 * </ul>
+	 */
+	@Test
+	public void testAdd_Primitive() {
+		this.store.add(1000, 7, BuyOrSell.SELL, 12345000);
+		Assert.assertEquals(1000, this.store.getTimestamp(0));
+		Assert.assertEquals(7, this.store.getQuantity(0));
+		Assert.assertEquals(12345000, this.store.getPrice(0));
+		Assert.assertEquals(BuyOrSell.SELL.ordinal(), this.store.getSide(0));
+		Assert.assertEquals(new TradeRecord(TestUtils.TEST_COMMON_STOCK, new Date(1000), BigInteger.valueOf(7),
+				BuyOrSell.SELL, new BigDecimal("12.345")), this.store.get(0));
+	}
+
+	/**
+	 * Tests for {@link TradeStore#add(TradeRecord)} with a price which cannot
+	 * be represented with the price scale of the store.
+	 * <ul>
+	 * <li>add a record with a price of 0.0000001</li>
+	 * <li>verify that an {@link InvalidValueException} is thrown</li>
+	 * </ul>
+	 */
+	@Test(expected = InvalidValueException.class)
+	public void testAdd_PriceBeyondScale() {
+		this.store.add(new TradeRecord(TestUtils.TEST_COMMON_STOCK, new Date(), BigInteger.ONE, BuyOrSell.BUY,
+				new BigDecimal("0.0000001")));
+	}
+
+	/**
+	 * Tests for {@link TradeStore#setPriceScale(int)}.
+	 * <ul>
+	 * <li>add a trade with a price of 1.5 and change the scale to 2</li>
+	 * <li>verify that the unscaled price is converted and the rolling window
+	 * totals are unchanged</li>
+	 * </ul>
+	 */
+	@Test
+	public void testSetPriceScale() {
+		this.store.add(newRecord(0));
+		this.store.add(new TradeRecord(TestUtils.TEST_COMMON_STOCK, new Date(1), BigInteger.TEN, BuyOrSell.BUY,
+				new BigDecimal("1.5")));
+		RollingWindow window = this.store.getWindow(100);
+		this.store.setPriceScale(2);
+		Assert.assertEquals(150, this.store.getPrice(1));
+		Assert.assertEquals(0, new BigDecimal(16).compareTo(window.getPriceQuantitySum()));
+	}
+
+	/**
+	 * Tests for {@link TradeStore#copy(TradeStorage)} off the heap.
+	 * <ul>
+	 * <li>add records out of order to a store, copy it off the heap and add
+	 * more records with a size-limited retention</li>
+	 * <li>verify that the copy keeps the records in order and that its
+	 * rolling window totals match the records</li>
+	 * </ul>
+	 */
+	@Test
+	public void testCopy_OffHeap() {
+		for (int i = 0; i < 50; i++) {
+			this.store.add(newRecord((i * 7) % 50));
+		}
+		TradeStore offHeap = this.store.copy(TradeStorage.OFF_HEAP);
+		Assert.assertEquals(TradeStorage.OFF_HEAP, offHeap.getStorage());
+		Assert.assertEquals(this.store, offHeap);
+		RollingWindow window = offHeap.getWindow(10);
+		offHeap.setRetentionPolicy(RetentionPolicy.maxRecords(20));
+		for (int i = 50; i < 100; i++) {
+			offHeap.add(newRecord(i));
+		}
+		Assert.assertEquals(20, offHeap.size());
+		Assert.assertEquals(80, offHeap.get(0).getTimestamp().getTime());
+		window.advanceTo(99);
+		Assert.assertEquals(11, window.getTradeCount());
+		Assert.assertEquals(11, window.getQuantitySum());
+	}
+
+	/**
+	 * Tests for {@link TradeStore#snapshot()}.
+	 * <ul>
+	 * <li>take a snapshot of a store, then add a late record and evict the
+	 * oldest ones while iterating the snapshot</li>
+	 * <li>verify that the snapshot keeps the records it was taken with, is
+	 * shared until the records change, and that a new snapshot has the new
+	 * version and records</li>
+	 * </ul>
+	 */
+	@Test
+	public void testSnapshot() {
+		for (int i = 0; i < 10; i++) {
+			this.store.add(newRecord(i * 10));
+		}
+		this.store.add(35, 7, null, 2);
+		TradeSnapshot snapshot = this.store.snapshot();
+		Assert.assertSame(snapshot, this.store.snapshot());
+		Assert.assertEquals(this.store.getVersion(), snapshot.getVersion());
+		Assert.assertEquals(this.store, snapshot);
+		Assert.assertEquals(TradeStore.NO_SIDE, snapshot.getSide(4));
+		Assert.assertNull(snapshot.get(4).getIndicator());
+
+		this.store.setRetentionPolicy(RetentionPolicy.maxRecords(5));
+		for (TradeRecord record : snapshot) {
+			this.store.add(record.getTimestamp().getTime() + 1, 1, BuyOrSell.SELL, 3);
+		}
+		Assert.assertEquals(11, snapshot.size());
+		Assert.assertEquals(35, snapshot.getTimestamp(4));
+		Assert.assertEquals(2, snapshot.getPrice(4));
+		TradeSnapshot latest = this.store.snapshot();
+		Assert.assertTrue(latest.getVersion() > snapshot.getVersion());
+		Assert.assertEquals(this.store, latest);
+		Assert.assertEquals(5, latest.size());
+		try {
+			latest.add(newRecord(100));
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Creates a trade record at the given time.
+	 *
+	 * @param timestamp the time of the trade
+	 * @return a {@link TradeRecord}
+	 */
+	private static TradeRecord newRecord(long timestamp) {
+		return new TradeRecord(TestUtils.TEST_COMMON_STOCK, new Date(timestamp), BigInteger.ONE, BuyOrSell.BUY,
+				BigDecimal.ONE);
+	}
+
+}
@@ -1,5 +1,7 @@
 package exercise.stock.market.test;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.math.BigDecimal;
 import exercise.stock.market.model.CommonStock;
 import exercise.stock.market.model.PreferredStock;
@@ -48,4 +50,22 @@ public class TestUtils {
 		return new PreferredStock(TEST_PREFERRED_STOCK, BigDecimal.ZERO,BigDecimal.ZERO,BigDecimal.ZERO,BigDecimal.ZERO);
 	}
 
+	/**
+	 * Gets the number of bytes allocated on the heap by the current thread, if
+	 * the JVM measures it.
+	 * 
+	 * @return the number of bytes allocated so far, or -1 if not measured
+	 */
+	public static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
 }